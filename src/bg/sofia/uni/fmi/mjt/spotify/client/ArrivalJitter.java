@@ -0,0 +1,40 @@
+package bg.sofia.uni.fmi.mjt.spotify.client;
+
+// the interarrival jitter of RFC 3550 - how much the time a chunk takes to arrive varies from chunk to chunk,
+// smoothed over the last few of them
+// the transit of a chunk is when it arrived minus where its audio sits in the stream - a steady stream
+// has a steady transit, and every change of it, early or late, is jitter
+class ArrivalJitter {
+
+    // the smoothing of RFC 3550 - every difference moves the estimate by a sixteenth of the way
+    private static final int GAIN = 16;
+
+    private double jitterNanos;
+    private long previousTransit;
+    private boolean started;
+
+    ArrivalJitter() {
+        this.jitterNanos = 0;
+        this.started = false;
+    }
+
+    // the position of the chunk is its media time, from the start of the stream
+    synchronized void arrived(long arrivalNanos, long positionNanos) {
+        long transit = arrivalNanos - positionNanos;
+        if (this.started) {
+            long difference = Math.abs(transit - this.previousTransit);
+            this.jitterNanos += (difference - this.jitterNanos) / GAIN;
+        }
+        this.previousTransit = transit;
+        this.started = true;
+    }
+
+    // after a seek or a pause the transit starts over - the estimate so far is kept
+    synchronized void restart() {
+        this.started = false;
+    }
+
+    synchronized long getJitterNanos() {
+        return (long) this.jitterNanos;
+    }
+}
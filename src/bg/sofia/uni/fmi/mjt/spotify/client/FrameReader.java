@@ -0,0 +1,76 @@
+package bg.sofia.uni.fmi.mjt.spotify.client;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// reads everything the server sends - responses go to the console, audio goes to the player,
+// so the user can keep sending commands while a song is playing
+// the audio frames are looked at right in the buffer of the decoder, so reading them allocates nothing
+public class FrameReader extends Thread {
+
+    private static final int POLL_MILLISECONDS = 100;
+
+    private final SocketChannel socketChannel;
+    private final MediaPlayer mediaPlayer;
+    private final SpotifyLogger logger;
+    private final BlockingQueue<String> responses;
+
+    FrameReader(SocketChannel socketChannel, MediaPlayer mediaPlayer, SpotifyLogger logger) {
+        super("frame-reader");
+        this.socketChannel = socketChannel;
+        this.mediaPlayer = mediaPlayer;
+        this.logger = logger;
+        this.responses = new LinkedBlockingQueue<>();
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        FrameDecoder decoder = new FrameDecoder();
+        try {
+            while (decoder.readFrom(this.socketChannel) != -1) {
+                while (decoder.peek()) {
+                    if (decoder.getPeekedType() == FrameType.AUDIO_DATA) {
+                        this.mediaPlayer.write(decoder.getPeekedStreamId(), decoder.getPeekedPayload());
+                        decoder.skip();
+                        continue;
+                    }
+                    Frame frame = decoder.next();
+                    if (frame.getType() == FrameType.RESPONSE) {
+                        this.responses.add(frame.getText());
+                    } else {
+                        this.mediaPlayer.accept(frame);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // the client is closing
+        } catch (IOException e) {
+            // the server is gone or has closed the connection after a disconnect
+            if (this.logger != null && this.socketChannel.isOpen()) {
+                this.logger.log("localhost", e);
+            }
+        } finally {
+            this.mediaPlayer.shutdown();
+        }
+    }
+
+    // the responses come in the order of the commands
+    String nextResponse() throws IOException, InterruptedException {
+        String response;
+        while ((response = this.responses.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) == null) {
+            if (!isAlive() && this.responses.isEmpty()) {
+                throw new IOException("The connection to the server was lost");
+            }
+        }
+        return response;
+    }
+}
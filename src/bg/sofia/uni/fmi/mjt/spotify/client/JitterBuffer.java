@@ -0,0 +1,186 @@
+package bg.sofia.uni.fmi.mjt.spotify.client;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// the audio between the network reader and the audio writer - a ring of decoded PCM, that the reader fills
+// as the frames arrive, and the writer drains into the line
+// the frames, which are not audio, such as a new format or the end of the stream, are kept at the place of the ring,
+// where they came, so that the writer sees them right after the audio before them
+// the writer starts once the ring holds the target - sized from the measured arrival jitter - and after the ring
+// has run dry in the middle of a stream, it waits for the target again instead of playing every chunk as it comes
+class JitterBuffer {
+
+    // what read() returns, when the next thing to do is the event, that takeEvent() gives
+    static final int EVENT = -1;
+
+    private byte[] ring;
+    // every byte ever written and read - where they are in the ring is the remainder by its length
+    private long written;
+    private long read;
+    private final Deque<Event> events;
+    private int target;
+    private boolean buffering;
+    private boolean paused;
+    // changes whenever the audio is discarded, so that a reader, that waits for room, drops the rest of its chunk
+    private long generation;
+    private long underruns;
+    private long stalls;
+
+    JitterBuffer(int capacity) {
+        this.ring = new byte[capacity];
+        this.events = new ArrayDeque<>();
+        this.target = 0;
+        this.buffering = true;
+        this.paused = false;
+    }
+
+    // called by the reader, when a format needs more room - the audio in the ring is kept
+    synchronized void ensureCapacity(int capacity) {
+        if (capacity <= this.ring.length) {
+            return;
+        }
+        byte[] bigger = new byte[capacity];
+        for (long position = this.read; position < this.written; position++) {
+            bigger[(int) (position % capacity)] = this.ring[(int) (position % this.ring.length)];
+        }
+        this.ring = bigger;
+    }
+
+    synchronized void setTarget(int bytes) {
+        this.target = Math.min(bytes, this.ring.length);
+    }
+
+    // blocks while the ring is full - the reader stalls, until the writer makes room
+    // false, if the audio was discarded in the meantime and the rest of the chunk is not needed anymore
+    synchronized boolean write(ByteBuffer pcm) throws InterruptedException {
+        long generation = this.generation;
+        boolean stalled = false;
+        while (pcm.hasRemaining()) {
+            if (this.generation != generation) {
+                return false;
+            }
+            int free = this.ring.length - (int) (this.written - this.read);
+            if (free == 0) {
+                if (!stalled) {
+                    this.stalls++;
+                    stalled = true;
+                }
+                wait();
+                continue;
+            }
+            int offset = (int) (this.written % this.ring.length);
+            int length = Math.min(Math.min(free, pcm.remaining()), this.ring.length - offset);
+            pcm.get(this.ring, offset, length);
+            this.written += length;
+            notifyAll();
+        }
+        return true;
+    }
+
+    synchronized void event(Frame frame) {
+        this.events.add(new Event(this.written, frame));
+        notifyAll();
+    }
+
+    // blocks until there are whole frames of audio to play, up to the given bytes, or an event is due
+    synchronized int read(byte[] target, int maxBytes, int frameSize) throws InterruptedException {
+        while (true) {
+            Event next = this.events.peek();
+            if (next != null && next.position <= this.read) {
+                return EVENT;
+            }
+            long end = next == null ? this.written : next.position;
+            long available = end - this.read;
+            // with an event after it, nothing more of this audio will come
+            if (this.buffering && (available >= Math.max(this.target, frameSize) || next != null)) {
+                this.buffering = false;
+            }
+            int length = (int) Math.min(available, Math.min(maxBytes, target.length));
+            length -= length % frameSize;
+            if (!this.buffering && length > 0) {
+                copy(target, length);
+                notifyAll();
+                return length;
+            }
+            if (next != null) {
+                // less than a frame before the event can't be played
+                this.read = end;
+                continue;
+            }
+            if (!this.buffering) {
+                if (!this.paused) {
+                    this.underruns++;
+                }
+                this.buffering = true;
+            }
+            wait();
+        }
+    }
+
+    private void copy(byte[] target, int length) {
+        int offset = (int) (this.read % this.ring.length);
+        int first = Math.min(length, this.ring.length - offset);
+        System.arraycopy(this.ring, offset, target, 0, first);
+        System.arraycopy(this.ring, 0, target, first, length - first);
+        this.read += length;
+    }
+
+    synchronized Frame takeEvent() {
+        return this.events.remove().frame;
+    }
+
+    // drops the audio, that has not been played - the events stay, as they still have to be seen
+    synchronized void discard() {
+        this.read = this.written;
+        this.generation++;
+        this.buffering = true;
+        notifyAll();
+    }
+
+    // a new stream waits for the target, like the first one
+    synchronized void rebuffer() {
+        this.buffering = true;
+    }
+
+    // a paused line is not fed, so a ring, that runs dry meanwhile, is not an underrun
+    synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    synchronized int getBuffered() {
+        return (int) (this.written - this.read);
+    }
+
+    synchronized int getTarget() {
+        return this.target;
+    }
+
+    synchronized int getCapacity() {
+        return this.ring.length;
+    }
+
+    // how many times the ring has run dry in the middle of a stream
+    synchronized long getUnderruns() {
+        return this.underruns;
+    }
+
+    // how many chunks the reader had to wait room for
+    synchronized long getStalls() {
+        return this.stalls;
+    }
+
+    private static class Event {
+
+        private final long position;
+        private final Frame frame;
+
+        private Event(long position, Frame frame) {
+            this.position = position;
+            this.frame = frame;
+        }
+    }
+}
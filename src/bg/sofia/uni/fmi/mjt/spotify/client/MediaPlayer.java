@@ -1,96 +1,307 @@
 package bg.sofia.uni.fmi.mjt.spotify.client;
 
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodecs;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioFormatCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
-import java.io.IOException;
+import java.net.ProtocolException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
 
+// plays the audio frames, that the frame reader hands over - one player lives as long as the connection
+// the frame reader decodes the audio into a jitter buffer, and the player is the thread, that writes it to the line,
+// so a frame, that comes late, is covered by what has been buffered, instead of being heard as a dropout
 public class MediaPlayer extends Thread {
 
     private static final String ANSI_ITALICS = "\033[3m";
     private static final String ANSI_RESET = "\033[0m";
+    private static final int NO_STREAM = Frame.CONTROL_STREAM;
+    // tells the player, that no more frames will come
+    private static final Frame SHUTDOWN = new Frame(FrameType.END_OF_STREAM, NO_STREAM, ByteBuffer.allocate(0));
+    // the jitter buffer holds a few times the measured jitter, but never too little or too much to start with
+    private static final int JITTER_FACTOR = 4;
+    private static final long MIN_TARGET_MILLISECONDS = 60;
+    private static final long MAX_TARGET_MILLISECONDS = 1000;
+    // the room for what the server sends ahead, on top of the target
+    private static final long CAPACITY_MILLISECONDS = 2000;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    // the largest write to the line - a block of CD audio, and never more than half of the line
+    private static final int WRITE_BYTES = 16 * 1024;
+    private static final long MILLISECONDS_PER_SECOND = 1000;
+    private static final long NANOSECONDS_PER_MILLISECOND = 1_000_000;
+    private static final long NANOSECONDS_PER_SECOND = 1_000_000_000;
 
-    private static final int BUFFER_SIZE = 4096;
-    private static final int ENCODING_POSITION = 0;
-    private static final int SAMPLE_RATE_POSITION = 1;
-    private static final int SAMPLE_SIZE_POSITION = 2;
-    private static final int CHANNELS_POSITION = 3;
-    private static final int FRAME_SIZE_POSITION = 4;
-    private static final int FRAME_RATE_POSITION = 5;
-    private static final int ENDIAN_POSITION = 6;
-    private static final String DONE = "Done";
-
-    private final SocketChannel socketChannel;
     private final SpotifyLogger logger;
+    private final JitterBuffer buffer;
+    private final ArrivalJitter jitter;
+    // the state of the frame reader - the stream, whose audio is buffered, and how to decode it
+    private volatile int stream;
+    private boolean streamEnded;
+    private AudioFormat streamFormat;
+    private AudioCodec codec;
+    private ByteBuffer decoded;
+    // where the next chunk sits in the stream
+    private long positionNanos;
+    // the state of the player - the line and the format it was opened with
+    private volatile SourceDataLine audioLine;
+    private AudioFormat format;
+    // the stream, that the line was opened for
+    private volatile int currentStream;
+    // the underruns before the stream of the line, to tell how many it has had
+    private long underrunsBefore;
+    // a stream, that the user has stopped - its late frames are dropped
+    private volatile int stoppedStream;
+    // a paused line keeps what it has buffered, the server sends nothing more until it is resumed
+    private volatile boolean paused;
 
-    MediaPlayer(SocketChannel socketChannel, SpotifyLogger logger) {
-        this.socketChannel = socketChannel;
+    MediaPlayer(SpotifyLogger logger) {
+        super("media-player");
         this.logger = logger;
+        this.buffer = new JitterBuffer(INITIAL_CAPACITY);
+        this.jitter = new ArrivalJitter();
+        this.stream = NO_STREAM;
+        this.streamEnded = true;
+        this.decoded = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.currentStream = NO_STREAM;
+        this.stoppedStream = NO_STREAM;
+        this.paused = false;
+        this.codec = AudioCodecs.PCM;
+        setDaemon(true);
+    }
+
+    // called by the frame reader for the frames of a stream, that are not audio
+    void accept(Frame frame) {
+        if (frame.getType() == FrameType.AUDIO_FORMAT) {
+            announced(frame);
+        } else if (frame.getType() == FrameType.END_OF_STREAM && frame.getStreamId() == this.stream) {
+            this.streamEnded = true;
+            this.buffer.event(frame);
+        }
+    }
+
+    // a new stream before the end of the previous one, like after a seek, replaces its audio right away
+    private void announced(Frame frame) {
+        if (frame.getStreamId() != this.stream) {
+            if (!this.streamEnded) {
+                this.buffer.discard();
+            }
+            this.jitter.restart();
+            this.positionNanos = 0;
+        }
+        this.stream = frame.getStreamId();
+        this.streamEnded = false;
+        try {
+            ByteBuffer payload = frame.getPayload();
+            this.streamFormat = AudioFormatCodec.decode(payload);
+            this.codec = AudioFormatCodec.decodeCodec(payload);
+            this.buffer.ensureCapacity(bytesOf(CAPACITY_MILLISECONDS, this.streamFormat));
+        } catch (ProtocolException | IllegalArgumentException e) {
+            // the player tells the user, once it gets to the format
+            this.streamFormat = null;
+        }
+        this.buffer.event(frame);
+    }
+
+    // called by the frame reader for every audio frame - the payload is decoded into the same buffer every time,
+    // and copied into the ring, so nothing is allocated for it
+    void write(int streamId, ByteBuffer payload) throws InterruptedException {
+        if (streamId != this.stream || streamId == this.stoppedStream || this.streamFormat == null) {
+            return;
+        }
+        ByteBuffer pcm;
+        try {
+            pcm = this.codec.decode(payload, this.streamFormat, this.decoded);
+        } catch (ProtocolException e) {
+            // a broken frame is a moment of silence, the next one may be fine
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            return;
+        }
+        if (pcm != payload && pcm != this.decoded) {
+            // a block larger than the buffer so far - its buffer is kept for the next ones
+            this.decoded = pcm;
+        }
+        this.jitter.arrived(System.nanoTime(), this.positionNanos);
+        this.positionNanos += pcm.remaining() * NANOSECONDS_PER_SECOND / bytesOf(MILLISECONDS_PER_SECOND,
+                this.streamFormat);
+        this.buffer.setTarget(bytesOf(getTargetMilliseconds(), this.streamFormat));
+        this.buffer.write(pcm);
+    }
+
+    void shutdown() {
+        this.buffer.event(SHUTDOWN);
+    }
+
+    // what the jitter buffer fills up to, before the audio starts
+    long getTargetMilliseconds() {
+        long jitterMilliseconds = this.jitter.getJitterNanos() / NANOSECONDS_PER_MILLISECOND;
+        return Math.max(MIN_TARGET_MILLISECONDS, Math.min(MAX_TARGET_MILLISECONDS, JITTER_FACTOR * jitterMilliseconds));
+    }
+
+    long getUnderruns() {
+        return this.buffer.getUnderruns();
+    }
+
+    long getStalls() {
+        return this.buffer.getStalls();
+    }
+
+    // called by the console thread - the audio already in the line is dropped right away
+    void stopPlaying() {
+        this.stoppedStream = this.stream;
+        this.buffer.discard();
+        SourceDataLine line = this.audioLine;
+        if (line != null) {
+            line.flush();
+        }
+    }
+
+    // the arrivals stop with a pause, which is not jitter
+    void pausePlaying() {
+        this.paused = true;
+        this.buffer.setPaused(true);
+        this.jitter.restart();
+        SourceDataLine line = this.audioLine;
+        if (line != null) {
+            line.stop();
+        }
+    }
+
+    void resumePlaying() {
+        this.paused = false;
+        this.buffer.setPaused(false);
+        this.jitter.restart();
+        SourceDataLine line = this.audioLine;
+        if (line != null) {
+            line.start();
+        }
+    }
+
+    // the next song starts playing, even if the previous one was paused
+    void newSongRequested() {
+        this.paused = false;
+        this.buffer.setPaused(false);
+    }
+
+    boolean isPlaying() {
+        return this.audioLine != null && this.currentStream != this.stoppedStream;
     }
 
     @Override
     public void run() {
+        byte[] chunk = new byte[WRITE_BYTES];
         try {
-            int bytesRead;
-            byte[] byteBuffer = new byte[BUFFER_SIZE];
-            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-
-            bytesRead = socketChannel.read(buffer);
-            byte[] destination = new byte[bytesRead];
-            buffer.flip();
-            buffer.get(destination, 0, bytesRead);
-            String contents = new String(destination);
-            String[] arguments = contents.split("\\R");
-
-            AudioFormat.Encoding encoding = new AudioFormat.Encoding(arguments[ENCODING_POSITION]);
-            float sampleRate = Float.parseFloat(arguments[SAMPLE_RATE_POSITION]);
-            int sampleSizeInBits = Integer.parseInt(arguments[SAMPLE_SIZE_POSITION]);
-            int channels = Integer.parseInt(arguments[CHANNELS_POSITION]);
-            int frameSize = Integer.parseInt(arguments[FRAME_SIZE_POSITION]);
-            float frameRate = Float.parseFloat(arguments[FRAME_RATE_POSITION]);
-            boolean bigEndian = Boolean.parseBoolean(arguments[ENDIAN_POSITION]);
-
-            AudioFormat format = new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize,
-                    frameRate, bigEndian);
-
-            DataLine.Info dataLineInfo = new DataLine.Info(SourceDataLine.class, format);
-            SourceDataLine audioLine = (SourceDataLine) AudioSystem.getLine(dataLineInfo);
-
-            audioLine.open(format);
-            audioLine.start();
-
-            while ((bytesRead = socketChannel.read(buffer)) != -1) {
-                buffer.flip();
-                buffer.get(byteBuffer, 0, bytesRead);
-                contents = new String(byteBuffer);
-                if (contents.contains(DONE)) {
+            while (true) {
+                SourceDataLine line = this.audioLine;
+                int frameSize = this.format == null ? 1 : this.format.getFrameSize();
+                int maxBytes = line == null ? chunk.length : Math.max(frameSize, line.getBufferSize() / 2);
+                int read = this.buffer.read(chunk, maxBytes, frameSize);
+                if (read != JitterBuffer.EVENT) {
+                    if (line != null && isPlaying()) {
+                        // blocks while the line is full, which paces the reading as well
+                        line.write(chunk, 0, read);
+                    }
+                    continue;
+                }
+                Frame event = this.buffer.takeEvent();
+                if (event == SHUTDOWN) {
                     break;
                 }
-
-                audioLine.write(byteBuffer, 0, bytesRead);
-                buffer.clear();
+                if (event.getType() == FrameType.AUDIO_FORMAT) {
+                    open(event);
+                } else {
+                    end(event);
+                }
             }
+        } catch (InterruptedException e) {
+            // the client is closing
+        } finally {
+            closeLine();
+        }
+    }
 
-            audioLine.drain();
-            audioLine.close();
+    // a new stream of the same format, like the one after a seek, reuses the line without what it has buffered
+    // a format within the same stream is the next song of a playlist - the previous one is played to its end
+    // a new line holds as much as the jitter buffer is meant to, so the two together cover twice the jitter
+    private void open(Frame frame) {
+        boolean nextSong = frame.getStreamId() == this.currentStream && isPlaying();
+        this.currentStream = frame.getStreamId();
+        if (!nextSong) {
+            this.buffer.rebuffer();
+            this.underrunsBefore = this.buffer.getUnderruns();
+        }
+        try {
+            AudioFormat format = AudioFormatCodec.decode(frame.getPayload());
+            SourceDataLine line = this.audioLine;
+            if (line != null && this.format != null && this.format.matches(format)) {
+                if (!nextSong) {
+                    line.flush();
+                }
+            } else {
+                if (nextSong) {
+                    line.drain();
+                }
+                closeLine();
+                DataLine.Info dataLineInfo = new DataLine.Info(SourceDataLine.class, format);
+                line = (SourceDataLine) AudioSystem.getLine(dataLineInfo);
+                line.open(format, bytesOf(getTargetMilliseconds(), format));
+                this.audioLine = line;
+            }
+            this.format = format;
+            if (!this.paused) {
+                line.start();
+            }
+        } catch (LineUnavailableException | ProtocolException | IllegalArgumentException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            this.stoppedStream = this.currentStream;
+            printToConsole("There is a problem with the player. Cannot play");
+        }
+    }
 
+    private void end(Frame frame) {
+        if (frame.getStreamId() != this.currentStream) {
+            return;
+        }
+        boolean playedToTheEnd = isPlaying();
+        if (playedToTheEnd) {
+            this.audioLine.drain();
+        }
+        closeLine();
+        if (playedToTheEnd) {
             System.out.print("\b\b\b"); // remove prompt symbol
             printToConsole("Playing ended");
-            System.out.print(SpotifyClient.PROMPT_MESSAGE); // put prompt symbol again
-        } catch (LineUnavailableException | IOException e) {
-            if (this.logger != null) {
-                this.logger.log("localhost", e);
+            long underruns = this.buffer.getUnderruns() - this.underrunsBefore;
+            if (underruns > 0) {
+                printToConsole("The network could not keep up " + underruns + " time(s) and the song waited for it");
             }
-            printToConsole("Song streaming was interrupted. Cannot continue");
+            System.out.print(SpotifyClient.PROMPT_MESSAGE); // put prompt symbol again
+        }
+    }
+
+    private void closeLine() {
+        SourceDataLine line = this.audioLine;
+        this.audioLine = null;
+        if (line != null) {
+            line.close();
         }
     }
 
+    // whole frames of the format
+    private static int bytesOf(long milliseconds, AudioFormat format) {
+        int frames = (int) (format.getFrameRate() * milliseconds / MILLISECONDS_PER_SECOND);
+        return Math.max(1, frames) * format.getFrameSize();
+    }
+
     static void printToConsole(String message) {
         System.out.println(ANSI_ITALICS + message + ANSI_RESET);
     }
@@ -2,15 +2,13 @@ package bg.sofia.uni.fmi.mjt.spotify.client;
 
 
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
-import bg.sofia.uni.fmi.mjt.spotify.server.executor.CommandParser;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.InetSocketAddress;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 public class SpotifyClient {
@@ -20,8 +18,11 @@ public class SpotifyClient {
     private static final String ANSI_RED = "\033[1;91m";
     private static final String ANSI_ITALICS = "\033[3m";
     private static final String ANSI_RESET = "\033[0m";
-    private static final String PLAY_COMMAND = "play";
     private static final String STOP_COMMAND = "stop";
+    private static final String PLAY_COMMAND = "play";
+    private static final String PLAY_PLAYLIST_COMMAND = "play-playlist";
+    private static final String PAUSE_COMMAND = "pause";
+    private static final String RESUME_COMMAND = "resume";
     private static final String DISCONNECT_COMMAND = "disconnect";
     private static final String LOCALHOST = "localhost";
 
@@ -39,58 +40,34 @@ public class SpotifyClient {
 
         displayGreetingMessage();
 
-        try (SocketChannel socketChannel = SocketChannel.open();
-             BufferedReader reader = new BufferedReader(Channels.newReader(socketChannel, StandardCharsets.UTF_8));
-             PrintWriter writer =
-                     new PrintWriter(Channels.newWriter(socketChannel, StandardCharsets.UTF_8), true)) {
+        try (SocketChannel socketChannel = SocketChannel.open()) {
 
             Scanner scanner = new Scanner(System.in);
             socketChannel.connect(new InetSocketAddress(ADDRESS, SERVER_PORT));
-            MediaPlayer mediaPlayer = null;
+            MediaPlayer mediaPlayer = new MediaPlayer(logger);
+            FrameReader frameReader = new FrameReader(socketChannel, mediaPlayer, logger);
+            mediaPlayer.start();
+            frameReader.start();
 
             while (true) {
                 System.out.print(PROMPT_MESSAGE);
                 String message = scanner.nextLine();
 
-                if (mediaPlayer != null && mediaPlayer.isAlive()) {
-                    if (message.equals(STOP_COMMAND)) {
-                        writer.println(message);
-                        mediaPlayer.join();
-                        // remove prompt symbol in case of unneeded adding
-                        System.out.print("\b\b");
-                    } else {
-                        // if a song is playing, sending any message to the server would cause the streaming to fail
-                        printToConsole("A song is currently playing. Please stop it before requesting a service");
-                    }
-                } else {
-                    // play a song
-                    if (message.startsWith(PLAY_COMMAND)) {
-                        writer.println(message);
-                        if (receiveValidResponse(reader)) {
-                            try {
-                                mediaPlayer = new MediaPlayer(socketChannel, logger);
-                                mediaPlayer.start();
-                            } catch (Exception e) {
-                                // there are too many exception types that can occur here,
-                                // but they all result in failure - catching them separately can miss some of them
-                                printToConsole("There is a problem with the player. Cannot play");
-                                if (logger != null) {
-                                    logger.log(LOCALHOST, e);
-                                }
-                            }
-                        }
-                    } else if (message.startsWith(STOP_COMMAND)) {
-                        // sending a stop message to the server
-                        // without a song playing can potentially ruin any future streaming
-                        printToConsole("No song is playing. Nothing to stop");
-                    } else {
-                        // if a song isn't playing, and we don't want to play, handle the response
-                        writer.println(message);
-                        receiveValidResponse(reader);
-                        if (message.equals(DISCONNECT_COMMAND)) {
-                            break;
-                        }
-                    }
+                if (message.equals(STOP_COMMAND)) {
+                    // the audio, that has already arrived, should not keep playing while the server replies
+                    mediaPlayer.stopPlaying();
+                } else if (message.equals(PAUSE_COMMAND)) {
+                    // the same goes for a pause, but the audio is kept for when the song is resumed
+                    mediaPlayer.pausePlaying();
+                } else if (message.equals(RESUME_COMMAND)) {
+                    mediaPlayer.resumePlaying();
+                } else if (message.startsWith(PLAY_COMMAND + " ") || message.startsWith(PLAY_PLAYLIST_COMMAND + " ")) {
+                    mediaPlayer.newSongRequested();
+                }
+                send(socketChannel, message);
+                printToConsole(frameReader.nextResponse());
+                if (message.equals(DISCONNECT_COMMAND)) {
+                    break;
                 }
             }
             if (logger != null) {
@@ -114,14 +91,11 @@ public class SpotifyClient {
         }
     }
 
-    private static boolean receiveValidResponse(BufferedReader reader) throws IOException {
-        String reply;
-        do {
-            reply = reader.readLine();
-            printToConsole(reply);
-        } while (reader.ready());
-
-        return reply != null && !reply.startsWith(CommandParser.ERROR_MESSAGE);
+    private static void send(SocketChannel socketChannel, String message) throws IOException {
+        ByteBuffer frame = FrameCodec.encode(Frame.command(message));
+        while (frame.hasRemaining()) {
+            socketChannel.write(frame);
+        }
     }
 
     private static void displayGreetingMessage() {
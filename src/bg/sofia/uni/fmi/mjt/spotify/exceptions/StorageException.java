@@ -0,0 +1,8 @@
+package bg.sofia.uni.fmi.mjt.spotify.exceptions;
+
+public class StorageException extends SpotifyException {
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
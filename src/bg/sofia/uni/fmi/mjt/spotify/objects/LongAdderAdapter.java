@@ -0,0 +1,33 @@
+package bg.sofia.uni.fmi.mjt.spotify.objects;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+// a counter is stored as a plain number, so the files look the same as with an int
+public class LongAdderAdapter extends TypeAdapter<LongAdder> {
+
+    @Override
+    public void write(JsonWriter out, LongAdder value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(value.sum());
+    }
+
+    @Override
+    public LongAdder read(JsonReader in) throws IOException {
+        LongAdder adder = new LongAdder();
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return adder;
+        }
+        adder.add(in.nextLong());
+        return adder;
+    }
+}
@@ -2,7 +2,8 @@ package bg.sofia.uni.fmi.mjt.spotify.objects;
 
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SongAlreadyExistsException;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -12,21 +13,36 @@ public class Playlist {
     private static final String ANSI_RED = "\u001B[31m";
 
     private final String name;
+    // in the order the songs were added, which is the order they are played in
     private final Map<String, Song> songs;
 
     public Playlist(String playlistName) {
+        this(playlistName, new LinkedHashMap<>());
+    }
+
+    private Playlist(String playlistName, Map<String, Song> songs) {
         this.name = playlistName;
-        this.songs = new HashMap<>();
+        this.songs = songs;
     }
 
-    public void addSong(Song song) throws SongAlreadyExistsException {
+    // a playlist can be shown to other users while its owner changes it
+    public synchronized void addSong(Song song) throws SongAlreadyExistsException {
         if (this.songs.containsKey(song.getName())) {
             throw new SongAlreadyExistsException("Song " + song.getName() + " already exists in this playlist");
         }
         this.songs.put(song.getName(), song);
     }
 
-    public String toReadableString() {
+    // the playlist as it is now, in the same order, for a snapshot to write while the playlist keeps changing
+    public synchronized Playlist copy() {
+        return new Playlist(this.name, new LinkedHashMap<>(this.songs));
+    }
+
+    public synchronized List<Song> getSongs() {
+        return List.copyOf(this.songs.values());
+    }
+
+    public synchronized String toReadableString() {
         StringBuilder builder = new StringBuilder(ANSI_RED + this.name + ANSI_RESET + System.lineSeparator());
         int counter = 1;
         for (Song song : this.songs.values()) {
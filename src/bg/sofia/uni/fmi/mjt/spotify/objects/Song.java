@@ -1,7 +1,10 @@
 package bg.sofia.uni.fmi.mjt.spotify.objects;
 
+import com.google.gson.annotations.JsonAdapter;
+
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Song {
 
@@ -11,24 +14,47 @@ public class Song {
     private final String name;
     private final String artist;
     private final int duration;
-    private int listeningTimes = 0;
+    // a song can be played by many listeners at once - a LongAdder doesn't lose any of the plays
+    @JsonAdapter(LongAdderAdapter.class)
+    private final LongAdder listeningTimes;
 
     public Song(String name, String artist, int duration) {
         this.name = name;
         this.artist = artist;
         this.duration = duration;
+        this.listeningTimes = new LongAdder();
+    }
+
+    // used by Gson, so that the counter exists even if the file doesn't mention it
+    private Song() {
+        this(null, null, 0);
+    }
+
+    // the same song under another name, with the same listens
+    public Song withName(String newName) {
+        Song renamed = new Song(newName, this.artist, this.duration);
+        renamed.listeningTimes.add(this.listeningTimes.sum());
+        return renamed;
     }
 
     public Path getPath() {
         return Path.of("resources", "songs", this.artist + " - " + this.name + " - " + this.duration + ".wav");
     }
 
-    public int getNumberOfListens() {
-        return this.listeningTimes;
+    public long getNumberOfListens() {
+        return this.listeningTimes.sum();
     }
 
     public void play() {
-        this.listeningTimes++;
+        this.listeningTimes.increment();
+    }
+
+    // the listens a journal recorded for the song - an older record never takes any listens away
+    public synchronized void restoreListens(long listens) {
+        long missing = listens - this.listeningTimes.sum();
+        if (missing > 0) {
+            this.listeningTimes.add(missing);
+        }
     }
 
     public String toReadableString() {
@@ -47,8 +73,8 @@ public class Song {
         return duration;
     }
 
-    public int getListeningTimes() {
-        return listeningTimes;
+    public long getListeningTimes() {
+        return listeningTimes.sum();
     }
 
     @Override
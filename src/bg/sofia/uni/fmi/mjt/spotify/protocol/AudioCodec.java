@@ -0,0 +1,28 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+// a stage between the audio of a song and the socket - the server encodes the chunks of a stream one by one,
+// and the client decodes every audio frame on its own, back into the PCM of the format of the stream
+public interface AudioCodec {
+
+    // what the format frame of a stream says about its codec
+    byte getId();
+
+    String getName();
+
+    boolean supports(AudioFormat format);
+
+    // a chunk of whole frames of the format, into a new buffer
+    ByteBuffer encode(ByteBuffer pcm, AudioFormat format);
+
+    ByteBuffer decode(ByteBuffer encoded, AudioFormat format) throws ProtocolException;
+
+    // the same, but into the target, if it is large enough - a client, that decodes frame after frame,
+    // allocates nothing for them
+    default ByteBuffer decode(ByteBuffer encoded, AudioFormat format, ByteBuffer target) throws ProtocolException {
+        return decode(encoded, format);
+    }
+}
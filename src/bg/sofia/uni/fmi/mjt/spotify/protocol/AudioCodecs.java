@@ -0,0 +1,34 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.net.ProtocolException;
+import java.util.List;
+
+// the codecs both sides know about
+public final class AudioCodecs {
+
+    public static final AudioCodec PCM = new PcmCodec();
+    public static final AudioCodec LOSSLESS = new LosslessCodec();
+    private static final List<AudioCodec> CODECS = List.of(PCM, LOSSLESS);
+
+    private AudioCodecs() {
+    }
+
+    public static AudioCodec of(byte id) throws ProtocolException {
+        for (AudioCodec codec : CODECS) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        throw new ProtocolException("Unknown audio codec " + id);
+    }
+
+    // null if there is no codec with this name
+    public static AudioCodec named(String name) {
+        for (AudioCodec codec : CODECS) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// AudioFormat is not Serializable, so all arguments of its constructor are sent instead:
+// | encoding length (2 bytes) | encoding (UTF-8) | sample rate (float) | sample size in bits (int) |
+// | channels (int) | frame size (int) | frame rate (float) | big endian (1 byte) | codec (1 byte, optional) |
+// the codec is what the audio of the stream is encoded with - without it, the audio is plain PCM
+public final class AudioFormatCodec {
+
+    private static final int FIXED_SIZE = 2 + 4 + 4 + 4 + 4 + 4 + 1;
+
+    private AudioFormatCodec() {
+    }
+
+    public static ByteBuffer encode(AudioFormat format) {
+        return encode(format, null);
+    }
+
+    public static ByteBuffer encode(AudioFormat format, AudioCodec codec) {
+        byte[] encoding = format.getEncoding().toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + encoding.length + (codec == null ? 0 : 1));
+        buffer.putShort((short) encoding.length);
+        buffer.put(encoding);
+        buffer.putFloat(format.getSampleRate());
+        buffer.putInt(format.getSampleSizeInBits());
+        buffer.putInt(format.getChannels());
+        buffer.putInt(format.getFrameSize());
+        buffer.putFloat(format.getFrameRate());
+        buffer.put((byte) (format.isBigEndian() ? 1 : 0));
+        if (codec != null) {
+            buffer.put(codec.getId());
+        }
+        return buffer.flip();
+    }
+
+    public static AudioFormat decode(ByteBuffer payload) throws ProtocolException {
+        try {
+            byte[] encoding = new byte[payload.getShort()];
+            payload.get(encoding);
+            float sampleRate = payload.getFloat();
+            int sampleSizeInBits = payload.getInt();
+            int channels = payload.getInt();
+            int frameSize = payload.getInt();
+            float frameRate = payload.getFloat();
+            boolean bigEndian = payload.get() != 0;
+            return new AudioFormat(new AudioFormat.Encoding(new String(encoding, StandardCharsets.UTF_8)),
+                    sampleRate, sampleSizeInBits, channels, frameSize, frameRate, bigEndian);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new ProtocolException("Invalid audio format");
+        }
+    }
+
+    // what is left of the payload after the format
+    public static AudioCodec decodeCodec(ByteBuffer payload) throws ProtocolException {
+        return payload.hasRemaining() ? AudioCodecs.of(payload.get()) : AudioCodecs.PCM;
+    }
+}
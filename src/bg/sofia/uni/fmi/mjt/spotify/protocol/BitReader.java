@@ -0,0 +1,80 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+// reads what BitWriter has written - the next bits are kept in the highest bits of a long
+class BitReader {
+
+    private static final int BITS_IN_BYTE = 8;
+    private static final int CACHE_BITS = Long.SIZE;
+
+    private ByteBuffer input;
+    private long cache;
+    private int cachedBits;
+
+    BitReader(ByteBuffer input) {
+        this.input = input;
+        this.cache = 0;
+        this.cachedBits = 0;
+    }
+
+    // starts over on another input, so that a decoder can keep a single reader
+    void reset(ByteBuffer input) {
+        this.input = input;
+        this.cache = 0;
+        this.cachedBits = 0;
+    }
+
+    int read(int bits) throws ProtocolException {
+        if (bits == 0) {
+            return 0;
+        }
+        if (this.cachedBits < bits) {
+            refill();
+            if (this.cachedBits < bits) {
+                throw new ProtocolException("The encoded audio ends too early");
+            }
+        }
+        int value = (int) (this.cache >>> (CACHE_BITS - bits));
+        consume(bits);
+        return value;
+    }
+
+    // the number of ones before the next zero, which is consumed as well - or the limit, if there are that many ones
+    int readUnary(int limit) throws ProtocolException {
+        int ones = 0;
+        while (true) {
+            if (this.cachedBits == 0) {
+                refill();
+                if (this.cachedBits == 0) {
+                    throw new ProtocolException("The encoded audio ends too early");
+                }
+            }
+            int run = Math.min(Long.numberOfLeadingZeros(~this.cache), this.cachedBits);
+            if (ones + run >= limit) {
+                consume(limit - ones);
+                return limit;
+            }
+            if (run < this.cachedBits) {
+                consume(run + 1);
+                return ones + run;
+            }
+            ones += run;
+            consume(run);
+        }
+    }
+
+    private void consume(int bits) {
+        // a shift by the whole width of a long would leave it unchanged
+        this.cache = bits == CACHE_BITS ? 0 : this.cache << bits;
+        this.cachedBits -= bits;
+    }
+
+    private void refill() {
+        while (this.cachedBits <= CACHE_BITS - BITS_IN_BYTE && this.input.hasRemaining()) {
+            this.cache |= (this.input.get() & 0xFFL) << (CACHE_BITS - BITS_IN_BYTE - this.cachedBits);
+            this.cachedBits += BITS_IN_BYTE;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.util.Arrays;
+
+// writes values of any width up to 32 bits, most significant bit first
+class BitWriter {
+
+    private static final int BITS_IN_BYTE = 8;
+
+    private byte[] bytes;
+    private int length;
+    // the bits, that don't make a whole byte yet, in the lowest bits
+    private long pending;
+    private int pendingBits;
+
+    BitWriter(int expectedBytes) {
+        this.bytes = new byte[Math.max(16, expectedBytes)];
+        this.length = 0;
+        this.pending = 0;
+        this.pendingBits = 0;
+    }
+
+    void write(int value, int bits) {
+        this.pending = (this.pending << bits) | ((value & 0xFFFFFFFFL) & ((1L << bits) - 1));
+        this.pendingBits += bits;
+        while (this.pendingBits >= BITS_IN_BYTE) {
+            this.pendingBits -= BITS_IN_BYTE;
+            put((byte) (this.pending >>> this.pendingBits));
+        }
+    }
+
+    // the bytes written so far - the last one is padded with zeros
+    int length() {
+        return this.length + (this.pendingBits > 0 ? 1 : 0);
+    }
+
+    byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(this.bytes, length());
+        if (this.pendingBits > 0) {
+            result[this.length] = (byte) (this.pending << (BITS_IN_BYTE - this.pendingBits));
+        }
+        return result;
+    }
+
+    private void put(byte value) {
+        if (this.length == this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        }
+        this.bytes[this.length++] = value;
+    }
+}
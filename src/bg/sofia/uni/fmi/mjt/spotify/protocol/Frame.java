@@ -0,0 +1,48 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class Frame {
+
+    // commands and their responses do not belong to any stream
+    public static final int CONTROL_STREAM = 0;
+
+    private final FrameType type;
+    private final int streamId;
+    private final ByteBuffer payload;
+
+    public Frame(FrameType type, int streamId, ByteBuffer payload) {
+        this.type = type;
+        this.streamId = streamId;
+        this.payload = payload;
+    }
+
+    public static Frame command(String command) {
+        return text(FrameType.COMMAND, command);
+    }
+
+    public static Frame response(String response) {
+        return text(FrameType.RESPONSE, response);
+    }
+
+    private static Frame text(FrameType type, String text) {
+        return new Frame(type, CONTROL_STREAM, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public FrameType getType() {
+        return this.type;
+    }
+
+    public int getStreamId() {
+        return this.streamId;
+    }
+
+    public ByteBuffer getPayload() {
+        return this.payload.duplicate();
+    }
+
+    public String getText() {
+        return StandardCharsets.UTF_8.decode(getPayload()).toString();
+    }
+}
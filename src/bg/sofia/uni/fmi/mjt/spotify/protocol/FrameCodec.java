@@ -0,0 +1,67 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+// every frame is a fixed header, followed by the payload:
+// | version (1 byte) | type (1 byte) | stream id (4 bytes) | payload length (4 bytes) | payload |
+// all numbers are big endian
+public final class FrameCodec {
+
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 10;
+    public static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+    private static final int LENGTH_OFFSET = 6;
+
+    private FrameCodec() {
+    }
+
+    public static ByteBuffer encode(Frame frame) {
+        ByteBuffer payload = frame.getPayload();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.remaining());
+        encodeHeader(buffer, frame.getType(), frame.getStreamId(), payload.remaining());
+        buffer.put(payload);
+        return buffer.flip();
+    }
+
+    public static void encodeHeader(ByteBuffer target, FrameType type, int streamId, int payloadLength) {
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Invalid payload length " + payloadLength);
+        }
+        target.put(VERSION);
+        target.put(type.getCode());
+        target.putInt(streamId);
+        target.putInt(payloadLength);
+    }
+
+    // decodes the frame at the position of the buffer, or returns null without moving it, if the frame isn't whole yet
+    public static Frame decode(ByteBuffer buffer) throws ProtocolException {
+        int length = payloadLength(buffer);
+        if (length < 0 || buffer.remaining() < HEADER_SIZE + length) {
+            return null;
+        }
+        buffer.get(); // the version has already been checked
+        FrameType type = FrameType.of(buffer.get());
+        int streamId = buffer.getInt();
+        buffer.getInt();
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        return new Frame(type, streamId, ByteBuffer.wrap(payload));
+    }
+
+    // the payload length of the frame at the position of the buffer, or -1 if even the header isn't whole yet
+    public static int payloadLength(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return -1;
+        }
+        byte version = buffer.get(buffer.position());
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported protocol version " + version);
+        }
+        int length = buffer.getInt(buffer.position() + LENGTH_OFFSET);
+        if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+            throw new ProtocolException("Invalid payload length " + length);
+        }
+        return length;
+    }
+}
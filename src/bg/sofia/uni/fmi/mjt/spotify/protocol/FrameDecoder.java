@@ -0,0 +1,137 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// collects whatever the channel gives and cuts it into frames,
+// no matter how the frames were split or merged on the way
+public class FrameDecoder {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private static final int TYPE_OFFSET = 1;
+    private static final int STREAM_ID_OFFSET = 2;
+
+    // the largest payload this end expects - the buffer is grown for a frame only up to it, so that a peer
+    // can't make it allocate the whole MAX_PAYLOAD_SIZE with nothing but a header
+    private final int maxPayloadSize;
+    // always in write mode between calls, with the first frame at its start
+    private ByteBuffer buffer;
+    // the payload of the peeked frame, the same view over the buffer for every frame
+    private ByteBuffer view;
+    private FrameType peekedType;
+    private int peekedStreamId;
+
+    public FrameDecoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public FrameDecoder(int initialCapacity) {
+        this(initialCapacity, FrameCodec.MAX_PAYLOAD_SIZE);
+    }
+
+    public FrameDecoder(int initialCapacity, int maxPayloadSize) {
+        this.maxPayloadSize = maxPayloadSize;
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+        this.view = this.buffer.duplicate();
+    }
+
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            grow(this.buffer.capacity() * 2);
+        }
+        return channel.read(this.buffer);
+    }
+
+    public void feed(ByteBuffer data) {
+        if (this.buffer.remaining() < data.remaining()) {
+            grow(this.buffer.position() + data.remaining());
+        }
+        this.buffer.put(data);
+    }
+
+    // the next whole frame or null, if more data is needed
+    public Frame next() throws ProtocolException {
+        this.buffer.flip();
+        try {
+            int length = checkedLength(this.buffer);
+            Frame frame = FrameCodec.decode(this.buffer);
+            if (frame == null && length >= 0 && FrameCodec.HEADER_SIZE + length > this.buffer.capacity()) {
+                // make room for a frame larger than everything so far
+                this.buffer.compact();
+                grow(FrameCodec.HEADER_SIZE + length);
+                return null;
+            }
+            this.buffer.compact();
+            return frame;
+        } catch (ProtocolException e) {
+            this.buffer.clear();
+            throw e;
+        }
+    }
+
+    // whether the next frame is whole, without copying it out of the buffer - its type, stream and payload
+    // can then be looked at until it is taken with next() or dropped with skip()
+    // this way a reader of audio frames allocates nothing per frame
+    public boolean peek() throws ProtocolException {
+        this.view.clear().limit(this.buffer.position());
+        try {
+            int length = checkedLength(this.view);
+            if (length >= 0 && FrameCodec.HEADER_SIZE + length > this.buffer.capacity()) {
+                grow(FrameCodec.HEADER_SIZE + length);
+                return false;
+            }
+            if (length < 0 || this.view.remaining() < FrameCodec.HEADER_SIZE + length) {
+                return false;
+            }
+            this.peekedType = FrameType.of(this.view.get(TYPE_OFFSET));
+            this.peekedStreamId = this.view.getInt(STREAM_ID_OFFSET);
+            this.view.limit(FrameCodec.HEADER_SIZE + length).position(FrameCodec.HEADER_SIZE);
+            return true;
+        } catch (ProtocolException e) {
+            this.buffer.clear();
+            throw e;
+        }
+    }
+
+    public FrameType getPeekedType() {
+        return this.peekedType;
+    }
+
+    public int getPeekedStreamId() {
+        return this.peekedStreamId;
+    }
+
+    // valid until the frame is taken or dropped, and only as long as nothing more is read
+    public ByteBuffer getPeekedPayload() {
+        return this.view;
+    }
+
+    public void skip() {
+        this.buffer.flip().position(this.view.limit());
+        this.buffer.compact();
+    }
+
+    public int buffered() {
+        return this.buffer.position();
+    }
+
+    private int checkedLength(ByteBuffer frame) throws ProtocolException {
+        int length = FrameCodec.payloadLength(frame);
+        if (length > this.maxPayloadSize) {
+            throw new ProtocolException("A frame of " + length + " bytes is larger than the allowed "
+                    + this.maxPayloadSize);
+        }
+        return length;
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity, this.buffer.capacity()));
+        this.buffer.flip();
+        bigger.put(this.buffer);
+        this.buffer = bigger;
+        this.view = bigger.duplicate();
+    }
+}
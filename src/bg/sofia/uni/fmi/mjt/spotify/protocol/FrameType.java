@@ -0,0 +1,38 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import java.net.ProtocolException;
+
+public enum FrameType {
+    // client to server - a text command, such as "play Smooth"
+    COMMAND((byte) 1),
+    // server to client - the text reply to a command
+    RESPONSE((byte) 2),
+    // server to client - the AudioFormat of the stream, that starts with this frame
+    AUDIO_FORMAT((byte) 3),
+    // server to client - whole frames of audio
+    AUDIO_DATA((byte) 4),
+    // server to client - no more audio will come for this stream
+    END_OF_STREAM((byte) 5);
+
+    // values() copies the array on every call, and every frame is looked up
+    private static final FrameType[] TYPES = values();
+
+    private final byte code;
+
+    FrameType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return this.code;
+    }
+
+    public static FrameType of(byte code) throws ProtocolException {
+        for (FrameType type : TYPES) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new ProtocolException("Unknown frame type " + code);
+    }
+}
@@ -0,0 +1,350 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// a lossless codec for 16-bit PCM in the spirit of FLAC - every channel of a block is predicted from its own
+// past samples by the best of the fixed polynomial predictors, and only what the prediction misses is stored,
+// Rice coded, since it is mostly small numbers
+// the two channels of a stereo block are first turned into the pair, that predicts best -
+// left and right, left and side, side and right or mid and side, as the channels of music are mostly alike
+// | PCM length (int) | method (byte) | the PCM as it is, or the bits of the channels |
+// a channel is | predictor order (3 bits) | as many warm-up samples (18 bits each) | partitions of residuals |
+// and a partition is | Rice parameter (5 bits) | Rice codes |
+public class LosslessCodec implements AudioCodec {
+
+    // the frames of a block, that the encoder is best at - the predictors need a few to warm up
+    // and the Rice parameters adapt every partition, so shorter blocks only cost more headers
+    public static final int BLOCK_FRAMES = 4096;
+
+    private static final byte ID = 1;
+    private static final String NAME = "LOSSLESS";
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final int SAMPLE_BYTES = 2;
+    private static final byte VERBATIM = 0;
+    private static final byte PREDICTED = 1;
+    private static final int MAX_ORDER = 4;
+    private static final int ORDER_BITS = 3;
+    // a sample of the side channel needs one bit more than the others, and the zigzag one more still
+    private static final int WARM_UP_BITS = 18;
+    private static final int CHANNEL_MODE_BITS = 2;
+    private static final int LEFT_RIGHT = 0;
+    private static final int LEFT_SIDE = 1;
+    private static final int SIDE_RIGHT = 2;
+    private static final int MID_SIDE = 3;
+    private static final int PARTITION_SIZE = 256;
+    private static final int RICE_PARAMETER_BITS = 5;
+    private static final int MAX_RICE_PARAMETER = 30;
+    // a quotient this long means, that the residual follows as it is - a burst of noise can't blow up a block
+    private static final int ESCAPE_QUOTIENT = 24;
+    private static final ThreadLocal<Samples> SAMPLES = ThreadLocal.withInitial(Samples::new);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(AudioFormat format) {
+        return AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                && format.getSampleSizeInBits() == Short.SIZE
+                && (format.getChannels() == 1 || format.getChannels() == 2);
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer pcm, AudioFormat format) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("The codec cannot encode " + format);
+        }
+        int length = pcm.remaining();
+        int channels = format.getChannels();
+        int frameSize = channels * SAMPLE_BYTES;
+        if (length % frameSize == 0) {
+            byte[] predicted = predict(readSamples(pcm, format, length / frameSize));
+            // noise can't be predicted, and is better off sent as it is
+            if (predicted.length < length) {
+                return ByteBuffer.allocate(HEADER_SIZE + predicted.length)
+                        .putInt(length).put(PREDICTED).put(predicted).flip();
+            }
+        }
+        return ByteBuffer.allocate(HEADER_SIZE + length).putInt(length).put(VERBATIM).put(pcm.duplicate()).flip();
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer encoded, AudioFormat format) throws ProtocolException {
+        return decode(encoded, format, null);
+    }
+
+    // the samples are decoded into arrays, that every thread keeps for itself
+    @Override
+    public ByteBuffer decode(ByteBuffer encoded, AudioFormat format, ByteBuffer target) throws ProtocolException {
+        if (!supports(format)) {
+            throw new ProtocolException("The codec cannot decode " + format);
+        }
+        try {
+            int length = encoded.getInt();
+            byte method = encoded.get();
+            if (length < 0 || method == VERBATIM && length > encoded.remaining()) {
+                throw new ProtocolException("Invalid length of the encoded audio " + length);
+            }
+            if (method != VERBATIM
+                    && (method != PREDICTED || length % (format.getChannels() * SAMPLE_BYTES) != 0)) {
+                throw new ProtocolException("Invalid encoded audio");
+            }
+            ByteBuffer output = target != null && target.capacity() >= length ? target : ByteBuffer.allocate(length);
+            output.clear().order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            if (method == VERBATIM) {
+                output.put(0, encoded, encoded.position(), length).limit(length);
+                encoded.position(encoded.position() + length);
+                return output;
+            }
+            int frames = length / (format.getChannels() * SAMPLE_BYTES);
+            Samples samples = SAMPLES.get().reset(encoded, frames);
+            unpredict(samples.reader, format.getChannels(), frames, samples.first, samples.second);
+            return writeSamples(samples.first, samples.second, format.getChannels(), frames, output);
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("The encoded audio ends too early");
+        }
+    }
+
+    private static byte[] predict(int[][] samples) {
+        int frames = samples[0].length;
+        BitWriter writer = new BitWriter(frames * samples.length * SAMPLE_BYTES / 2);
+        if (samples.length == 1) {
+            writeChannel(writer, samples[0], bestOrder(samples[0]));
+            return writer.toByteArray();
+        }
+
+        int[] left = samples[0];
+        int[] right = samples[1];
+        int[] mid = new int[frames];
+        int[] side = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            mid[i] = (left[i] + right[i]) >> 1;
+            side[i] = left[i] - right[i];
+        }
+        int leftOrder = bestOrder(left);
+        int rightOrder = bestOrder(right);
+        int midOrder = bestOrder(mid);
+        int sideOrder = bestOrder(side);
+        long leftCost = cost(left, leftOrder);
+        long rightCost = cost(right, rightOrder);
+        long midCost = cost(mid, midOrder);
+        long sideCost = cost(side, sideOrder);
+
+        long[] costs = {leftCost + rightCost, leftCost + sideCost, sideCost + rightCost, midCost + sideCost};
+        int mode = LEFT_RIGHT;
+        for (int candidate = LEFT_SIDE; candidate <= MID_SIDE; candidate++) {
+            if (costs[candidate] < costs[mode]) {
+                mode = candidate;
+            }
+        }
+        writer.write(mode, CHANNEL_MODE_BITS);
+        switch (mode) {
+            case LEFT_SIDE -> {
+                writeChannel(writer, left, leftOrder);
+                writeChannel(writer, side, sideOrder);
+            }
+            case SIDE_RIGHT -> {
+                writeChannel(writer, side, sideOrder);
+                writeChannel(writer, right, rightOrder);
+            }
+            case MID_SIDE -> {
+                writeChannel(writer, mid, midOrder);
+                writeChannel(writer, side, sideOrder);
+            }
+            default -> {
+                writeChannel(writer, left, leftOrder);
+                writeChannel(writer, right, rightOrder);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    // the two channels are turned back into left and right in place
+    private static void unpredict(BitReader reader, int channels, int frames, int[] first, int[] second)
+            throws ProtocolException {
+        if (channels == 1) {
+            readChannel(reader, frames, first);
+            return;
+        }
+        int mode = reader.read(CHANNEL_MODE_BITS);
+        readChannel(reader, frames, first);
+        readChannel(reader, frames, second);
+        for (int i = 0; i < frames; i++) {
+            switch (mode) {
+                case LEFT_SIDE -> second[i] = first[i] - second[i];
+                case SIDE_RIGHT -> first[i] = first[i] + second[i];
+                case MID_SIDE -> {
+                    // the bit, that the mid has lost, is the lowest bit of the side
+                    int side = second[i];
+                    int sum = (first[i] << 1) | (side & 1);
+                    first[i] = (sum + side) >> 1;
+                    second[i] = (sum - side) >> 1;
+                }
+                default -> {
+                    // left and right as they are
+                }
+            }
+        }
+    }
+
+    private static void writeChannel(BitWriter writer, int[] samples, int order) {
+        writer.write(order, ORDER_BITS);
+        for (int i = 0; i < order; i++) {
+            writer.write(zigzag(samples[i]), WARM_UP_BITS);
+        }
+        int[] residuals = new int[PARTITION_SIZE];
+        for (int start = order; start < samples.length; start += PARTITION_SIZE) {
+            int end = Math.min(samples.length, start + PARTITION_SIZE);
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                residuals[i - start] = zigzag(samples[i] - prediction(samples, i, order));
+                sum += residuals[i - start];
+            }
+            int parameter = riceParameter(sum / (end - start));
+            writer.write(parameter, RICE_PARAMETER_BITS);
+            for (int i = 0; i < end - start; i++) {
+                writeRice(writer, residuals[i], parameter);
+            }
+        }
+    }
+
+    private static void readChannel(BitReader reader, int frames, int[] samples) throws ProtocolException {
+        int order = reader.read(ORDER_BITS);
+        if (order > MAX_ORDER || order > frames) {
+            throw new ProtocolException("Invalid predictor order " + order);
+        }
+        for (int i = 0; i < order; i++) {
+            samples[i] = unzigzag(reader.read(WARM_UP_BITS));
+        }
+        for (int start = order; start < frames; start += PARTITION_SIZE) {
+            int end = Math.min(frames, start + PARTITION_SIZE);
+            int parameter = reader.read(RICE_PARAMETER_BITS);
+            for (int i = start; i < end; i++) {
+                samples[i] = unzigzag(readRice(reader, parameter)) + prediction(samples, i, order);
+            }
+        }
+    }
+
+    // the order with the smallest residuals - every order is judged on the same samples
+    private static int bestOrder(int[] samples) {
+        int maxOrder = Math.min(MAX_ORDER, samples.length);
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int order = 0; order <= maxOrder; order++) {
+            long cost = 0;
+            for (int i = maxOrder; i < samples.length; i++) {
+                cost += Math.abs(samples[i] - prediction(samples, i, order));
+            }
+            if (cost < bestCost) {
+                best = order;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private static long cost(int[] samples, int order) {
+        long cost = 0;
+        for (int i = order; i < samples.length; i++) {
+            cost += Math.abs(samples[i] - prediction(samples, i, order));
+        }
+        return cost;
+    }
+
+    // the fixed predictors of FLAC - the polynomial of the given order through the previous samples
+    private static int prediction(int[] samples, int i, int order) {
+        return switch (order) {
+            case 0 -> 0;
+            case 1 -> samples[i - 1];
+            case 2 -> 2 * samples[i - 1] - samples[i - 2];
+            case 3 -> 3 * samples[i - 1] - 3 * samples[i - 2] + samples[i - 3];
+            default -> 4 * samples[i - 1] - 6 * samples[i - 2] + 4 * samples[i - 3] - samples[i - 4];
+        };
+    }
+
+    // two to the parameter is about the mean of the residuals, which makes the codes the shortest
+    private static int riceParameter(long mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        return Math.min(MAX_RICE_PARAMETER, 63 - Long.numberOfLeadingZeros(mean));
+    }
+
+    private static void writeRice(BitWriter writer, int value, int parameter) {
+        int quotient = value >>> parameter;
+        if (quotient >= ESCAPE_QUOTIENT) {
+            writer.write((1 << ESCAPE_QUOTIENT) - 1, ESCAPE_QUOTIENT);
+            writer.write(value, Integer.SIZE);
+            return;
+        }
+        // the quotient in unary - as many ones, and a zero
+        writer.write(((1 << quotient) - 1) << 1, quotient + 1);
+        writer.write(value, parameter);
+    }
+
+    private static int readRice(BitReader reader, int parameter) throws ProtocolException {
+        int quotient = reader.readUnary(ESCAPE_QUOTIENT);
+        if (quotient == ESCAPE_QUOTIENT) {
+            return reader.read(Integer.SIZE);
+        }
+        return (quotient << parameter) | reader.read(parameter);
+    }
+
+    // the small negative numbers become small positive ones, so that the Rice codes stay short for them as well
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int[][] readSamples(ByteBuffer pcm, AudioFormat format, int frames) {
+        ByteBuffer input = pcm.duplicate().order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int channels = format.getChannels();
+        int[][] samples = new int[channels][frames];
+        for (int i = 0; i < frames; i++) {
+            for (int channel = 0; channel < channels; channel++) {
+                samples[channel][i] = input.getShort();
+            }
+        }
+        return samples;
+    }
+
+    private static ByteBuffer writeSamples(int[] first, int[] second, int channels, int frames, ByteBuffer output) {
+        for (int i = 0; i < frames; i++) {
+            output.putShort((short) first[i]);
+            if (channels == 2) {
+                output.putShort((short) second[i]);
+            }
+        }
+        return output.flip();
+    }
+
+    // what a thread needs to decode a block - kept from block to block, and grown for a longer one
+    private static class Samples {
+
+        private final BitReader reader = new BitReader(ByteBuffer.allocate(0));
+        private int[] first = new int[BLOCK_FRAMES];
+        private int[] second = new int[BLOCK_FRAMES];
+
+        private Samples reset(ByteBuffer encoded, int frames) {
+            this.reader.reset(encoded);
+            if (this.first.length < frames) {
+                this.first = new int[frames];
+                this.second = new int[frames];
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+// the audio exactly as it is in the file
+public class PcmCodec implements AudioCodec {
+
+    private static final byte ID = 0;
+    private static final String NAME = "PCM";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(AudioFormat format) {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer pcm, AudioFormat format) {
+        return pcm;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer encoded, AudioFormat format) {
+        return encoded;
+    }
+}
@@ -7,14 +7,29 @@ import bg.sofia.uni.fmi.mjt.spotify.server.authentication.DefaultUserService;
 import bg.sofia.uni.fmi.mjt.spotify.server.authentication.UserService;
 import bg.sofia.uni.fmi.mjt.spotify.server.media.DefaultMediaService;
 import bg.sofia.uni.fmi.mjt.spotify.server.media.MediaService;
-
-import java.nio.channels.SelectionKey;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.TrendWindow;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.CachedStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.LogStructuredStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.DefaultStreamingEngine;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
+
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 
 public class DefaultSpotifyService implements SpotifyService {
 
+    // the users and the playlists are kept in embedded stores on the disk, instead of in memory
+    private static final boolean EMBEDDED_STORAGE = Boolean.getBoolean("spotify.storage.embedded");
+    private static final Path USERS_STORE_PATH = Path.of("resources", "store", "users.db");
+    private static final Path PLAYLISTS_STORE_PATH = Path.of("resources", "store", "playlists.db");
+    private static final Path SONGS_PATH = Path.of("resources", "media", "songs.txt");
+    private static final Path MEDIA_JOURNAL_PATH = Path.of("resources", "media", "journal");
+    // the most users, and users' playlists, kept in memory at once
+    private static final int CACHED_VALUES = 10_000;
+
     private final UserService userService;
     private final MediaService mediaService;
     private final SpotifyLogger logger;
@@ -32,9 +47,35 @@ public class DefaultSpotifyService implements SpotifyService {
     }
 
     public DefaultSpotifyService(SpotifyLogger logger) {
+        this(logger, new DefaultStreamingEngine(logger));
+    }
+
+    public DefaultSpotifyService(SpotifyLogger logger, UserService userService, MediaService mediaService) {
         this.logger = logger;
-        this.userService = new DefaultUserService(this.logger);
-        this.mediaService = new DefaultMediaService(this.logger);
+        this.userService = userService;
+        this.mediaService = mediaService;
+    }
+
+    public DefaultSpotifyService(SpotifyLogger logger, StreamingEngine streamingEngine) {
+        this.logger = logger;
+        UserService storedUsers = null;
+        MediaService storedMedia = null;
+        if (EMBEDDED_STORAGE) {
+            try {
+                storedUsers = new DefaultUserService(
+                        new CachedStore(new LogStructuredStore(USERS_STORE_PATH), CACHED_VALUES), this.logger);
+                storedMedia = new DefaultMediaService(this.logger, SONGS_PATH,
+                        new CachedStore(new LogStructuredStore(PLAYLISTS_STORE_PATH), CACHED_VALUES), streamingEngine,
+                        MEDIA_JOURNAL_PATH);
+            } catch (IOException e) {
+                // the files are always there to fall back to
+                if (this.logger != null) {
+                    this.logger.log("localhost", e);
+                }
+            }
+        }
+        this.userService = storedUsers != null ? storedUsers : new DefaultUserService(this.logger);
+        this.mediaService = storedMedia != null ? storedMedia : new DefaultMediaService(this.logger, streamingEngine);
     }
 
 
@@ -47,26 +88,26 @@ public class DefaultSpotifyService implements SpotifyService {
     }
 
     @Override
-    public void login(SelectionKey key, String email, String password) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void login(Session session, String email, String password) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(email);
         Objects.requireNonNull(password);
 
-        this.userService.login(key, email, password);
+        this.userService.login(session, email, password);
     }
 
     @Override
-    public void logout(SelectionKey key) {
-        Objects.requireNonNull(key);
+    public void logout(Session session) {
+        Objects.requireNonNull(session);
 
         try {
-            this.userService.logout(key);
+            this.userService.logout(session);
         } catch (SpotifyException e) {
             // nothing to do here
         }
 
         try {
-            this.mediaService.stopPlayingSong(key);
+            this.mediaService.stopPlayingSong(session);
         } catch (SpotifyException e) {
             // nothing to do here either
         }
@@ -81,71 +122,130 @@ public class DefaultSpotifyService implements SpotifyService {
         return this.mediaService.search(keywords);
     }
 
+    @Override
+    public String search(List<String> keywords, int offset, int limit, boolean fuzzy) {
+        Objects.requireNonNull(keywords);
+
+        return this.mediaService.search(keywords, offset, limit, fuzzy);
+    }
+
     @Override
     public String top(int numberOfTopSongs) {
         return this.mediaService.top(numberOfTopSongs);
     }
 
     @Override
-    public void createPlaylist(SelectionKey key, String playlistName) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public String top(int numberOfTopSongs, TrendWindow window) {
+        Objects.requireNonNull(window);
+
+        return this.mediaService.top(numberOfTopSongs, window);
+    }
+
+    @Override
+    public void createPlaylist(Session session, String playlistName) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(playlistName);
 
-        if (this.userService.userIsNotLoggedIn(key)) {
+        if (this.userService.userIsNotLoggedIn(session)) {
             throw new UserNotLoggedInException("Please log in to perform this action");
         }
 
-        this.mediaService.createPlaylist(this.userService.getUsername(key), playlistName);
+        this.mediaService.createPlaylist(this.userService.getUsername(session), playlistName);
     }
 
     @Override
-    public void addSongToPlaylist(SelectionKey key, String playlistName, String songName) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void addSongToPlaylist(Session session, String playlistName, String songName) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(playlistName);
         Objects.requireNonNull(songName);
 
-        if (this.userService.userIsNotLoggedIn(key)) {
+        if (this.userService.userIsNotLoggedIn(session)) {
             throw new UserNotLoggedInException("Please log in to perform this action");
         }
 
-        this.mediaService.addSongToPlaylist(this.userService.getUsername(key), playlistName, songName);
+        this.mediaService.addSongToPlaylist(this.userService.getUsername(session), playlistName, songName);
     }
 
     @Override
-    public String showPlaylist(SelectionKey key, String playlistName) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public String showPlaylist(Session session, String playlistName) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(playlistName);
 
-        return this.mediaService.getPlaylist(this.userService.getUsername(key), playlistName).toReadableString();
+        return this.mediaService.getPlaylist(this.userService.getUsername(session), playlistName).toReadableString();
     }
 
     @Override
-    public void playSong(SelectionKey key, String songName) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void playSong(Session session, String songName) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(songName);
 
-        if (this.userService.userIsNotLoggedIn(key)) {
+        if (this.userService.userIsNotLoggedIn(session)) {
+            throw new UserNotLoggedInException("Please log in to perform this action");
+        }
+
+        this.mediaService.playSong(session, songName);
+    }
+
+    @Override
+    public void playPlaylist(Session session, String playlistName) throws SpotifyException {
+        Objects.requireNonNull(session);
+        Objects.requireNonNull(playlistName);
+
+        if (this.userService.userIsNotLoggedIn(session)) {
+            throw new UserNotLoggedInException("Please log in to perform this action");
+        }
+
+        this.mediaService.playPlaylist(session, this.userService.getUsername(session), playlistName);
+    }
+
+    @Override
+    public void stopPlaying(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+
+        if (this.userService.userIsNotLoggedIn(session)) {
+            throw new UserNotLoggedInException("Please log in to perform this action");
+        }
+
+        this.mediaService.stopPlayingSong(session);
+    }
+
+    @Override
+    public void pause(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+
+        if (this.userService.userIsNotLoggedIn(session)) {
+            throw new UserNotLoggedInException("Please log in to perform this action");
+        }
+
+        this.mediaService.pauseSong(session);
+    }
+
+    @Override
+    public void resume(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+
+        if (this.userService.userIsNotLoggedIn(session)) {
             throw new UserNotLoggedInException("Please log in to perform this action");
         }
 
-        this.mediaService.playSong(key, songName);
+        this.mediaService.resumeSong(session);
     }
 
     @Override
-    public void stopPlaying(SelectionKey key) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void seek(Session session, long milliseconds) throws SpotifyException {
+        Objects.requireNonNull(session);
 
-        if (this.userService.userIsNotLoggedIn(key)) {
+        if (this.userService.userIsNotLoggedIn(session)) {
             throw new UserNotLoggedInException("Please log in to perform this action");
         }
 
-        this.mediaService.stopPlayingSong(key);
+        this.mediaService.seekSong(session, milliseconds);
     }
 
     @Override
-    public String getUsername(SelectionKey key) {
-        Objects.requireNonNull(key);
+    public String getUsername(Session session) {
+        Objects.requireNonNull(session);
 
-        return this.userService.getUsername(key);
+        return this.userService.getUsername(session);
     }
 }
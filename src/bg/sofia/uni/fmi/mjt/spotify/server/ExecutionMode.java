@@ -0,0 +1,11 @@
+package bg.sofia.uni.fmi.mjt.spotify.server;
+
+// how the server spends its threads on the clients
+public enum ExecutionMode {
+    // a few selector threads read and write for all clients, and the commands run on a pool of command threads,
+    // one at a time for each client, in the order they were read
+    REACTOR,
+    // every client gets a thread, that blocks on its socket and executes its commands, and every stream
+    // gets a thread of its own - virtual threads, where the JVM has them
+    THREAD_PER_CONNECTION
+}
@@ -1,35 +1,102 @@
 package bg.sofia.uni.fmi.mjt.spotify.server;
 
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
 import bg.sofia.uni.fmi.mjt.spotify.server.executor.CommandParser;
 import bg.sofia.uni.fmi.mjt.spotify.server.executor.DefaultCommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.server.executor.SerialExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ConnectionLoop;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ConnectionThreads;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.Reactor;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.DefaultSessionManager;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.SessionManager;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.DefaultStreamingEngine;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.net.StandardSocketOptions;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// the main thread only accepts clients - every client is then served by one of the reactors,
+// and the commands are executed away from the reactors, so that a slow command never stalls the network
+// the commands run on a pool - those of a client one after another, in order, and those of different clients
+// at the same time, so that a slow command, such as a login, only keeps its own client waiting
+// or, in the THREAD_PER_CONNECTION mode, every client is served by a thread of its own
 public class SpotifyServer {
 
     private static final String LOGGER_FILE_NAME = "server.log";
-    private static final String STOP_COMMAND = "stop";
     private static final String DISCONNECT_COMMAND = "disconnect";
     private static final String SERVER_HOST = "localhost";
     private static final int PORT = 7777;
-    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_REACTORS = 4;
+    private static final String MODE_PROPERTY = "spotify.server.mode";
+    // a command thread mostly waits - for a password hash, or for the disk - so there are a few per processor,
+    // and a burst of logins has to take all of them before the other commands wait
+    private static final int COMMAND_THREADS = Integer.getInteger("spotify.server.command.threads",
+            Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
     private final int port;
-    private boolean isOperating;
+    private final int numberOfReactors;
+    private final ExecutionMode mode;
+    private volatile boolean isOperating;
     private Selector selector;
     private SpotifyLogger logger = null;
+    private final List<Reactor> reactors;
+    private ExecutorService commandExecutor;
+    // the commands of every session, waiting for their turn on the pool
+    private final Map<Long, SerialExecutor> commandQueues;
+    private final CommandParser commandParser;
+    private SessionManager sessions;
+    private ThreadFactory connectionThreads;
 
     public SpotifyServer(int port) {
+        this(port, Math.min(MAX_REACTORS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public SpotifyServer(int port, int numberOfReactors) {
+        this(port, numberOfReactors, ExecutionMode.REACTOR);
+    }
+
+    public SpotifyServer(int port, ExecutionMode mode) {
+        this(port, Math.min(MAX_REACTORS, Runtime.getRuntime().availableProcessors()), mode);
+    }
+
+    public SpotifyServer(int port, int numberOfReactors, ExecutionMode mode) {
+        this(port, numberOfReactors, mode, null);
+    }
+
+    // the services can be given, so that the server can be run on files other than those of the resources
+    SpotifyServer(int port, int numberOfReactors, CommandParser commandParser) {
+        this(port, numberOfReactors, ExecutionMode.REACTOR, commandParser);
+    }
+
+    private SpotifyServer(int port, int numberOfReactors, ExecutionMode mode, CommandParser commandParser) {
+        if (numberOfReactors <= 0) {
+            throw new IllegalArgumentException("The server needs at least one reactor");
+        }
         this.port = port;
+        this.numberOfReactors = numberOfReactors;
+        this.mode = mode;
         this.isOperating = true;
+        this.reactors = new ArrayList<>();
+        this.commandQueues = new ConcurrentHashMap<>();
+        this.commandParser = commandParser;
     }
 
     public void start() {
@@ -39,8 +106,19 @@ public class SpotifyServer {
         } catch (IOException e) {
             System.err.println("Initializing the logger has failed. The system will continue working without logging");
         } finally {
-            commandParser = new DefaultCommandExecutor(this.logger);
+            commandParser = this.commandParser != null ? this.commandParser : createCommandParser();
         }
+        if (this.mode == ExecutionMode.REACTOR) {
+            // the reactors never wait for a command
+            AtomicInteger created = new AtomicInteger(0);
+            this.commandExecutor = Executors.newFixedThreadPool(COMMAND_THREADS,
+                    runnable -> new Thread(runnable, "command-executor-" + created.incrementAndGet()));
+        }
+        this.sessions = new DefaultSessionManager(this.logger);
+        // a client, that has disconnected or gone quiet, is logged out and its stream stopped,
+        // in turn with the commands
+        this.sessions.addCloseListener(session -> sessionClosed(commandParser, session));
+
         try (ServerSocketChannel server = ServerSocketChannel.open()) {
 
             server.bind(new InetSocketAddress(SERVER_HOST, this.port));
@@ -49,7 +127,14 @@ public class SpotifyServer {
             this.selector = Selector.open();
             server.register(this.selector, SelectionKey.OP_ACCEPT);
 
-            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (int i = 0; this.mode == ExecutionMode.REACTOR && i < this.numberOfReactors; i++) {
+                Reactor reactor = new Reactor(i, (connection, frame) -> handle(commandParser, connection, frame),
+                        this.sessions, this.logger);
+                this.reactors.add(reactor);
+                reactor.start();
+            }
+
+            int nextReactor = 0;
             while (this.isOperating) {
                 int readyChannels = this.selector.select();
                 if (readyChannels == 0) {
@@ -61,32 +146,17 @@ public class SpotifyServer {
 
                 while (selectionKeyIterator.hasNext()) {
                     SelectionKey key = selectionKeyIterator.next();
-                    if (key.isReadable()) {
-                        SocketChannel sc = (SocketChannel) key.channel();
-                        buffer.clear();
-                        int bytesRead = sc.read(buffer);
-                        if (bytesRead <= 0) {
-                            sc.close();
-                            break;
-                        }
-
-                        buffer.flip();
-                        byte[] destination = new byte[bytesRead - 1];
-                        buffer.get(destination, 0, bytesRead - 1);
-                        String message = new String(destination);
-                        String response = commandParser.parse(key, message) + System.lineSeparator();
-
-                        System.out.println(message + ":\t" + response);
-                        // sending a stop response to a client is pointless and can fail future song streaming
-                        if (!message.startsWith(STOP_COMMAND)) {
-                            sendResponse(buffer, sc, response);
+                    if (key.isValid() && key.isAcceptable()) {
+                        SocketChannel client = accept(key);
+                        if (client != null && this.mode == ExecutionMode.THREAD_PER_CONNECTION) {
+                            this.connectionThreads.newThread(new ConnectionLoop(client,
+                                    (connection, frame) -> handleOnConnectionThread(commandParser, connection, frame),
+                                    this.sessions, this.logger)).start();
+                        } else if (client != null) {
+                            // round-robin spreads the clients evenly, as all of them cost roughly the same
+                            this.reactors.get(nextReactor).register(client);
+                            nextReactor = (nextReactor + 1) % this.numberOfReactors;
                         }
-
-                        if (message.startsWith(DISCONNECT_COMMAND)) {
-                            sc.close();
-                        }
-                    } else if (key.isAcceptable()) {
-                        accept(key);
                     }
 
                     selectionKeyIterator.remove();
@@ -95,32 +165,132 @@ public class SpotifyServer {
         } catch (IOException e) {
             System.out.println(e.getMessage());
             this.logger.log("localhost", e);
+        } finally {
+            shutdown();
         }
         logger.close();
     }
 
-    private void sendResponse(ByteBuffer buffer, SocketChannel sc, String response) throws IOException {
-        buffer.clear();
-        buffer.put(response.getBytes());
-        buffer.flip();
-        sc.write(buffer);
+    private CommandParser createCommandParser() {
+        if (this.mode == ExecutionMode.REACTOR) {
+            return new DefaultCommandExecutor(this.logger);
+        }
+        this.connectionThreads = ConnectionThreads.newFactory("connection-");
+        DefaultStreamingEngine streamingEngine = new DefaultStreamingEngine(this.logger,
+                ConnectionThreads.newFactory("stream-"));
+        return new DefaultCommandExecutor(this.logger, new DefaultSpotifyService(this.logger, streamingEngine));
+    }
+
+    // the thread of the client has nothing else to do, so it executes the command itself
+    private void handleOnConnectionThread(CommandParser commandParser, ClientConnection connection, Frame frame) {
+        if (frame.getType() == FrameType.COMMAND) {
+            execute(commandParser, connection, frame.getText());
+        }
     }
 
-    private void accept(SelectionKey key) throws IOException {
+    private void handle(CommandParser commandParser, ClientConnection connection, Frame frame) {
+        Session session = connection.getSession();
+        if (frame.getType() != FrameType.COMMAND || session == null) {
+            return;
+        }
+        connection.commandQueued();
+        commandQueue(session).execute(() -> {
+            try {
+                execute(commandParser, connection, frame.getText());
+            } finally {
+                connection.commandCompleted();
+            }
+        });
+    }
+
+    private SerialExecutor commandQueue(Session session) {
+        return this.commandQueues.computeIfAbsent(session.getId(), id -> new SerialExecutor(this.commandExecutor));
+    }
+
+    // every command gets a response, so that the client can match them to its commands by order
+    private void execute(CommandParser commandParser, ClientConnection connection, String message) {
+        Session session = connection.getSession();
+        if (session == null) {
+            return;
+        }
+        String response = commandParser.parse(session, message);
+        System.out.println(message + ":\t" + response);
+        try {
+            connection.send(Frame.response(response));
+            if (message.startsWith(DISCONNECT_COMMAND)) {
+                connection.closeAfterFlush();
+            }
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            try {
+                connection.close();
+            } catch (IOException closeException) {
+                if (this.logger != null) {
+                    this.logger.log("localhost", closeException);
+                }
+            }
+        }
+    }
+
+    private void sessionClosed(CommandParser commandParser, Session session) {
+        if (this.commandExecutor == null) {
+            commandParser.sessionClosed(session);
+            return;
+        }
+        // after the commands of the session, that are still waiting
+        SerialExecutor queue = this.commandQueues.remove(session.getId());
+        if (queue == null) {
+            queue = new SerialExecutor(this.commandExecutor);
+        }
+        try {
+            queue.execute(() -> commandParser.sessionClosed(session));
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down, and the sessions go with it
+        }
+    }
+
+    private SocketChannel accept(SelectionKey key) throws IOException {
         ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
         SocketChannel accept = sockChannel.accept();
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
+        if (accept == null) {
+            return null;
+        }
+        // a client with a thread of its own simply waits on its socket
+        accept.configureBlocking(this.mode == ExecutionMode.THREAD_PER_CONNECTION);
+        // audio goes out in small paced chunks - Nagle's algorithm would hold them back until an ACK arrives
+        accept.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return accept;
+    }
+
+    private void shutdown() {
+        for (Reactor reactor : this.reactors) {
+            try {
+                reactor.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.reactors.clear();
+        if (this.sessions != null) {
+            this.sessions.shutdown();
+        }
+        if (this.commandExecutor != null) {
+            this.commandExecutor.shutdown();
+        }
     }
 
     public void stop() {
-        logger.close();
         isOperating = false;
         selector.wakeup();
     }
 
+    // the number of reactors can be given as the only argument, and the mode as -Dspotify.server.mode
     public static void main(String[] args) {
-        SpotifyServer spotifyServer = new SpotifyServer(PORT);
+        ExecutionMode mode = ExecutionMode.valueOf(System.getProperty(MODE_PROPERTY, ExecutionMode.REACTOR.name()));
+        SpotifyServer spotifyServer = args.length > 0 ? new SpotifyServer(PORT, Integer.parseInt(args[0]), mode)
+                : new SpotifyServer(PORT, mode);
         spotifyServer.start();
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,44 @@
 package bg.sofia.uni.fmi.mjt.spotify.server;
 
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.TrendWindow;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
 
-import java.nio.channels.SelectionKey;
 import java.util.List;
 
 public interface SpotifyService {
 
     void register(String email, String password) throws SpotifyException;
 
-    void login(SelectionKey key, String email, String password) throws SpotifyException;
+    void login(Session session, String email, String password) throws SpotifyException;
 
-    void logout(SelectionKey key);
+    void logout(Session session);
 
     String search(List<String> keywords);
 
+    String search(List<String> keywords, int offset, int limit, boolean fuzzy);
+
     String top(int numberOfTopSongs);
 
-    void createPlaylist(SelectionKey key, String playlistName) throws SpotifyException;
+    String top(int numberOfTopSongs, TrendWindow window);
+
+    void createPlaylist(Session session, String playlistName) throws SpotifyException;
+
+    void addSongToPlaylist(Session session, String playlistName, String songName) throws SpotifyException;
+
+    String showPlaylist(Session session, String playlistName) throws SpotifyException;
+
+    void playSong(Session session, String songName) throws SpotifyException;
+
+    void playPlaylist(Session session, String playlistName) throws SpotifyException;
 
-    void addSongToPlaylist(SelectionKey key, String playlistName, String songName) throws SpotifyException;
+    void stopPlaying(Session session) throws SpotifyException;
 
-    String showPlaylist(SelectionKey key, String playlistName) throws SpotifyException;
+    void pause(Session session) throws SpotifyException;
 
-    void playSong(SelectionKey key, String songName) throws SpotifyException;
+    void resume(Session session) throws SpotifyException;
 
-    void stopPlaying(SelectionKey key) throws SpotifyException;
+    void seek(Session session, long milliseconds) throws SpotifyException;
 
-    String getUsername(SelectionKey key);
+    String getUsername(Session session);
 }
@@ -3,73 +3,186 @@ package bg.sofia.uni.fmi.mjt.spotify.server.authentication;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.IncorrectLoginCredentialsException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.InvalidRegisterCredentialsException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.StorageException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.UnsuccessfulStoringOfCredentialsException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.UserAlreadyLoggedInException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.UserAlreadyRegisteredException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.UserDoesNotExistException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.UserNotLoggedInException;
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.ConcurrentLongMap;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.AtomicFiles;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.InMemoryStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.KeyValueStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.SnapshotWriter;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.WriteAheadLog;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class DefaultUserService implements UserService {
 
     private static final Path CREDENTIALS_PATH = Path.of("resources", "authentication", "users.csv");
     private static final Path EMAIL_REGEX_PATH = Path.of("resources", "authentication", "email-regex.txt");
-    private final Map<SelectionKey, String> loggedInUsers;
+    private static final Path JOURNAL_PATH = Path.of("resources", "authentication", "journal");
+    // once a segment of the journal has this many registrations, the credentials file is written again
+    private static final int RECORDS_PER_SNAPSHOT = 1_000;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 1_000;
+    // the email of the user logged in on each session, by the id of the session
+    private final ConcurrentLongMap<String> loggedInUsers;
     private final Path credentialsPath;
     private final SpotifyLogger logger;
-    private Map<String, String> users;
-    private String regex;
+    // the registrations since the credentials file was last written - null if they go straight into the file
+    private final WriteAheadLog journal;
+    private final SnapshotWriter snapshotWriter;
+    // the hashed passwords by email - read from the credentials file, or paged in from a store on the disk
+    // the files from before the passwords were hashed still hold plain ones, which are hashed on the next login
+    private final KeyValueStore users;
+    private final PasswordHasher hasher;
+    // compiled once, rather than on every registration
+    private Pattern emailPattern;
 
     public DefaultUserService(SpotifyLogger logger) {
-        this.logger = logger;
-        this.credentialsPath = CREDENTIALS_PATH;
-        retrieveUsers();
-        retrieveEmailRegex();
-        this.loggedInUsers = new HashMap<>();
+        this(CREDENTIALS_PATH, JOURNAL_PATH, logger);
     }
 
     public DefaultUserService(Path credentialsPath, SpotifyLogger logger) {
+        this(credentialsPath, null, logger);
+    }
+
+    public DefaultUserService(Path credentialsPath, Path journalPath, SpotifyLogger logger) {
+        this(credentialsPath, journalPath, null, logger);
+    }
+
+    // the store keeps every registration on the disk itself, so there is no credentials file and no journal
+    public DefaultUserService(KeyValueStore credentials, SpotifyLogger logger) {
+        this(null, null, credentials, logger);
+    }
+
+    private DefaultUserService(Path credentialsPath, Path journalPath, KeyValueStore credentials,
+                               SpotifyLogger logger) {
         this.logger = logger;
         this.credentialsPath = credentialsPath;
-        retrieveUsers();
+        this.hasher = new PasswordHasher();
+        this.snapshotWriter = new SnapshotWriter("users-snapshot", this::snapshot, SNAPSHOT_INTERVAL_MILLIS, logger);
+        this.users = credentials == null ? retrieveUsers() : credentials;
+        this.journal = openJournal(journalPath);
+        if (replayJournal() > 0) {
+            this.snapshotWriter.request();
+        } else if (this.journal != null) {
+            dropEmptySegments();
+        }
         retrieveEmailRegex();
-        this.loggedInUsers = new HashMap<>();
+        this.loggedInUsers = new ConcurrentLongMap<>();
     }
 
     private void retrieveEmailRegex() {
         try (BufferedReader reader = new BufferedReader(new FileReader(String.valueOf(EMAIL_REGEX_PATH)))) {
-            this.regex = reader.readLine();
-        } catch (IOException e) {
+            this.emailPattern = Pattern.compile(reader.readLine());
+        } catch (IOException | RuntimeException e) {
             if (this.logger != null) {
                 this.logger.log("localhost", e);
             }
             // no-whitespace regex, so that registration would still be possible even without email verification
-            this.regex = "^\\s*\\S+\\s*$";
+            this.emailPattern = Pattern.compile("^\\s*\\S+\\s*$");
         }
     }
 
-    private void retrieveUsers() {
+    // a later line of the same user replaces an earlier one - a password is rehashed by appending a line
+    private KeyValueStore retrieveUsers() {
+        InMemoryStore users = new InMemoryStore();
+        try (Stream<String> lines = Files.lines(this.credentialsPath)) {
+            lines.forEach(line -> {
+                int comma = line.indexOf(',');
+                if (comma > 0) {
+                    users.put(line.substring(0, comma), line.substring(comma + 1));
+                }
+            });
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+        return users;
+    }
+
+    private WriteAheadLog openJournal(Path journalPath) {
+        if (journalPath == null) {
+            return null;
+        }
         try {
-            this.users = Files.lines(this.credentialsPath)
-                    .collect(Collectors.toMap(s -> s.split(",")[0], s -> s.split(",")[1]));
+            return new WriteAheadLog(journalPath, RECORDS_PER_SNAPSHOT,
+                    this.snapshotWriter::request, this.logger);
         } catch (IOException e) {
             if (this.logger != null) {
                 this.logger.log("localhost", e);
             }
-            this.users = new HashMap<>();
+            return null;
+        }
+    }
+
+    // a record is a line of the credentials file, in the order of the changes - the last one of a user wins
+    private int replayJournal() {
+        if (this.journal == null) {
+            return 0;
+        }
+        int[] replayed = {0};
+        try {
+            this.journal.replay(record -> {
+                int comma = record.indexOf(',');
+                if (comma > 0) {
+                    try {
+                        this.users.put(record.substring(0, comma), record.substring(comma + 1));
+                        replayed[0]++;
+                    } catch (IOException e) {
+                        if (this.logger != null) {
+                            this.logger.log("localhost", e);
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+        return replayed[0];
+    }
+
+    private void dropEmptySegments() {
+        try {
+            this.journal.deleteSegmentsBefore(this.journal.getSegment());
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    // runs on the snapshot writer - the journal is rolled over first, so that every registration
+    // in the older segments is in the file, which replaces the old one only once it is complete
+    private void snapshot() {
+        try {
+            long segment = this.journal.rollOver().get();
+            AtomicFiles.write(this.credentialsPath, writer -> this.users.forEach((email, password) ->
+                    writer.write(email + "," + password + System.lineSeparator())));
+            this.journal.deleteSegmentsBefore(segment);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
         }
     }
 
@@ -78,70 +191,141 @@ public class DefaultUserService implements UserService {
         Objects.requireNonNull(email);
         Objects.requireNonNull(password);
 
-        if (!email.matches(this.regex)) {
+        if (!this.emailPattern.matcher(email).matches()) {
             throw new InvalidRegisterCredentialsException("You haven't specified a valid email for registration");
         }
 
-        if (this.users.containsKey(email)) {
-            throw new UserAlreadyRegisteredException("User is already registered");
-        }
-
-        this.users.put(email, password);
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(String.valueOf(this.credentialsPath), true))) {
-            writer.write(email + "," + password + System.lineSeparator());
+        String passwordHash = hash(password);
+        boolean added;
+        try {
+            added = this.users.putIfAbsent(email, passwordHash);
         } catch (IOException e) {
             if (this.logger != null) {
                 this.logger.log("localhost", e);
             }
             throw new UnsuccessfulStoringOfCredentialsException("Credentials could not be stored");
         }
+        if (!added) {
+            throw new UserAlreadyRegisteredException("User is already registered");
+        }
+
+        storeCredentials(email, passwordHash);
     }
 
     @Override
-    public void login(SelectionKey key, String email, String password) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void login(Session session, String email, String password) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(email);
         Objects.requireNonNull(password);
 
-        if (!this.users.containsKey(email)) {
+        String storedPassword;
+        try {
+            storedPassword = this.users.get(email);
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            throw new StorageException("The credentials could not be read. Please try again later");
+        }
+
+        if (storedPassword == null) {
             throw new UserDoesNotExistException("User " + email + " does not exist");
         }
 
-        if (!this.users.get(email).equals(password)) {
+        boolean correct;
+        try {
+            correct = this.hasher.verify(password, storedPassword);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("The credentials could not be checked. Please try again later");
+        }
+        if (!correct) {
             throw new IncorrectLoginCredentialsException("Incorrect email or password. Please enter again");
         }
 
-        if (this.loggedInUsers.containsKey(key)) {
-            throw new UserAlreadyLoggedInException("You are already logged in as user " + getUsername(key));
+        if (this.loggedInUsers.putIfAbsent(session.getId(), email) != null) {
+            throw new UserAlreadyLoggedInException("You are already logged in as user " + getUsername(session));
+        }
+
+        if (this.hasher.needsRehash(storedPassword)) {
+            rehash(email, password);
+        }
+    }
+
+    // the password is known to be correct only now, so this is the one chance to hash a plain one
+    // the user is logged in either way - a failure only leaves the old password for the next login
+    private void rehash(String email, String password) {
+        try {
+            String passwordHash = hash(password);
+            this.users.put(email, passwordHash);
+            storeCredentials(email, passwordHash);
+        } catch (SpotifyException | IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    private String hash(String password) throws UnsuccessfulStoringOfCredentialsException {
+        try {
+            return this.hasher.hash(password);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnsuccessfulStoringOfCredentialsException("Credentials could not be stored");
+        }
+    }
+
+    // a line of the credentials file - in the journal, appended to the file, or nowhere, if the store has it
+    private void storeCredentials(String email, String passwordHash) throws SpotifyException {
+        if (this.journal != null) {
+            // stored once the journal has it on the disk
+            try {
+                this.journal.append(email + "," + passwordHash).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnsuccessfulStoringOfCredentialsException("Credentials could not be stored");
+            } catch (ExecutionException e) {
+                if (this.logger != null) {
+                    this.logger.log("localhost", e);
+                }
+                throw new UnsuccessfulStoringOfCredentialsException("Credentials could not be stored");
+            }
+            return;
+        }
+
+        if (this.credentialsPath == null) {
+            // the store has written it already
+            return;
         }
 
-        this.loggedInUsers.put(key, email);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(String.valueOf(this.credentialsPath), true))) {
+            writer.write(email + "," + passwordHash + System.lineSeparator());
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            throw new UnsuccessfulStoringOfCredentialsException("Credentials could not be stored");
+        }
     }
 
     @Override
-    public void logout(SelectionKey key) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void logout(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
 
-        if (!this.loggedInUsers.containsKey(key)) {
+        if (this.loggedInUsers.remove(session.getId()) == null) {
             throw new UserNotLoggedInException("No user is logged in. Cannot log out");
         }
-
-        this.loggedInUsers.remove(key);
     }
 
     @Override
-    public boolean userIsNotLoggedIn(SelectionKey key) {
-        return !this.loggedInUsers.containsKey(key);
+    public boolean userIsNotLoggedIn(Session session) {
+        return !this.loggedInUsers.containsKey(session.getId());
     }
 
     @Override
-    public String getUsername(SelectionKey key) {
-        Objects.requireNonNull(key);
+    public String getUsername(Session session) {
+        Objects.requireNonNull(session);
 
-        if (this.loggedInUsers.containsKey(key)) {
-            return this.loggedInUsers.get(key);
-        }
-        return null;
+        return this.loggedInUsers.get(session.getId());
     }
 }
@@ -0,0 +1,126 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.authentication;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// salted PBKDF2 hashes of the passwords, stored as pbkdf2$<iterations>$<salt>$<hash>, the last two in Base64
+// a hash is slow on purpose, so the hashing runs on a pool of its own, no wider than the processors -
+// once every worker is busy and the queue is full, or the pool is closed, the caller hashes on its own thread,
+// which slows down the clients that log in, instead of every client of the server
+public class PasswordHasher implements AutoCloseable {
+
+    // fewer iterations make the tests and the benchmarks faster, never use them in production
+    private static final int ITERATIONS = Integer.getInteger("spotify.password.iterations", 100_000);
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2";
+    private static final String SEPARATOR = "$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int QUEUED_PER_WORKER = 64;
+
+    private final int iterations;
+    private final SecureRandom random;
+    private final ThreadPoolExecutor workers;
+
+    public PasswordHasher() {
+        this(ITERATIONS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PasswordHasher(int iterations, int threads) {
+        if (iterations <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The hasher needs at least one iteration and one thread");
+        }
+        this.iterations = iterations;
+        this.random = new SecureRandom();
+        AtomicInteger created = new AtomicInteger(0);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_PER_WORKER), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, executor) -> task.run());
+    }
+
+    public String hash(String password) throws InterruptedException {
+        byte[] salt = new byte[SALT_BYTES];
+        this.random.nextBytes(salt);
+        byte[] hash = run(() -> pbkdf2(password, salt, this.iterations));
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + SEPARATOR + this.iterations + SEPARATOR + encoder.encodeToString(salt)
+                + SEPARATOR + encoder.encodeToString(hash);
+    }
+
+    // a stored password, that isn't a hash, is one from before the passwords were hashed
+    public boolean verify(String password, String stored) throws InterruptedException {
+        if (!isHash(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\" + SEPARATOR);
+        if (parts.length != 4) {
+            return false;
+        }
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            storedIterations = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        byte[] actual = run(() -> pbkdf2(password, salt, storedIterations));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    // the plain passwords and the hashes with fewer iterations are hashed again on the next login
+    public boolean needsRehash(String stored) {
+        if (!isHash(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\" + SEPARATOR);
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < this.iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public static boolean isHash(String stored) {
+        return stored.startsWith(PREFIX + SEPARATOR);
+    }
+
+    @Override
+    public void close() {
+        this.workers.shutdown();
+    }
+
+    private byte[] run(Callable<byte[]> hashing) throws InterruptedException {
+        try {
+            return this.workers.submit(hashing).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The password could not be hashed", e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
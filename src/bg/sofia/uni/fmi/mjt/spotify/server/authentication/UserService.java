@@ -1,18 +1,17 @@
 package bg.sofia.uni.fmi.mjt.spotify.server.authentication;
 
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
-
-import java.nio.channels.SelectionKey;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
 
 public interface UserService {
 
     void register(String email, String password) throws SpotifyException;
 
-    void login(SelectionKey key, String email, String password) throws SpotifyException;
+    void login(Session session, String email, String password) throws SpotifyException;
 
-    void logout(SelectionKey key) throws SpotifyException;
+    void logout(Session session) throws SpotifyException;
 
-    boolean userIsNotLoggedIn(SelectionKey key);
+    boolean userIsNotLoggedIn(Session session);
 
-    String getUsername(SelectionKey key);
+    String getUsername(Session session);
 }
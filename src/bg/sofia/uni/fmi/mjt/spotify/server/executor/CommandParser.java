@@ -1,10 +1,13 @@
 package bg.sofia.uni.fmi.mjt.spotify.server.executor;
 
-import java.nio.channels.SelectionKey;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
 
 public interface CommandParser {
 
     String ERROR_MESSAGE = "Error!";
 
-    String parse(SelectionKey key, String input);
+    String parse(Session session, String input);
+
+    // the session is gone, together with whatever was left of it - a login or a song that still plays
+    void sessionClosed(Session session);
 }
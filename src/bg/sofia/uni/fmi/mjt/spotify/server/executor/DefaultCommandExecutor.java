@@ -4,9 +4,12 @@ import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
 import bg.sofia.uni.fmi.mjt.spotify.server.DefaultSpotifyService;
 import bg.sofia.uni.fmi.mjt.spotify.server.SpotifyService;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.MediaService;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.TrendWindow;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
 
-import java.nio.channels.SelectionKey;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DefaultCommandExecutor implements CommandParser {
 
@@ -19,7 +22,14 @@ public class DefaultCommandExecutor implements CommandParser {
     private static final String ADD_SONG = "add-song-to";
     private static final String SHOW_PLAYLIST = "show-playlist";
     private static final String PLAY = "play";
+    private static final String PLAY_PLAYLIST = "play-playlist";
     private static final String STOP = "stop";
+    private static final String PAUSE = "pause";
+    private static final String RESUME = "resume";
+    private static final String SEEK = "seek";
+    private static final String LIMIT_OPTION = "--limit";
+    private static final String OFFSET_OPTION = "--offset";
+    private static final String FUZZY_OPTION = "--fuzzy";
 
     private final SpotifyService service;
     private final SpotifyLogger logger;
@@ -35,21 +45,25 @@ public class DefaultCommandExecutor implements CommandParser {
     }
 
     @Override
-    public String parse(SelectionKey key, String input) {
+    public String parse(Session session, String input) {
         String[] arguments = input.split(" ");
         try {
             return switch (arguments[0]) {
                 case REGISTER -> register(arguments[1], arguments[2]);
-                case LOGIN -> login(key, arguments[1], arguments[2]);
-                case DISCONNECT -> disconnect(key);
+                case LOGIN -> login(session, arguments[1], arguments[2]);
+                case DISCONNECT -> disconnect(session);
                 case SEARCH -> search(arguments);
-                case TOP -> top(arguments[1]);
-                case CREATE_PLAYLIST -> createPlaylist(key, arguments[1].replaceAll("_", " "));
-                case ADD_SONG -> addSongToPlaylist(key, arguments[1].replaceAll("_", " "),
+                case TOP -> top(arguments);
+                case CREATE_PLAYLIST -> createPlaylist(session, arguments[1].replaceAll("_", " "));
+                case ADD_SONG -> addSongToPlaylist(session, arguments[1].replaceAll("_", " "),
                         arguments[2].replaceAll("_", " "));
-                case SHOW_PLAYLIST -> showPlaylist(key, arguments[1].replaceAll("_", " "));
-                case PLAY -> play(key, arguments[1].replaceAll("_", " "));
-                case STOP -> stop(key);
+                case SHOW_PLAYLIST -> showPlaylist(session, arguments[1].replaceAll("_", " "));
+                case PLAY -> play(session, arguments[1].replaceAll("_", " "));
+                case PLAY_PLAYLIST -> playPlaylist(session, arguments[1].replaceAll("_", " "));
+                case STOP -> stop(session);
+                case PAUSE -> pause(session);
+                case RESUME -> resume(session);
+                case SEEK -> seek(session, arguments[1]);
                 default -> ERROR_MESSAGE + " " + "Unknown command";
             };
         } catch (SpotifyException e) {
@@ -62,51 +76,117 @@ public class DefaultCommandExecutor implements CommandParser {
         } catch (Exception e) {
             // a result of a true error - we should log this
             if (this.logger != null) {
-                this.logger.log(this.service.getUsername(key), e);
+                this.logger.log(this.service.getUsername(session), e);
             }
             return ERROR_MESSAGE + " " + "A failure happened for unknown reasons";
         }
     }
 
-    private String stop(SelectionKey key) throws SpotifyException {
-        this.service.stopPlaying(key);
+    @Override
+    public void sessionClosed(Session session) {
+        this.service.logout(session);
+    }
+
+    private String stop(Session session) throws SpotifyException {
+        this.service.stopPlaying(session);
         return "No longer playing music";
     }
 
-    private String play(SelectionKey key, String songName) throws SpotifyException {
-        this.service.playSong(key, songName);
+    private String pause(Session session) throws SpotifyException {
+        this.service.pause(session);
+        return "Paused";
+    }
+
+    private String resume(Session session) throws SpotifyException {
+        this.service.resume(session);
+        return "Resumed";
+    }
+
+    // seek <seconds>, the seconds may have a fraction
+    private String seek(Session session, String seconds) throws SpotifyException {
+        double position;
+        try {
+            position = Double.parseDouble(seconds);
+        } catch (NumberFormatException e) {
+            position = Double.NaN;
+        }
+        if (!Double.isFinite(position)) {
+            throw new SpotifyException("The position to play from should be a number of seconds");
+        }
+        this.service.seek(session, Math.round(position * 1000));
+        return "Playing from " + seconds + "s";
+    }
+
+    private String play(Session session, String songName) throws SpotifyException {
+        this.service.playSong(session, songName);
         return "Now playing " + songName;
     }
 
-    private String showPlaylist(SelectionKey key, String playListName) throws SpotifyException {
-        return this.service.showPlaylist(key, playListName);
+    private String playPlaylist(Session session, String playlistName) throws SpotifyException {
+        this.service.playPlaylist(session, playlistName);
+        return "Now playing the playlist " + playlistName;
     }
 
-    private String addSongToPlaylist(SelectionKey key, String playlistName, String songName) throws SpotifyException {
-        this.service.addSongToPlaylist(key, playlistName, songName);
+    private String showPlaylist(Session session, String playListName) throws SpotifyException {
+        return this.service.showPlaylist(session, playListName);
+    }
+
+    private String addSongToPlaylist(Session session, String playlistName, String songName) throws SpotifyException {
+        this.service.addSongToPlaylist(session, playlistName, songName);
         return "Song successfully added to playlist";
     }
 
-    private String createPlaylist(SelectionKey key, String playlistName) throws SpotifyException {
-        this.service.createPlaylist(key, playlistName);
+    private String createPlaylist(Session session, String playlistName) throws SpotifyException {
+        this.service.createPlaylist(session, playlistName);
         return "Playlist created successfully";
     }
 
-    private String top(String numberOfTopSongs) throws SpotifyException {
-        return this.service.top(Integer.parseInt(numberOfTopSongs));
+    // top <n> [hour|day|week]
+    private String top(String[] arguments) throws SpotifyException {
+        int numberOfTopSongs = Integer.parseInt(arguments[1]);
+        if (arguments.length == 2) {
+            return this.service.top(numberOfTopSongs);
+        }
+        TrendWindow window;
+        try {
+            window = TrendWindow.valueOf(arguments[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new SpotifyException("The time window of a chart should be hour, day or week");
+        }
+        return this.service.top(numberOfTopSongs, window);
     }
 
+    // search <keywords...> [--limit <n>] [--offset <n>] [--fuzzy]
     private String search(String[] arguments) throws SpotifyException {
-        return this.service.search(Arrays.stream(arguments).skip(1).toList());
+        List<String> keywords = new ArrayList<>();
+        Integer limit = null;
+        int offset = 0;
+        boolean fuzzy = false;
+        try {
+            for (int i = 1; i < arguments.length; i++) {
+                if (arguments[i].equals(LIMIT_OPTION)) {
+                    limit = Integer.parseInt(arguments[++i]);
+                } else if (arguments[i].equals(OFFSET_OPTION)) {
+                    offset = Integer.parseInt(arguments[++i]);
+                } else if (arguments[i].equals(FUZZY_OPTION)) {
+                    fuzzy = true;
+                } else {
+                    keywords.add(arguments[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new SpotifyException("The limit and the offset of a search should be numbers");
+        }
+        return this.service.search(keywords, offset, limit == null ? MediaService.DEFAULT_SEARCH_LIMIT : limit, fuzzy);
     }
 
-    private String disconnect(SelectionKey key) throws SpotifyException {
-        this.service.logout(key);
+    private String disconnect(Session session) throws SpotifyException {
+        this.service.logout(session);
         return "Disconnected";
     }
 
-    private String login(SelectionKey key, String email, String password) throws SpotifyException {
-        this.service.login(key, email, password);
+    private String login(Session session, String email, String password) throws SpotifyException {
+        this.service.login(session, email, password);
         return "User successfully logged in";
     }
 
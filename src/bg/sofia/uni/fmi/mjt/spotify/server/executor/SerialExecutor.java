@@ -0,0 +1,60 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.executor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// runs its tasks one at a time, in the order they were given, on a pool shared with other serial executors -
+// the commands of a client stay in order, while the commands of different clients run at the same time
+public class SerialExecutor implements Executor {
+
+    private final Executor pool;
+    private final Queue<Runnable> tasks;
+    // whether a task of this executor is in the pool right now
+    private boolean running;
+
+    public SerialExecutor(Executor pool) {
+        this.pool = pool;
+        this.tasks = new ArrayDeque<>();
+        this.running = false;
+    }
+
+    // a task of a pool, that has been shut down, is rejected, like by the pool itself
+    @Override
+    public synchronized void execute(Runnable task) {
+        this.tasks.add(task);
+        if (!this.running) {
+            startNext();
+        }
+    }
+
+    private void startNext() {
+        Runnable next = this.tasks.poll();
+        this.running = next != null;
+        if (next == null) {
+            return;
+        }
+        try {
+            this.pool.execute(() -> run(next));
+        } catch (RejectedExecutionException e) {
+            this.running = false;
+            this.tasks.clear();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } finally {
+            synchronized (this) {
+                try {
+                    startNext();
+                } catch (RejectedExecutionException e) {
+                    // the pool is shutting down, and the tasks left go with it
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.AtomicFiles;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// the catalog as a binary file, read in place through a memory mapping instead of parsed into objects
+// the file is a header, the artists once each, the names in sorted order, and a fixed-width record per song,
+// in the order of the names:
+//     header    magic, version, songs, artists, and the offsets of the sections that follow
+//     artists   an offset per artist and one past the last, then the UTF-8 names of the artists
+//     names     an offset per song and one past the last, then the UTF-8 names of the songs
+//     records   the artist number, the duration and the listens of every song
+// the file is only a faster format to load than the JSON one - the server reads it once on startup,
+// and the lookups are served by the map of the media service, which the changes to the catalog go to
+public class BinaryCatalog {
+
+    private static final int MAGIC = 0x53504354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 5 * Long.BYTES;
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int songs;
+    private final int artists;
+    private final int artistOffsets;
+    private final int artistData;
+    private final int nameOffsets;
+    private final int nameData;
+    private final int records;
+
+    private BinaryCatalog(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("The file is not a binary catalog");
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("The binary catalog has an unknown version " + buffer.getInt(Integer.BYTES));
+        }
+        this.songs = buffer.getInt(2 * Integer.BYTES);
+        this.artists = buffer.getInt(3 * Integer.BYTES);
+        int sections = 4 * Integer.BYTES;
+        this.artistOffsets = (int) buffer.getLong(sections);
+        this.artistData = (int) buffer.getLong(sections + Long.BYTES);
+        this.nameOffsets = (int) buffer.getLong(sections + 2 * Long.BYTES);
+        this.nameData = (int) buffer.getLong(sections + 3 * Long.BYTES);
+        this.records = (int) buffer.getLong(sections + 4 * Long.BYTES);
+        if (this.songs < 0 || this.artists < 0
+                || (long) this.records + (long) this.songs * RECORD_SIZE > buffer.capacity()) {
+            throw new IOException("The binary catalog is cut short");
+        }
+    }
+
+    // a single mapping can't be larger than 2 GB, which is tens of millions of songs
+    public static BinaryCatalog open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The binary catalog " + path + " is too large to be mapped");
+            }
+            // the mapping stays valid after the channel is closed
+            return new BinaryCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // whether the file starts like a binary catalog, rather than like the JSON one
+    public static boolean isBinary(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // reads the first bytes only
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void write(Path path, Collection<Song> catalog) throws IOException {
+        // sorted by the bytes of the names, each name encoded once, so the songs with a name come together
+        Song[] songs = catalog.toArray(new Song[0]);
+        byte[][] encodedNames = new byte[songs.length][];
+        Integer[] order = new Integer[songs.length];
+        for (int i = 0; i < songs.length; i++) {
+            encodedNames[i] = utf8(songs[i].getName());
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> Arrays.compareUnsigned(encodedNames[first], encodedNames[second]));
+        List<Song> sorted = new ArrayList<>(songs.length);
+        List<byte[]> names = new ArrayList<>(songs.length);
+        Map<String, Integer> artistNumbers = new TreeMap<>();
+        for (int i : order) {
+            sorted.add(songs[i]);
+            names.add(encodedNames[i]);
+            artistNumbers.putIfAbsent(songs[i].getArtist(), 0);
+        }
+        List<byte[]> artistNames = new ArrayList<>(artistNumbers.size());
+        for (Map.Entry<String, Integer> artist : artistNumbers.entrySet()) {
+            artist.setValue(artistNames.size());
+            artistNames.add(utf8(artist.getKey()));
+        }
+
+        long artistOffsets = HEADER_SIZE;
+        long artistData = artistOffsets + (long) Integer.BYTES * (artistNames.size() + 1);
+        long nameOffsets = artistData + totalLength(artistNames);
+        long nameData = nameOffsets + (long) Integer.BYTES * (names.size() + 1);
+        long records = nameData + totalLength(names);
+        if (records + (long) RECORD_SIZE * sorted.size() > Integer.MAX_VALUE) {
+            throw new IOException("The catalog is too large for a single binary catalog");
+        }
+
+        AtomicFiles.writeBinary(path, stream -> {
+            DataOutputStream output = new DataOutputStream(stream);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(sorted.size());
+            output.writeInt(artistNames.size());
+            output.writeLong(artistOffsets);
+            output.writeLong(artistData);
+            output.writeLong(nameOffsets);
+            output.writeLong(nameData);
+            output.writeLong(records);
+            writeStrings(output, artistNames);
+            writeStrings(output, names);
+            for (Song song : sorted) {
+                output.writeInt(artistNumbers.get(song.getArtist()));
+                output.writeInt(song.getDuration());
+                output.writeLong(song.getNumberOfListens());
+            }
+            output.flush();
+        });
+    }
+
+    public int size() {
+        return this.songs;
+    }
+
+    public int getArtistCount() {
+        return this.artists;
+    }
+
+    // a new object for the caller, built from the mapped bytes
+    public Song getSong(int position) {
+        Song song = new Song(getName(position), getArtist(position), getDuration(position));
+        song.restoreListens(getListens(position));
+        return song;
+    }
+
+    public void forEach(Consumer<Song> consumer) {
+        for (int i = 0; i < this.songs; i++) {
+            consumer.accept(getSong(i));
+        }
+    }
+
+    public String getName(int position) {
+        return string(this.nameOffsets, this.nameData, checkPosition(position));
+    }
+
+    public String getArtist(int position) {
+        return string(this.artistOffsets, this.artistData, this.buffer.getInt(record(position)));
+    }
+
+    public int getDuration(int position) {
+        return this.buffer.getInt(record(position) + Integer.BYTES);
+    }
+
+    public long getListens(int position) {
+        return this.buffer.getLong(record(position) + 2 * Integer.BYTES);
+    }
+
+    private int record(int position) {
+        return this.records + checkPosition(position) * RECORD_SIZE;
+    }
+
+    private int checkPosition(int position) {
+        if (position < 0 || position >= this.songs) {
+            throw new IndexOutOfBoundsException("There is no song at " + position);
+        }
+        return position;
+    }
+
+    private String string(int offsets, int data, int number) {
+        int start = this.buffer.getInt(offsets + number * Integer.BYTES);
+        int end = this.buffer.getInt(offsets + (number + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        this.buffer.get(data + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream output, List<byte[]> strings) throws IOException {
+        int offset = 0;
+        for (byte[] string : strings) {
+            output.writeInt(offset);
+            offset += string.length;
+        }
+        output.writeInt(offset);
+        for (byte[] string : strings) {
+            output.write(string);
+        }
+    }
+
+    private static long totalLength(List<byte[]> strings) {
+        long total = 0;
+        for (byte[] string : strings) {
+            total += string.length;
+        }
+        return total;
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
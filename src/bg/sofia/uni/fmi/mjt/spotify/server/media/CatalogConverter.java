@@ -0,0 +1,35 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// converts the JSON catalog into a binary one - the server reads whichever of the two it is given
+// usage: CatalogConverter [songs.txt] [songs.bin]
+public final class CatalogConverter {
+
+    private static final Path DEFAULT_SOURCE = Path.of("resources", "media", "songs.txt");
+    private static final Path DEFAULT_TARGET = Path.of("resources", "media", "songs.bin");
+    private static final Gson GSON = new Gson();
+
+    private CatalogConverter() {
+    }
+
+    public static int convert(Path source, Path target) throws IOException {
+        List<Song> catalog = new ArrayList<>();
+        JsonFiles.readObject(source, (name, reader) -> JsonFiles.readArray(GSON, reader, Song.class, catalog::add));
+        BinaryCatalog.write(target, catalog);
+        return catalog.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path source = args.length > 0 ? Path.of(args[0]) : DEFAULT_SOURCE;
+        Path target = args.length > 1 ? Path.of(args[1]) : DEFAULT_TARGET;
+        int converted = convert(source, target);
+        System.out.println("Converted " + converted + " songs from " + source + " to " + target);
+    }
+}
@@ -1,100 +1,393 @@
 package bg.sofia.uni.fmi.mjt.spotify.server.media;
 
-import bg.sofia.uni.fmi.mjt.spotify.exceptions.NoSongPlayingException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.PlaylistAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.PlaylistNotFoundException;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.SongAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SongNotFoundException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.StorageException;
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
 import bg.sofia.uni.fmi.mjt.spotify.objects.Playlist;
 import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.KeyValueStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.SnapshotWriter;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.WriteAheadLog;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.DefaultStreamingEngine;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.nio.channels.SelectionKey;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 public class DefaultMediaService implements MediaService {
 
     private static final Path PLAYLISTS_PATH = Path.of("resources", "media", "playlists.txt");
     private static final Path SONGS_PATH = Path.of("resources", "media", "songs.txt");
-    private static final Path INDEX_PATH = Path.of("resources", "media", "index.txt");
+    // the catalog converted by CatalogConverter, used instead of the JSON one once it is there
+    private static final Path BINARY_SONGS_PATH = Path.of("resources", "media", "songs.bin");
     private static final Path STOPWORDS_PATH = Path.of("resources", "stopwords.txt");
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private boolean changeHasOccurred = false;
+    private static final Path JOURNAL_PATH = Path.of("resources", "media", "journal");
+    // once a segment of the journal has this many changes, the files are written and the segment is dropped
+    private static final int RECORDS_PER_SNAPSHOT = 10_000;
+    // however often the users log out, the files are written at most this often
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 5_000;
+    // the layout of the files is up to the writers, see JsonFiles
+    private static final Gson GSON = new Gson();
+    private static final Type USER_PLAYLISTS_TYPE = new TypeToken<LinkedHashMap<String, Playlist>>() {
+    }.getType();
+    private static final int PRELOADED_SONGS = 10;
+    private static final int LOCK_STRIPES = 64;
+    private final AtomicBoolean changeHasOccurred = new AtomicBoolean(false);
     private final SpotifyLogger logger;
 
     // a map of <UserName, <Name of playlist, Playlist>> for fast access
-
+    // the playlists of a user are changed only under the lock of the user's stripe
     private Map<String, Map<String, Playlist>> playlists;
+    // the playlists of every user by email, if they are paged in from a store instead - null if they are in memory
+    private final KeyValueStore playlistStore;
+    private final Lock[] playlistLocks;
     // all songs, mapped by their name (two songs are identical if their name, artist and duration are identical)
     private Map<String, Set<Song>> songs;
     // an index of keywords and the songs that contain them
-    private Map<String, Set<Song>> index;
+    private final KeywordIndex index;
+    // the songs by their listens, updated as they are played
+    private final TopChart chart;
+    // the songs by their recent listens
+    private final TrendingChart trendingChart;
     private Set<String> stopwords;
-    private final Map<SelectionKey, SongThread> currentlyPlaying;
+    private final StreamingEngine streamingEngine;
     private final Path songsPath;
+    // whether the songs file is a binary catalog rather than a JSON one - it is written back the way it was read
+    private final boolean binarySongs;
     private final Path playlistPath;
-    private final Path indexPath;
+    // every change since the files were last written, replayed on top of them on startup - null if not kept
+    private final WriteAheadLog journal;
+    // writes the files away from the requests, and away from the journal, which a snapshot has to wait for
+    private final SnapshotWriter snapshotWriter;
 
     public DefaultMediaService(SpotifyLogger logger) {
-        this(logger, SONGS_PATH, PLAYLISTS_PATH, INDEX_PATH);
+        this(logger, new DefaultStreamingEngine(logger));
+    }
+
+    public DefaultMediaService(SpotifyLogger logger, StreamingEngine streamingEngine) {
+        this(logger, Files.exists(BINARY_SONGS_PATH) ? BINARY_SONGS_PATH : SONGS_PATH, PLAYLISTS_PATH, streamingEngine,
+                JOURNAL_PATH);
+    }
+
+    public DefaultMediaService(SpotifyLogger logger, Path songsPath, Path playlistsPath) {
+        this(logger, songsPath, playlistsPath, new DefaultStreamingEngine(logger));
+    }
+
+    public DefaultMediaService(SpotifyLogger logger, Path songsPath, Path playlistsPath,
+                               StreamingEngine streamingEngine) {
+        this(logger, songsPath, playlistsPath, streamingEngine, null);
     }
 
-    public DefaultMediaService(SpotifyLogger logger, Path songsPath, Path playlistsPath, Path indexPath) {
+    public DefaultMediaService(SpotifyLogger logger, Path songsPath, Path playlistsPath,
+                               StreamingEngine streamingEngine, Path journalPath) {
+        this(logger, songsPath, playlistsPath, null, streamingEngine, journalPath);
+    }
+
+    // the playlists are read from the store one user at a time, and written back on every change
+    public DefaultMediaService(SpotifyLogger logger, Path songsPath, KeyValueStore playlistStore,
+                               StreamingEngine streamingEngine, Path journalPath) {
+        this(logger, songsPath, null, playlistStore, streamingEngine, journalPath);
+    }
+
+    private DefaultMediaService(SpotifyLogger logger, Path songsPath, Path playlistsPath, KeyValueStore playlistStore,
+                                StreamingEngine streamingEngine, Path journalPath) {
         this.logger = logger;
-        this.songs = new HashMap<>();
-        this.playlists = new HashMap<>();
-        this.index = new HashMap<>();
+        this.streamingEngine = streamingEngine;
         this.songsPath = songsPath;
+        this.binarySongs = songsPath != null && BinaryCatalog.isBinary(songsPath);
         this.playlistPath = playlistsPath;
-        this.indexPath = indexPath;
+        this.playlistStore = playlistStore;
+        this.playlistLocks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.playlistLocks[i] = new ReentrantLock();
+        }
+        this.snapshotWriter = new SnapshotWriter("media-snapshot", this::snapshot, SNAPSHOT_INTERVAL_MILLIS, logger);
+        loadSongs();
+        loadPlaylists();
+        // the changes the files missed, before anything is built on top of the catalog
+        this.journal = openJournal(journalPath);
+        int replayed = replayJournal();
+        // the most listened songs are mapped in advance, so that their first listeners don't wait for the disk
+        this.streamingEngine.preload(this.songs.values().stream().flatMap(Set::stream).toList(), PRELOADED_SONGS);
         try {
-            Type songType = new TypeToken<Map<String, Set<Song>>>() {
-            }.getType();
-            Type playListType = new TypeToken<Map<String, Map<String, Playlist>>>() {
-            }.getType();
-            Type indexType = new TypeToken<Map<String, Set<Song>>>() {
-            }.getType();
-            this.songs = GSON.fromJson(new FileReader(String.valueOf(this.songsPath)), songType);
-            this.playlists = GSON.fromJson(new FileReader(String.valueOf(this.playlistPath)), playListType);
-            this.index = GSON.fromJson(new FileReader(String.valueOf(this.indexPath)), indexType);
-        } catch (FileNotFoundException e) {
+            this.stopwords = Files.lines(STOPWORDS_PATH).collect(Collectors.toSet());
+        } catch (IOException e) {
             if (this.logger != null) {
-                logger.log("localhost", e);
+                this.logger.log("localhost", e);
             }
+            this.stopwords = new HashSet<>();
+        }
+        this.index = new KeywordIndex(this.stopwords, this.songs);
+        this.chart = new TopChart(this.songs.values().stream().flatMap(Set::stream).toList());
+        this.trendingChart = new TrendingChart();
+        if (replayed > 0) {
+            this.changeHasOccurred.set(true);
+            this.snapshotWriter.request();
+        } else if (this.journal != null) {
+            dropEmptySegments();
+        }
+    }
+
+    private WriteAheadLog openJournal(Path journalPath) {
+        if (journalPath == null) {
+            return null;
         }
-        this.currentlyPlaying = new HashMap<>();
         try {
-            this.stopwords = Files.lines(STOPWORDS_PATH).collect(Collectors.toSet());
+            return new WriteAheadLog(journalPath, RECORDS_PER_SNAPSHOT,
+                    this::snapshotNeeded, this.logger);
         } catch (IOException e) {
             if (this.logger != null) {
                 this.logger.log("localhost", e);
             }
-            this.stopwords = new HashSet<>();
+            return null;
         }
     }
 
+    // asked for by the journal, whether or not a user has logged out since the last snapshot
+    private void snapshotNeeded() {
+        this.changeHasOccurred.set(true);
+        this.snapshotWriter.request();
+    }
+
+    private int replayJournal() {
+        if (this.journal == null) {
+            return 0;
+        }
+        int[] replayed = {0};
+        try {
+            this.journal.replay(record -> {
+                JournalEntry entry = GSON.fromJson(record, JournalEntry.class);
+                if (entry != null && entry.getType() != null) {
+                    apply(entry);
+                    replayed[0]++;
+                }
+            });
+        } catch (IOException | JsonParseException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+        return replayed[0];
+    }
+
+    // the entries may already be in the files, so each of them only makes sure its change is there
+    private void apply(JournalEntry entry) {
+        Song song = entry.getSong();
+        switch (entry.getType()) {
+            case PLAY -> {
+                Song played = find(song);
+                if (played != null) {
+                    played.restoreListens(entry.getListens());
+                }
+            }
+            case CREATE_PLAYLIST, ADD_TO_PLAYLIST -> {
+                try {
+                    applyToPlaylists(entry, find(song));
+                } catch (IOException e) {
+                    if (this.logger != null) {
+                        this.logger.log("localhost", e);
+                    }
+                }
+            }
+            case ADD_SONG -> this.songs.compute(song.getName(), (name, songsByName) -> {
+                if (songsByName != null && songsByName.contains(song)) {
+                    return songsByName;
+                }
+                Set<Song> newSongs = songsByName == null ? new LinkedHashSet<>() : new LinkedHashSet<>(songsByName);
+                newSongs.add(song);
+                return Collections.unmodifiableSet(newSongs);
+            });
+            case REMOVE_SONG -> this.songs.computeIfPresent(song.getName(), (name, songsByName) -> {
+                Set<Song> newSongs = new LinkedHashSet<>(songsByName);
+                newSongs.remove(song);
+                return newSongs.isEmpty() ? null : Collections.unmodifiableSet(newSongs);
+            });
+        }
+    }
+
+    private void applyToPlaylists(JournalEntry entry, Song song) throws IOException {
+        Map<String, Playlist> userPlaylists = playlistsOf(entry.getEmail());
+        if (entry.getType() == JournalEntry.Type.CREATE_PLAYLIST) {
+            if (userPlaylists.putIfAbsent(entry.getPlaylist(), new Playlist(entry.getPlaylist())) == null) {
+                storePlaylists(entry.getEmail(), userPlaylists);
+            }
+            return;
+        }
+        Playlist playlist = userPlaylists.get(entry.getPlaylist());
+        if (playlist != null && song != null) {
+            try {
+                playlist.addSong(song);
+                storePlaylists(entry.getEmail(), userPlaylists);
+            } catch (SongAlreadyExistsException e) {
+                // the snapshot already has it
+            }
+        }
+    }
+
+    private Song find(Song song) {
+        if (song == null) {
+            return null;
+        }
+        for (Song candidate : this.songs.getOrDefault(song.getName(), Set.of())) {
+            if (candidate.equals(song)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // nothing to replay, so the segments of the earlier runs can go
+    private void dropEmptySegments() {
+        try {
+            this.journal.deleteSegmentsBefore(this.journal.getSegment());
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    // appended in the same critical section the change is made in, so that the journal keeps the order of the changes
+    private CompletableFuture<Long> journal(JournalEntry entry) {
+        if (this.journal == null) {
+            return CompletableFuture.completedFuture(-1L);
+        }
+        return this.journal.append(GSON.toJson(entry));
+    }
+
+    // a change is confirmed once it is on the disk, plays are the only changes that don't wait for it
+    private void awaitJournal(CompletableFuture<Long> written) {
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    // one song at a time, straight into the concurrent map the requests use
+    private void loadSongs() {
+        this.songs = new ConcurrentHashMap<>();
+        if (this.songsPath == null) {
+            return;
+        }
+        try {
+            if (this.binarySongs) {
+                loadBinarySongs();
+                return;
+            }
+            JsonFiles.readObject(this.songsPath, (name, reader) -> {
+                Set<Song> songsByName = new LinkedHashSet<>();
+                JsonFiles.readArray(GSON, reader, Song.class, songsByName::add);
+                this.songs.put(name, Collections.unmodifiableSet(songsByName));
+            });
+        } catch (IOException | JsonParseException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    // the catalog is sorted by name, so the songs with the same name come one after the other
+    private void loadBinarySongs() throws IOException {
+        BinaryCatalog catalog = BinaryCatalog.open(this.songsPath);
+        Map<String, Set<Song>> songsByName = new LinkedHashMap<>();
+        catalog.forEach(song -> songsByName.computeIfAbsent(song.getName(), name -> new LinkedHashSet<>()).add(song));
+        songsByName.forEach((name, songsWithName) -> this.songs.put(name, Collections.unmodifiableSet(songsWithName)));
+    }
+
+    private void loadPlaylists() {
+        // sorted by user, so that the file keeps a stable order
+        this.playlists = new ConcurrentSkipListMap<>();
+        if (this.playlistPath == null) {
+            return;
+        }
+        try {
+            JsonFiles.readObject(this.playlistPath, (email, reader) -> {
+                Map<String, Playlist> userPlaylists = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    userPlaylists.put(reader.nextName(), GSON.fromJson(reader, Playlist.class));
+                }
+                reader.endObject();
+                this.playlists.put(email, userPlaylists);
+            });
+        } catch (IOException | JsonParseException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    private Lock lockFor(String email) {
+        return this.playlistLocks[Math.floorMod(email.hashCode(), LOCK_STRIPES)];
+    }
+
+    // the playlists of a user, for the holder of the user's lock to change - a new map, if there are none
+    private Map<String, Playlist> playlistsOf(String email) throws IOException {
+        if (this.playlistStore == null) {
+            return this.playlists.computeIfAbsent(email, e -> new LinkedHashMap<>());
+        }
+        Map<String, Playlist> userPlaylists = storedPlaylists(email);
+        return userPlaylists == null ? new LinkedHashMap<>() : userPlaylists;
+    }
+
+    // null if the user has no playlists
+    private Map<String, Playlist> storedPlaylists(String email) throws IOException {
+        String stored = this.playlistStore.get(email);
+        try {
+            return stored == null ? null : GSON.fromJson(stored, USER_PLAYLISTS_TYPE);
+        } catch (JsonParseException e) {
+            throw new IOException("The playlists of " + email + " are damaged", e);
+        }
+    }
+
+    // the in-memory playlists are written by the snapshots, the stored ones right away
+    private void storePlaylists(String email, Map<String, Playlist> userPlaylists) throws IOException {
+        if (this.playlistStore != null) {
+            this.playlistStore.put(email, GSON.toJson(userPlaylists, USER_PLAYLISTS_TYPE));
+        }
+    }
+
+    private StorageException storageFailure(IOException e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+        return new StorageException("The playlists could not be stored. Please try again later");
+    }
+
     @Override
     public Song getSong(String songName) throws SongNotFoundException {
         Objects.requireNonNull(songName);
@@ -106,27 +399,21 @@ public class DefaultMediaService implements MediaService {
 
     @Override
     public String search(List<String> keywords) {
+        return search(keywords, 0, DEFAULT_SEARCH_LIMIT, false);
+    }
+
+    @Override
+    public String search(List<String> keywords, int offset, int limit, boolean fuzzy) {
         Objects.requireNonNull(keywords);
-        Set<String> filteredKeywords = keywords.stream()
-                .map(String::toLowerCase)
-                .filter(s -> !this.stopwords.contains(s))
-                .collect(Collectors.toSet());
-        List<Song> songsByGivenKeywords = new ArrayList<>();
-        for (String word : filteredKeywords) {
-            if (this.index.containsKey(word)) {
-                songsByGivenKeywords.addAll(this.index.get(word));
-            }
+        if (offset < 0 || limit <= 0) {
+            return "The limit of a search should be positive and its offset should not be negative";
         }
-        if (songsByGivenKeywords.isEmpty()) {
+        List<Song> bestSongs = this.index.search(keywords, offset, limit, fuzzy);
+        if (bestSongs.isEmpty()) {
             return "We couldn't find any songs based on your query";
         }
         StringBuilder builder = new StringBuilder();
-        songsByGivenKeywords.stream()
-                .collect(Collectors.groupingBy(boardGame -> boardGame, Collectors.counting()))
-                .entrySet().stream()
-                .sorted(Map.Entry.<Song, Long>comparingByValue().reversed())
-                .map(Map.Entry::getKey)
-                .forEach(song -> builder.append(song.toReadableString()).append(System.lineSeparator()));
+        bestSongs.forEach(song -> builder.append(song.toReadableString()).append(System.lineSeparator()));
         return builder.toString();
     }
 
@@ -135,12 +422,21 @@ public class DefaultMediaService implements MediaService {
         if (numberOfTopSongs <= 0) {
             return "Cannot find a negative number of top songs";
         }
+        return this.chart.top(numberOfTopSongs);
+    }
+
+    @Override
+    public String top(int numberOfTopSongs, TrendWindow window) {
+        Objects.requireNonNull(window);
+        if (numberOfTopSongs <= 0) {
+            return "Cannot find a negative number of top songs";
+        }
+        List<Song> trendingSongs = this.trendingChart.top(numberOfTopSongs, window);
+        if (trendingSongs.isEmpty()) {
+            return "No songs have been played in the last " + window.name().toLowerCase();
+        }
         StringBuilder builder = new StringBuilder();
-        this.songs.values().stream()
-                .flatMap(Set::stream)
-                .sorted(Comparator.comparingInt(Song::getNumberOfListens).reversed())
-                .limit(numberOfTopSongs)
-                .forEach(song -> builder.append(song.toReadableString()).append(System.lineSeparator()));
+        trendingSongs.forEach(song -> builder.append(song.toReadableString()).append(System.lineSeparator()));
         return builder.toString();
     }
 
@@ -148,13 +444,25 @@ public class DefaultMediaService implements MediaService {
     public void createPlaylist(String email, String playlistName) throws SpotifyException {
         Objects.requireNonNull(email);
         Objects.requireNonNull(playlistName);
-        this.playlists.putIfAbsent(email, new HashMap<>());
-        if (this.playlists.get(email).containsKey(playlistName)) {
-            throw new PlaylistAlreadyExistsException("Playlist with this name already exists. " +
-                    "Please choose another name or add songs to the already existing playlist");
+        CompletableFuture<Long> written;
+        Lock lock = lockFor(email);
+        lock.lock();
+        try {
+            Map<String, Playlist> userPlaylists = playlistsOf(email);
+            if (userPlaylists.containsKey(playlistName)) {
+                throw new PlaylistAlreadyExistsException("Playlist with this name already exists. " +
+                        "Please choose another name or add songs to the already existing playlist");
+            }
+            userPlaylists.put(playlistName, new Playlist(playlistName));
+            storePlaylists(email, userPlaylists);
+            written = journal(JournalEntry.playlistCreated(email, playlistName));
+        } catch (IOException e) {
+            throw storageFailure(e);
+        } finally {
+            lock.unlock();
         }
-        this.playlists.get(email).put(playlistName, new Playlist(playlistName));
-        this.changeHasOccurred = true;
+        this.changeHasOccurred.set(true);
+        awaitJournal(written);
     }
 
     @Override
@@ -162,14 +470,26 @@ public class DefaultMediaService implements MediaService {
         Objects.requireNonNull(email);
         Objects.requireNonNull(playlistName);
         Objects.requireNonNull(songName);
-        this.playlists.putIfAbsent(email, new HashMap<>());
-        if (!this.playlists.get(email).containsKey(playlistName)) {
-            throw new PlaylistNotFoundException("No playlist with this name was found. " +
-                    "Please choose another playlist or create it before adding a song to it");
+        CompletableFuture<Long> written;
+        Lock lock = lockFor(email);
+        lock.lock();
+        try {
+            Map<String, Playlist> userPlaylists = playlistsOf(email);
+            if (!userPlaylists.containsKey(playlistName)) {
+                throw new PlaylistNotFoundException("No playlist with this name was found. " +
+                        "Please choose another playlist or create it before adding a song to it");
+            }
+            Song song = getSong(songName);
+            userPlaylists.get(playlistName).addSong(song);
+            storePlaylists(email, userPlaylists);
+            written = journal(JournalEntry.addedToPlaylist(email, playlistName, song));
+        } catch (IOException e) {
+            throw storageFailure(e);
+        } finally {
+            lock.unlock();
         }
-        Song song = getSong(songName);
-        this.playlists.get(email).get(playlistName).addSong(song);
-        this.changeHasOccurred = true;
+        this.changeHasOccurred.set(true);
+        awaitJournal(written);
     }
 
     @Override
@@ -178,14 +498,17 @@ public class DefaultMediaService implements MediaService {
         Objects.requireNonNull(playlistName);
         // there may be playlists with the same name by different users
         // first try to return the playlist with the same name by the same user
-        if (this.playlists.get(email).containsKey(playlistName)) {
-            return this.playlists.get(email).get(playlistName);
+        Playlist playlist = findPlaylist(email, playlistName);
+        if (playlist != null) {
+            return playlist;
         }
 
         // if the user doesn't have such a playlist, then return any playlist with the same name
-        for (Map<String, Playlist> map : this.playlists.values()) {
-            if (map.containsKey(playlistName)) {
-                return map.get(playlistName);
+        Set<String> owners = this.playlistStore == null ? this.playlists.keySet() : this.playlistStore.keys();
+        for (String owner : owners) {
+            playlist = findPlaylist(owner, playlistName);
+            if (playlist != null) {
+                return playlist;
             }
         }
 
@@ -194,68 +517,212 @@ public class DefaultMediaService implements MediaService {
                 "Please choose another playlist or create it before adding a song to it");
     }
 
+    private Playlist findPlaylist(String email, String playlistName) throws StorageException {
+        Lock lock = lockFor(email);
+        lock.lock();
+        try {
+            Map<String, Playlist> userPlaylists = this.playlistStore == null ? this.playlists.get(email)
+                    : storedPlaylists(email);
+            return userPlaylists == null ? null : userPlaylists.get(playlistName);
+        } catch (IOException e) {
+            throw storageFailure(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
-    public void playSong(SelectionKey key, String songName) throws SpotifyException {
-        Objects.requireNonNull(key);
+    public void addSong(Song song) throws SpotifyException {
+        Objects.requireNonNull(song);
+        AtomicReference<CompletableFuture<Long>> written = new AtomicReference<>();
+        this.songs.compute(song.getName(), (name, songsByName) -> {
+            if (songsByName != null && songsByName.contains(song)) {
+                return songsByName;
+            }
+            Set<Song> newSongs = songsByName == null ? new LinkedHashSet<>() : new LinkedHashSet<>(songsByName);
+            newSongs.add(song);
+            written.set(journal(JournalEntry.songAdded(song)));
+            return Collections.unmodifiableSet(newSongs);
+        });
+        if (written.get() == null) {
+            throw new SongAlreadyExistsException("Song " + song.getName() + " already exists");
+        }
+        this.index.add(song);
+        this.chart.add(song);
+        this.changeHasOccurred.set(true);
+        awaitJournal(written.get());
+    }
+
+    @Override
+    public void removeSong(Song song) throws SongNotFoundException {
+        Objects.requireNonNull(song);
+        AtomicReference<CompletableFuture<Long>> written = new AtomicReference<>();
+        this.songs.computeIfPresent(song.getName(), (name, songsByName) -> {
+            if (!songsByName.contains(song)) {
+                return songsByName;
+            }
+            Set<Song> newSongs = new LinkedHashSet<>(songsByName);
+            newSongs.remove(song);
+            written.set(journal(JournalEntry.songRemoved(song)));
+            return newSongs.isEmpty() ? null : Collections.unmodifiableSet(newSongs);
+        });
+        if (written.get() == null) {
+            throw new SongNotFoundException("The song " + song.getName() + " was not found");
+        }
+        this.index.remove(song);
+        this.chart.remove(song);
+        this.trendingChart.remove(song);
+        this.changeHasOccurred.set(true);
+        awaitJournal(written.get());
+    }
+
+    @Override
+    public Song renameSong(Song song, String newName) throws SpotifyException {
+        Objects.requireNonNull(song);
+        Objects.requireNonNull(newName);
+        Song renamed = song.withName(newName);
+        // the new name is taken first, so that the song is never missing from the catalog
+        addSong(renamed);
+        removeSong(song);
+        return renamed;
+    }
+
+    @Override
+    public void playSong(Session session, String songName) throws SpotifyException {
+        Objects.requireNonNull(session);
         Objects.requireNonNull(songName);
-        Song songToPlay;
-        try {
-            songToPlay = this.songs.get(songName).iterator().next();
-        } catch (NullPointerException e) {
+        Set<Song> songsByName = this.songs.get(songName);
+        if (songsByName == null || songsByName.isEmpty()) {
             throw new SongNotFoundException("Song" + songName + " was not found");
         }
+        Song songToPlay = songsByName.iterator().next();
         File songFile = songToPlay.getPath().toFile();
         if (!songFile.exists()) {
             throw new SongNotFoundException("We know about the requested song, but it doesn't exist in our database. " +
                     "It cannot be played.");
         }
         // check whether the song is already running is performed in the client
-        SongThread songThread = new SongThread(songToPlay, key, this.logger);
-        this.songs.get(songName).iterator().next().play();
-        this.currentlyPlaying.put(key, songThread);
-        songThread.start();
-        this.changeHasOccurred = true;
+        this.streamingEngine.startStreaming(session, songToPlay);
+        played(songToPlay);
     }
 
+    // the songs of a playlist are copies read from its file or store, so the ones of the catalog are played,
+    // to be counted where the listens are kept - the songs no longer in the catalog, or whose files are missing,
+    // are left out, and every song is counted as a listen once it starts
     @Override
-    public void stopPlayingSong(SelectionKey key) throws SpotifyException {
-        Objects.requireNonNull(key);
-        if (!this.currentlyPlaying.containsKey(key)) {
-            throw new NoSongPlayingException("There is currently no song playing. Nothing to stop");
-        }
-        this.currentlyPlaying.get(key).stopPlaying();
-        try {
-            this.currentlyPlaying.get(key).join();
-        } catch (InterruptedException e) {
-            throw new SpotifyException("Something went wrong with the player");
-        } finally {
-            this.currentlyPlaying.remove(key);
+    public void playPlaylist(Session session, String email, String playlistName) throws SpotifyException {
+        Objects.requireNonNull(session);
+        Playlist playlist = getPlaylist(email, playlistName);
+        List<Song> songsToPlay = playlist.getSongs().stream()
+                .map(this::find)
+                .filter(Objects::nonNull)
+                .filter(song -> song.getPath().toFile().exists())
+                .toList();
+        if (songsToPlay.isEmpty()) {
+            throw new SongNotFoundException("The playlist " + playlistName + " has no songs, that can be played");
         }
+        this.streamingEngine.startStreaming(session, songsToPlay, this::played);
+    }
+
+    private void played(Song song) {
+        song.play();
+        // the listens after the play, so the order of two plays in the journal doesn't matter
+        journal(JournalEntry.played(song));
+        this.chart.played(song);
+        this.trendingChart.played(song);
+        this.changeHasOccurred.set(true);
     }
 
+    @Override
+    public void stopPlayingSong(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+        this.streamingEngine.stopStreaming(session);
+    }
+
+    @Override
+    public void pauseSong(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+        this.streamingEngine.pauseStreaming(session);
+    }
+
+    @Override
+    public void resumeSong(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+        this.streamingEngine.resumeStreaming(session);
+    }
+
+    // a seek is not a new listen, so the charts stay as they are
+    @Override
+    public void seekSong(Session session, long milliseconds) throws SpotifyException {
+        Objects.requireNonNull(session);
+        this.streamingEngine.seek(session, milliseconds);
+    }
+
+    // returns at once - the snapshot writer writes the files within its interval, however many updates arrive
     @Override
     public void update() {
-        if (changeHasOccurred) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(String.valueOf(this.playlistPath), false))) {
-                writer.write(GSON.toJson(this.playlists));
-            } catch (IOException e) {
+        this.snapshotWriter.request();
+    }
+
+    @Override
+    public void flush() {
+        this.snapshotWriter.flush();
+    }
+
+    // runs on the snapshot writer only, so one snapshot is written at a time
+    // the journal is rolled over first - every change in the older segments has been made, so it is in the view,
+    // and the segments can go once the files are on the disk
+    private void snapshot() {
+        if (!this.changeHasOccurred.getAndSet(false)) {
+            return;
+        }
+        long segment = -1;
+        if (this.journal != null) {
+            try {
+                segment = this.journal.rollOver().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
                 if (this.logger != null) {
                     this.logger.log("localhost", e);
                 }
             }
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(String.valueOf(this.songsPath), false))) {
-                writer.write(GSON.toJson(this.songs));
-            } catch (IOException e) {
-                if (this.logger != null) {
-                    this.logger.log("localhost", e);
-                }
+        }
+        // the stored playlists are on the disk already
+        Map<String, Map<String, Playlist>> playlistsView = this.playlistStore == null ? copyPlaylists() : null;
+        // the sets of songs are never changed, only replaced, so a copy of the map is a view of the catalog
+        // the play counters are LongAdders, they can keep growing while written, the journal has the rest
+        Map<String, Set<Song>> songsView = new LinkedHashMap<>(this.songs);
+        boolean written = true;
+        try {
+            if (this.playlistPath != null && playlistsView != null) {
+                JsonFiles.writeObject(this.playlistPath, JsonFiles.PRETTY_PRINTING,
+                        writer -> writePlaylists(writer, playlistsView));
+            }
+        } catch (IOException e) {
+            written = false;
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
             }
-            this.index.clear();
-            for (Song song : this.songs.values().stream().flatMap(Collection::stream).collect(Collectors.toSet())) {
-                addSongToIndex(song);
+        }
+        try {
+            if (this.songsPath != null && this.binarySongs) {
+                BinaryCatalog.write(this.songsPath, songsView.values().stream().flatMap(Set::stream).toList());
+            } else if (this.songsPath != null) {
+                JsonFiles.writeObject(this.songsPath, JsonFiles.PRETTY_PRINTING,
+                        writer -> writeSongs(writer, songsView));
+            }
+        } catch (IOException e) {
+            written = false;
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
             }
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(String.valueOf(this.indexPath), false))) {
-                writer.write(GSON.toJson(this.index));
+        }
+        if (!written) {
+            this.changeHasOccurred.set(true);
+        } else if (segment >= 0) {
+            try {
+                this.journal.deleteSegmentsBefore(segment);
             } catch (IOException e) {
                 if (this.logger != null) {
                     this.logger.log("localhost", e);
@@ -264,27 +731,44 @@ public class DefaultMediaService implements MediaService {
         }
     }
 
-    private void addSongToIndex(Song song) {
-        Objects.requireNonNull(song);
-        for (String str : Arrays.stream(song.getName()
-                        .split(" "))
-                .map(String::toLowerCase)
-                .filter(s -> !this.stopwords.contains(s))
-                .toList()) {
-            if (!index.containsKey(str)) {
-                index.put(str, new HashSet<>());
+    // all of the stripes are held for as long as it takes to copy the references, not to write the file
+    // they are always taken in the same order, so that two copies can never deadlock
+    private Map<String, Map<String, Playlist>> copyPlaylists() {
+        for (Lock lock : this.playlistLocks) {
+            lock.lock();
+        }
+        try {
+            Map<String, Map<String, Playlist>> view = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Playlist>> user : this.playlists.entrySet()) {
+                Map<String, Playlist> userPlaylists = new LinkedHashMap<>();
+                user.getValue().forEach((name, playlist) -> userPlaylists.put(name, playlist.copy()));
+                view.put(user.getKey(), userPlaylists);
+            }
+            return view;
+        } finally {
+            for (Lock lock : this.playlistLocks) {
+                lock.unlock();
             }
-            index.get(str).add(song);
-        }
-        for (String str : Arrays.stream(song.getArtist()
-                        .split(" "))
-                .map(String::toLowerCase)
-                .filter(s -> !this.stopwords.contains(s))
-                .toList()) {
-            if (!index.containsKey(str)) {
-                index.put(str, new HashSet<>());
+        }
+    }
+
+    private static void writePlaylists(JsonWriter writer, Map<String, Map<String, Playlist>> playlists)
+            throws IOException {
+        for (Map.Entry<String, Map<String, Playlist>> user : playlists.entrySet()) {
+            writer.name(user.getKey());
+            writer.beginObject();
+            for (Map.Entry<String, Playlist> playlist : user.getValue().entrySet()) {
+                writer.name(playlist.getKey());
+                GSON.toJson(playlist.getValue(), Playlist.class, writer);
             }
-            index.get(str).add(song);
+            writer.endObject();
+        }
+    }
+
+    private static void writeSongs(JsonWriter writer, Map<String, Set<Song>> songs) throws IOException {
+        for (Map.Entry<String, Set<Song>> songsByName : songs.entrySet()) {
+            writer.name(songsByName.getKey());
+            JsonFiles.writeArray(GSON, writer, songsByName.getValue(), Song.class);
         }
     }
 }
@@ -0,0 +1,67 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+// a change of the media state, as it is written to the write-ahead log
+// replaying an entry a second time changes nothing, so the log may overlap the snapshot it is replayed on
+class JournalEntry {
+
+    enum Type {
+        PLAY, CREATE_PLAYLIST, ADD_TO_PLAYLIST, ADD_SONG, REMOVE_SONG
+    }
+
+    private final Type type;
+    private final String email;
+    private final String playlist;
+    private final Song song;
+    // the listens of a played song after the play, not the play itself
+    private final long listens;
+
+    private JournalEntry(Type type, String email, String playlist, Song song, long listens) {
+        this.type = type;
+        this.email = email;
+        this.playlist = playlist;
+        this.song = song;
+        this.listens = listens;
+    }
+
+    static JournalEntry played(Song song) {
+        return new JournalEntry(Type.PLAY, null, null, song, song.getNumberOfListens());
+    }
+
+    static JournalEntry playlistCreated(String email, String playlist) {
+        return new JournalEntry(Type.CREATE_PLAYLIST, email, playlist, null, 0);
+    }
+
+    static JournalEntry addedToPlaylist(String email, String playlist, Song song) {
+        return new JournalEntry(Type.ADD_TO_PLAYLIST, email, playlist, song, 0);
+    }
+
+    static JournalEntry songAdded(Song song) {
+        return new JournalEntry(Type.ADD_SONG, null, null, song, 0);
+    }
+
+    static JournalEntry songRemoved(Song song) {
+        return new JournalEntry(Type.REMOVE_SONG, null, null, song, 0);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getEmail() {
+        return email;
+    }
+
+    String getPlaylist() {
+        return playlist;
+    }
+
+    Song getSong() {
+        return song;
+    }
+
+    long getListens() {
+        return listens;
+    }
+}
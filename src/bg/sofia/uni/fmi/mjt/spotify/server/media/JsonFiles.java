@@ -0,0 +1,83 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.AtomicFiles;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// the storage files are objects of named entries, read and written one entry at a time -
+// neither the whole file as a string, nor a tree of all of its entries, is ever held in memory
+final class JsonFiles {
+
+    // the files are written compact, unless they are meant to be read by a human
+    static final boolean PRETTY_PRINTING = Boolean.getBoolean("spotify.storage.pretty");
+    private static final String INDENT = "  ";
+
+    interface EntryReader {
+        void read(String name, JsonReader reader) throws IOException;
+    }
+
+    interface EntriesWriter {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private JsonFiles() {
+    }
+
+    // an empty file has no entries
+    static void readObject(Path path, EntryReader entryReader) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            JsonToken first = reader.peek();
+            if (first == JsonToken.END_DOCUMENT || first == JsonToken.NULL) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                entryReader.read(reader.nextName(), reader);
+            }
+            reader.endObject();
+        }
+    }
+
+    // the elements of the array the reader is at, one at a time
+    static <T> void readArray(Gson gson, JsonReader reader, Class<T> type, Consumer<T> consumer)
+            throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            consumer.accept(gson.fromJson(reader, type));
+        }
+        reader.endArray();
+    }
+
+    // the file is replaced only once it has been written completely
+    static void writeObject(Path path, boolean prettyPrinting, EntriesWriter entries) throws IOException {
+        AtomicFiles.write(path, content -> {
+            JsonWriter writer = new JsonWriter(content);
+            if (prettyPrinting) {
+                writer.setIndent(INDENT);
+            }
+            // the same escaping Gson applies to the values
+            writer.setHtmlSafe(true);
+            writer.beginObject();
+            entries.write(writer);
+            writer.endObject();
+            writer.flush();
+        });
+    }
+
+    static <T> void writeArray(Gson gson, JsonWriter writer, Iterable<T> elements, Class<T> type)
+            throws IOException {
+        writer.beginArray();
+        for (T element : elements) {
+            gson.toJson(element, type, writer);
+        }
+        writer.endArray();
+    }
+}
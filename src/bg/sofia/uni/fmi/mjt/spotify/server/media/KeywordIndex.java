@@ -0,0 +1,45 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the keywords of the songs and the songs of every keyword - it changes one song at a time, in memory
+// the index is not written anywhere - it is built from the catalog on startup, after the journal of the catalog
+// has been replayed, so it never has to catch up with a file of its own
+// the songs themselves are kept in a search index, that ranks them
+public class KeywordIndex {
+
+    private final SearchIndex index;
+
+    // the songs of the catalog are the ones put in the index, so that a play is seen by the search as well
+    public KeywordIndex(Set<String> stopwords, Map<String, Set<Song>> catalog) {
+        this.index = new SearchIndex(stopwords);
+        catalog.values().forEach(songs -> songs.forEach(this.index::add));
+    }
+
+    public Set<Song> get(String keyword) {
+        return this.index.songsWith(keyword);
+    }
+
+    public List<Song> search(Collection<String> keywords, int offset, int limit, boolean fuzzy) {
+        return this.index.search(keywords, offset, limit, fuzzy);
+    }
+
+    public synchronized void add(Song song) {
+        this.index.add(song);
+    }
+
+    public synchronized void remove(Song song) {
+        this.index.remove(song);
+    }
+
+    // a song is renamed by replacing it with a song with the new name
+    public synchronized void replace(Song oldSong, Song newSong) {
+        remove(oldSong);
+        add(newSong);
+    }
+}
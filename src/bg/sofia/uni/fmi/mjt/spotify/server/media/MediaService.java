@@ -4,27 +4,56 @@ import bg.sofia.uni.fmi.mjt.spotify.exceptions.SongNotFoundException;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
 import bg.sofia.uni.fmi.mjt.spotify.objects.Playlist;
 import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
 
-import java.nio.channels.SelectionKey;
 import java.util.List;
 
 public interface MediaService {
 
+    int DEFAULT_SEARCH_LIMIT = 20;
+
     Song getSong(String songName) throws SongNotFoundException;
 
     String search(List<String> keywords);
 
+    // the best matches only, from the offset on
+    // a fuzzy search also matches the words, that start with a keyword, or that are a typo away from one
+    String search(List<String> keywords, int offset, int limit, boolean fuzzy);
+
     String top(int numberOfTopSongs);
 
+    // the songs played the most in the last hour, day or week
+    String top(int numberOfTopSongs, TrendWindow window);
+
     void createPlaylist(String email, String playlistName) throws SpotifyException;
 
     void addSongToPlaylist(String email, String playlistName, String songName) throws SpotifyException;
 
     Playlist getPlaylist(String email, String playlistName) throws SpotifyException;
 
-    void playSong(SelectionKey key, String songName) throws SpotifyException;
+    void addSong(Song song) throws SpotifyException;
+
+    void removeSong(Song song) throws SongNotFoundException;
+
+    // returns the song with the new name, which has the listens of the old one
+    Song renameSong(Song song, String newName) throws SpotifyException;
+
+    void playSong(Session session, String songName) throws SpotifyException;
 
-    void stopPlayingSong(SelectionKey key) throws SpotifyException;
+    // the songs of the playlist, back to back
+    void playPlaylist(Session session, String email, String playlistName) throws SpotifyException;
 
+    void stopPlayingSong(Session session) throws SpotifyException;
+
+    void pauseSong(Session session) throws SpotifyException;
+
+    void resumeSong(Session session) throws SpotifyException;
+
+    void seekSong(Session session, long milliseconds) throws SpotifyException;
+
+    // asks for the files to be written - the requests are coalesced and written in the background
     void update();
+
+    // writes the requested changes right away and waits for them
+    void flush();
 }
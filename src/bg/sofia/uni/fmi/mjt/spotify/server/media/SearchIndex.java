@@ -0,0 +1,381 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// every song gets a dense int id, and every keyword of a field has a sorted array of the ids of its songs,
+// so a query is a merge of a few int arrays, scored with BM25 and cut to the best k by a bounded heap
+// changes are serialized, searches take no locks - the part of a posting list a search sees never changes
+// a fuzzy search also looks for the keywords, that start with a word of the query, or are a typo away from it
+public class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int NAME = 0;
+    private static final int ARTIST = 1;
+    private static final int FIELDS = 2;
+    // a keyword in the name of a song says more about it than the same keyword in the name of its artist
+    private static final double[] FIELD_WEIGHTS = {2.0, 1.0};
+    private static final int INITIAL_CAPACITY = 16;
+    // a completion or a correction is only a guess of what was meant, so it counts less than the exact word
+    private static final double EXACT_WEIGHT = 1.0;
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final double TYPO_WEIGHT = 0.5;
+    // a short prefix of a large catalog starts too many keywords to merge all of them
+    private static final int MAX_COMPLETIONS = 64;
+
+    // the first size ids and frequencies of the arrays - an append fills the spare room of the arrays
+    // and publishes a longer list over the same arrays, the shorter lists never look past their size
+    private static final class Postings {
+        private final int[] ids;
+        private final int[] frequencies;
+        private final int size;
+
+        private Postings(int[] ids, int[] frequencies, int size) {
+            this.ids = ids;
+            this.frequencies = frequencies;
+            this.size = size;
+        }
+    }
+
+    private static final class Statistics {
+        private final int songs;
+        private final long[] totalLengths;
+
+        private Statistics(int songs, long[] totalLengths) {
+            this.songs = songs;
+            this.totalLengths = totalLengths;
+        }
+
+        private double averageLength(int field) {
+            return this.songs == 0 ? 1 : Math.max(1.0, (double) this.totalLengths[field] / this.songs);
+        }
+    }
+
+    private final Set<String> stopwords;
+    private final List<Map<String, Postings>> postings;
+    private final Map<Song, Integer> ids;
+    // the ids of removed songs are reused, so that the tables don't grow with every song ever added, but not
+    // while a search, that started before the removal, may still hold a posting list with the old song
+    private final Deque<Integer> freedIds;
+    private final Deque<Integer> reusableIds;
+    private final AtomicInteger activeSearches;
+    private final TermDictionary dictionary;
+    private volatile Song[] songs;
+    private volatile int[][] lengths;
+    private volatile Statistics statistics;
+    private int nextId;
+
+    public SearchIndex(Set<String> stopwords) {
+        this.stopwords = stopwords;
+        this.postings = new ArrayList<>();
+        for (int field = 0; field < FIELDS; field++) {
+            this.postings.add(new ConcurrentHashMap<>());
+        }
+        this.ids = new HashMap<>();
+        this.freedIds = new ArrayDeque<>();
+        this.reusableIds = new ArrayDeque<>();
+        this.activeSearches = new AtomicInteger(0);
+        this.dictionary = new TermDictionary();
+        this.songs = new Song[INITIAL_CAPACITY];
+        this.lengths = new int[FIELDS][INITIAL_CAPACITY];
+        this.statistics = new Statistics(0, new long[FIELDS]);
+        this.nextId = 0;
+    }
+
+    public synchronized boolean add(Song song) {
+        if (this.ids.containsKey(song)) {
+            return false;
+        }
+        int id = newId();
+        this.ids.put(song, id);
+        this.songs[id] = song;
+
+        long[] totalLengths = this.statistics.totalLengths.clone();
+        for (int field = 0; field < FIELDS; field++) {
+            List<String> tokens = tokenize(field == NAME ? song.getName() : song.getArtist());
+            this.lengths[field][id] = tokens.size();
+            totalLengths[field] += tokens.size();
+            for (Map.Entry<String, Integer> term : frequencies(tokens).entrySet()) {
+                this.postings.get(field).compute(term.getKey(), (keyword, old) -> insert(old, id, term.getValue()));
+                this.dictionary.add(term.getKey());
+            }
+        }
+        this.statistics = new Statistics(this.statistics.songs + 1, totalLengths);
+        return true;
+    }
+
+    public synchronized boolean remove(Song song) {
+        Integer id = this.ids.remove(song);
+        if (id == null) {
+            return false;
+        }
+        long[] totalLengths = this.statistics.totalLengths.clone();
+        for (int field = 0; field < FIELDS; field++) {
+            totalLengths[field] -= this.lengths[field][id];
+            for (String keyword : new LinkedHashSet<>(tokenize(field == NAME ? song.getName() : song.getArtist()))) {
+                this.postings.get(field).computeIfPresent(keyword, (k, old) -> without(old, id));
+            }
+        }
+        for (String keyword : tokenize(song.getName() + " " + song.getArtist())) {
+            if (!this.postings.get(NAME).containsKey(keyword) && !this.postings.get(ARTIST).containsKey(keyword)) {
+                this.dictionary.remove(keyword);
+            }
+        }
+        this.songs[id] = null;
+        this.freedIds.add(id);
+        this.statistics = new Statistics(this.statistics.songs - 1, totalLengths);
+        return true;
+    }
+
+    public int size() {
+        return this.statistics.songs;
+    }
+
+    // all songs, that have the keyword in any field
+    public Set<Song> songsWith(String keyword) {
+        this.activeSearches.incrementAndGet();
+        try {
+            Set<Song> result = new LinkedHashSet<>();
+            for (int field = 0; field < FIELDS; field++) {
+                Postings list = this.postings.get(field).get(keyword);
+                if (list != null) {
+                    addSongs(list, result);
+                }
+            }
+            return result;
+        } finally {
+            this.activeSearches.decrementAndGet();
+        }
+    }
+
+    public TermDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    public List<Song> search(Collection<String> keywords, int offset, int limit) {
+        return search(keywords, offset, limit, false);
+    }
+
+    // the songs with the best scores from the offset on, the best first
+    public List<Song> search(Collection<String> keywords, int offset, int limit, boolean fuzzy) {
+        // counted before any posting list is read, so that no id of it is given to another song meanwhile
+        this.activeSearches.incrementAndGet();
+        try {
+            return rank(keywords, offset, limit, fuzzy);
+        } finally {
+            this.activeSearches.decrementAndGet();
+        }
+    }
+
+    // the number of ids the tables have room for
+    int capacity() {
+        return this.songs.length;
+    }
+
+    private List<Song> rank(Collection<String> keywords, int offset, int limit, boolean fuzzy) {
+        Map<String, Double> terms = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            for (String token : tokenize(keyword)) {
+                terms.merge(token, EXACT_WEIGHT, Math::max);
+                if (fuzzy) {
+                    this.dictionary.complete(token, MAX_COMPLETIONS)
+                            .forEach(term -> terms.merge(term, PREFIX_WEIGHT, Math::max));
+                    this.dictionary.similar(token).forEach(term -> terms.merge(term, TYPO_WEIGHT, Math::max));
+                }
+            }
+        }
+
+        // every pair of a term and a field is a cursor over one posting list
+        List<Postings> lists = new ArrayList<>();
+        List<Integer> fields = new ArrayList<>();
+        List<Double> termWeights = new ArrayList<>();
+        for (Map.Entry<String, Double> term : terms.entrySet()) {
+            for (int field = 0; field < FIELDS; field++) {
+                Postings list = this.postings.get(field).get(term.getKey());
+                if (list != null && list.size > 0) {
+                    lists.add(list);
+                    fields.add(field);
+                    termWeights.add(term.getValue());
+                }
+            }
+        }
+        if (lists.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        // read after the posting lists, so that they know about every id in them
+        Song[] songsById = this.songs;
+        int[][] lengthsById = this.lengths;
+        Statistics stats = this.statistics;
+
+        int cursors = lists.size();
+        int[] positions = new int[cursors];
+        double[] weights = new double[cursors];
+        double[] averageLengths = new double[cursors];
+        int[] cursorFields = new int[cursors];
+        for (int i = 0; i < cursors; i++) {
+            cursorFields[i] = fields.get(i);
+            int documentFrequency = lists.get(i).size;
+            double idf = Math.log(1 + (stats.songs - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            weights[i] = termWeights.get(i) * FIELD_WEIGHTS[cursorFields[i]] * idf;
+            averageLengths[i] = stats.averageLength(cursorFields[i]);
+        }
+
+        // there can never be more results than songs, however large the limit
+        TopKHeap heap = new TopKHeap((int) Math.min(stats.songs, (long) offset + limit));
+        while (true) {
+            int id = Integer.MAX_VALUE;
+            for (int i = 0; i < cursors; i++) {
+                Postings list = lists.get(i);
+                if (positions[i] < list.size && list.ids[positions[i]] < id) {
+                    id = list.ids[positions[i]];
+                }
+            }
+            if (id == Integer.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < cursors; i++) {
+                Postings list = lists.get(i);
+                if (positions[i] < list.size && list.ids[positions[i]] == id) {
+                    int frequency = list.frequencies[positions[i]];
+                    double normalization = 1 - B + B * lengthsById[cursorFields[i]][id] / averageLengths[i];
+                    score += weights[i] * frequency * (K1 + 1) / (frequency + K1 * normalization);
+                    positions[i]++;
+                }
+            }
+            if (songsById[id] != null) {
+                heap.offer(id, score);
+            }
+        }
+
+        int[] best = heap.drain();
+        List<Song> result = new ArrayList<>();
+        for (int i = offset; i < best.length; i++) {
+            result.add(songsById[best[i]]);
+        }
+        return result;
+    }
+
+    // lower case words without the stopwords, repeated as many times as they occur
+    List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : text.split(" ")) {
+            String token = word.toLowerCase();
+            if (!token.isEmpty() && !this.stopwords.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private void addSongs(Postings list, Set<Song> result) {
+        Song[] songsById = this.songs;
+        for (int i = 0; i < list.size; i++) {
+            int id = list.ids[i];
+            if (songsById[id] != null) {
+                result.add(songsById[id]);
+            }
+        }
+    }
+
+    private static Map<String, Integer> frequencies(List<String> tokens) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    // the removed ids are given out again only when no search is running - a search, that starts afterwards,
+    // reads the posting lists without them, so it can't take the new song for the removed one
+    private int newId() {
+        if (this.activeSearches.get() == 0) {
+            this.reusableIds.addAll(this.freedIds);
+            this.freedIds.clear();
+        }
+        Integer reused = this.reusableIds.poll();
+        if (reused != null) {
+            return reused;
+        }
+        int id = this.nextId++;
+        ensureCapacity(id + 1);
+        return id;
+    }
+
+    // a new id is the largest so far and goes at the end, a reused one is put in its place in a copy of the list
+    private static Postings insert(Postings old, int id, int frequency) {
+        if (old == null) {
+            return new Postings(new int[] {id}, new int[] {frequency}, 1);
+        }
+        if (id < old.ids[old.size - 1]) {
+            int position = -Arrays.binarySearch(old.ids, 0, old.size, id) - 1;
+            int[] ids = new int[old.size + 1];
+            int[] frequencies = new int[old.size + 1];
+            System.arraycopy(old.ids, 0, ids, 0, position);
+            System.arraycopy(old.ids, position, ids, position + 1, old.size - position);
+            System.arraycopy(old.frequencies, 0, frequencies, 0, position);
+            System.arraycopy(old.frequencies, position, frequencies, position + 1, old.size - position);
+            ids[position] = id;
+            frequencies[position] = frequency;
+            return new Postings(ids, frequencies, ids.length);
+        }
+        // only the writer appends, and only to the newest list, so the room past its size is free
+        int[] ids = old.ids;
+        int[] frequencies = old.frequencies;
+        if (old.size == ids.length) {
+            // the lists of keywords common to the whole catalog would be copied on every song otherwise
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            frequencies = Arrays.copyOf(frequencies, frequencies.length * 2);
+        }
+        ids[old.size] = id;
+        frequencies[old.size] = frequency;
+        return new Postings(ids, frequencies, old.size + 1);
+    }
+
+    // a removal copies the list, the older lists still see the song
+    private static Postings without(Postings old, int id) {
+        int position = Arrays.binarySearch(old.ids, 0, old.size, id);
+        if (position < 0) {
+            return old;
+        }
+        if (old.size == 1) {
+            return null;
+        }
+        int[] ids = new int[old.size - 1];
+        int[] frequencies = new int[old.size - 1];
+        System.arraycopy(old.ids, 0, ids, 0, position);
+        System.arraycopy(old.ids, position + 1, ids, position, ids.length - position);
+        System.arraycopy(old.frequencies, 0, frequencies, 0, position);
+        System.arraycopy(old.frequencies, position + 1, frequencies, position, frequencies.length - position);
+        return new Postings(ids, frequencies, ids.length);
+    }
+
+    // the arrays are replaced only once they are filled, so a search always sees whole arrays
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.songs.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, this.songs.length * 2);
+        int[][] newLengths = new int[FIELDS][];
+        for (int field = 0; field < FIELDS; field++) {
+            newLengths[field] = Arrays.copyOf(this.lengths[field], newCapacity);
+        }
+        Song[] newSongs = Arrays.copyOf(this.songs, newCapacity);
+        this.lengths = newLengths;
+        this.songs = newSongs;
+    }
+}
@@ -0,0 +1,86 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// approximate counts over a sliding window, in the same memory for a hundred songs or for millions -
+// a count-min sketch for every slot of time, and their sum, from which every slot leaving the window is subtracted
+// a count is never below the true one, and above it by a small part of all the counts in the window at most
+// nothing is locked - a count racing with the turn of a slot may be lost, which a chart can afford
+class SlidingCountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024;
+    private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+    private final int slots;
+    private final long slotMillis;
+    private final AtomicIntegerArray[] slotCounters;
+    private final AtomicIntegerArray totals;
+    // the number of the newest slot, counted from the start of the clock
+    private final AtomicLong newestSlot;
+
+    SlidingCountMinSketch(int slots, long slotMillis, long now) {
+        this.slots = slots;
+        this.slotMillis = slotMillis;
+        this.slotCounters = new AtomicIntegerArray[slots];
+        for (int i = 0; i < slots; i++) {
+            this.slotCounters[i] = new AtomicIntegerArray(DEPTH * WIDTH);
+        }
+        this.totals = new AtomicIntegerArray(DEPTH * WIDTH);
+        this.newestSlot = new AtomicLong(now / slotMillis);
+    }
+
+    void add(Object item, long now) {
+        advance(now);
+        AtomicIntegerArray counters = this.slotCounters[(int) (this.newestSlot.get() % this.slots)];
+        int hash = item.hashCode();
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(hash, row);
+            counters.incrementAndGet(cell);
+            this.totals.incrementAndGet(cell);
+        }
+    }
+
+    long estimate(Object item, long now) {
+        advance(now);
+        int hash = item.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, this.totals.get(cell(hash, row)));
+        }
+        return estimate;
+    }
+
+    // the thread, that moves the window, empties the slots that left it
+    private void advance(long now) {
+        long target = now / this.slotMillis;
+        long current = this.newestSlot.get();
+        while (current < target) {
+            if (this.newestSlot.compareAndSet(current, target)) {
+                // after a long silence every slot has left the window, and each is emptied once
+                long expired = Math.min(target - current, this.slots);
+                for (long slot = target - expired + 1; slot <= target; slot++) {
+                    clear(this.slotCounters[(int) (slot % this.slots)]);
+                }
+                return;
+            }
+            current = this.newestSlot.get();
+        }
+    }
+
+    private void clear(AtomicIntegerArray counters) {
+        for (int cell = 0; cell < counters.length(); cell++) {
+            int count = counters.getAndSet(cell, 0);
+            if (count != 0) {
+                this.totals.addAndGet(cell, -count);
+            }
+        }
+    }
+
+    private static int cell(int hash, int row) {
+        int mixed = hash * SEEDS[row];
+        mixed ^= mixed >>> 16;
+        return row * WIDTH + (mixed & (WIDTH - 1));
+    }
+}
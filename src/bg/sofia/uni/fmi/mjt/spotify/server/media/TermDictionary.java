@@ -0,0 +1,111 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// every keyword of the index in lexicographic order, so that the words with a prefix are a range of it,
+// and once more in a hash set - the words a typo away from a query are generated and looked up one by one,
+// which costs the same for a million keywords as for a hundred, unlike comparing the query with each of them
+public class TermDictionary {
+
+    // a typo in a shorter word leaves too little of it to tell which word was meant
+    private static final int MIN_FUZZY_LENGTH = 5;
+
+    private final NavigableSet<String> sortedTerms;
+    private final Set<String> terms;
+    // the characters a typo could have replaced, or left out
+    private final Set<Character> alphabet;
+
+    public TermDictionary() {
+        this.sortedTerms = new ConcurrentSkipListSet<>();
+        this.terms = ConcurrentHashMap.newKeySet();
+        this.alphabet = ConcurrentHashMap.newKeySet();
+    }
+
+    public void add(String term) {
+        if (this.terms.add(term)) {
+            this.sortedTerms.add(term);
+            for (int i = 0; i < term.length(); i++) {
+                this.alphabet.add(term.charAt(i));
+            }
+        }
+    }
+
+    public void remove(String term) {
+        if (this.terms.remove(term)) {
+            this.sortedTerms.remove(term);
+        }
+    }
+
+    public boolean contains(String term) {
+        return this.terms.contains(term);
+    }
+
+    public int size() {
+        return this.terms.size();
+    }
+
+    // at most limit words, that start with the prefix, in lexicographic order
+    public List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        for (String term : this.sortedTerms.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(term);
+        }
+        return result;
+    }
+
+    // the other words a single typo away - a missing, an extra or a wrong character, or two swapped neighbours
+    public List<String> similar(String word) {
+        int length = word.length();
+        if (length < MIN_FUZZY_LENGTH) {
+            return List.of();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        char[] characters = word.toCharArray();
+        char[] candidate = new char[length + 1];
+        for (int i = 0; i < length; i++) {
+            // without the character at i
+            System.arraycopy(characters, 0, candidate, 0, i);
+            System.arraycopy(characters, i + 1, candidate, i, length - i - 1);
+            lookUp(candidate, length - 1, result);
+            // with the characters at i and i + 1 swapped
+            if (i + 1 < length && characters[i] != characters[i + 1]) {
+                System.arraycopy(characters, 0, candidate, 0, length);
+                candidate[i] = characters[i + 1];
+                candidate[i + 1] = characters[i];
+                lookUp(candidate, length, result);
+            }
+        }
+        for (char letter : this.alphabet) {
+            for (int i = 0; i <= length; i++) {
+                // with an extra character before i
+                System.arraycopy(characters, 0, candidate, 0, i);
+                candidate[i] = letter;
+                System.arraycopy(characters, i, candidate, i + 1, length - i);
+                lookUp(candidate, length + 1, result);
+                // with the character at i replaced
+                if (i < length && characters[i] != letter) {
+                    System.arraycopy(characters, 0, candidate, 0, length);
+                    candidate[i] = letter;
+                    lookUp(candidate, length, result);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private void lookUp(char[] candidate, int length, Set<String> result) {
+        String term = new String(candidate, 0, length);
+        if (this.terms.contains(term)) {
+            result.add(term);
+        }
+    }
+}
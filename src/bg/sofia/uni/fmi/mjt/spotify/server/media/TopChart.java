@@ -0,0 +1,200 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the songs ordered by their listens, kept in order as they are played, instead of sorted on every request
+// the songs with the same listens share a bucket and the buckets are linked from the most listened down,
+// so a play only moves a song a few buckets up, however large the catalog is
+// a play itself takes no lock - the listens are counted by the song, and the chart only notes, that the song
+// was played, in a concurrent set - the songs are moved to their new buckets by the next request of the chart
+public class TopChart {
+
+    private static final class Bucket {
+        private final long listens;
+        // the songs, that reached these listens first, come first
+        private final Set<Song> songs;
+        private Bucket higher;
+        private Bucket lower;
+
+        private Bucket(long listens) {
+            this.listens = listens;
+            this.songs = new LinkedHashSet<>();
+        }
+    }
+
+    private final Map<Song, Bucket> buckets;
+    // the songs played since the chart was last ordered
+    private final Set<Song> played;
+    private Bucket highest;
+    private Bucket lowest;
+    private volatile int size;
+    // the formatted charts by their length - the whole map is replaced once the order of the songs changes
+    private volatile Map<Integer, String> formatted;
+
+    public TopChart(Collection<Song> songs) {
+        this.buckets = new HashMap<>();
+        this.played = ConcurrentHashMap.newKeySet();
+        this.formatted = new ConcurrentHashMap<>();
+        // sorted only once, every song after that goes at the bottom
+        songs.stream()
+                .sorted(Comparator.comparingLong(Song::getNumberOfListens).reversed())
+                .forEach(this::add);
+    }
+
+    public synchronized void add(Song song) {
+        if (this.buckets.containsKey(song)) {
+            return;
+        }
+        long listens = song.getNumberOfListens();
+        // a new song has no listens and stays at the bottom, only a renamed one has to look for its place
+        Bucket lower = null;
+        Bucket bucket = this.lowest;
+        while (bucket != null && bucket.listens < listens) {
+            lower = bucket;
+            bucket = bucket.higher;
+        }
+        if (bucket == null || bucket.listens != listens) {
+            bucket = insertAbove(lower, listens);
+        }
+        bucket.songs.add(song);
+        this.buckets.put(song, bucket);
+        this.size = this.buckets.size();
+        orderChanged();
+    }
+
+    public synchronized void remove(Song song) {
+        this.played.remove(song);
+        Bucket bucket = this.buckets.remove(song);
+        if (bucket == null) {
+            return;
+        }
+        bucket.songs.remove(song);
+        if (bucket.songs.isEmpty()) {
+            unlink(bucket);
+        }
+        this.size = this.buckets.size();
+        orderChanged();
+    }
+
+    // called after the song has counted the play
+    public void played(Song song) {
+        this.played.add(song);
+    }
+
+    // the readable names of the most listened songs, one per line, formatted once until the order changes
+    public String top(int numberOfSongs) {
+        if (this.played.isEmpty()) {
+            String chart = this.formatted.get(Math.min(numberOfSongs, this.size));
+            if (chart != null) {
+                return chart;
+            }
+        }
+        synchronized (this) {
+            applyPlays();
+            // the map is read again, the order may have changed in the meantime
+            return this.formatted.computeIfAbsent(Math.min(numberOfSongs, this.size), this::format);
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // the songs played at about the same time, with the same listens, may end up in either order
+    private void applyPlays() {
+        Iterator<Song> songs = this.played.iterator();
+        while (songs.hasNext()) {
+            Song song = songs.next();
+            // removed before the listens are read, so that a play after the reading is noted again
+            songs.remove();
+            Bucket bucket = this.buckets.get(song);
+            if (bucket != null) {
+                moveUp(song, bucket, song.getNumberOfListens());
+            }
+        }
+    }
+
+    private void moveUp(Song song, Bucket bucket, long listens) {
+        if (listens <= bucket.listens) {
+            return;
+        }
+        Bucket lower = bucket;
+        while (lower.higher != null && lower.higher.listens <= listens) {
+            lower = lower.higher;
+        }
+        // the first song of a bucket, that passes no other bucket, keeps its place - it is still behind
+        // the same songs and ahead of the rest
+        boolean passesOthers = lower != bucket && (lower.listens != listens || lower.lower != bucket);
+        boolean orderChanges = !bucket.songs.iterator().next().equals(song) || passesOthers;
+        Bucket target = lower.listens == listens ? lower : insertAbove(lower, listens);
+        bucket.songs.remove(song);
+        target.songs.add(song);
+        this.buckets.put(song, target);
+        if (bucket.songs.isEmpty()) {
+            unlink(bucket);
+        }
+        if (orderChanges) {
+            orderChanged();
+        }
+    }
+
+    private String format(int length) {
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+        for (Bucket bucket = this.highest; bucket != null && count < length; bucket = bucket.lower) {
+            Iterator<Song> songs = bucket.songs.iterator();
+            while (songs.hasNext() && count < length) {
+                builder.append(songs.next().toReadableString()).append(System.lineSeparator());
+                count++;
+            }
+        }
+        return builder.toString();
+    }
+
+    // a new bucket right above the given one, or the lowest one, if there is no bucket below it
+    private Bucket insertAbove(Bucket lower, long listens) {
+        Bucket bucket = new Bucket(listens);
+        Bucket higher = lower == null ? this.lowest : lower.higher;
+        bucket.lower = lower;
+        bucket.higher = higher;
+        if (lower == null) {
+            this.lowest = bucket;
+        } else {
+            lower.higher = bucket;
+        }
+        if (higher == null) {
+            this.highest = bucket;
+        } else {
+            higher.lower = bucket;
+        }
+        return bucket;
+    }
+
+    private void unlink(Bucket bucket) {
+        if (bucket.lower == null) {
+            this.lowest = bucket.higher;
+        } else {
+            bucket.lower.higher = bucket.higher;
+        }
+        if (bucket.higher == null) {
+            this.highest = bucket.lower;
+        } else {
+            bucket.higher.lower = bucket.lower;
+        }
+    }
+
+    private void orderChanged() {
+        if (!this.formatted.isEmpty()) {
+            this.formatted = new ConcurrentHashMap<>();
+        }
+    }
+}
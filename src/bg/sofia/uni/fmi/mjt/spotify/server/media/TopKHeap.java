@@ -0,0 +1,93 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+// keeps the k best scored ids seen so far, in primitive arrays - the worst of them is at the root,
+// so that every new id is compared with it only
+class TopKHeap {
+
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    TopKHeap(int capacity) {
+        this.ids = new int[capacity];
+        this.scores = new double[capacity];
+        this.size = 0;
+    }
+
+    void offer(int id, double score) {
+        if (this.ids.length == 0) {
+            return;
+        }
+        if (this.size < this.ids.length) {
+            this.ids[this.size] = id;
+            this.scores[this.size] = score;
+            siftUp(this.size++);
+        } else if (isWorse(this.ids[0], this.scores[0], id, score)) {
+            this.ids[0] = id;
+            this.scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    // the ids from the best to the worst - the heap is empty afterwards
+    int[] drain() {
+        int[] result = new int[this.size];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = this.ids[0];
+            this.size--;
+            this.ids[0] = this.ids[this.size];
+            this.scores[0] = this.scores[this.size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    // equal scores are ordered by id, so that the same query always gives the same order
+    private static boolean isWorse(int id, double score, int otherId, double otherScore) {
+        return score < otherScore || (score == otherScore && id > otherId);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isWorse(this.ids[index], this.scores[index], this.ids[parent], this.scores[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < this.size && isWorse(this.ids[left], this.scores[left], this.ids[worst], this.scores[worst])) {
+                worst = left;
+            }
+            if (right < this.size
+                    && isWorse(this.ids[right], this.scores[right], this.ids[worst], this.scores[worst])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        int id = this.ids[first];
+        this.ids[first] = this.ids[second];
+        this.ids[second] = id;
+        double score = this.scores[first];
+        this.scores[first] = this.scores[second];
+        this.scores[second] = score;
+    }
+}
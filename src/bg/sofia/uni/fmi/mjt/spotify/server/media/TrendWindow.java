@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import java.util.concurrent.TimeUnit;
+
+// how far back a trending chart looks - a play leaves the window a slot at a time
+public enum TrendWindow {
+    HOUR(60, TimeUnit.MINUTES.toMillis(1)),
+    DAY(48, TimeUnit.MINUTES.toMillis(30)),
+    WEEK(56, TimeUnit.HOURS.toMillis(3));
+
+    private final int slots;
+    private final long slotMillis;
+
+    TrendWindow(int slots, long slotMillis) {
+        this.slots = slots;
+        this.slotMillis = slotMillis;
+    }
+
+    public int getSlots() {
+        return this.slots;
+    }
+
+    public long getSlotMillis() {
+        return this.slotMillis;
+    }
+}
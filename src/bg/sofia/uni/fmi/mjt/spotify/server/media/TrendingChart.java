@@ -0,0 +1,126 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// the songs played the most lately - every window counts the plays in a sketch, and keeps the few songs,
+// that are played enough to be in its chart, so a chart never looks through the whole catalog
+// a play takes no lock, only the rare pruning of the candidates does, and it never waits for one
+public class TrendingChart {
+
+    // the longest chart - the songs below it are not tracked
+    public static final int MAX_CANDIDATES = 1024;
+    // the candidates are pruned in batches, not on every play
+    private static final int PRUNE_SLACK = MAX_CANDIDATES / 4;
+
+    private static final class Window {
+        private final SlidingCountMinSketch sketch;
+        private final Set<Song> candidates;
+        private final Lock pruning;
+        // the plays of the last candidate at the last pruning - a song needs more to become one
+        private volatile long threshold;
+
+        private Window(TrendWindow window, long now) {
+            this.sketch = new SlidingCountMinSketch(window.getSlots(), window.getSlotMillis(), now);
+            this.candidates = ConcurrentHashMap.newKeySet();
+            this.pruning = new ReentrantLock();
+            this.threshold = 0;
+        }
+    }
+
+    private static final class Ranked {
+        private final Song song;
+        private final long plays;
+
+        private Ranked(Song song, long plays) {
+            this.song = song;
+            this.plays = plays;
+        }
+    }
+
+    private final LongSupplier clock;
+    private final Map<TrendWindow, Window> windows;
+
+    public TrendingChart() {
+        this(System::currentTimeMillis);
+    }
+
+    public TrendingChart(LongSupplier clock) {
+        this.clock = clock;
+        this.windows = new EnumMap<>(TrendWindow.class);
+        long now = clock.getAsLong();
+        for (TrendWindow window : TrendWindow.values()) {
+            this.windows.put(window, new Window(window, now));
+        }
+    }
+
+    public void played(Song song) {
+        long now = this.clock.getAsLong();
+        for (Window window : this.windows.values()) {
+            window.sketch.add(song, now);
+            if (window.candidates.contains(song)) {
+                continue;
+            }
+            if (window.candidates.size() < MAX_CANDIDATES || window.sketch.estimate(song, now) > window.threshold) {
+                window.candidates.add(song);
+                if (window.candidates.size() > MAX_CANDIDATES + PRUNE_SLACK) {
+                    prune(window, now);
+                }
+            }
+        }
+    }
+
+    public void remove(Song song) {
+        this.windows.values().forEach(window -> window.candidates.remove(song));
+    }
+
+    // the songs played the most in the window, the most played first - no more than MAX_CANDIDATES
+    public List<Song> top(int numberOfSongs, TrendWindow window) {
+        List<Song> result = new ArrayList<>();
+        for (Ranked ranked : rank(this.windows.get(window), this.clock.getAsLong())) {
+            if (result.size() >= numberOfSongs || ranked.plays == 0) {
+                break;
+            }
+            result.add(ranked.song);
+        }
+        return result;
+    }
+
+    private void prune(Window window, long now) {
+        // another thread is already pruning
+        if (!window.pruning.tryLock()) {
+            return;
+        }
+        try {
+            List<Ranked> ranked = rank(window, now);
+            for (int i = 0; i < ranked.size(); i++) {
+                if (i >= MAX_CANDIDATES || ranked.get(i).plays == 0) {
+                    window.candidates.remove(ranked.get(i).song);
+                }
+            }
+            window.threshold = ranked.size() < MAX_CANDIDATES ? 0 : ranked.get(MAX_CANDIDATES - 1).plays;
+        } finally {
+            window.pruning.unlock();
+        }
+    }
+
+    private static List<Ranked> rank(Window window, long now) {
+        List<Ranked> ranked = new ArrayList<>();
+        for (Song song : window.candidates) {
+            ranked.add(new Ranked(song, window.sketch.estimate(song, now)));
+        }
+        ranked.sort(Comparator.comparingLong((Ranked r) -> r.plays).reversed()
+                .thenComparing(r -> r.song.getName()));
+        return ranked;
+    }
+}
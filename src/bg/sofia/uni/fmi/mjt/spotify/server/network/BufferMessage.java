@@ -0,0 +1,30 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+public class BufferMessage implements OutboundMessage {
+
+    private ByteBuffer buffer;
+
+    public BufferMessage(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // messages are reused, so that streaming doesn't create garbage
+    public BufferMessage reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        return this;
+    }
+
+    @Override
+    public long remaining() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return channel.write(this.buffer);
+    }
+}
@@ -0,0 +1,226 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// everything the server exchanges with a single client - command responses and audio share one socket,
+// so the messages are queued and written in order, by whichever thread gets to the socket first
+// a connection is either registered with a selector, or has a blocking channel and a thread of its own -
+// then a write simply waits for the client, and the reading is held back by the thread itself
+public class ClientConnection {
+
+    // a client, that sends commands faster than it reads the responses, is not read from until it catches up
+    private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+    // the same goes for commands, that wait to be executed
+    private static final int MAX_COMMANDS_IN_FLIGHT = 64;
+    // a client only ever sends text commands, so a larger frame is a broken or hostile client,
+    // and the connection is closed instead of growing the buffer for it
+    private static final int MAX_COMMAND_SIZE = 4 * 1024;
+    private static final int INBOUND_CAPACITY = 1024;
+
+    // null for a blocking connection
+    private final SelectionKey key;
+    private final ByteChannel channel;
+    // commands may arrive split across reads or several in one read, so they are collected here first
+    private final FrameDecoder inbound;
+    private final Queue<OutboundMessage> outbound;
+    private final long maxQueuedBytes;
+    private long queuedBytes;
+    private int commandsInFlight;
+    private boolean readingPaused;
+    private boolean closeAfterFlush;
+    // the session of the client, and what has to happen once the connection is closed - null without a session
+    private volatile Session session;
+    private volatile Runnable closeListener;
+    private final AtomicBoolean closed;
+
+    public ClientConnection(SelectionKey key) {
+        this(key, MAX_QUEUED_BYTES);
+    }
+
+    public ClientConnection(SelectionKey key, long maxQueuedBytes) {
+        this(key, (ByteChannel) key.channel(), maxQueuedBytes);
+    }
+
+    public ClientConnection(SocketChannel channel) {
+        this(null, channel, MAX_QUEUED_BYTES);
+    }
+
+    private ClientConnection(SelectionKey key, ByteChannel channel, long maxQueuedBytes) {
+        this.key = key;
+        this.channel = channel;
+        this.inbound = new FrameDecoder(INBOUND_CAPACITY, MAX_COMMAND_SIZE);
+        this.outbound = new ArrayDeque<>();
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.queuedBytes = 0;
+        this.commandsInFlight = 0;
+        this.readingPaused = false;
+        this.closeAfterFlush = false;
+        this.closed = new AtomicBoolean(false);
+    }
+
+    // the connection of a client is attached to its key, when the client connects
+    public static ClientConnection of(SelectionKey key) {
+        return key.attachment() instanceof ClientConnection connection ? connection : null;
+    }
+
+    public SelectionKey getKey() {
+        return this.key;
+    }
+
+    public Session getSession() {
+        return this.session;
+    }
+
+    public void attach(Session session, Runnable closeListener) {
+        this.session = session;
+        this.closeListener = closeListener;
+    }
+
+    // only the selector thread reads, so the inbound side needs no locking
+    public int read() throws IOException {
+        touch();
+        return this.inbound.readFrom((ReadableByteChannel) this.channel);
+    }
+
+    // every way of closing a connection ends here, so that the listener hears of it exactly once
+    // whatever is still queued is dropped, so that a stream, that waits for its writes, sees it is over
+    public void close() throws IOException {
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.channel.close();
+        } finally {
+            synchronized (this) {
+                this.outbound.clear();
+                this.queuedBytes = 0;
+            }
+            Runnable listener = this.closeListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return this.closed.get();
+    }
+
+    // the next whole frame, that has been read, or null if more data is needed
+    public Frame nextFrame() throws ProtocolException {
+        return this.inbound.next();
+    }
+
+    public void send(Frame frame) throws IOException {
+        send(new BufferMessage(FrameCodec.encode(frame)));
+    }
+
+    // the messages are queued together, so that nothing can get between them
+    public synchronized void send(OutboundMessage... messages) throws IOException {
+        if (isClosed()) {
+            throw new ClosedChannelException();
+        }
+        for (OutboundMessage message : messages) {
+            this.outbound.add(message);
+            this.queuedBytes += message.remaining();
+        }
+        flush();
+        updateReading();
+    }
+
+    // a command has been read and waits for its turn to be executed
+    public synchronized void commandQueued() {
+        this.commandsInFlight++;
+        updateReading();
+    }
+
+    public synchronized void commandCompleted() {
+        this.commandsInFlight--;
+        updateReading();
+    }
+
+    public synchronized boolean hasPendingWrites() {
+        return !this.outbound.isEmpty();
+    }
+
+    public synchronized long getQueuedBytes() {
+        return this.queuedBytes;
+    }
+
+    // called by the selector thread, when the channel is ready for writing again
+    public synchronized void onWritable() throws IOException {
+        if (this.key == null) {
+            return;
+        }
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+        flush();
+        updateReading();
+    }
+
+    // the channel is closed once everything queued so far reaches the client
+    public synchronized void closeAfterFlush() throws IOException {
+        this.closeAfterFlush = true;
+        flush();
+    }
+
+    private void flush() throws IOException {
+        while (!this.outbound.isEmpty()) {
+            OutboundMessage message = this.outbound.peek();
+            long written = message.writeTo((WritableByteChannel) this.channel);
+            this.queuedBytes -= written;
+            if (written > 0) {
+                touch();
+            }
+            if (message.remaining() > 0 && this.key == null) {
+                // a blocking channel takes everything, though a transfer from a file may need several writes
+                continue;
+            }
+            if (message.remaining() > 0) {
+                // the socket is full - the selector will tell us when the client has caught up
+                this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+                this.key.selector().wakeup();
+                return;
+            }
+            this.outbound.remove();
+        }
+        if (this.closeAfterFlush) {
+            close();
+        }
+    }
+
+    private void touch() {
+        Session current = this.session;
+        if (current != null) {
+            current.touch();
+        }
+    }
+
+    private void updateReading() {
+        boolean pause = this.queuedBytes > this.maxQueuedBytes || this.commandsInFlight > MAX_COMMANDS_IN_FLIGHT;
+        if (this.key == null || pause == this.readingPaused || !this.key.isValid()) {
+            return;
+        }
+        this.readingPaused = pause;
+        if (pause) {
+            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+        } else {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_READ);
+            this.key.selector().wakeup();
+        }
+    }
+}
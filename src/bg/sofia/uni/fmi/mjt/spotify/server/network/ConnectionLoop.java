@@ -0,0 +1,59 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.SessionManager;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+// the whole life of a client, that has a thread of its own - it blocks on the socket until a command arrives,
+// and the handler executes it right away, so the client cannot send more than its thread keeps up with
+public class ConnectionLoop implements Runnable {
+
+    private final SocketChannel channel;
+    private final FrameHandler handler;
+    private final SessionManager sessions;
+    private final SpotifyLogger logger;
+
+    public ConnectionLoop(SocketChannel channel, FrameHandler handler, SessionManager sessions,
+                          SpotifyLogger logger) {
+        this.channel = channel;
+        this.handler = handler;
+        this.sessions = sessions;
+        this.logger = logger;
+    }
+
+    @Override
+    public void run() {
+        ClientConnection connection = new ClientConnection(this.channel);
+        if (this.sessions != null) {
+            this.sessions.open(connection);
+        }
+        try {
+            while (!connection.isClosed() && connection.read() != -1) {
+                Frame frame;
+                while ((frame = connection.nextFrame()) != null) {
+                    this.handler.handle(connection, frame);
+                }
+            }
+        } catch (IOException e) {
+            // the client has disconnected, does not speak the protocol, or the server is shutting down
+            if (!connection.isClosed()) {
+                log(e);
+            }
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                log(e);
+            }
+        }
+    }
+
+    private void log(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the threads of the clients, that are served a thread each - virtual threads where the JVM has them,
+// so that a blocked client costs a few kilobytes of heap instead of a whole stack
+// they are looked up by reflection, as the server is built for Java 17 - there the threads are platform ones,
+// with a stack just big enough for a command, which keeps their memory down, but not their scheduling
+public final class ConnectionThreads {
+
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private ConnectionThreads() {
+    }
+
+    public static ThreadFactory newFactory(String prefix) {
+        ThreadFactory virtualThreads = virtualThreadFactory(prefix);
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        AtomicLong threadCounter = new AtomicLong(0);
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, prefix + threadCounter.getAndIncrement(), PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static boolean areVirtual() {
+        return virtualThreadFactory("probe-") != null;
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory(), or null if there are no virtual threads
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // a preview feature, that has not been enabled
+            return null;
+        }
+    }
+}
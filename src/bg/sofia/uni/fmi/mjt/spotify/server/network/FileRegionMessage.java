@@ -0,0 +1,35 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// a range of a file, that the kernel copies straight into the socket
+public class FileRegionMessage implements OutboundMessage {
+
+    private final FileChannel file;
+    private long position;
+    private long end;
+
+    public FileRegionMessage(FileChannel file) {
+        this.file = file;
+    }
+
+    public FileRegionMessage reset(long position, long count) {
+        this.position = position;
+        this.end = position + count;
+        return this;
+    }
+
+    @Override
+    public long remaining() {
+        return this.end - this.position;
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        long written = this.file.transferTo(this.position, remaining(), channel);
+        this.position += written;
+        return written;
+    }
+}
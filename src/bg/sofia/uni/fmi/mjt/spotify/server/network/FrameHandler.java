@@ -0,0 +1,10 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+
+@FunctionalInterface
+public interface FrameHandler {
+
+    // called by the thread, that reads the connection - a reactor serves many clients, so then it must not block
+    void handle(ClientConnection connection, Frame frame);
+}
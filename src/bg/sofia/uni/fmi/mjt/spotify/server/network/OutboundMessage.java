@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+// something on its way to a client - it remembers how much of it is already written
+public interface OutboundMessage {
+
+    long remaining();
+
+    // writes as much as the channel takes without blocking
+    long writeTo(WritableByteChannel channel) throws IOException;
+}
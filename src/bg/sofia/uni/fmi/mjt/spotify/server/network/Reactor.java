@@ -0,0 +1,182 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.SessionManager;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// a selector thread, that does all reading and writing for its share of the clients
+public class Reactor implements Runnable {
+
+    private final int id;
+    private final FrameHandler handler;
+    private final SpotifyLogger logger;
+    // opens a session for every client, that connects - null if the clients need no sessions
+    private final SessionManager sessions;
+    private final Selector selector;
+    // a channel can be registered only by the thread, that selects, so the acceptor hands them over
+    private final Queue<SocketChannel> pendingRegistrations;
+    private volatile boolean isOperating;
+    private Thread thread;
+
+    public Reactor(int id, FrameHandler handler, SpotifyLogger logger) throws IOException {
+        this(id, handler, null, logger);
+    }
+
+    public Reactor(int id, FrameHandler handler, SessionManager sessions, SpotifyLogger logger) throws IOException {
+        this.id = id;
+        this.handler = handler;
+        this.sessions = sessions;
+        this.logger = logger;
+        this.selector = Selector.open();
+        this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+        this.isOperating = false;
+    }
+
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+        this.isOperating = true;
+        this.thread = new Thread(this, "reactor-" + this.id);
+        this.thread.start();
+    }
+
+    public void register(SocketChannel channel) {
+        this.pendingRegistrations.add(channel);
+        this.selector.wakeup();
+    }
+
+    public int getConnections() {
+        return this.selector.keys().size();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.isOperating) {
+                this.selector.select();
+                registerPending();
+
+                Iterator<SelectionKey> selectionKeyIterator = this.selector.selectedKeys().iterator();
+                while (selectionKeyIterator.hasNext()) {
+                    SelectionKey key = selectionKeyIterator.next();
+                    selectionKeyIterator.remove();
+                    ClientConnection connection = ClientConnection.of(key);
+                    if (connection == null) {
+                        continue;
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        // the socket has room again for the responses and audio queued for the client
+                        flush(connection);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log(e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = this.pendingRegistrations.poll()) != null) {
+            try {
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                ClientConnection connection = new ClientConnection(key);
+                key.attach(connection);
+                if (this.sessions != null) {
+                    this.sessions.open(connection);
+                }
+            } catch (IOException e) {
+                log(e);
+            }
+        }
+    }
+
+    private void read(ClientConnection connection) {
+        try {
+            if (connection.read() == -1) {
+                close(connection);
+                return;
+            }
+            // a read may bring a part of a command, or several commands at once
+            Frame frame;
+            while ((frame = connection.nextFrame()) != null) {
+                this.handler.handle(connection, frame);
+            }
+        } catch (IOException e) {
+            // the client has disconnected or does not speak the protocol
+            log(e);
+            close(connection);
+        }
+    }
+
+    private void flush(ClientConnection connection) {
+        try {
+            connection.onWritable();
+        } catch (IOException e) {
+            // the client has disconnected, its stream will notice on its own
+            log(e);
+            close(connection);
+        }
+    }
+
+    // through the connection, so that the session of the client is closed along with it
+    private void close(ClientConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log(e);
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : this.selector.keys()) {
+            ClientConnection connection = ClientConnection.of(key);
+            try {
+                if (connection != null) {
+                    connection.close();
+                } else {
+                    key.channel().close();
+                }
+            } catch (IOException e) {
+                log(e);
+            }
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            log(e);
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        Thread reactorThread;
+        synchronized (this) {
+            this.isOperating = false;
+            reactorThread = this.thread;
+        }
+        this.selector.wakeup();
+        if (reactorThread != null) {
+            reactorThread.join();
+        }
+    }
+
+    private void log(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
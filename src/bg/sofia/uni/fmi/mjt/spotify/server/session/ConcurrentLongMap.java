@@ -0,0 +1,96 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a LongHashMap for many threads - the keys are spread over stripes, each one a map with a lock of its own,
+// so that the threads only wait for each other when their keys fall into the same stripe
+public class ConcurrentLongMap<V> {
+
+    private static final int STRIPES = 16;
+    // the stripe is taken from the top bits of the hash, the slot within the stripe from the bottom ones
+    private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+    private final LongHashMap<V>[] stripes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLongMap() {
+        this.stripes = new LongHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new LongHashMap<>();
+        }
+    }
+
+    public V get(long key) {
+        LongHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        LongHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    public V putIfAbsent(long key, V value) {
+        LongHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.putIfAbsent(key, value);
+        }
+    }
+
+    public V remove(long key) {
+        LongHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    public boolean remove(long key, V value) {
+        LongHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key, value);
+        }
+    }
+
+    // the sum of the stripes, each one counted at a slightly different moment
+    public int size() {
+        int size = 0;
+        for (LongHashMap<V> stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    // a copy, taken one stripe at a time
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (LongHashMap<V> stripe : this.stripes) {
+            synchronized (stripe) {
+                values.addAll(stripe.values());
+            }
+        }
+        return values;
+    }
+
+    public void clear() {
+        for (LongHashMap<V> stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private LongHashMap<V> stripe(long key) {
+        return this.stripes[LongHashMap.hash(key) >>> STRIPE_SHIFT];
+    }
+}
@@ -0,0 +1,148 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the open sessions by id, and the clients that have gone quiet for too long
+// a session is put on a timer wheel for the whole timeout when it opens, and the activity in between
+// only updates its time - when the timeout comes up, the session either is closed, or goes back on the wheel
+// for what is left of the timeout since it was last active, so no activity ever has to touch the wheel
+public class DefaultSessionManager implements SessionManager {
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long DEFAULT_TICK_MILLIS = 1_000;
+    private static final int WHEEL_SLOTS = 512;
+
+    private final long idleTimeoutMillis;
+    private final SpotifyLogger logger;
+    private final ConcurrentLongMap<Session> sessions;
+    private final List<SessionListener> listeners;
+    // zero is the empty key of the maps, so the ids start from one
+    private final AtomicLong nextId;
+    private final TimerWheel wheel;
+    private final ScheduledExecutorService timer;
+
+    public DefaultSessionManager(SpotifyLogger logger) {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_TICK_MILLIS, logger);
+    }
+
+    public DefaultSessionManager(long idleTimeoutMillis, long tickMillis, SpotifyLogger logger) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("The idle timeout should be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.logger = logger;
+        this.sessions = new ConcurrentLongMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.nextId = new AtomicLong(0);
+        this.wheel = new TimerWheel(tickMillis, WHEEL_SLOTS, nowMillis());
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.scheduleAtFixedRate(this::expireIdleSessions, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Session open(ClientConnection connection) {
+        Session session = new Session(this.nextId.incrementAndGet(), connection);
+        this.sessions.put(session.getId(), session);
+        if (connection != null) {
+            connection.attach(session, () -> close(session.getId()));
+        }
+        this.wheel.schedule(session.getId(), this.idleTimeoutMillis);
+        return session;
+    }
+
+    @Override
+    public Session get(long id) {
+        return this.sessions.get(id);
+    }
+
+    @Override
+    public void close(long id) {
+        Session session = this.sessions.remove(id);
+        if (session == null) {
+            return;
+        }
+        // closing the connection calls back here, and finds the session gone already
+        ClientConnection connection = session.getConnection();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                log(e);
+            }
+        }
+        for (SessionListener listener : this.listeners) {
+            try {
+                listener.closed(session);
+            } catch (RuntimeException e) {
+                // one listener must not keep the others from cleaning up
+                log(e);
+            }
+        }
+    }
+
+    @Override
+    public void addCloseListener(SessionListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public int getOpenSessions() {
+        return this.sessions.size();
+    }
+
+    // a closed session stays on the wheel until its timeout comes up
+    int getScheduledTimeouts() {
+        return this.wheel.size();
+    }
+
+    @Override
+    public void shutdown() {
+        this.timer.shutdownNow();
+        for (Session session : this.sessions.values()) {
+            close(session.getId());
+        }
+    }
+
+    private void expireIdleSessions() {
+        try {
+            this.wheel.advance(nowMillis(), id -> {
+                Session session = this.sessions.get(id);
+                if (session == null) {
+                    return;
+                }
+                long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - session.getLastActivityNanos());
+                if (idleMillis >= this.idleTimeoutMillis) {
+                    close(id);
+                } else {
+                    this.wheel.schedule(id, this.idleTimeoutMillis - idleMillis);
+                }
+            });
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic task, and no session would ever time out again
+            log(e);
+        }
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void log(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
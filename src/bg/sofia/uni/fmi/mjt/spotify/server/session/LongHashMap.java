@@ -0,0 +1,207 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a map of long keys, kept in a plain array instead of boxed into entries - open addressing with linear probing,
+// and a removal shifts the keys after it back, so that no tombstones are left behind to slow down the lookups
+// the values can't be null, a null means that there is no value
+// not thread-safe, see ConcurrentLongMap
+public class LongHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // the probes stay short as long as at most half of the slots are taken
+    private static final int MAX_LOAD_PERCENT = 50;
+    // the key of an empty slot - a real zero key is kept apart from the table
+    private static final long EMPTY = 0;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private V zeroValue;
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashMap(int expectedSize) {
+        int slots = Math.max(DEFAULT_CAPACITY, expectedSize * 100 / MAX_LOAD_PERCENT);
+        // the next power of two, so that a slot is a mask away from the hash
+        int capacity = Integer.highestOneBit(slots - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public V get(long key) {
+        if (key == EMPTY) {
+            return this.zeroValue;
+        }
+        int slot = find(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    // returns the previous value, or null
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("The values of the map can't be null");
+        }
+        if (key == EMPTY) {
+            V previous = this.zeroValue;
+            this.zeroValue = value;
+            this.size += previous == null ? 1 : 0;
+            return previous;
+        }
+        int slot = slot(key);
+        while (this.keys[slot] != EMPTY) {
+            if (this.keys[slot] == key) {
+                V previous = value(slot);
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+        if (this.size * 100L > (long) this.keys.length * MAX_LOAD_PERCENT) {
+            resize();
+        }
+        return null;
+    }
+
+    // returns the value, that is already there, or null if the new one has been put
+    public V putIfAbsent(long key, V value) {
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+        put(key, value);
+        return null;
+    }
+
+    // returns the removed value, or null
+    public V remove(long key) {
+        if (key == EMPTY) {
+            V previous = this.zeroValue;
+            this.zeroValue = null;
+            this.size -= previous == null ? 0 : 1;
+            return previous;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = value(slot);
+        shiftBack(slot);
+        this.size--;
+        return previous;
+    }
+
+    // removes the key only if it still has that value
+    public boolean remove(long key, V value) {
+        V current = get(key);
+        if (current == null || !current.equals(value)) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    // a copy, so that the map can be changed while going through it
+    public List<V> values() {
+        List<V> result = new ArrayList<>(this.size);
+        if (this.zeroValue != null) {
+            result.add(this.zeroValue);
+        }
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != EMPTY) {
+                result.add(value(i));
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        this.keys = new long[DEFAULT_CAPACITY];
+        this.values = new Object[DEFAULT_CAPACITY];
+        this.mask = DEFAULT_CAPACITY - 1;
+        this.size = 0;
+        this.zeroValue = null;
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (this.keys[slot] != EMPTY) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    // the keys after the removed one, up to the first empty slot, move back if the hole is between them
+    // and their own slot - so that a lookup never stops at the hole before it reaches them
+    private void shiftBack(int removed) {
+        int hole = removed;
+        int next = (hole + 1) & this.mask;
+        while (this.keys[next] != EMPTY) {
+            int ideal = slot(this.keys[next]);
+            if (((next - ideal) & this.mask) >= ((next - hole) & this.mask)) {
+                this.keys[hole] = this.keys[next];
+                this.values[hole] = this.values[next];
+                hole = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[hole] = EMPTY;
+        this.values[hole] = null;
+    }
+
+    private void resize() {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new Object[oldValues.length * 2];
+        this.mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (this.keys[slot] != EMPTY) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // consecutive ids are spread over the whole table, instead of taking consecutive slots
+    static int hash(long key) {
+        return Long.hashCode(key * GOLDEN_RATIO);
+    }
+
+    private int slot(long key) {
+        return hash(key) & this.mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) this.values[slot];
+    }
+}
@@ -0,0 +1,59 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+
+// a client of the server, known by a compact id rather than by the selector registration of its socket -
+// the state of the services is kept by the id
+// a session lives as long as its connection - a client, that reconnects, gets a new session and logs in again
+// the connection is null for a session, that has no socket, such as in the tests
+public class Session {
+
+    private final long id;
+    private final ClientConnection connection;
+    private volatile long lastActivityNanos;
+
+    public Session(long id) {
+        this(id, null);
+    }
+
+    public Session(long id, ClientConnection connection) {
+        this.id = id;
+        this.connection = connection;
+        this.lastActivityNanos = System.nanoTime();
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public ClientConnection getConnection() {
+        return this.connection;
+    }
+
+    // anything the client sends or receives keeps its session from timing out
+    public void touch() {
+        this.lastActivityNanos = System.nanoTime();
+    }
+
+    public long getLastActivityNanos() {
+        return this.lastActivityNanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Session session = (Session) o;
+        return this.id == session.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.id);
+    }
+
+    @Override
+    public String toString() {
+        return "session " + this.id;
+    }
+}
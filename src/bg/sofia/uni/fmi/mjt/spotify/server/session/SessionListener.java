@@ -0,0 +1,8 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+@FunctionalInterface
+public interface SessionListener {
+
+    // called once per session, whether its socket was closed or it timed out
+    void closed(Session session);
+}
@@ -0,0 +1,20 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+
+public interface SessionManager {
+
+    Session open(ClientConnection connection);
+
+    // null if there is no such session, or it has been closed
+    Session get(long id);
+
+    // closes the connection of the session, if it has one, and tells the listeners
+    void close(long id);
+
+    void addCloseListener(SessionListener listener);
+
+    int getOpenSessions();
+
+    void shutdown();
+}
@@ -0,0 +1,90 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+// a hashed timing wheel - every timeout falls into the slot of the tick it expires on, and the wheel
+// turns one slot per tick; a timeout further away than a whole turn waits in its slot for as many turns
+// scheduling and expiring cost the same however many timeouts there are, unlike with a priority queue
+// the timeouts expire at most a tick late, which is plenty for timeouts of minutes
+public class TimerWheel {
+
+    // the id of whatever times out, and the turns of the wheel it still has to wait for
+    private static final class Timeout {
+        private final long id;
+        private long turns;
+
+        private Timeout(long id, long turns) {
+            this.id = id;
+            this.turns = turns;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<List<Timeout>> slots;
+    private final long startMillis;
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMillis, int numberOfSlots, long nowMillis) {
+        if (tickMillis <= 0 || numberOfSlots <= 0) {
+            throw new IllegalArgumentException("The wheel needs a positive tick and at least one slot");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(numberOfSlots);
+        for (int i = 0; i < numberOfSlots; i++) {
+            this.slots.add(new ArrayList<>());
+        }
+        this.startMillis = nowMillis;
+        this.currentTick = 0;
+        this.size = 0;
+    }
+
+    // the id expires on the first tick at least the delay away
+    public synchronized void schedule(long id, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + this.tickMillis - 1) / this.tickMillis);
+        long deadline = this.currentTick + ticks;
+        this.slots.get((int) (deadline % this.slots.size())).add(new Timeout(id, (ticks - 1) / this.slots.size()));
+        this.size++;
+    }
+
+    // turns the wheel up to now and hands over the ids, that have expired on the way
+    // they are handed over once the wheel is unlocked, so that they can be scheduled again right away
+    public void advance(long nowMillis, LongConsumer expired) {
+        List<Long> expiredIds = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = (nowMillis - this.startMillis) / this.tickMillis;
+            while (this.currentTick < targetTick) {
+                this.currentTick++;
+                expireSlot(this.slots.get((int) (this.currentTick % this.slots.size())), expiredIds);
+            }
+        }
+        for (long id : expiredIds) {
+            expired.accept(id);
+        }
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    private void expireSlot(List<Timeout> slot, List<Long> expiredIds) {
+        int i = 0;
+        while (i < slot.size()) {
+            Timeout timeout = slot.get(i);
+            if (timeout.turns > 0) {
+                timeout.turns--;
+                i++;
+                continue;
+            }
+            expiredIds.add(timeout.id);
+            // the order within a slot doesn't matter, so the last timeout takes the place of the expired one
+            Timeout last = slot.remove(slot.size() - 1);
+            if (i < slot.size()) {
+                slot.set(i, last);
+            }
+            this.size--;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// a file is written next to the one it replaces, forced to the disk, and only then renamed over it -
+// a crash in the middle of the writing leaves the old file as it was, never a half-written one
+// the rename itself is in the directory, so the directory is forced too, before anything, that counts on
+// the new file - such as deleting the journal it replaces - is done
+public final class AtomicFiles {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    public interface ContentWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    public interface BinaryContentWriter {
+        void write(OutputStream stream) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    public static void write(Path path, ContentWriter content) throws IOException {
+        writeBinary(path, stream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            content.write(writer);
+            writer.flush();
+        });
+    }
+
+    public static void writeBinary(Path path, BinaryContentWriter content) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                content.write(stream);
+                stream.flush();
+                channel.force(true);
+            }
+            replace(temporary, path);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // renames a file, that is already on the disk, over another one, and forces the rename to the disk
+    public static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // the file system can't rename atomically, the file is at least complete on the disk
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    public static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // some systems, such as Windows, can't open a directory, nor do they need it forced
+        }
+    }
+}
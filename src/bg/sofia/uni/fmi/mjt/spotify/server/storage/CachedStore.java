@@ -0,0 +1,130 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the values used most recently, in front of a store on the disk - at most a fixed number of them,
+// so that the memory the store takes doesn't grow with the data
+// every write goes through to the store, so dropping a value from the cache never loses anything
+public class CachedStore implements KeyValueStore {
+
+    private final KeyValueStore store;
+    // in the order of access, the least recently used first
+    private final Map<String, String> cache;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    // counts the writes, so that a value read from the store before a write is never cached after it
+    private long writes;
+
+    public CachedStore(KeyValueStore store, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The cache should have room for at least one value");
+        }
+        this.store = store;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        long writesBefore;
+        synchronized (this.cache) {
+            String value = this.cache.get(key);
+            if (value != null) {
+                this.hits.incrementAndGet();
+                return value;
+            }
+            writesBefore = this.writes;
+        }
+        // read outside of the lock, so that the misses don't wait for each other
+        this.misses.incrementAndGet();
+        String value = this.store.get(key);
+        if (value != null) {
+            synchronized (this.cache) {
+                if (this.writes == writesBefore) {
+                    this.cache.put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return this.store.contains(key);
+    }
+
+    @Override
+    public void put(String key, String value) throws IOException {
+        synchronized (this.cache) {
+            this.store.put(key, value);
+            this.cache.put(key, value);
+            this.writes++;
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value) throws IOException {
+        synchronized (this.cache) {
+            if (!this.store.putIfAbsent(key, value)) {
+                return false;
+            }
+            this.cache.put(key, value);
+            this.writes++;
+            return true;
+        }
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        synchronized (this.cache) {
+            this.store.remove(key);
+            this.cache.remove(key);
+            this.writes++;
+        }
+    }
+
+    @Override
+    public Set<String> keys() {
+        return this.store.keys();
+    }
+
+    @Override
+    public int size() {
+        return this.store.size();
+    }
+
+    // straight from the store, so that going through every value doesn't push the used ones out of the cache
+    @Override
+    public void forEach(EntryConsumer consumer) throws IOException {
+        this.store.forEach(consumer);
+    }
+
+    public int getCachedValues() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.store.close();
+    }
+}
@@ -0,0 +1,63 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the whole data on the heap, for the services that load it from their own files and write snapshots of it
+public class InMemoryStore implements KeyValueStore {
+
+    private final Map<String, String> entries;
+
+    public InMemoryStore() {
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public String get(String key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return this.entries.containsKey(key);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        this.entries.put(key, value);
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value) {
+        return this.entries.putIfAbsent(key, value) == null;
+    }
+
+    @Override
+    public void remove(String key) {
+        this.entries.remove(key);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) throws IOException {
+        for (Map.Entry<String, String> entry : this.entries.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
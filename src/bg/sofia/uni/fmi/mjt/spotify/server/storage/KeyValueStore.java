@@ -0,0 +1,36 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import java.io.IOException;
+import java.util.Set;
+
+// where the services keep the data, that doesn't have to be in memory all the time -
+// a value is read when it is asked for, so the data can be larger than the heap
+public interface KeyValueStore extends AutoCloseable {
+
+    interface EntryConsumer {
+        void accept(String key, String value) throws IOException;
+    }
+
+    // null if there is no such key
+    String get(String key) throws IOException;
+
+    boolean contains(String key);
+
+    void put(String key, String value) throws IOException;
+
+    // returns false and changes nothing, if the key has a value already
+    boolean putIfAbsent(String key, String value) throws IOException;
+
+    void remove(String key) throws IOException;
+
+    // every key, in no particular order
+    Set<String> keys();
+
+    int size();
+
+    // every entry, in no particular order - the values are read one at a time
+    void forEach(EntryConsumer consumer) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,307 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+// an embedded store in the style of Bitcask - every change is appended to a single data file,
+// and only the keys are kept in memory, each with the place of its latest value in the file
+// a read is a single positional read, a write is a single append, and the space taken by the old values
+// is given back by compaction, which copies the live values into a new file and renames it over the old one
+public class LogStructuredStore implements KeyValueStore {
+
+    // crc, key length, value length - a value length of -1 marks a removed key
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int TOMBSTONE = -1;
+    // compaction pays off once the file is mostly old values, and is at least this large
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static final String COMPACTION_SUFFIX = ".compacting";
+
+    // where the latest value of a key starts in the file, and its length in bytes
+    private static final class Location {
+        private final long offset;
+        private final int length;
+
+        private Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Path path;
+    private final boolean syncEveryWrite;
+    private final Map<String, Location> keys;
+    // the reads share the file, the writes and the compaction have it to themselves
+    private final ReadWriteLock lock;
+    private FileChannel channel;
+    private long end;
+    private long deadBytes;
+
+    public LogStructuredStore(Path path) throws IOException {
+        this(path, true);
+    }
+
+    // without a sync on every write, a crash may lose the last writes, but never damages the older ones
+    public LogStructuredStore(Path path, boolean syncEveryWrite) throws IOException {
+        this.path = path;
+        this.syncEveryWrite = syncEveryWrite;
+        this.keys = new ConcurrentHashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        recover();
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            Location location = this.keys.get(key);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer value = ByteBuffer.allocate(location.length);
+            readFully(value, location.offset);
+            return new String(value.array(), StandardCharsets.UTF_8);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return this.keys.containsKey(key);
+    }
+
+    @Override
+    public void put(String key, String value) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            append(key, value);
+            compactIfWorthIt();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.keys.containsKey(key)) {
+                return false;
+            }
+            append(key, value);
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.keys.containsKey(key)) {
+                append(key, null);
+                compactIfWorthIt();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(this.keys.keySet());
+    }
+
+    @Override
+    public int size() {
+        return this.keys.size();
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) throws IOException {
+        for (String key : this.keys.keySet()) {
+            String value = get(key);
+            if (value != null) {
+                consumer.accept(key, value);
+            }
+        }
+    }
+
+    // the size of the data file
+    public long getFileSize() {
+        this.lock.readLock().lock();
+        try {
+            return this.end;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // copies the live values into a new file, which then replaces the old one
+    public void compact() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            Path compacted = this.path.resolveSibling(this.path.getFileName() + COMPACTION_SUFFIX);
+            Map<String, Location> newKeys = new ConcurrentHashMap<>();
+            long newEnd = 0;
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Location> entry : this.keys.entrySet()) {
+                    ByteBuffer value = ByteBuffer.allocate(entry.getValue().length);
+                    readFully(value, entry.getValue().offset);
+                    ByteBuffer record = encode(entry.getKey(), value.array());
+                    int recordSize = record.remaining();
+                    writeFully(target, record, newEnd);
+                    newKeys.put(entry.getKey(), new Location(newEnd + recordSize - value.capacity(),
+                            value.capacity()));
+                    newEnd += recordSize;
+                }
+                target.force(true);
+            }
+            this.channel.close();
+            AtomicFiles.replace(compacted, this.path);
+            this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.keys.clear();
+            this.keys.putAll(newKeys);
+            this.end = newEnd;
+            this.deadBytes = 0;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            this.channel.close();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // the keys are read back from the file - a record cut by a crash ends it, and is cut off
+    private void recover() throws IOException {
+        long size = this.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int checksum = header.getInt();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            int bodyLength = keyLength + Math.max(valueLength, 0);
+            if (keyLength < 0 || valueLength < TOMBSTONE || bodyLength < 0
+                    || position + HEADER_SIZE + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(body, position + HEADER_SIZE);
+            if (checksum(keyLength, valueLength, body.array()) != checksum) {
+                break;
+            }
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+            long recordSize = HEADER_SIZE + bodyLength;
+            Location old = valueLength == TOMBSTONE ? this.keys.remove(key)
+                    : this.keys.put(key, new Location(position + HEADER_SIZE + keyLength, valueLength));
+            this.deadBytes += old == null ? 0 : HEADER_SIZE + keyLength + old.length;
+            if (valueLength == TOMBSTONE) {
+                this.deadBytes += recordSize;
+            }
+            position += recordSize;
+        }
+        if (position < size) {
+            this.channel.truncate(position);
+        }
+        this.end = position;
+    }
+
+    private void append(String key, String value) throws IOException {
+        byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = encode(key, valueBytes);
+        int recordSize = record.remaining();
+        writeFully(this.channel, record, this.end);
+        if (this.syncEveryWrite) {
+            this.channel.force(false);
+        }
+        int keyLength = recordSize - HEADER_SIZE - (valueBytes == null ? 0 : valueBytes.length);
+        Location old;
+        if (valueBytes == null) {
+            old = this.keys.remove(key);
+            this.deadBytes += recordSize;
+        } else {
+            old = this.keys.put(key, new Location(this.end + HEADER_SIZE + keyLength, valueBytes.length));
+        }
+        this.deadBytes += old == null ? 0 : HEADER_SIZE + keyLength + old.length;
+        this.end += recordSize;
+    }
+
+    private void compactIfWorthIt() throws IOException {
+        if (this.end >= MIN_COMPACTION_BYTES && this.deadBytes * 2 > this.end) {
+            compact();
+        }
+    }
+
+    private static ByteBuffer encode(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        byte[] body = new byte[keyBytes.length + Math.max(valueLength, 0)];
+        System.arraycopy(keyBytes, 0, body, 0, keyBytes.length);
+        if (value != null) {
+            System.arraycopy(value, 0, body, keyBytes.length, value.length);
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        record.putInt(checksum(keyBytes.length, valueLength, body))
+                .putInt(keyBytes.length)
+                .putInt(valueLength)
+                .put(body)
+                .flip();
+        return record;
+    }
+
+    private static int checksum(int keyLength, int valueLength, byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(keyLength).putInt(valueLength).flip());
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("The data file " + this.path + " ends before the record it points to");
+            }
+            offset += read;
+        }
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += target.write(buffer, offset);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// writes the snapshots of a service on a thread of its own, so that no request waits for the disk
+// the requests are coalesced - however many arrive, a snapshot starts at most once per interval,
+// and the requests that arrive while it is written are served by the next one
+public class SnapshotWriter implements AutoCloseable {
+
+    private final Runnable snapshot;
+    private final long intervalNanos;
+    private final SpotifyLogger logger;
+    private final ScheduledExecutorService executor;
+    // a request has arrived since the last snapshot started
+    private final AtomicBoolean requested;
+    // a snapshot is waiting for its turn
+    private final AtomicBoolean scheduled;
+    private final AtomicLong requests;
+    private final AtomicLong snapshots;
+    private volatile long lastSnapshot;
+
+    public SnapshotWriter(String name, Runnable snapshot, long intervalMillis, SpotifyLogger logger) {
+        this.snapshot = snapshot;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.requested = new AtomicBoolean(false);
+        this.scheduled = new AtomicBoolean(false);
+        this.requests = new AtomicLong(0);
+        this.snapshots = new AtomicLong(0);
+        this.lastSnapshot = System.nanoTime() - this.intervalNanos;
+    }
+
+    // returns at once, the snapshot is written within an interval
+    public void request() {
+        this.requests.incrementAndGet();
+        this.requested.set(true);
+        if (this.executor.isShutdown() || !this.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = Math.max(0, this.lastSnapshot + this.intervalNanos - System.nanoTime());
+        this.executor.schedule(() -> {
+            this.scheduled.set(false);
+            writeIfRequested();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    // writes a requested snapshot right away and waits for it
+    public void flush() {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        try {
+            this.executor.submit(this::writeIfRequested).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logError(e);
+        }
+    }
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    public long getSnapshots() {
+        return this.snapshots.get();
+    }
+
+    // the last requested snapshot is written before the thread stops
+    @Override
+    public void close() {
+        flush();
+        this.executor.shutdown();
+    }
+
+    private void writeIfRequested() {
+        if (!this.requested.getAndSet(false)) {
+            return;
+        }
+        this.lastSnapshot = System.nanoTime();
+        try {
+            this.snapshot.run();
+        } catch (RuntimeException e) {
+            logError(e);
+        }
+        this.snapshots.incrementAndGet();
+    }
+
+    private void logError(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
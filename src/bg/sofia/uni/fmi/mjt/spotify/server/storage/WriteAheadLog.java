@@ -0,0 +1,286 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// an append-only log of changes, that a service replays on top of its last snapshot after a crash
+// every record is its length, a CRC32C of its bytes and the bytes, so a record cut by a crash is recognized
+// the records are written by a single thread, that forces them to the disk once for every batch it takes -
+// all the changes made while the disk was busy with the previous batch share a single fsync
+// the log is split into numbered segments, a snapshot makes the segments before it unnecessary
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_BATCH = 1024;
+    private static final int DEFAULT_RECORDS_PER_SNAPSHOT = 10_000;
+
+    // a record, a roll over to a new segment, or the end of the log
+    private static final class Pending {
+        private final ByteBuffer data;
+        private final boolean rollOver;
+        private final CompletableFuture<Long> done;
+
+        private Pending(ByteBuffer data, boolean rollOver) {
+            this.data = data;
+            this.rollOver = rollOver;
+            this.done = new CompletableFuture<>();
+        }
+    }
+
+    private static final Pending CLOSE = new Pending(null, false);
+
+    private final Path directory;
+    private final int recordsPerSnapshot;
+    private final Runnable snapshotNeeded;
+    private final SpotifyLogger logger;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final AtomicLong records;
+    private final AtomicLong syncs;
+    private volatile boolean closed;
+    private FileChannel channel;
+    // written by the writer only
+    private volatile long segment;
+    private long recordsInSegment;
+    private boolean snapshotRequested;
+
+    public WriteAheadLog(Path directory, SpotifyLogger logger) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SNAPSHOT, null, logger);
+    }
+
+    // snapshotNeeded is called by the writer once a segment has that many records - it must not wait for the log
+    public WriteAheadLog(Path directory, int recordsPerSnapshot, Runnable snapshotNeeded, SpotifyLogger logger)
+            throws IOException {
+        this.directory = directory;
+        this.recordsPerSnapshot = recordsPerSnapshot;
+        this.snapshotNeeded = snapshotNeeded;
+        this.logger = logger;
+        this.queue = new LinkedBlockingQueue<>();
+        this.records = new AtomicLong(0);
+        this.syncs = new AtomicLong(0);
+        Files.createDirectories(directory);
+        // a new segment on every start, so nothing is ever appended after a record cut by a crash
+        List<Long> segments = segments();
+        this.segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        this.channel = openSegment(this.segment);
+        this.writer = new Thread(this::writeLoop, "wal-writer-" + directory.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // every intact record of the earlier runs, oldest first - a damaged record ends the segment it is in
+    public void replay(Consumer<String> consumer) throws IOException {
+        for (long number : segments()) {
+            if (number >= this.segment) {
+                break;
+            }
+            replaySegment(segmentPath(number), consumer);
+        }
+    }
+
+    // completes with the number of the segment the record is in, once it is on the disk
+    public CompletableFuture<Long> append(String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_RECORD_SIZE) {
+            return CompletableFuture.failedFuture(new IOException("The record is too large for the log"));
+        }
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+        data.putInt(bytes.length).putInt(checksum(bytes)).put(bytes).flip();
+        return enqueue(new Pending(data, false));
+    }
+
+    // starts a new segment after every record appended so far, and completes with its number
+    // a snapshot of everything applied before the call makes the segments below that number unnecessary
+    public CompletableFuture<Long> rollOver() {
+        return enqueue(new Pending(null, true));
+    }
+
+    public void deleteSegmentsBefore(long number) throws IOException {
+        for (long old : segments()) {
+            if (old < number) {
+                Files.deleteIfExists(segmentPath(old));
+            }
+        }
+    }
+
+    // the segment the next record goes to
+    public long getSegment() {
+        return this.segment;
+    }
+
+    public long getRecords() {
+        return this.records.get();
+    }
+
+    public long getSyncs() {
+        return this.syncs.get();
+    }
+
+    // everything appended before is written first
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.queue.add(CLOSE);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.channel.close();
+    }
+
+    private CompletableFuture<Long> enqueue(Pending pending) {
+        if (this.closed) {
+            return CompletableFuture.failedFuture(new IOException("The log is closed"));
+        }
+        this.queue.add(pending);
+        return pending.done;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.queue.drainTo(batch, MAX_BATCH - 1);
+            List<Pending> written = new ArrayList<>();
+            try {
+                for (Pending pending : batch) {
+                    if (pending == CLOSE) {
+                        running = false;
+                        break;
+                    }
+                    if (pending.rollOver) {
+                        sync(written);
+                        startNextSegment();
+                        pending.done.complete(this.segment);
+                        continue;
+                    }
+                    while (pending.data.hasRemaining()) {
+                        this.channel.write(pending.data);
+                    }
+                    written.add(pending);
+                    this.recordsInSegment++;
+                }
+                sync(written);
+            } catch (IOException e) {
+                logError(e);
+                batch.forEach(pending -> pending.done.completeExceptionally(e));
+            }
+            batch.clear();
+            if (this.snapshotNeeded != null && !this.snapshotRequested
+                    && this.recordsInSegment >= this.recordsPerSnapshot) {
+                // asked once per segment, the snapshot rolls the log over
+                this.snapshotRequested = true;
+                this.snapshotNeeded.run();
+            }
+        }
+    }
+
+    private void sync(List<Pending> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        this.channel.force(false);
+        this.syncs.incrementAndGet();
+        this.records.addAndGet(written.size());
+        written.forEach(pending -> pending.done.complete(this.segment));
+        written.clear();
+    }
+
+    private void startNextSegment() throws IOException {
+        FileChannel next = openSegment(this.segment + 1);
+        this.channel.close();
+        this.channel = next;
+        this.segment++;
+        this.recordsInSegment = 0;
+        this.snapshotRequested = false;
+    }
+
+    // a new segment is in the directory only once the directory is forced - the syncs of its records alone
+    // would not keep the segment after a crash
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            AtomicFiles.forceDirectory(this.directory);
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    private void replaySegment(Path path, Consumer<String> consumer) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (content.remaining() >= HEADER_SIZE) {
+            int length = content.getInt();
+            int expectedChecksum = content.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE || length > content.remaining()) {
+                logError(new IOException("A record in " + path + " was cut short"));
+                return;
+            }
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            if (checksum(bytes) != expectedChecksum) {
+                logError(new IOException("A record in " + path + " is damaged"));
+                return;
+            }
+            consumer.accept(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+                    .filter(number -> !number.isEmpty() && number.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return this.directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private void logError(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
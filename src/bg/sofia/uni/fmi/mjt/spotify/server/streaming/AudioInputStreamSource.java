@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// decodes the audio through javax.sound - slower, but works with every format AudioSystem knows
+public class AudioInputStreamSource implements AudioSource {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final AudioInputStream audioStream;
+    private final ByteBuffer buffer;
+    private final byte[] byteBuffer;
+    private final BufferMessage chunk;
+
+    public AudioInputStreamSource(AudioInputStream audioStream) {
+        this.audioStream = audioStream;
+        int frameSize = Math.max(1, audioStream.getFormat().getFrameSize());
+        int chunkSize = Math.max(frameSize, BUFFER_SIZE - BUFFER_SIZE % frameSize);
+        this.buffer = ByteBuffer.allocateDirect(chunkSize);
+        this.byteBuffer = new byte[chunkSize];
+        this.chunk = new BufferMessage(this.buffer);
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return this.audioStream.getFormat();
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) throws IOException {
+        int bytesRead = this.audioStream.read(this.byteBuffer, 0, Math.min(maxBytes, this.byteBuffer.length));
+        if (bytesRead == -1) {
+            return null;
+        }
+        this.buffer.clear();
+        this.buffer.put(this.byteBuffer, 0, bytesRead);
+        this.buffer.flip();
+        return this.chunk.reset(this.buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.audioStream.close();
+    }
+}
@@ -0,0 +1,47 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodecs;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.IOException;
+
+// where the audio of a single stream comes from
+public interface AudioSource extends Closeable {
+
+    // the format of the audio the listener plays, whatever it is encoded with on the way
+    AudioFormat getFormat();
+
+    default AudioCodec getCodec() {
+        return AudioCodecs.PCM;
+    }
+
+    // the next chunk of at most maxBytes bytes or null at the end of the song
+    // the chunk is only valid until the next call
+    // maxBytes is in bytes of PCM - an encoded chunk is smaller, and an empty one means that the next chunk
+    // does not fit into them
+    OutboundMessage nextChunk(int maxBytes) throws IOException;
+
+    // how many bytes of PCM the chunk plays for - its size, unless it is encoded
+    default long getPlayedBytes(OutboundMessage chunk) {
+        return chunk.remaining();
+    }
+
+    // reads the first bytes of the audio ahead of time, so that the start of the song costs nothing later
+    default void prefetch(int maxBytes) throws IOException {
+        // nothing to read in advance
+    }
+
+    // whether the source can be repositioned without reopening the song
+    default boolean isSeekable() {
+        return false;
+    }
+
+    // the next chunk starts at the frame-aligned offset in bytes of PCM from the start of the song,
+    // or the song ends, if the offset is past its end
+    default void seek(long byteOffset) throws IOException {
+        throw new UnsupportedOperationException("The source cannot be repositioned");
+    }
+}
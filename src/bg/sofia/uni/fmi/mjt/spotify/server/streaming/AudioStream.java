@@ -0,0 +1,267 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioFormatCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// the state of a single listener - it never blocks, so that one worker can drive thousands of them
+class AudioStream {
+
+    private enum State {
+        FORMAT, STREAMING, FINISHING, FINISHED
+    }
+
+    private final long sessionId;
+    private final ClientConnection connection;
+    private final AudioSource source;
+    private final SpotifyLogger logger;
+    private final long jitterBufferMilliseconds;
+    private final StreamMetrics metrics;
+    // the header of every audio frame is written here, it is reused since only one frame is in flight at a time
+    private final ByteBuffer frameHeader;
+    private final BufferMessage frameHeaderMessage;
+    // the latest seek, that the stream has not got to yet
+    private final AtomicReference<Seek> pendingSeek;
+    // changes with every seek, so that the client drops the frames from before it
+    private int streamId;
+    // a new one for every format, since the pace is that of the audio
+    private RateController rateController;
+    // what the client has been told to play - a source of many songs may change it between two chunks
+    private AudioFormat announcedFormat;
+    private AudioCodec announcedCodec;
+    private State state;
+    private boolean starving;
+    private boolean blocked;
+    private volatile boolean stopRequested;
+    // the controls arrive on other threads, but only the thread, that pumps the stream, acts on them
+    private volatile boolean pauseRequested;
+    private boolean paused;
+
+    AudioStream(long sessionId, ClientConnection connection, int streamId, AudioSource source,
+                long jitterBufferMilliseconds, SpotifyLogger logger) {
+        this.sessionId = sessionId;
+        this.connection = connection;
+        this.streamId = streamId;
+        this.source = source;
+        this.logger = logger;
+        this.jitterBufferMilliseconds = jitterBufferMilliseconds;
+        this.rateController = new RateController(source.getFormat(), jitterBufferMilliseconds);
+        this.metrics = new StreamMetrics();
+        this.frameHeader = ByteBuffer.allocateDirect(FrameCodec.HEADER_SIZE);
+        this.frameHeaderMessage = new BufferMessage(this.frameHeader);
+        this.pendingSeek = new AtomicReference<>();
+        this.state = State.FORMAT;
+        this.starving = false;
+        this.blocked = false;
+        this.stopRequested = false;
+        this.pauseRequested = false;
+        this.paused = false;
+    }
+
+    long getSessionId() {
+        return this.sessionId;
+    }
+
+    int getStreamId() {
+        return this.streamId;
+    }
+
+    boolean isSeekable() {
+        return this.source.isSeekable();
+    }
+
+    StreamMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    // sends whatever the rate controller allows and returns true once the stream is over and can be discarded
+    boolean pump() {
+        if (this.state == State.FINISHED) {
+            return true;
+        }
+
+        // a closed connection has dropped what it had queued, there is no one to finish the stream for
+        if (this.connection.isClosed()) {
+            finish();
+            return true;
+        }
+        try {
+            // the chunks of a source are reused, so nothing new is read before the last one reaches the socket
+            if (this.connection.hasPendingWrites()) {
+                return false;
+            }
+            this.blocked = false;
+            if (!this.stopRequested && this.state != State.FINISHING) {
+                applyControls(System.nanoTime());
+                if (this.paused && this.state == State.STREAMING) {
+                    return false;
+                }
+            }
+
+            switch (this.state) {
+                case FORMAT -> {
+                    announceFormat();
+                    this.state = State.STREAMING;
+                }
+                case STREAMING -> streamAudio(System.nanoTime());
+                default -> finish();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            // the client has most likely disconnected
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            finish();
+        }
+        return this.state == State.FINISHED;
+    }
+
+    private void streamAudio(long now) throws IOException {
+        trackUnderruns(now);
+        long allowance = this.rateController.allowance(now);
+        while (this.stopRequested || allowance >= this.rateController.getFrameSize()) {
+            OutboundMessage chunk = null;
+            if (!this.stopRequested) {
+                chunk = this.source.nextChunk((int) Math.min(FrameCodec.MAX_PAYLOAD_SIZE, allowance));
+            }
+            if (chunk == null) {
+                // the source is closed only after the end of the stream has been written
+                this.connection.send(new Frame(FrameType.END_OF_STREAM, this.streamId, ByteBuffer.allocate(0)));
+                this.state = State.FINISHING;
+                if (!this.connection.hasPendingWrites()) {
+                    finish();
+                }
+                return;
+            }
+            int bytesRead = (int) chunk.remaining();
+            if (bytesRead == 0) {
+                return;
+            }
+            if (this.source.getFormat() != this.announcedFormat || this.source.getCodec() != this.announcedCodec) {
+                formatChanged();
+            }
+            // the pace is that of the audio, however small it has been encoded
+            long bytesPlayed = this.source.getPlayedBytes(chunk);
+
+            this.frameHeader.clear();
+            FrameCodec.encodeHeader(this.frameHeader, FrameType.AUDIO_DATA, this.streamId, bytesRead);
+            this.frameHeader.flip();
+            this.connection.send(this.frameHeaderMessage.reset(this.frameHeader), chunk);
+            this.rateController.record(bytesPlayed);
+            this.metrics.recordBytesSent(bytesRead);
+            this.metrics.recordBytesPlayed(bytesPlayed);
+            allowance -= bytesPlayed;
+            if (this.connection.hasPendingWrites()) {
+                // an overrun is counted once per episode of a full socket
+                if (!this.blocked) {
+                    this.metrics.recordOverrun();
+                }
+                this.blocked = true;
+                return;
+            }
+        }
+    }
+
+    // a seek starts the stream over with a new id, so the client drops whatever it has buffered before it
+    private void applyControls(long now) throws IOException {
+        Seek seek = this.pendingSeek.getAndSet(null);
+        if (seek != null) {
+            this.source.seek(this.rateController.offsetOf(seek.milliseconds));
+            this.streamId = seek.streamId;
+            this.rateController.restart();
+            this.state = State.FORMAT;
+        }
+        boolean pause = this.pauseRequested;
+        if (pause && !this.paused) {
+            this.rateController.pause(now);
+        } else if (!pause && this.paused) {
+            this.rateController.resume(now);
+        }
+        this.paused = pause;
+    }
+
+    private void announceFormat() throws IOException {
+        this.announcedFormat = this.source.getFormat();
+        this.announcedCodec = this.source.getCodec();
+        this.connection.send(new Frame(FrameType.AUDIO_FORMAT, this.streamId,
+                AudioFormatCodec.encode(this.announcedFormat, this.announcedCodec)));
+    }
+
+    // the next song of a playlist - the client is told in the same stream, right before its first chunk,
+    // and only if it has to play it differently
+    private void formatChanged() throws IOException {
+        AudioFormat format = this.source.getFormat();
+        boolean samePace = format.matches(this.announcedFormat);
+        if (samePace && this.source.getCodec() == this.announcedCodec) {
+            this.announcedFormat = format;
+            return;
+        }
+        announceFormat();
+        if (!samePace) {
+            this.rateController = new RateController(format, this.jitterBufferMilliseconds);
+        }
+    }
+
+    // an underrun is counted once, when the listener runs dry, and not on every tick while it stays dry
+    private void trackUnderruns(long now) {
+        if (this.rateController.isBehind(now)) {
+            if (!this.starving) {
+                this.metrics.recordUnderrun();
+            }
+            this.starving = true;
+        } else {
+            this.starving = false;
+        }
+    }
+
+    void stop() {
+        this.stopRequested = true;
+    }
+
+    void pause() {
+        this.pauseRequested = true;
+    }
+
+    void resume() {
+        this.pauseRequested = false;
+    }
+
+    // only the latest seek counts, if several arrive between two ticks
+    void seek(long milliseconds, int newStreamId) {
+        this.pendingSeek.set(new Seek(milliseconds, newStreamId));
+    }
+
+    private void finish() {
+        this.state = State.FINISHED;
+        try {
+            this.source.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+        }
+    }
+
+    private static final class Seek {
+
+        private final long milliseconds;
+        private final int streamId;
+
+        private Seek(long milliseconds, int streamId) {
+            this.milliseconds = milliseconds;
+            this.streamId = streamId;
+        }
+    }
+}
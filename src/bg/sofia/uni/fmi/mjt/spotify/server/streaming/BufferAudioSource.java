@@ -0,0 +1,76 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+// serves views of a buffer shared by all listeners of a song - nothing is copied on the way to the socket
+public class BufferAudioSource implements AudioSource {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int PAGE_SIZE = 4096;
+
+    private final AudioFormat format;
+    private final ByteBuffer data;
+    private final ByteBuffer view;
+    private final BufferMessage chunk;
+    private final int chunkSize;
+    // where the audio starts in the buffer
+    private final int start;
+    // the pages touched by a prefetch are summed here, so that the reads are not optimized away
+    private int prefetched;
+
+    public BufferAudioSource(AudioFormat format, ByteBuffer data) {
+        this.format = format;
+        // an own view, so that the position of the listener is independent of everyone else
+        this.data = data.duplicate();
+        this.view = this.data.duplicate();
+        this.chunk = new BufferMessage(this.view);
+        int frameSize = Math.max(1, format.getFrameSize());
+        this.chunkSize = Math.max(frameSize, CHUNK_SIZE - CHUNK_SIZE % frameSize);
+        this.start = this.data.position();
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return this.format;
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) {
+        if (!this.data.hasRemaining()) {
+            return null;
+        }
+        int length = Math.min(Math.min(maxBytes, this.chunkSize), this.data.remaining());
+        this.view.limit(this.data.position() + length);
+        this.view.position(this.data.position());
+        this.data.position(this.data.position() + length);
+        return this.chunk.reset(this.view);
+    }
+
+    // a mapped song is read from the disk on the first touch of every page, not while it is streamed
+    @Override
+    public void prefetch(int maxBytes) {
+        int end = this.start + Math.min(this.data.limit() - this.start, maxBytes);
+        for (int i = this.start; i < end; i += PAGE_SIZE) {
+            this.prefetched += this.data.get(i);
+        }
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return true;
+    }
+
+    @Override
+    public void seek(long byteOffset) {
+        this.data.position(this.start + (int) Math.min(this.data.limit() - this.start, byteOffset));
+    }
+
+    @Override
+    public void close() {
+        // the buffer belongs to the cache, not to the listener
+    }
+}
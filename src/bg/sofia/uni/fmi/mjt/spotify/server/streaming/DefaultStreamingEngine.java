@@ -0,0 +1,429 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.NoSongPlayingException;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodecs;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.ConcurrentLongMap;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class DefaultStreamingEngine implements StreamingEngine {
+
+    private static final int TICK_MILLISECONDS = 20;
+    private static final int MAX_WORKERS = 4;
+    private static final long DEFAULT_JITTER_BUFFER_MILLISECONDS = 500;
+    private static final long DEFAULT_CACHE_BUDGET = 512L * 1024 * 1024;
+    private static final long DEFAULT_ENCODED_CACHE_BUDGET = 256L * 1024 * 1024;
+    // the codec of the streams can be changed with -Dspotify.streaming.codec - PCM sends the audio as it is,
+    // ZERO_COPY ignores it, because it hands over the files untouched
+    private static final String CODEC_PROPERTY = "spotify.streaming.codec";
+
+    private final SpotifyLogger logger;
+    private final int numberOfWorkers;
+    private final long jitterBufferMilliseconds;
+    private final MappedSongCache cache;
+    private final StreamingMode mode;
+    private final AudioCodec codec;
+    private final EncodedSongCache encodedSongs;
+    // the parsed headers of the songs streamed through ZERO_COPY, so that a file is parsed only once
+    private final Map<Path, WavHeader> headers;
+    // every worker drives its own shard of streams, so that workers never compete for a stream
+    private final List<Queue<AudioStream>> shards;
+    // the stream of every session, by the id of the session
+    private final ConcurrentLongMap<AudioStream> activeStreams;
+    // every stream gets a thread from here instead of a place in a shard - null if the workers drive them
+    private final ThreadFactory streamThreads;
+    private final Queue<AudioStream> dedicatedStreams;
+    private final AtomicInteger nextShard;
+    // a client tells the frames of a new song from the late frames of the previous one by their stream id
+    private final AtomicInteger nextStreamId;
+    // the metrics of the streams, that have already ended
+    private final StreamMetrics finishedStreamsMetrics;
+    private ScheduledExecutorService workers;
+    // opens the next song of every playlist ahead of time, away from the workers
+    private ExecutorService prefetcher;
+
+    public DefaultStreamingEngine(SpotifyLogger logger) {
+        this(logger, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, ThreadFactory streamThreads) {
+        this(logger, 1, DEFAULT_JITTER_BUFFER_MILLISECONDS, new MappedSongCache(DEFAULT_CACHE_BUDGET),
+                StreamingMode.MAPPED, streamThreads);
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers) {
+        this(logger, numberOfWorkers, DEFAULT_JITTER_BUFFER_MILLISECONDS);
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers, long jitterBufferMilliseconds) {
+        this(logger, numberOfWorkers, jitterBufferMilliseconds, new MappedSongCache(DEFAULT_CACHE_BUDGET));
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers, long jitterBufferMilliseconds,
+                                  MappedSongCache cache) {
+        this(logger, numberOfWorkers, jitterBufferMilliseconds, cache, StreamingMode.MAPPED);
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers, long jitterBufferMilliseconds,
+                                  MappedSongCache cache, StreamingMode mode) {
+        this(logger, numberOfWorkers, jitterBufferMilliseconds, cache, mode, null);
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers, long jitterBufferMilliseconds,
+                                  MappedSongCache cache, StreamingMode mode, ThreadFactory streamThreads) {
+        this(logger, numberOfWorkers, jitterBufferMilliseconds, cache, mode, streamThreads, defaultCodec(mode));
+    }
+
+    public DefaultStreamingEngine(SpotifyLogger logger, int numberOfWorkers, long jitterBufferMilliseconds,
+                                  MappedSongCache cache, StreamingMode mode, ThreadFactory streamThreads,
+                                  AudioCodec codec) {
+        if (numberOfWorkers <= 0) {
+            throw new IllegalArgumentException("The streaming engine needs at least one worker");
+        }
+        if (jitterBufferMilliseconds < 0) {
+            throw new IllegalArgumentException("The jitter buffer cannot be negative");
+        }
+        if (mode == StreamingMode.ZERO_COPY && codec != AudioCodecs.PCM) {
+            throw new IllegalArgumentException("ZERO_COPY sends the files as they are, they cannot be encoded with "
+                    + codec.getName());
+        }
+        this.logger = logger;
+        String requested = System.getProperty(CODEC_PROPERTY);
+        if (mode == StreamingMode.ZERO_COPY && requested != null && AudioCodecs.named(requested) != AudioCodecs.PCM
+                && this.logger != null) {
+            this.logger.log("localhost", new IllegalArgumentException(
+                    "ZERO_COPY streams PCM, " + CODEC_PROPERTY + "=" + requested + " is ignored"));
+        }
+        this.numberOfWorkers = numberOfWorkers;
+        this.jitterBufferMilliseconds = jitterBufferMilliseconds;
+        this.cache = cache;
+        this.mode = mode;
+        this.codec = codec;
+        this.encodedSongs = new EncodedSongCache(DEFAULT_ENCODED_CACHE_BUDGET);
+        this.headers = new ConcurrentHashMap<>();
+        this.shards = new ArrayList<>();
+        for (int i = 0; i < numberOfWorkers; i++) {
+            this.shards.add(new ConcurrentLinkedQueue<>());
+        }
+        this.activeStreams = new ConcurrentLongMap<>();
+        this.streamThreads = streamThreads;
+        this.dedicatedStreams = new ConcurrentLinkedQueue<>();
+        this.nextShard = new AtomicInteger(0);
+        this.nextStreamId = new AtomicInteger(Frame.CONTROL_STREAM);
+        this.finishedStreamsMetrics = new StreamMetrics();
+    }
+
+    @Override
+    public void startStreaming(Session session, Song song) throws SpotifyException {
+        Objects.requireNonNull(session);
+        Objects.requireNonNull(song);
+        if (session.getConnection() == null || session.getConnection().isClosed()) {
+            throw new SpotifyException("The client cannot receive audio");
+        }
+
+        startStreaming(session, open(song));
+    }
+
+    @Override
+    public void startStreaming(Session session, List<Song> songs, Consumer<Song> onSongStarted)
+            throws SpotifyException {
+        Objects.requireNonNull(session);
+        Objects.requireNonNull(songs);
+        if (songs.isEmpty()) {
+            throw new SpotifyException("There are no songs to play");
+        }
+        if (session.getConnection() == null || session.getConnection().isClosed()) {
+            throw new SpotifyException("The client cannot receive audio");
+        }
+
+        startStreaming(session, new PlaylistAudioSource(songs, open(songs.get(0)), this::openSource, prefetcher(),
+                onSongStarted, this.logger));
+    }
+
+    private AudioSource open(Song song) throws SpotifyException {
+        try {
+            return openSource(song);
+        } catch (UnsupportedAudioFileException | IOException e) {
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            throw new SpotifyException("The song " + song.getName() + " cannot be streamed");
+        }
+    }
+
+    // ZERO_COPY hands the file to the socket, so it always streams PCM and the codec property is ignored
+    // the other modes only read the PCM, and the encoder of the first listener reads it from them
+    private static AudioCodec defaultCodec(StreamingMode mode) {
+        if (mode == StreamingMode.ZERO_COPY) {
+            return AudioCodecs.PCM;
+        }
+        AudioCodec codec = AudioCodecs.named(System.getProperty(CODEC_PROPERTY, AudioCodecs.LOSSLESS.getName()));
+        return codec != null ? codec : AudioCodecs.LOSSLESS;
+    }
+
+    // a song, that has been encoded already, is served from the cache - otherwise its PCM is encoded on the way
+    private AudioSource openSource(Song song) throws IOException, UnsupportedAudioFileException {
+        if (this.codec == AudioCodecs.PCM) {
+            return openPcmSource(song);
+        }
+        EncodedSong encoded = this.encodedSongs.get(song.getPath(), this.codec);
+        if (encoded != null) {
+            return encoded.newSource();
+        }
+        AudioSource source = openPcmSource(song);
+        if (!this.codec.supports(source.getFormat())) {
+            return source;
+        }
+        // the listeners, that start the song while another one is encoding it, don't keep their blocks
+        return new EncodingAudioSource(source, this.codec,
+                this.encodedSongs.startEncoding(song.getPath(), this.codec));
+    }
+
+    private AudioSource openPcmSource(Song song) throws IOException, UnsupportedAudioFileException {
+        try {
+            return switch (this.mode) {
+                case MAPPED -> this.cache.get(song).newSource();
+                case ZERO_COPY -> new FileRegionAudioSource(song.getPath(), readHeader(song.getPath()));
+                case DECODED -> decode(song);
+            };
+        } catch (UnsupportedAudioFileException e) {
+            // not plain PCM - it has to go through the decoders of AudioSystem
+            return decode(song);
+        }
+    }
+
+    private AudioSource decode(Song song) throws IOException, UnsupportedAudioFileException {
+        return new AudioInputStreamSource(AudioSystem.getAudioInputStream(song.getPath().toFile()));
+    }
+
+    private WavHeader readHeader(Path path) throws IOException, UnsupportedAudioFileException {
+        WavHeader header = this.headers.get(path);
+        if (header == null) {
+            header = WavHeader.read(path);
+            this.headers.put(path, header);
+        }
+        return header;
+    }
+
+    // the actual registration, separated so that streams can be fed from any source
+    // the stream is sent over the connection the session has when the stream starts
+    void startStreaming(Session session, AudioSource source) {
+        ClientConnection connection = session.getConnection();
+        AudioStream stream = new AudioStream(session.getId(), connection, nextStreamId(), source,
+                this.jitterBufferMilliseconds, this.logger);
+        AudioStream previous = this.activeStreams.put(session.getId(), stream);
+        if (previous != null) {
+            previous.stop();
+        }
+        if (this.streamThreads != null) {
+            this.dedicatedStreams.add(stream);
+            this.streamThreads.newThread(() -> run(stream)).start();
+            return;
+        }
+        this.shards.get(Math.floorMod(this.nextShard.getAndIncrement(), this.numberOfWorkers)).add(stream);
+        ensureWorkersAreRunning();
+    }
+
+    private int nextStreamId() {
+        int streamId;
+        do {
+            streamId = this.nextStreamId.incrementAndGet();
+        } while (streamId == Frame.CONTROL_STREAM);
+        return streamId;
+    }
+
+    @Override
+    public void stopStreaming(Session session) throws SpotifyException {
+        Objects.requireNonNull(session);
+
+        AudioStream stream = this.activeStreams.remove(session.getId());
+        if (stream == null) {
+            throw new NoSongPlayingException("There is currently no song playing. Nothing to stop");
+        }
+        // the worker sends the end of the stream on its next tick, there is no need to wait for it
+        stream.stop();
+    }
+
+    @Override
+    public void pauseStreaming(Session session) throws SpotifyException {
+        activeStream(session, "pause").pause();
+    }
+
+    @Override
+    public void resumeStreaming(Session session) throws SpotifyException {
+        activeStream(session, "resume").resume();
+    }
+
+    // the same stream goes on from another place of the same source, no file is opened again
+    @Override
+    public void seek(Session session, long milliseconds) throws SpotifyException {
+        if (milliseconds < 0) {
+            throw new SpotifyException("The position in the song cannot be negative");
+        }
+        AudioStream stream = activeStream(session, "seek");
+        if (!stream.isSeekable()) {
+            throw new SpotifyException("The song cannot be played from another position");
+        }
+        stream.seek(milliseconds, nextStreamId());
+    }
+
+    private AudioStream activeStream(Session session, String action) throws NoSongPlayingException {
+        Objects.requireNonNull(session);
+
+        AudioStream stream = this.activeStreams.get(session.getId());
+        if (stream == null) {
+            throw new NoSongPlayingException("There is currently no song playing. Nothing to " + action);
+        }
+        return stream;
+    }
+
+    @Override
+    public boolean isStreaming(Session session) {
+        return this.activeStreams.containsKey(session.getId());
+    }
+
+    @Override
+    public int getActiveStreams() {
+        return this.shards.stream().mapToInt(Queue::size).sum() + this.dedicatedStreams.size();
+    }
+
+    @Override
+    public void preload(Collection<Song> catalog, int numberOfSongs) {
+        this.cache.preload(catalog, numberOfSongs);
+    }
+
+    public EncodedSongCache getEncodedSongCache() {
+        return this.encodedSongs;
+    }
+
+    @Override
+    public StreamMetrics getMetrics(Session session) {
+        AudioStream stream = this.activeStreams.get(session.getId());
+        return stream == null ? null : stream.getMetrics();
+    }
+
+    @Override
+    public StreamMetrics getTotalMetrics() {
+        StreamMetrics total = new StreamMetrics();
+        total.add(this.finishedStreamsMetrics);
+        for (Queue<AudioStream> shard : this.shards) {
+            shard.forEach(stream -> total.add(stream.getMetrics()));
+        }
+        this.dedicatedStreams.forEach(stream -> total.add(stream.getMetrics()));
+        return total;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        this.activeStreams.values().forEach(AudioStream::stop);
+        this.activeStreams.clear();
+        if (this.workers != null) {
+            this.workers.shutdownNow();
+            this.workers = null;
+        }
+        if (this.prefetcher != null) {
+            this.prefetcher.shutdownNow();
+            this.prefetcher = null;
+        }
+    }
+
+    // a single thread is enough, a song is opened once per several minutes of every playlist
+    private synchronized ExecutorService prefetcher() {
+        if (this.prefetcher == null) {
+            this.prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "streaming-prefetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.prefetcher;
+    }
+
+    // the pool is started on the first stream, as a service is often created without ever streaming anything
+    private synchronized void ensureWorkersAreRunning() {
+        if (this.workers != null) {
+            return;
+        }
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.workers = Executors.newScheduledThreadPool(this.numberOfWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "streaming-worker-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Queue<AudioStream> shard : this.shards) {
+            this.workers.scheduleAtFixedRate(() -> tick(shard), 0, TICK_MILLISECONDS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void tick(Queue<AudioStream> shard) {
+        Iterator<AudioStream> iterator = shard.iterator();
+        while (iterator.hasNext()) {
+            AudioStream stream = iterator.next();
+            if (pump(stream)) {
+                iterator.remove();
+                finished(stream);
+            }
+        }
+    }
+
+    // the loop of a stream with a thread of its own - the thread sleeps between the ticks, and blocks
+    // whenever the socket of its client is full, since it is the only one waiting for it
+    private void run(AudioStream stream) {
+        try {
+            while (!pump(stream)) {
+                Thread.sleep(TICK_MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            // the end of the stream is still sent, and its source closed
+            stream.stop();
+            pump(stream);
+            Thread.currentThread().interrupt();
+        } finally {
+            this.dedicatedStreams.remove(stream);
+            finished(stream);
+        }
+    }
+
+    private boolean pump(AudioStream stream) {
+        try {
+            return stream.pump();
+        } catch (RuntimeException e) {
+            // a failing stream must not cancel the periodic task of the whole shard
+            if (this.logger != null) {
+                this.logger.log("localhost", e);
+            }
+            return true;
+        }
+    }
+
+    private void finished(AudioStream stream) {
+        this.finishedStreamsMetrics.add(stream.getMetrics());
+        this.activeStreams.remove(stream.getSessionId(), stream);
+    }
+}
@@ -0,0 +1,63 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// a whole song, already encoded - the blocks are shared by all listeners, every one of them gets its own views
+public class EncodedSong {
+
+    private final AudioFormat format;
+    private final AudioCodec codec;
+    private final List<ByteBuffer> blocks;
+    // how many bytes of PCM every block plays for
+    private final int[] playedBytes;
+    private final long size;
+
+    EncodedSong(AudioFormat format, AudioCodec codec, List<ByteBuffer> blocks, int[] playedBytes) {
+        this.format = format;
+        this.codec = codec;
+        this.blocks = List.copyOf(blocks);
+        this.playedBytes = playedBytes;
+        this.size = blocks.stream().mapToLong(ByteBuffer::remaining).sum();
+    }
+
+    public AudioFormat getFormat() {
+        return this.format;
+    }
+
+    public AudioCodec getCodec() {
+        return this.codec;
+    }
+
+    public int getNumberOfBlocks() {
+        return this.blocks.size();
+    }
+
+    // the encoded bytes of all blocks
+    public long getSize() {
+        return this.size;
+    }
+
+    public long getPlayedSize() {
+        long played = 0;
+        for (int bytes : this.playedBytes) {
+            played += bytes;
+        }
+        return played;
+    }
+
+    ByteBuffer getBlock(int index) {
+        return this.blocks.get(index).duplicate();
+    }
+
+    int getPlayedBytes(int index) {
+        return this.playedBytes[index];
+    }
+
+    public AudioSource newSource() {
+        return new EncodedSongSource(this);
+    }
+}
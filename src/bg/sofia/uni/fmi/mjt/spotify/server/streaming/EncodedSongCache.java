@@ -0,0 +1,165 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// the songs, that have already been encoded, by their file and codec - the first listener of a song encodes it
+// while listening, and the following ones are served the same blocks, which costs no CPU at all
+// only one listener keeps the blocks of a song, that is being encoded - the others, that start it meanwhile,
+// encode it just for themselves - and the blocks kept by all of them together stay within the budget as well
+public class EncodedSongCache {
+
+    private final long byteBudget;
+    // access order - the first entry is the least recently used one
+    private final Map<String, EncodedSong> songs;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private long bytesInUse;
+    // the songs, that a listener is encoding right now, and the bytes of the blocks it has kept so far
+    private final Set<String> encoding;
+    private long bytesBeingEncoded;
+
+    public EncodedSongCache(long byteBudget) {
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("The byte budget of the cache cannot be negative");
+        }
+        this.byteBudget = byteBudget;
+        this.songs = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.bytesInUse = 0;
+        this.encoding = new HashSet<>();
+        this.bytesBeingEncoded = 0;
+    }
+
+    // null if the song has not been encoded with this codec yet
+    public synchronized EncodedSong get(Path path, AudioCodec codec) {
+        EncodedSong cached = this.songs.get(keyOf(path, codec));
+        if (cached == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return cached;
+    }
+
+    public synchronized void put(Path path, EncodedSong song) {
+        String key = keyOf(path, song.getCodec());
+        if (this.songs.containsKey(key) || song.getSize() > this.byteBudget) {
+            // someone else has encoded it in the meantime, or it is too big to be cached
+            return;
+        }
+        Iterator<EncodedSong> iterator = this.songs.values().iterator();
+        while (this.bytesInUse + song.getSize() > this.byteBudget && iterator.hasNext()) {
+            EncodedSong evicted = iterator.next();
+            iterator.remove();
+            this.bytesInUse -= evicted.getSize();
+            this.evictions.increment();
+        }
+        this.songs.put(key, song);
+        this.bytesInUse += song.getSize();
+    }
+
+    // null if the song is cached already, or another listener is encoding it
+    public synchronized Encoding startEncoding(Path path, AudioCodec codec) {
+        String key = keyOf(path, codec);
+        if (this.songs.containsKey(key) || !this.encoding.add(key)) {
+            return null;
+        }
+        return new Encoding(path, key);
+    }
+
+    private static String keyOf(Path path, AudioCodec codec) {
+        return codec.getName() + ":" + path;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public synchronized long getBytesInUse() {
+        return this.bytesInUse;
+    }
+
+    public synchronized int size() {
+        return this.songs.size();
+    }
+
+    public synchronized long getBytesBeingEncoded() {
+        return this.bytesBeingEncoded;
+    }
+
+    // the right of a listener to keep the blocks of a song, until it hands the song over or gives up
+    public final class Encoding {
+
+        private final Path path;
+        private final String key;
+        private long keptBytes;
+        private boolean ended;
+
+        private Encoding(Path path, String key) {
+            this.path = path;
+            this.key = key;
+            this.keptBytes = 0;
+            this.ended = false;
+        }
+
+        // false if the block does not fit in the budget - the encoding is then abandoned, for the song
+        // would not make it into the cache anyway
+        public boolean keep(long bytes) {
+            synchronized (EncodedSongCache.this) {
+                if (this.ended) {
+                    return false;
+                }
+                if (bytesBeingEncoded + bytes > byteBudget) {
+                    end();
+                    return false;
+                }
+                bytesBeingEncoded += bytes;
+                this.keptBytes += bytes;
+                return true;
+            }
+        }
+
+        public void finish(EncodedSong song) {
+            synchronized (EncodedSongCache.this) {
+                if (!this.ended) {
+                    end();
+                    put(this.path, song);
+                }
+            }
+        }
+
+        public void abandon() {
+            synchronized (EncodedSongCache.this) {
+                if (!this.ended) {
+                    end();
+                }
+            }
+        }
+
+        private void end() {
+            this.ended = true;
+            bytesBeingEncoded -= this.keptBytes;
+            this.keptBytes = 0;
+            encoding.remove(this.key);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+// plays a song, that has been encoded before - nothing is encoded again, and nothing is copied
+class EncodedSongSource implements AudioSource {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final EncodedSong song;
+    private final BufferMessage chunk;
+    private int nextBlock;
+    private int playedBytes;
+
+    EncodedSongSource(EncodedSong song) {
+        this.song = song;
+        this.chunk = new BufferMessage(EMPTY);
+        this.nextBlock = 0;
+        this.playedBytes = 0;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return this.song.getFormat();
+    }
+
+    @Override
+    public AudioCodec getCodec() {
+        return this.song.getCodec();
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) {
+        if (this.nextBlock == this.song.getNumberOfBlocks()) {
+            return null;
+        }
+        // a block is sent whole or not at all
+        if (this.song.getPlayedBytes(this.nextBlock) > maxBytes) {
+            this.playedBytes = 0;
+            return this.chunk.reset(EMPTY);
+        }
+        this.playedBytes = this.song.getPlayedBytes(this.nextBlock);
+        return this.chunk.reset(this.song.getBlock(this.nextBlock++));
+    }
+
+    @Override
+    public long getPlayedBytes(OutboundMessage chunk) {
+        return this.playedBytes;
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return true;
+    }
+
+    // a block cannot be split, so the song goes on from the start of the block the offset falls into
+    @Override
+    public void seek(long byteOffset) {
+        this.nextBlock = 0;
+        long blockStart = 0;
+        while (this.nextBlock < this.song.getNumberOfBlocks()
+                && blockStart + this.song.getPlayedBytes(this.nextBlock) <= byteOffset) {
+            blockStart += this.song.getPlayedBytes(this.nextBlock++);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the blocks belong to the cache, not to the listener
+    }
+}
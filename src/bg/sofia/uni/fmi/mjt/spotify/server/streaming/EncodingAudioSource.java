@@ -0,0 +1,189 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.LosslessCodec;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// encodes the audio of another source on the way to the socket, a block of a fixed number of frames at a time,
+// so that the blocks are the same for every listener - with an encoding of the cache, the blocks are kept,
+// and once the song has been played to the end, they are handed over as a whole, for the next listeners
+// not to encode anything
+class EncodingAudioSource implements AudioSource {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final AudioSource source;
+    private final AudioCodec codec;
+    // null if the blocks are not kept
+    private final EncodedSongCache.Encoding encoding;
+    // the PCM of the next block, collected from the chunks of the source
+    private final ByteBuffer pcm;
+    private final WritableByteChannel pcmChannel;
+    private final BufferMessage chunk;
+    private final List<ByteBuffer> blocks;
+    private final List<Integer> playedBytes;
+    private ByteBuffer nextBlock;
+    private int nextPlayedBytes;
+    private int lastPlayedBytes;
+    private boolean sourceEnded;
+    private boolean handedOver;
+    // false once the blocks are not kept anymore - the listener has skipped a part of the song,
+    // or the blocks have outgrown the budget of the cache
+    private boolean complete;
+
+    EncodingAudioSource(AudioSource source, AudioCodec codec, EncodedSongCache.Encoding encoding) {
+        this.source = source;
+        this.codec = codec;
+        this.encoding = encoding;
+        int frameSize = Math.max(1, source.getFormat().getFrameSize());
+        this.pcm = ByteBuffer.allocate(LosslessCodec.BLOCK_FRAMES * frameSize);
+        this.pcmChannel = new BufferChannel(this.pcm);
+        this.chunk = new BufferMessage(EMPTY);
+        this.blocks = new ArrayList<>();
+        this.playedBytes = new ArrayList<>();
+        this.sourceEnded = false;
+        this.handedOver = false;
+        this.complete = encoding != null;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return this.source.getFormat();
+    }
+
+    @Override
+    public AudioCodec getCodec() {
+        return this.codec;
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) throws IOException {
+        // the next block is encoded ahead, to know whether it fits
+        if (this.nextBlock == null && !encodeNextBlock() && this.sourceEnded) {
+            return null;
+        }
+        if (this.nextBlock == null || this.nextPlayedBytes > maxBytes) {
+            this.lastPlayedBytes = 0;
+            return this.chunk.reset(EMPTY);
+        }
+        ByteBuffer block = this.nextBlock;
+        this.lastPlayedBytes = this.nextPlayedBytes;
+        this.nextBlock = null;
+        return this.chunk.reset(block.duplicate());
+    }
+
+    @Override
+    public long getPlayedBytes(OutboundMessage chunk) {
+        return this.lastPlayedBytes;
+    }
+
+    // false if there is no audio for a block - for now, or for good, if the source has ended
+    private boolean encodeNextBlock() throws IOException {
+        this.pcm.clear();
+        while (!this.sourceEnded && this.pcm.hasRemaining()) {
+            OutboundMessage pcmChunk = this.source.nextChunk(this.pcm.remaining());
+            if (pcmChunk == null) {
+                this.sourceEnded = true;
+            } else if (pcmChunk.remaining() == 0) {
+                // the source has nothing right now - the block is sent shorter rather than waited for
+                break;
+            } else {
+                while (pcmChunk.remaining() > 0) {
+                    pcmChunk.writeTo(this.pcmChannel);
+                }
+            }
+        }
+        this.pcm.flip();
+        if (!this.pcm.hasRemaining()) {
+            if (this.sourceEnded && this.complete && !this.handedOver) {
+                this.handedOver = true;
+                this.encoding.finish(new EncodedSong(getFormat(), this.codec, this.blocks,
+                        this.playedBytes.stream().mapToInt(Integer::intValue).toArray()));
+            }
+            return false;
+        }
+        this.nextBlock = this.codec.encode(this.pcm, getFormat());
+        this.nextPlayedBytes = this.pcm.remaining();
+        if (this.complete && this.encoding.keep(this.nextBlock.remaining())) {
+            this.blocks.add(this.nextBlock);
+            this.playedBytes.add(this.nextPlayedBytes);
+        } else if (this.complete) {
+            stopKeeping();
+        }
+        return true;
+    }
+
+    // the first block is encoded ahead, which reads the audio it needs as well
+    @Override
+    public void prefetch(int maxBytes) throws IOException {
+        if (this.nextBlock == null) {
+            encodeNextBlock();
+        }
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return this.source.isSeekable();
+    }
+
+    // the block encoded ahead is dropped, and the song is no longer cached, since it has a gap
+    @Override
+    public void seek(long byteOffset) throws IOException {
+        this.source.seek(byteOffset);
+        this.nextBlock = null;
+        this.sourceEnded = false;
+        stopKeeping();
+    }
+
+    // a listener, that leaves before the end, lets another one encode the song
+    @Override
+    public void close() throws IOException {
+        stopKeeping();
+        this.source.close();
+    }
+
+    private void stopKeeping() {
+        if (this.complete && !this.handedOver) {
+            this.encoding.abandon();
+        }
+        this.complete = false;
+        this.blocks.clear();
+        this.playedBytes.clear();
+    }
+
+    // the chunks of a source can only be written to a channel, this one collects them
+    private static final class BufferChannel implements WritableByteChannel {
+
+        private final ByteBuffer target;
+
+        private BufferChannel(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            int length = Math.min(source.remaining(), this.target.remaining());
+            this.target.put(source.duplicate().limit(source.position() + length));
+            source.position(source.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
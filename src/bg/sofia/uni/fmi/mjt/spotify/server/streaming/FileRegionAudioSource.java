@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.FileRegionMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// streams the data chunk of an uncompressed .wav file with FileChannel.transferTo
+// the audio never enters the JVM, the kernel moves it from the page cache to the socket
+public class FileRegionAudioSource implements AudioSource {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final WavHeader header;
+    private final FileChannel file;
+    private final FileRegionMessage chunk;
+    private final long end;
+    private final int chunkSize;
+    private long position;
+
+    public FileRegionAudioSource(Path path, WavHeader header) throws IOException {
+        this.header = header;
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.chunk = new FileRegionMessage(this.file);
+        this.position = header.getDataOffset();
+        this.end = header.getDataOffset() + header.getDataLength();
+        int frameSize = Math.max(1, header.getFormat().getFrameSize());
+        this.chunkSize = Math.max(frameSize, CHUNK_SIZE - CHUNK_SIZE % frameSize);
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return this.header.getFormat();
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) {
+        if (this.position >= this.end) {
+            return null;
+        }
+        long count = Math.min(Math.min(maxBytes, this.chunkSize), this.end - this.position);
+        this.chunk.reset(this.position, count);
+        this.position += count;
+        return this.chunk;
+    }
+
+    // the audio goes from the page cache to the socket, so it is read into the page cache in advance
+    @Override
+    public void prefetch(int maxBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(maxBytes, this.end - this.position));
+        long position = this.position;
+        while (buffer.hasRemaining() && this.file.read(buffer, position) > 0) {
+            position = this.position + buffer.position();
+        }
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return true;
+    }
+
+    // only the position changes - the file stays open
+    @Override
+    public void seek(long byteOffset) {
+        this.position = this.header.getDataOffset() + Math.min(this.header.getDataLength(), byteOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.file.close();
+    }
+}
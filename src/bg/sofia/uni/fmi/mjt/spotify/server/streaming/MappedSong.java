@@ -0,0 +1,57 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// a .wav file mapped in memory once, with its header already parsed
+public class MappedSong {
+
+    private final WavHeader header;
+    private final MappedByteBuffer mapping;
+
+    private MappedSong(WavHeader header, MappedByteBuffer mapping) {
+        this.header = header;
+        this.mapping = mapping;
+    }
+
+    public static MappedSong map(Path path) throws IOException, UnsupportedAudioFileException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new UnsupportedAudioFileException("The file is too large to be mapped at once");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSong(WavHeader.parse(mapping), mapping);
+        }
+    }
+
+    public WavHeader getHeader() {
+        return this.header;
+    }
+
+    public long getSize() {
+        return this.mapping.capacity();
+    }
+
+    // a view of the audio data only, every listener gets its own
+    public ByteBuffer audioData() {
+        return this.mapping.duplicate()
+                .position((int) this.header.getDataOffset())
+                .limit((int) (this.header.getDataOffset() + this.header.getDataLength()))
+                .slice();
+    }
+
+    public AudioSource newSource() {
+        return new BufferAudioSource(this.header.getFormat(), audioData());
+    }
+
+    // reads the pages of the file in memory in advance
+    void load() {
+        this.mapping.load();
+    }
+}
@@ -0,0 +1,125 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// keeps the most recently played songs mapped, so that every listener of a hot song shares the same pages
+public class MappedSongCache {
+
+    private final long byteBudget;
+    // access order - the first entry is the least recently used one
+    private final Map<Path, MappedSong> songs;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private long bytesInUse;
+
+    public MappedSongCache(long byteBudget) {
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("The byte budget of the cache cannot be negative");
+        }
+        this.byteBudget = byteBudget;
+        this.songs = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.bytesInUse = 0;
+    }
+
+    public MappedSong get(Song song) throws IOException, UnsupportedAudioFileException {
+        Path path = song.getPath();
+        synchronized (this) {
+            MappedSong cached = this.songs.get(path);
+            if (cached != null) {
+                this.hits.increment();
+                return cached;
+            }
+        }
+
+        this.misses.increment();
+        // mapping happens outside the lock, so that a slow disk doesn't hold back the cached songs
+        MappedSong mapped = MappedSong.map(path);
+        return put(path, mapped);
+    }
+
+    // maps the most listened songs in advance
+    public void preload(Collection<Song> catalog, int numberOfSongs) {
+        List<Song> topSongs = catalog.stream()
+                .sorted(Comparator.comparingLong(Song::getNumberOfListens).reversed())
+                .limit(numberOfSongs)
+                .toList();
+        for (Song song : topSongs) {
+            try {
+                Path path = song.getPath();
+                synchronized (this) {
+                    if (this.songs.containsKey(path)) {
+                        continue;
+                    }
+                }
+                MappedSong mapped = MappedSong.map(path);
+                mapped.load();
+                put(path, mapped);
+            } catch (IOException | UnsupportedAudioFileException | InvalidPathException e) {
+                // a song, that cannot be preloaded will simply be loaded on demand
+            }
+        }
+    }
+
+    private synchronized MappedSong put(Path path, MappedSong mapped) {
+        MappedSong existing = this.songs.get(path);
+        if (existing != null) {
+            // someone else mapped it in the meantime
+            return existing;
+        }
+        if (mapped.getSize() > this.byteBudget) {
+            // too big to be cached, it is served to this listener only
+            return mapped;
+        }
+        evictUntilFree(mapped.getSize());
+        this.songs.put(path, mapped);
+        this.bytesInUse += mapped.getSize();
+        return mapped;
+    }
+
+    // evicted songs are only unmapped once their last listener is done with them
+    private void evictUntilFree(long bytesNeeded) {
+        Iterator<MappedSong> iterator = this.songs.values().iterator();
+        while (this.bytesInUse + bytesNeeded > this.byteBudget && iterator.hasNext()) {
+            MappedSong evicted = iterator.next();
+            iterator.remove();
+            this.bytesInUse -= evicted.getSize();
+            this.evictions.increment();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public synchronized long getBytesInUse() {
+        return this.bytesInUse;
+    }
+
+    public synchronized int size() {
+        return this.songs.size();
+    }
+}
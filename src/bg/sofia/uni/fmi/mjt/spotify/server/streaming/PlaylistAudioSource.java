@@ -0,0 +1,169 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.BufferMessage;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+// plays the songs of a playlist back to back, as a single stream with no gap between them
+// while a song plays, the next one is opened on another thread - its header parsed and its first buffers read -
+// so that the switch costs the worker nothing, and a song, that cannot be opened, is skipped
+class PlaylistAudioSource implements AudioSource {
+
+    // how much of the next song is read in advance - more than a jitter buffer of CD audio
+    static final int PREFETCH_BYTES = 256 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    interface TrackOpener {
+        AudioSource open(Song song) throws IOException, UnsupportedAudioFileException;
+    }
+
+    private final List<Song> songs;
+    private final TrackOpener opener;
+    private final Executor prefetcher;
+    private final Consumer<Song> onTrackStarted;
+    private final SpotifyLogger logger;
+    private final BufferMessage empty;
+    // changed by the worker only, but whether it can seek is asked from other threads
+    private volatile AudioSource current;
+    // the song after the current one, being opened - null after the last one
+    private CompletableFuture<AudioSource> next;
+    private int nextTrack;
+
+    // the first song is opened by the caller, so that a playlist, that cannot start, fails right away
+    PlaylistAudioSource(List<Song> songs, AudioSource first, TrackOpener opener, Executor prefetcher,
+                        Consumer<Song> onTrackStarted, SpotifyLogger logger) {
+        this.songs = List.copyOf(songs);
+        this.opener = opener;
+        this.prefetcher = prefetcher;
+        this.onTrackStarted = onTrackStarted;
+        this.logger = logger;
+        this.empty = new BufferMessage(EMPTY);
+        this.current = first;
+        this.onTrackStarted.accept(this.songs.get(0));
+        openAhead(1);
+    }
+
+    // the format of the song, that plays right now - the stream announces it, whenever it changes
+    @Override
+    public AudioFormat getFormat() {
+        return this.current.getFormat();
+    }
+
+    @Override
+    public AudioCodec getCodec() {
+        return this.current.getCodec();
+    }
+
+    @Override
+    public OutboundMessage nextChunk(int maxBytes) throws IOException {
+        while (true) {
+            OutboundMessage chunk = this.current.nextChunk(maxBytes);
+            if (chunk != null) {
+                return chunk;
+            }
+            if (this.next == null) {
+                return null;
+            }
+            if (!this.next.isDone()) {
+                // the next song is not open yet - the listener still has its jitter buffer to play
+                return this.empty.reset(EMPTY);
+            }
+            startNextTrack();
+        }
+    }
+
+    private void startNextTrack() {
+        int track = this.nextTrack;
+        AudioSource opened = null;
+        try {
+            opened = this.next.join();
+        } catch (CompletionException e) {
+            log(e.getCause() instanceof Exception cause ? cause : e);
+        }
+        openAhead(track + 1);
+        if (opened == null) {
+            // the song is skipped, the current one stays as it is, at its end
+            return;
+        }
+        closeQuietly(this.current);
+        this.current = opened;
+        this.onTrackStarted.accept(this.songs.get(track));
+    }
+
+    private void openAhead(int track) {
+        if (track >= this.songs.size()) {
+            this.next = null;
+            return;
+        }
+        Song song = this.songs.get(track);
+        this.nextTrack = track;
+        this.next = CompletableFuture.supplyAsync(() -> open(song), this.prefetcher);
+    }
+
+    private AudioSource open(Song song) {
+        AudioSource source = null;
+        try {
+            source = this.opener.open(song);
+            source.prefetch(PREFETCH_BYTES);
+            return source;
+        } catch (IOException | UnsupportedAudioFileException e) {
+            closeQuietly(source);
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public long getPlayedBytes(OutboundMessage chunk) {
+        return this.current.getPlayedBytes(chunk);
+    }
+
+    // a seek moves within the song, that plays right now
+    @Override
+    public boolean isSeekable() {
+        return this.current.isSeekable();
+    }
+
+    @Override
+    public void seek(long byteOffset) throws IOException {
+        this.current.seek(byteOffset);
+    }
+
+    // the next song is closed as well, once it has been opened
+    @Override
+    public void close() throws IOException {
+        if (this.next != null) {
+            this.next.thenAccept(this::closeQuietly);
+            this.next = null;
+        }
+        this.current.close();
+    }
+
+    private void closeQuietly(AudioSource source) {
+        if (source == null) {
+            return;
+        }
+        try {
+            source.close();
+        } catch (IOException e) {
+            log(e);
+        }
+    }
+
+    private void log(Exception e) {
+        if (this.logger != null) {
+            this.logger.log("localhost", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.util.concurrent.TimeUnit;
+
+// a token bucket, that lets a stream run ahead of the listener by exactly one jitter buffer
+// and then sends at the rate the audio is actually played with
+public class RateController {
+
+    private static final int BITS_IN_BYTE = 8;
+
+    private final long bytesPerSecond;
+    private final int frameSize;
+    private final long jitterBufferBytes;
+    private long startNanos;
+    private long bytesSent;
+    private boolean started;
+    // when the listener paused, or -1 while it is playing
+    private long pausedNanos;
+
+    public RateController(AudioFormat audioFormat, long jitterBufferMilliseconds) {
+        if (jitterBufferMilliseconds < 0) {
+            throw new IllegalArgumentException("The jitter buffer cannot be negative");
+        }
+        this.frameSize = Math.max(1, frameSizeOf(audioFormat));
+        this.bytesPerSecond = Math.max(this.frameSize, bytesPerSecondOf(audioFormat, this.frameSize));
+        this.jitterBufferBytes = alignToFrame(this.bytesPerSecond * jitterBufferMilliseconds / 1000);
+        this.bytesSent = 0;
+        this.started = false;
+        this.pausedNanos = -1;
+    }
+
+    private static int frameSizeOf(AudioFormat audioFormat) {
+        if (audioFormat.getFrameSize() != AudioSystem.NOT_SPECIFIED) {
+            return audioFormat.getFrameSize();
+        }
+        return audioFormat.getChannels() * ((audioFormat.getSampleSizeInBits() + BITS_IN_BYTE - 1) / BITS_IN_BYTE);
+    }
+
+    private static long bytesPerSecondOf(AudioFormat audioFormat, int frameSize) {
+        float frameRate = audioFormat.getFrameRate();
+        if (frameRate == AudioSystem.NOT_SPECIFIED || frameRate <= 0) {
+            // some encodings leave the frame rate out, for PCM it is the same as the sample rate
+            frameRate = audioFormat.getSampleRate();
+        }
+        return (long) (frameRate * frameSize);
+    }
+
+    // the playback clock of the listener starts with the first audio byte
+    public void start(long nowNanos) {
+        if (!this.started) {
+            this.startNanos = nowNanos;
+            this.started = true;
+        }
+    }
+
+    // the playback clock of the listener stands still until it resumes
+    public void pause(long nowNanos) {
+        if (this.pausedNanos < 0) {
+            this.pausedNanos = nowNanos;
+        }
+    }
+
+    // the pause is taken out of the clock, so that the stream does not catch up with it in a burst
+    public void resume(long nowNanos) {
+        if (this.pausedNanos >= 0) {
+            this.startNanos += Math.max(0, nowNanos - this.pausedNanos);
+            this.pausedNanos = -1;
+        }
+    }
+
+    // after a seek the listener has dropped its buffer - the clock starts over with a new jitter buffer
+    public void restart() {
+        this.started = false;
+        this.bytesSent = 0;
+        this.pausedNanos = -1;
+    }
+
+    // the frame-aligned offset of a moment of the audio
+    public long offsetOf(long milliseconds) {
+        if (milliseconds > Long.MAX_VALUE / this.bytesPerSecond) {
+            // far past the end of any song
+            return alignToFrame(Long.MAX_VALUE);
+        }
+        return alignToFrame(this.bytesPerSecond * Math.max(0, milliseconds) / 1000);
+    }
+
+    // how many bytes the stream may send right now, always a whole number of frames
+    public long allowance(long nowNanos) {
+        start(nowNanos);
+        return Math.max(0, alignToFrame(this.jitterBufferBytes + played(nowNanos) - this.bytesSent));
+    }
+
+    // true if the listener has played everything sent so far, i.e. it is hearing silence
+    public boolean isBehind(long nowNanos) {
+        return this.started && this.bytesSent < played(nowNanos);
+    }
+
+    public void record(long bytes) {
+        this.bytesSent += bytes;
+    }
+
+    public long getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+
+    public long getJitterBufferBytes() {
+        return this.jitterBufferBytes;
+    }
+
+    private long played(long nowNanos) {
+        if (this.pausedNanos >= 0) {
+            nowNanos = this.pausedNanos;
+        }
+        // microseconds keep the multiplication from overflowing even for very long streams
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nowNanos - this.startNanos));
+        return this.bytesPerSecond * elapsedMicros / TimeUnit.SECONDS.toMicros(1);
+    }
+
+    private long alignToFrame(long bytes) {
+        return bytes - bytes % this.frameSize;
+    }
+}
@@ -0,0 +1,59 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// underrun - the listener has played everything it was sent and hears silence
+// overrun - the stream had audio to send, but the socket of the listener could not take it
+// the bytes played are the PCM, that the bytes sent decode to - the same, unless the audio is encoded
+public class StreamMetrics {
+
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesPlayed = new LongAdder();
+
+    void recordUnderrun() {
+        this.underruns.increment();
+    }
+
+    void recordOverrun() {
+        this.overruns.increment();
+    }
+
+    void recordBytesSent(long bytes) {
+        this.bytesSent.add(bytes);
+    }
+
+    void recordBytesPlayed(long bytes) {
+        this.bytesPlayed.add(bytes);
+    }
+
+    void add(StreamMetrics other) {
+        this.underruns.add(other.getUnderruns());
+        this.overruns.add(other.getOverruns());
+        this.bytesSent.add(other.getBytesSent());
+        this.bytesPlayed.add(other.getBytesPlayed());
+    }
+
+    public long getUnderruns() {
+        return this.underruns.sum();
+    }
+
+    public long getOverruns() {
+        return this.overruns.sum();
+    }
+
+    public long getBytesSent() {
+        return this.bytesSent.sum();
+    }
+
+    public long getBytesPlayed() {
+        return this.bytesPlayed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("underruns=%d, overruns=%d, bytesSent=%d, bytesPlayed=%d", getUnderruns(), getOverruns(),
+                getBytesSent(), getBytesPlayed());
+    }
+}
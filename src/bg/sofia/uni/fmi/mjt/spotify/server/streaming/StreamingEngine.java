@@ -0,0 +1,38 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface StreamingEngine {
+
+    void startStreaming(Session session, Song song) throws SpotifyException;
+
+    // the songs are played back to back in a single stream, the callback is called as each of them starts
+    void startStreaming(Session session, List<Song> songs, Consumer<Song> onSongStarted) throws SpotifyException;
+
+    void stopStreaming(Session session) throws SpotifyException;
+
+    // the controls of a playing song return at once - the stream acts on them on its next tick
+    void pauseStreaming(Session session) throws SpotifyException;
+
+    void resumeStreaming(Session session) throws SpotifyException;
+
+    void seek(Session session, long milliseconds) throws SpotifyException;
+
+    void preload(Collection<Song> catalog, int numberOfSongs);
+
+    boolean isStreaming(Session session);
+
+    int getActiveStreams();
+
+    StreamMetrics getMetrics(Session session);
+
+    StreamMetrics getTotalMetrics();
+
+    void shutdown();
+}
@@ -0,0 +1,12 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+// how the audio of uncompressed .wav files gets from the disk to the socket
+// compressed files are always decoded, whatever the mode
+public enum StreamingMode {
+    // views of a memory mapping, shared by all listeners of a song
+    MAPPED,
+    // FileChannel.transferTo from the data chunk of the file straight into the socket
+    ZERO_COPY,
+    // AudioInputStream, copied through the heap
+    DECODED
+}
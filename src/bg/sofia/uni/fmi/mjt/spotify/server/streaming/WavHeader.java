@@ -0,0 +1,138 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// the RIFF header of an uncompressed .wav file - the audio data after it is exactly what a SourceDataLine plays
+public class WavHeader {
+
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+    private static final int RIFF_HEADER_SIZE = 12;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int MIN_FMT_SIZE = 16;
+    private static final short FORMAT_PCM = 1;
+    private static final short FORMAT_IEEE_FLOAT = 3;
+    private static final short FORMAT_EXTENSIBLE = (short) 0xFFFE;
+    private static final int EXTENSIBLE_SUB_FORMAT_OFFSET = 24;
+    private static final int BITS_IN_BYTE = 8;
+    // the header is almost always in the first few hundred bytes, metadata chunks before the data are rare
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private final AudioFormat format;
+    private final long dataOffset;
+    private final long dataLength;
+
+    private WavHeader(AudioFormat format, long dataOffset, long dataLength) {
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    // reads only the beginning of the file
+    public static WavHeader read(Path path) throws IOException, UnsupportedAudioFileException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(MAX_HEADER_SIZE, channel.size()));
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+                // a file channel may read less than requested
+            }
+            head.flip();
+            return parse(head, channel.size());
+        }
+    }
+
+    // parses the header from the beginning of the given buffer, without moving its position
+    public static WavHeader parse(ByteBuffer file) throws UnsupportedAudioFileException {
+        return parse(file, file.limit());
+    }
+
+    // the buffer may hold only the beginning of a file with the given size
+    public static WavHeader parse(ByteBuffer head, long fileSize) throws UnsupportedAudioFileException {
+        ByteBuffer buffer = head.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(0);
+        if (buffer.remaining() < RIFF_HEADER_SIZE || buffer.getInt() != RIFF) {
+            throw new UnsupportedAudioFileException("Not a RIFF file");
+        }
+        buffer.getInt(); // the size of the whole file, the actual size is more reliable
+        if (buffer.getInt() != WAVE) {
+            throw new UnsupportedAudioFileException("Not a WAVE file");
+        }
+
+        AudioFormat format = null;
+        while (buffer.remaining() >= CHUNK_HEADER_SIZE) {
+            int chunkId = buffer.getInt();
+            long chunkSize = Integer.toUnsignedLong(buffer.getInt());
+            int chunkStart = buffer.position();
+            if (chunkId == FMT) {
+                format = parseFormat(buffer, chunkSize);
+            } else if (chunkId == DATA) {
+                if (format == null) {
+                    throw new UnsupportedAudioFileException("The data chunk comes before the format chunk");
+                }
+                // files written while recording often leave a wrong size, so never trust it past the end
+                long dataLength = Math.min(chunkSize, fileSize - chunkStart);
+                dataLength -= dataLength % format.getFrameSize();
+                return new WavHeader(format, chunkStart, dataLength);
+            }
+            // chunks are padded to an even number of bytes
+            long next = chunkStart + chunkSize + (chunkSize & 1);
+            if (next > buffer.limit()) {
+                break;
+            }
+            buffer.position((int) next);
+        }
+        throw new UnsupportedAudioFileException("The file has no audio data");
+    }
+
+    private static AudioFormat parseFormat(ByteBuffer buffer, long chunkSize) throws UnsupportedAudioFileException {
+        if (chunkSize < MIN_FMT_SIZE || buffer.remaining() < MIN_FMT_SIZE) {
+            throw new UnsupportedAudioFileException("The format chunk is too short");
+        }
+        int start = buffer.position();
+        short formatTag = buffer.getShort();
+        int channels = buffer.getShort();
+        int sampleRate = buffer.getInt();
+        buffer.getInt(); // byte rate, derived from the rest
+        int frameSize = buffer.getShort();
+        int sampleSizeInBits = buffer.getShort();
+        if (formatTag == FORMAT_EXTENSIBLE && chunkSize >= EXTENSIBLE_SUB_FORMAT_OFFSET + 2) {
+            // the actual format is the first two bytes of the sub format GUID
+            formatTag = buffer.getShort(start + EXTENSIBLE_SUB_FORMAT_OFFSET);
+        }
+        if (channels <= 0 || frameSize <= 0 || sampleRate <= 0) {
+            throw new UnsupportedAudioFileException("Invalid format chunk");
+        }
+
+        AudioFormat.Encoding encoding;
+        if (formatTag == FORMAT_PCM) {
+            encoding = sampleSizeInBits <= BITS_IN_BYTE ? AudioFormat.Encoding.PCM_UNSIGNED
+                    : AudioFormat.Encoding.PCM_SIGNED;
+        } else if (formatTag == FORMAT_IEEE_FLOAT) {
+            encoding = AudioFormat.Encoding.PCM_FLOAT;
+        } else {
+            // compressed data has to be decoded - it is left to AudioSystem
+            throw new UnsupportedAudioFileException("Only uncompressed audio can be streamed directly");
+        }
+        return new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize, sampleRate, false);
+    }
+
+    public AudioFormat getFormat() {
+        return this.format;
+    }
+
+    public long getDataOffset() {
+        return this.dataOffset;
+    }
+
+    public long getDataLength() {
+        return this.dataLength;
+    }
+}
@@ -0,0 +1,49 @@
+package bg.sofia.uni.fmi.mjt.spotify.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArrivalJitterTest {
+
+    private static final long CHUNK_NANOS = 20_000_000;
+    private static final long LATE_NANOS = 160_000_000;
+
+    @Test
+    void testSteadyStreamHasNoJitter() {
+        ArrivalJitter jitter = new ArrivalJitter();
+        // the transit does not matter, only how it changes
+        for (int i = 0; i < 100; i++) {
+            jitter.arrived(5_000_000_000L + i * CHUNK_NANOS, i * CHUNK_NANOS);
+        }
+        assertEquals(0, jitter.getJitterNanos());
+    }
+
+    @Test
+    void testLateChunkRaisesTheJitter() {
+        ArrivalJitter jitter = new ArrivalJitter();
+        jitter.arrived(0, 0);
+        jitter.arrived(CHUNK_NANOS + LATE_NANOS, CHUNK_NANOS);
+        assertEquals(LATE_NANOS / 16, jitter.getJitterNanos(), "A sixteenth of the change should be taken in");
+
+        long afterTheLateChunk = jitter.getJitterNanos();
+        for (int i = 2; i < 100; i++) {
+            jitter.arrived(i * CHUNK_NANOS + LATE_NANOS, i * CHUNK_NANOS);
+        }
+        assertTrue(jitter.getJitterNanos() < afterTheLateChunk / 10,
+                "The jitter should fade, once the stream is steady");
+    }
+
+    @Test
+    void testPauseIsNotJitter() {
+        ArrivalJitter jitter = new ArrivalJitter();
+        jitter.arrived(0, 0);
+        jitter.arrived(CHUNK_NANOS, CHUNK_NANOS);
+        jitter.restart();
+        // ten seconds later, the stream goes on from where it was
+        jitter.arrived(10_000_000_000L, 2 * CHUNK_NANOS);
+        jitter.arrived(10_000_000_000L + CHUNK_NANOS, 3 * CHUNK_NANOS);
+        assertEquals(0, jitter.getJitterNanos(), "The transit should start over after a restart");
+    }
+}
@@ -0,0 +1,164 @@
+package bg.sofia.uni.fmi.mjt.spotify.client;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class JitterBufferTest {
+
+    private static final int FRAME_SIZE = 4;
+    private static final long WAIT_MILLISECONDS = 200;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final Frame end = new Frame(FrameType.END_OF_STREAM, 1, ByteBuffer.allocate(0));
+    private final byte[] target = new byte[1024];
+
+    @Test
+    void testPlaybackWaitsForTheTarget() throws Exception {
+        JitterBuffer buffer = new JitterBuffer(1024);
+        buffer.setTarget(400);
+        buffer.write(audio(200, 1));
+        CompletableFuture<Integer> read = readAsync(buffer, 1024);
+        assertFalse(completesWithin(read), "Nothing should be played below the target");
+
+        buffer.write(audio(200, 2));
+        assertEquals(400, read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), "The whole target should be played");
+        assertEquals(0, buffer.getUnderruns(), "Waiting for the start is not an underrun");
+    }
+
+    @Test
+    void testEventComesRightAfterTheAudioBeforeIt() throws InterruptedException {
+        JitterBuffer buffer = new JitterBuffer(1024);
+        buffer.setTarget(1000);
+        buffer.write(audio(100, 1));
+        buffer.event(this.end);
+        buffer.write(audio(100, 2));
+
+        assertEquals(100, buffer.read(this.target, 1024, FRAME_SIZE),
+                "The audio before an event should be played without waiting for the target");
+        assertEquals(1, this.target[99]);
+        assertEquals(JitterBuffer.EVENT, buffer.read(this.target, 1024, FRAME_SIZE));
+        assertSame(this.end, buffer.takeEvent());
+    }
+
+    @Test
+    void testRunningDryIsAnUnderrunUnlessPaused() throws Exception {
+        JitterBuffer buffer = new JitterBuffer(1024);
+        buffer.setTarget(100);
+        buffer.write(audio(100, 1));
+        assertEquals(100, buffer.read(this.target, 1024, FRAME_SIZE));
+
+        CompletableFuture<Integer> read = readAsync(buffer, 1024);
+        assertFalse(completesWithin(read));
+        assertEquals(1, buffer.getUnderruns(), "A ring, that runs dry while playing, should be counted");
+        buffer.write(audio(40, 2));
+        assertFalse(completesWithin(read), "The ring should fill up to the target again after an underrun");
+        buffer.write(audio(60, 2));
+        assertEquals(100, read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        buffer.setPaused(true);
+        read = readAsync(buffer, 1024);
+        assertFalse(completesWithin(read));
+        assertEquals(1, buffer.getUnderruns(), "A paused player does not run dry");
+        buffer.discard();
+        buffer.event(this.end);
+        assertEquals(JitterBuffer.EVENT, read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFullRingStallsTheReaderUntilThereIsRoom() throws Exception {
+        JitterBuffer buffer = new JitterBuffer(256);
+        buffer.setTarget(0);
+        buffer.write(audio(200, 1));
+        CompletableFuture<Boolean> write = CompletableFuture.supplyAsync(() -> write(buffer, audio(200, 2)));
+        assertFalse(completesWithin(write), "The reader should wait for room");
+        assertEquals(1, buffer.getStalls());
+
+        assertEquals(200, buffer.read(this.target, 200, FRAME_SIZE));
+        assertEquals(true, write.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(200, buffer.read(this.target, 1024, FRAME_SIZE));
+        assertArrayEquals(audio(200, 2).array(), Arrays.copyOf(this.target, 200),
+                "The audio should come out in order, across the end of the ring");
+    }
+
+    @Test
+    void testDiscardDropsTheAudioAndReleasesTheReader() throws Exception {
+        JitterBuffer buffer = new JitterBuffer(256);
+        buffer.write(audio(256, 1));
+        CompletableFuture<Boolean> write = CompletableFuture.supplyAsync(() -> write(buffer, audio(100, 2)));
+        assertFalse(completesWithin(write));
+
+        buffer.discard();
+        assertEquals(false, write.get(TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                "The rest of a discarded chunk should not be written");
+        assertEquals(0, buffer.getBuffered());
+    }
+
+    @Test
+    void testGrowingKeepsTheAudio() throws InterruptedException {
+        JitterBuffer buffer = new JitterBuffer(256);
+        buffer.setTarget(0);
+        buffer.write(audio(200, 1));
+        assertEquals(200, buffer.read(this.target, 200, FRAME_SIZE));
+        // the next chunk goes around the end of the ring
+        buffer.write(audio(120, 2));
+        buffer.ensureCapacity(1024);
+        buffer.write(audio(400, 3));
+
+        assertEquals(1024, buffer.getCapacity());
+        assertEquals(520, buffer.read(this.target, 1024, FRAME_SIZE));
+        assertArrayEquals(audio(120, 2).array(), Arrays.copyOf(this.target, 120));
+        assertArrayEquals(audio(400, 3).array(), Arrays.copyOfRange(this.target, 120, 520));
+    }
+
+    @Test
+    void testOnlyWholeFramesAreRead() throws InterruptedException {
+        JitterBuffer buffer = new JitterBuffer(256);
+        buffer.setTarget(0);
+        buffer.write(audio(10, 1));
+        assertEquals(8, buffer.read(this.target, 1024, FRAME_SIZE));
+        buffer.event(this.end);
+        assertEquals(JitterBuffer.EVENT, buffer.read(this.target, 1024, FRAME_SIZE),
+                "Less than a frame before an event should be dropped");
+    }
+
+    private CompletableFuture<Integer> readAsync(JitterBuffer buffer, int maxBytes) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return buffer.read(this.target, maxBytes, FRAME_SIZE);
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static boolean write(JitterBuffer buffer, ByteBuffer audio) {
+        try {
+            return buffer.write(audio);
+        } catch (InterruptedException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static boolean completesWithin(CompletableFuture<?> future) throws InterruptedException {
+        Thread.sleep(WAIT_MILLISECONDS);
+        return future.isDone();
+    }
+
+    private static ByteBuffer audio(int length, int value) {
+        byte[] audio = new byte[length];
+        Arrays.fill(audio, (byte) value);
+        return ByteBuffer.wrap(audio);
+    }
+}
@@ -3,6 +3,9 @@ package bg.sofia.uni.fmi.mjt.spotify.objects;
 import bg.sofia.uni.fmi.mjt.spotify.exceptions.SongAlreadyExistsException;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -30,4 +33,15 @@ public class PlaylistsTest {
         assertEquals(resultingString, this.testPlaylist.toReadableString(),
                 "Method addSong() should add the song in the playlist, if it's already there");
     }
+
+    @Test
+    void testSongsAreInTheOrderTheyWereAdded() throws SongAlreadyExistsException {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Song song = new Song("Song " + i, "Artist", 120);
+            this.testPlaylist.addSong(song);
+            songs.add(song);
+        }
+        assertEquals(songs, this.testPlaylist.getSongs(), "A playlist should be played in the order it was made");
+    }
 }
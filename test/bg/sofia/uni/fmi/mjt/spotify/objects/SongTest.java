@@ -1,10 +1,12 @@
 package bg.sofia.uni.fmi.mjt.spotify.objects;
 
+import com.google.gson.Gson;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SongTest {
 
@@ -26,4 +28,17 @@ public class SongTest {
                 this.testSong.toReadableString(),
                 "Method toReadableString() should return a color string of the song's artist and name");
     }
+
+    @Test
+    void testListensSurviveJson() {
+        for (int i = 0; i < 3; i++) {
+            this.testSong.play();
+        }
+        Gson gson = new Gson();
+        String json = gson.toJson(this.testSong);
+        assertTrue(json.contains("\"listeningTimes\":3"), "The listens should be stored as a plain number");
+        assertEquals(3, gson.fromJson(json, Song.class).getNumberOfListens(), "The listens should be read back");
+        assertEquals(0, gson.fromJson("{\"name\":\"Name\",\"artist\":\"Artist\",\"duration\":120}", Song.class)
+                .getNumberOfListens(), "A song without stored listens should start from zero");
+    }
 }
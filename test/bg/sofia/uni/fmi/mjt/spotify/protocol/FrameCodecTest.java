@@ -0,0 +1,137 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameCodecTest {
+
+    @Test
+    void testRoundTrip() throws ProtocolException {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        ByteBuffer encoded = FrameCodec.encode(new Frame(FrameType.AUDIO_DATA, 42, payload));
+        assertEquals(FrameCodec.HEADER_SIZE + 3, encoded.remaining(), "A frame should be its header and payload");
+
+        Frame decoded = FrameCodec.decode(encoded);
+        assertNotNull(decoded, "A whole frame should be decoded");
+        assertEquals(FrameType.AUDIO_DATA, decoded.getType(), "The type should survive encoding");
+        assertEquals(42, decoded.getStreamId(), "The stream id should survive encoding");
+        assertEquals(payload, decoded.getPayload(), "The payload should survive encoding");
+    }
+
+    @Test
+    void testTextIsNotTruncated() throws ProtocolException {
+        // the old protocol cut the last byte of every command
+        String command = "search Måneskin";
+        assertEquals(command, FrameCodec.decode(FrameCodec.encode(Frame.command(command))).getText(),
+                "The whole command should arrive");
+    }
+
+    @Test
+    void testIncompleteFrame() throws ProtocolException {
+        ByteBuffer encoded = FrameCodec.encode(Frame.response("Now playing Smooth"));
+        encoded.limit(encoded.limit() - 1);
+        assertNull(FrameCodec.decode(encoded), "An incomplete frame should not be decoded");
+        assertEquals(0, encoded.position(), "An incomplete frame should not be consumed");
+    }
+
+    @Test
+    void testDecoderSplitsAndJoinsFrames() throws ProtocolException {
+        ByteBuffer first = FrameCodec.encode(Frame.command("login admin admin"));
+        ByteBuffer second = FrameCodec.encode(Frame.command("play Smooth"));
+        ByteBuffer stream = ByteBuffer.allocate(first.remaining() + second.remaining()).put(first).put(second).flip();
+
+        // two frames, delivered one byte at a time
+        FrameDecoder decoder = new FrameDecoder(4);
+        int frames = 0;
+        while (stream.hasRemaining()) {
+            decoder.feed(ByteBuffer.wrap(new byte[] {stream.get()}));
+            Frame frame;
+            while ((frame = decoder.next()) != null) {
+                frames++;
+                assertTrue(frame.getText().equals("login admin admin") || frame.getText().equals("play Smooth"),
+                        "Every frame should be decoded whole");
+            }
+        }
+        assertEquals(2, frames, "Both frames should be decoded");
+        assertEquals(0, decoder.buffered(), "Nothing should be left over");
+    }
+
+    @Test
+    void testDecoderPeeksAtFramesInPlace() throws ProtocolException {
+        byte[] audio = new byte[100];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) i;
+        }
+        FrameDecoder decoder = new FrameDecoder(4);
+        decoder.feed(FrameCodec.encode(new Frame(FrameType.AUDIO_DATA, 3, ByteBuffer.wrap(audio))));
+        decoder.feed(FrameCodec.encode(Frame.response("Paused")));
+
+        assertTrue(decoder.peek(), "A whole frame should be peeked at");
+        assertEquals(FrameType.AUDIO_DATA, decoder.getPeekedType());
+        assertEquals(3, decoder.getPeekedStreamId());
+        assertEquals(ByteBuffer.wrap(audio), decoder.getPeekedPayload());
+        ByteBuffer view = decoder.getPeekedPayload();
+        decoder.skip();
+
+        assertTrue(decoder.peek());
+        assertSame(view, decoder.getPeekedPayload(), "Every frame should be seen through the same view");
+        assertEquals(FrameType.RESPONSE, decoder.getPeekedType());
+        assertEquals("Paused", decoder.next().getText(), "A peeked frame can still be taken as it is");
+        assertFalse(decoder.peek());
+        assertEquals(0, decoder.buffered(), "Nothing should be left over");
+    }
+
+    @Test
+    void testDecoderRefusesFramesOverItsLimit() throws ProtocolException {
+        FrameDecoder decoder = new FrameDecoder(16, 8);
+        decoder.feed(FrameCodec.encode(Frame.command("stop")));
+        assertEquals("stop", decoder.next().getText(), "A frame within the limit should be decoded");
+
+        ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+        FrameCodec.encodeHeader(header, FrameType.COMMAND, 0, 9);
+        decoder.feed(header.flip());
+        assertThrows(ProtocolException.class, decoder::peek, "A frame over the limit should be refused");
+        decoder.feed(header.flip());
+        assertThrows(ProtocolException.class, decoder::next, "A frame over the limit should be refused");
+    }
+
+    @Test
+    void testUnsupportedVersion() {
+        ByteBuffer encoded = FrameCodec.encode(Frame.command("stop"));
+        encoded.put(0, (byte) (FrameCodec.VERSION + 1));
+        assertThrows(ProtocolException.class, () -> FrameCodec.decode(encoded),
+                "A frame of an unknown version should be rejected");
+    }
+
+    @Test
+    void testAudioFormatRoundTrip() throws ProtocolException {
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 48000, 16, 2, 4, 48000, false);
+        AudioFormat decoded = AudioFormatCodec.decode(AudioFormatCodec.encode(format));
+        assertTrue(format.matches(decoded), "The audio format should survive encoding");
+        assertEquals(format.getEncoding(), decoded.getEncoding(), "The encoding should survive encoding");
+    }
+
+    @Test
+    void testAudioFormatCarriesTheCodec() throws ProtocolException {
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        ByteBuffer withCodec = AudioFormatCodec.encode(format, AudioCodecs.LOSSLESS);
+        assertTrue(format.matches(AudioFormatCodec.decode(withCodec)), "The codec should not change the format");
+        assertEquals(AudioCodecs.LOSSLESS, AudioFormatCodec.decodeCodec(withCodec), "The codec should be sent");
+
+        ByteBuffer withoutCodec = AudioFormatCodec.encode(format);
+        AudioFormatCodec.decode(withoutCodec);
+        assertEquals(AudioCodecs.PCM, AudioFormatCodec.decodeCodec(withoutCodec),
+                "A format without a codec should be plain PCM");
+    }
+}
@@ -0,0 +1,81 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the bandwidth the lossless codec saves on the songs of the catalog, and the CPU time it costs the server
+// to encode a stream and the client to decode it - run on its own with the "benchmark" tag, the numbers are printed
+@Tag("benchmark")
+public class LosslessCodecBenchmark {
+
+    private static final String SONGS_DIRECTORY = "resources/songs";
+    private static final int WARM_UP_ROUNDS = 2;
+
+    @Test
+    void testBandwidthAndCpuPerStream() throws Exception {
+        File[] songs = new File(SONGS_DIRECTORY).listFiles((directory, name) -> name.endsWith(".wav"));
+        long totalPcm = 0;
+        long totalEncoded = 0;
+        for (File song : songs) {
+            AudioFormat format;
+            byte[] pcm;
+            try (AudioInputStream stream = AudioSystem.getAudioInputStream(song)) {
+                format = stream.getFormat();
+                pcm = stream.readAllBytes();
+            }
+            AudioCodec codec = AudioCodecs.LOSSLESS.supports(format) ? AudioCodecs.LOSSLESS : AudioCodecs.PCM;
+            int blockSize = LosslessCodec.BLOCK_FRAMES * format.getFrameSize();
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                decode(codec, format, encode(codec, format, pcm, blockSize));
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long before = threads.getCurrentThreadCpuTime();
+            List<ByteBuffer> blocks = encode(codec, format, pcm, blockSize);
+            long encodeCpu = threads.getCurrentThreadCpuTime() - before;
+            before = threads.getCurrentThreadCpuTime();
+            long decoded = decode(codec, format, blocks);
+            long decodeCpu = threads.getCurrentThreadCpuTime() - before;
+
+            long encoded = blocks.stream().mapToLong(ByteBuffer::remaining).sum();
+            double seconds = pcm.length / (double) (format.getFrameSize() * format.getFrameRate());
+            System.out.printf("%-45s %-8s %5.1f%% saved, %7.1f kbps instead of %7.1f, "
+                            + "encode %6.1f ms (%5.2f%% of a core), decode %6.1f ms (%5.2f%% of a core)%n",
+                    song.getName(), codec.getName(), 100.0 * (pcm.length - encoded) / pcm.length,
+                    encoded * 8 / seconds / 1000, pcm.length * 8 / seconds / 1000,
+                    encodeCpu / 1e6, encodeCpu / 1e7 / seconds, decodeCpu / 1e6, decodeCpu / 1e7 / seconds);
+            assertEquals(pcm.length, decoded, "The whole song should be decoded");
+            totalPcm += pcm.length;
+            totalEncoded += encoded;
+        }
+        System.out.printf("all songs: %.1f%% of the bandwidth saved%n", 100.0 * (totalPcm - totalEncoded) / totalPcm);
+    }
+
+    private static List<ByteBuffer> encode(AudioCodec codec, AudioFormat format, byte[] pcm, int blockSize) {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        for (int offset = 0; offset < pcm.length; offset += blockSize) {
+            blocks.add(codec.encode(ByteBuffer.wrap(pcm, offset, Math.min(blockSize, pcm.length - offset)), format));
+        }
+        return blocks;
+    }
+
+    private static long decode(AudioCodec codec, AudioFormat format, List<ByteBuffer> blocks) throws Exception {
+        long decoded = 0;
+        for (ByteBuffer block : blocks) {
+            decoded += codec.decode(block.duplicate(), format).remaining();
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,128 @@
+package bg.sofia.uni.fmi.mjt.spotify.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LosslessCodecTest {
+
+    private static final AudioFormat STEREO = new AudioFormat(44100, 16, 2, true, false);
+    private static final AudioFormat MONO_BIG_ENDIAN = new AudioFormat(22050, 16, 1, true, true);
+    private static final int FRAMES = LosslessCodec.BLOCK_FRAMES;
+
+    private final AudioCodec codec = AudioCodecs.LOSSLESS;
+
+    @Test
+    void testMusicLikeAudioIsCompressed() throws ProtocolException {
+        // two tones, slightly different in the two channels, like most music
+        ByteBuffer pcm = pcm(STEREO, FRAMES, (i, channel) -> (int) (8000 * Math.sin(i * 0.03)
+                + 3000 * Math.sin(i * 0.17 + channel)));
+        ByteBuffer encoded = this.codec.encode(pcm.duplicate(), STEREO);
+        assertTrue(encoded.remaining() < pcm.remaining() / 2,
+                "Predictable audio should be at least halved, but was " + encoded.remaining());
+        assertEquals(pcm, this.codec.decode(encoded, STEREO), "The audio should be decoded exactly");
+    }
+
+    @Test
+    void testSilenceIsCheap() throws ProtocolException {
+        ByteBuffer pcm = pcm(STEREO, FRAMES, (i, channel) -> 0);
+        ByteBuffer encoded = this.codec.encode(pcm.duplicate(), STEREO);
+        // a bit per sample, there is no special case for constant blocks
+        assertTrue(encoded.remaining() <= pcm.remaining() / 16 + 64, "Silence should take a bit per sample");
+        assertEquals(pcm, this.codec.decode(encoded, STEREO));
+    }
+
+    @Test
+    void testNoiseIsNeverLarger() throws ProtocolException {
+        Random random = new Random(7);
+        ByteBuffer pcm = pcm(STEREO, FRAMES, (i, channel) -> random.nextInt(1 << 16) - (1 << 15));
+        ByteBuffer encoded = this.codec.encode(pcm.duplicate(), STEREO);
+        assertTrue(encoded.remaining() <= pcm.remaining() + Integer.BYTES + 1,
+                "Noise should be sent as it is, rather than grow");
+        assertEquals(pcm, this.codec.decode(encoded, STEREO));
+    }
+
+    @Test
+    void testExtremesAndOutliers() throws ProtocolException {
+        // full-scale jumps make residuals too big for the Rice parameter of the rest of the partition
+        ByteBuffer pcm = pcm(STEREO, FRAMES, (i, channel) -> i % 97 == 0 ? (channel == 0 ? Short.MAX_VALUE
+                : Short.MIN_VALUE) : i % 3 - channel);
+        assertEquals(pcm, this.codec.decode(this.codec.encode(pcm.duplicate(), STEREO), STEREO));
+    }
+
+    @Test
+    void testMonoBigEndianAndShortBlocks() throws ProtocolException {
+        for (int frames : new int[] {0, 1, 3, 5, 257, FRAMES}) {
+            ByteBuffer pcm = pcm(MONO_BIG_ENDIAN, frames, (i, channel) -> (int) (12000 * Math.cos(i * 0.05)));
+            assertEquals(pcm, this.codec.decode(this.codec.encode(pcm.duplicate(), MONO_BIG_ENDIAN),
+                    MONO_BIG_ENDIAN), "A block of " + frames + " frames should be decoded exactly");
+        }
+    }
+
+    @Test
+    void testPartialFramesAreSentAsTheyAre() throws ProtocolException {
+        ByteBuffer pcm = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6});
+        assertEquals(pcm, this.codec.decode(this.codec.encode(pcm.duplicate(), STEREO), STEREO));
+    }
+
+    @Test
+    void testDecodingIntoTheSameBuffer() throws ProtocolException {
+        ByteBuffer target = ByteBuffer.allocate(FRAMES * STEREO.getFrameSize());
+        Random random = new Random(7);
+        ByteBuffer tone = pcm(STEREO, FRAMES, (i, channel) -> (int) (8000 * Math.sin(i * 0.03 + channel)));
+        ByteBuffer noise = pcm(STEREO, FRAMES / 2, (i, channel) -> random.nextInt());
+        for (ByteBuffer pcm : new ByteBuffer[] {tone, noise, tone}) {
+            ByteBuffer decoded = this.codec.decode(this.codec.encode(pcm.duplicate(), STEREO), STEREO, target);
+            assertSame(target, decoded, "A block, that fits, should be decoded into the target");
+            assertEquals(pcm, decoded, "The audio should be decoded exactly");
+        }
+
+        ByteBuffer small = ByteBuffer.allocate(16);
+        ByteBuffer decoded = this.codec.decode(this.codec.encode(tone.duplicate(), STEREO), STEREO, small);
+        assertNotSame(small, decoded, "A block, that does not fit, should get a buffer of its own");
+        assertEquals(tone, decoded);
+    }
+
+    @Test
+    void testOnlySixteenBitPcm() {
+        assertFalse(this.codec.supports(new AudioFormat(44100, 8, 2, true, false)));
+        assertFalse(this.codec.supports(new AudioFormat(44100, 16, 6, true, false)));
+        assertTrue(this.codec.supports(STEREO));
+    }
+
+    @Test
+    void testTruncatedBlock() {
+        ByteBuffer pcm = pcm(STEREO, FRAMES, (i, channel) -> (int) (8000 * Math.sin(i * 0.03)));
+        ByteBuffer encoded = this.codec.encode(pcm, STEREO);
+        encoded.limit(encoded.limit() / 2);
+        assertThrows(ProtocolException.class, () -> this.codec.decode(encoded, STEREO),
+                "A block cut in half should be rejected");
+    }
+
+    private interface Signal {
+        int sample(int i, int channel);
+    }
+
+    private static ByteBuffer pcm(AudioFormat format, int frames, Signal signal) {
+        ByteBuffer pcm = ByteBuffer.allocate(frames * format.getFrameSize())
+                .order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            for (int channel = 0; channel < format.getChannels(); channel++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, signal.sample(i, channel)));
+                pcm.putShort((short) sample);
+            }
+        }
+        return pcm.flip().order(ByteOrder.BIG_ENDIAN);
+    }
+}
@@ -0,0 +1,216 @@
+package bg.sofia.uni.fmi.mjt.spotify.server;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ConnectionThreads;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.DefaultStreamingEngine;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// the reactors against a thread per connection: how many idle connections fit in a gigabyte,
+// the p99 latency of a command while they are connected, and how many streams keep up with real time
+// the memory is the resident set of the whole process, the clients included, so only the difference
+// between the modes means something - on a JVM without virtual threads, the threads are platform ones
+// run on its own with the "benchmark" tag, the numbers are printed
+@Tag("benchmark")
+public class ExecutionModeBenchmark {
+
+    private static final int IDLE_CONNECTIONS = 1_000;
+    private static final int LATENCY_CLIENTS = 16;
+    private static final int COMMANDS_PER_CLIENT = 200;
+    private static final String COMMAND = "search Santana";
+    private static final int[] STREAMS = {250, 500, 1_000, 2_000, 4_000};
+    private static final long STREAMING_MILLISECONDS = 3_000;
+    private static final long CONNECT_TIMEOUT_MILLISECONDS = 10_000;
+    private static final long BYTES_PER_GB = 1024L * 1024 * 1024;
+
+    @Test
+    void testExecutionModes() throws Exception {
+        System.out.println("virtual threads: " + ConnectionThreads.areVirtual());
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            measureConnections(mode);
+            measureStreams(mode);
+        }
+    }
+
+    private void measureConnections(ExecutionMode mode) throws Exception {
+        PrintStream console = System.out;
+        // the server prints every command
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            int port = freePort();
+            SpotifyServer server = new SpotifyServer(port, 1, mode);
+            Thread serverThread = new Thread(server::start);
+            serverThread.start();
+
+            List<SocketChannel> clients = new ArrayList<>();
+            // the first client waits for the server to start, and is left out of the memory
+            clients.add(connect(port));
+            roundTrip(clients.get(0), new FrameDecoder());
+            System.gc();
+            long memoryBefore = residentMemory();
+            for (int i = 1; i < IDLE_CONNECTIONS; i++) {
+                SocketChannel client = connect(port);
+                // a command makes sure, that the server has set the client up completely
+                roundTrip(client, new FrameDecoder());
+                clients.add(client);
+            }
+            System.gc();
+            long bytesPerConnection = Math.max(1, (residentMemory() - memoryBefore) / (IDLE_CONNECTIONS - 1));
+
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < LATENCY_CLIENTS; i++) {
+                SocketChannel client = clients.get(i);
+                Thread thread = new Thread(() -> {
+                    FrameDecoder decoder = new FrameDecoder();
+                    try {
+                        for (int c = 0; c < COMMANDS_PER_CLIENT; c++) {
+                            latencies.add(roundTrip(client, decoder));
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            server.stop();
+            serverThread.join();
+
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            long p99 = sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+            console.printf("%-21s %,10d connections/GB, p99 command latency %8.2f ms%n", mode,
+                    BYTES_PER_GB / bytesPerConnection, p99 / 1e6);
+            assertEquals(LATENCY_CLIENTS * COMMANDS_PER_CLIENT, sorted.size(), "Every command should get a response");
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // the most streams, that are sent without a single underrun for the whole time
+    private void measureStreams(ExecutionMode mode) throws Exception {
+        Song song = new Song("Smooth", "Santana", 143);
+        Selector selector = mock(Selector.class);
+        int maxStreams = 0;
+        for (int streams : STREAMS) {
+            StreamingEngine engine = mode == ExecutionMode.REACTOR ? new DefaultStreamingEngine(null)
+                    : new DefaultStreamingEngine(null, ConnectionThreads.newFactory("stream-"));
+            for (int i = 0; i < streams; i++) {
+                engine.startStreaming(new Session(i + 1, new ClientConnection(createListener(selector))), song);
+            }
+            Thread.sleep(STREAMING_MILLISECONDS);
+            long underruns = engine.getTotalMetrics().getUnderruns();
+            int active = engine.getActiveStreams();
+            engine.shutdown();
+            if (underruns > 0 || active < streams) {
+                break;
+            }
+            maxStreams = streams;
+        }
+        System.out.printf("%-21s %,10d concurrent streams in real time%n", mode, maxStreams);
+    }
+
+    private static long roundTrip(SocketChannel client, FrameDecoder decoder) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer frame = FrameCodec.encode(Frame.command(COMMAND));
+        while (frame.hasRemaining()) {
+            client.write(frame);
+        }
+        while (decoder.next() == null) {
+            if (decoder.readFrom(client) == -1) {
+                throw new IOException("The server has closed the connection");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // the resident set from the kernel where there is one, the heap otherwise
+    private static long residentMemory() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static SelectionKey createListener(Selector selector) {
+        SocketChannel channel = mock(SocketChannel.class, withSettings().stubOnly());
+        try {
+            when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+                ByteBuffer buffer = invocation.getArgument(0);
+                int written = buffer.remaining();
+                buffer.position(buffer.limit());
+                return written;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        SelectionKey key = mock(SelectionKey.class, withSettings().stubOnly());
+        when(key.channel()).thenReturn(channel);
+        when(key.selector()).thenReturn(selector);
+        when(key.interestOps(anyInt())).thenReturn(key);
+        return key;
+    }
+
+    private static SocketChannel connect(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLISECONDS;
+        while (true) {
+            try {
+                return SocketChannel.open(new InetSocketAddress("localhost", port));
+            } catch (IOException e) {
+                // the server is still starting
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException(e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package bg.sofia.uni.fmi.mjt.spotify.server;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.server.authentication.DefaultUserService;
+import bg.sofia.uni.fmi.mjt.spotify.server.authentication.PasswordHasher;
+import bg.sofia.uni.fmi.mjt.spotify.server.executor.DefaultCommandExecutor;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.DefaultMediaService;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.InMemoryStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// how long a cheap command takes through the server, while other clients keep logging in -
+// every login costs a full password hash, so a server, that runs the commands one at a time,
+// keeps the cheap ones waiting behind the logins
+// run on its own with the "benchmark" tag, -Dspotify.password.iterations changes the cost of a hash
+@Tag("benchmark")
+public class LoginLatencyBenchmark {
+
+    private static final Path TEST_SONGS_PATH = Path.of("test-resources", "storage", "test-songs.txt");
+    private static final int LOGIN_CLIENTS = 8;
+    private static final int PROBES = 50;
+    private static final String PROBE = "search Santana";
+    private static final long CONNECT_TIMEOUT_MILLISECONDS = 10_000;
+
+    @Test
+    void testCommandLatencyDuringLogins(@TempDir Path directory) throws Exception {
+        InMemoryStore credentials = new InMemoryStore();
+        try (PasswordHasher hasher = new PasswordHasher()) {
+            for (int i = 0; i < LOGIN_CLIENTS; i++) {
+                credentials.put(email(i), hasher.hash("password" + i));
+            }
+        }
+        Path songsPath = directory.resolve("songs.txt");
+        Path playlistsPath = directory.resolve("playlists.txt");
+        Files.copy(TEST_SONGS_PATH, songsPath);
+        Files.createFile(playlistsPath);
+        DefaultSpotifyService service = new DefaultSpotifyService(null, new DefaultUserService(credentials, null),
+                new DefaultMediaService(null, songsPath, playlistsPath, mock(StreamingEngine.class), null));
+
+        PrintStream console = System.out;
+        // the server prints every command
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        int port = freePort();
+        SpotifyServer server = new SpotifyServer(port, 1, new DefaultCommandExecutor(null, service));
+        Thread serverThread = new Thread(server::start);
+        serverThread.start();
+        try {
+            SocketChannel probe = connect(port);
+            long[] idle = probe(probe);
+
+            AtomicBoolean loggingIn = new AtomicBoolean(true);
+            AtomicLong logins = new AtomicLong(0);
+            List<Thread> clients = new ArrayList<>();
+            for (int i = 0; i < LOGIN_CLIENTS; i++) {
+                // a client, that is already logged in, is still checked with a full hash, every time
+                clients.add(startLogins(connect(port), "login " + email(i) + " password" + i, loggingIn, logins));
+            }
+            long start = System.nanoTime();
+            long[] busy = probe(probe);
+            long elapsed = System.nanoTime() - start;
+            loggingIn.set(false);
+            for (Thread client : clients) {
+                client.join();
+            }
+            probe.close();
+
+            console.printf("%d command threads, %d clients logging in, %.0f logins/s%n",
+                    Integer.getInteger("spotify.server.command.threads",
+                            Math.max(8, 4 * Runtime.getRuntime().availableProcessors())),
+                    LOGIN_CLIENTS, logins.get() / (elapsed / 1e9));
+            console.printf("'%s' idle:                median %6.2f ms, p99 %7.2f ms, max %7.2f ms%n",
+                    PROBE, percentile(idle, 50), percentile(idle, 99), percentile(idle, 100));
+            console.printf("'%s' during the logins:   median %6.2f ms, p99 %7.2f ms, max %7.2f ms%n",
+                    PROBE, percentile(busy, 50), percentile(busy, 99), percentile(busy, 100));
+            assertTrue(logins.get() > 0, "The clients should have logged in meanwhile");
+        } finally {
+            server.stop();
+            serverThread.join();
+            System.setOut(console);
+        }
+    }
+
+    // the round trips of the probe command, one after another
+    private static long[] probe(SocketChannel client) throws IOException {
+        long[] latencies = new long[PROBES];
+        FrameDecoder decoder = new FrameDecoder();
+        for (int i = 0; i < PROBES; i++) {
+            long start = System.nanoTime();
+            send(client, PROBE);
+            receive(client, decoder);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private static Thread startLogins(SocketChannel client, String login, AtomicBoolean loggingIn,
+                                      AtomicLong logins) {
+        Thread thread = new Thread(() -> {
+            FrameDecoder decoder = new FrameDecoder();
+            try {
+                while (loggingIn.get()) {
+                    send(client, login);
+                    receive(client, decoder);
+                    logins.incrementAndGet();
+                }
+                client.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void send(SocketChannel client, String command) throws IOException {
+        ByteBuffer frame = FrameCodec.encode(Frame.command(command));
+        while (frame.hasRemaining()) {
+            client.write(frame);
+        }
+    }
+
+    private static void receive(SocketChannel client, FrameDecoder decoder) throws IOException {
+        while (decoder.next() == null) {
+            if (decoder.readFrom(client) == -1) {
+                throw new IOException("The server has closed the connection");
+            }
+        }
+    }
+
+    private static double percentile(long[] latencies, int percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String email(int i) {
+        return "user" + i + "@abv.bg";
+    }
+
+    private static SocketChannel connect(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLISECONDS;
+        while (true) {
+            try {
+                return SocketChannel.open(new InetSocketAddress("localhost", port));
+            } catch (IOException e) {
+                // the server is still starting
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException(e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
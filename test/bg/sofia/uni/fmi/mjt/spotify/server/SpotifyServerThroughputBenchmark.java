@@ -0,0 +1,131 @@
+package bg.sofia.uni.fmi.mjt.spotify.server;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// many clients pipelining commands at once, against a growing number of reactors
+// run on its own with the "benchmark" tag, the numbers are printed
+@Tag("benchmark")
+public class SpotifyServerThroughputBenchmark {
+
+    private static final int[] REACTORS = {1, 2, 4, 8};
+    private static final int CLIENTS = 64;
+    private static final int COMMANDS_PER_CLIENT = 2000;
+    private static final String COMMAND = "search Santana";
+    private static final long CONNECT_TIMEOUT_MILLISECONDS = 10_000;
+
+    @Test
+    void testThroughput() throws Exception {
+        PrintStream console = System.out;
+        // the server prints every command
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int reactors : REACTORS) {
+                int port = freePort();
+                SpotifyServer server = new SpotifyServer(port, reactors);
+                Thread serverThread = new Thread(server::start);
+                serverThread.start();
+
+                List<SocketChannel> clients = new ArrayList<>();
+                for (int i = 0; i < CLIENTS; i++) {
+                    clients.add(connect(port));
+                }
+                AtomicLong responses = new AtomicLong(0);
+                long start = System.nanoTime();
+                List<Thread> threads = new ArrayList<>();
+                for (SocketChannel client : clients) {
+                    threads.add(startWriter(client));
+                    threads.add(startReader(client, responses));
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - start;
+
+                for (SocketChannel client : clients) {
+                    client.close();
+                }
+                server.stop();
+                serverThread.join();
+                console.printf("%d reactors: %,10.0f responses/s%n", reactors, responses.get() / (elapsed / 1e9));
+                assertEquals((long) CLIENTS * COMMANDS_PER_CLIENT, responses.get(),
+                        "Every command should get a response");
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static Thread startWriter(SocketChannel client) {
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < COMMANDS_PER_CLIENT; i++) {
+                    ByteBuffer frame = FrameCodec.encode(Frame.command(COMMAND));
+                    while (frame.hasRemaining()) {
+                        client.write(frame);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        return writer;
+    }
+
+    private static Thread startReader(SocketChannel client, AtomicLong responses) {
+        Thread reader = new Thread(() -> {
+            FrameDecoder decoder = new FrameDecoder();
+            int received = 0;
+            try {
+                while (received < COMMANDS_PER_CLIENT && decoder.readFrom(client) != -1) {
+                    while (decoder.next() != null) {
+                        received++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            responses.addAndGet(received);
+        });
+        reader.start();
+        return reader;
+    }
+
+    private static SocketChannel connect(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLISECONDS;
+        while (true) {
+            try {
+                return SocketChannel.open(new InetSocketAddress("localhost", port));
+            } catch (IOException e) {
+                // the server is still starting
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException(e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -9,20 +9,22 @@ import bg.sofia.uni.fmi.mjt.spotify.exceptions.UserDoesNotExistException;
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
 import bg.sofia.uni.fmi.mjt.spotify.server.DefaultSpotifyService;
 import bg.sofia.uni.fmi.mjt.spotify.server.SpotifyService;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.MediaService;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.LogStructuredStore;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mock;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -34,21 +36,23 @@ public class DefaultUserServiceTest {
     private static final Path TEST_CREDENTIALS_PATH = Path.of("test-resources", "users", "test-users.csv");
     private static final String LOGGER_FILE_PATH = "userServiceLogs.log";
     private static SpotifyLogger logger;
+    // the users are written as plain passwords, from before they were hashed, and the file is restored afterwards
+    private static List<String> originalUsers;
     private SpotifyService service;
 
-    @Mock
-    SelectionKey key1 = mock(SelectionKey.class);
-    @Mock
-    SelectionKey key2 = mock(SelectionKey.class);
+    Session key1 = new Session(1);
+    Session key2 = new Session(2);
 
     @BeforeAll
     static void setup() throws IOException {
         logger = new SpotifyLogger(LOGGER_FILE_PATH);
+        originalUsers = Files.readAllLines(TEST_CREDENTIALS_PATH);
         createUsersFile();
     }
 
     @AfterAll
-    static void clearLogger() {
+    static void clearLogger() throws IOException {
+        Files.write(TEST_CREDENTIALS_PATH, originalUsers);
         logger.close();
         Path.of(LOGGER_FILE_PATH + ".lck").toFile().delete();
         Path.of(LOGGER_FILE_PATH).toFile().delete();
@@ -64,7 +68,7 @@ public class DefaultUserServiceTest {
     @BeforeEach
     void setupService() throws IOException {
         Path.of(LOGGER_FILE_PATH).toFile().createNewFile();
-        this.service = new DefaultSpotifyService(TEST_CREDENTIALS_PATH, logger);
+        this.service = new DefaultSpotifyService(TEST_CREDENTIALS_PATH, logger, mock(MediaService.class));
     }
 
     @AfterEach
@@ -88,19 +92,33 @@ public class DefaultUserServiceTest {
     @Test
     void testRegisterSuccessful() throws SpotifyException, IOException {
         this.service.register("valid-email@abv.bg", "password");
-        String result = "";
-        try (BufferedReader reader = new BufferedReader(new FileReader(TEST_CREDENTIALS_PATH.toString()))) {
-            result += reader.readLine();
-            result += System.lineSeparator();
-            result += reader.readLine();
-            result += System.lineSeparator();
-            result += reader.readLine();
-            result += System.lineSeparator();
-        }
-        String expected = "admin,admin" + System.lineSeparator() +
-                "user@abv.bg,password" + System.lineSeparator() +
-                "valid-email@abv.bg,password" + System.lineSeparator();
-        assertEquals(expected, result, "Registration with valid credentials should save the new user in the file");
+        List<String> stored = Files.readAllLines(TEST_CREDENTIALS_PATH).stream()
+                .filter(line -> line.startsWith("valid-email@abv.bg,"))
+                .toList();
+        assertEquals(1, stored.size(), "Registration with valid credentials should save the new user in the file");
+        assertTrue(PasswordHasher.isHash(stored.get(0).substring("valid-email@abv.bg,".length())),
+                "The password should be stored as a hash, not as it is");
+        SpotifyService restarted = new DefaultSpotifyService(TEST_CREDENTIALS_PATH, logger, mock(MediaService.class));
+        assertDoesNotThrow(() -> restarted.login(this.key1, "valid-email@abv.bg", "password"),
+                "A registered user should be able to log in with the hashed password");
+    }
+
+    @Test
+    void testPlainPasswordsAreHashedOnLogin(@TempDir Path directory) throws SpotifyException, IOException {
+        Path credentialsPath = directory.resolve("users.csv");
+        Files.write(credentialsPath, List.of("admin,admin"));
+        UserService userService = new DefaultUserService(credentialsPath, logger);
+        userService.login(this.key1, "admin", "admin");
+        List<String> lines = Files.readAllLines(credentialsPath);
+        assertEquals(2, lines.size(), "The hashed password should be appended");
+        assertTrue(PasswordHasher.isHash(lines.get(1).substring("admin,".length())),
+                "A plain password should be hashed on the first login");
+
+        UserService restarted = new DefaultUserService(credentialsPath, logger);
+        assertThrows(IncorrectLoginCredentialsException.class, () -> restarted.login(this.key1, "admin", "wrong"),
+                "The hashed password should be checked");
+        restarted.login(this.key1, "admin", "admin");
+        assertEquals(2, Files.readAllLines(credentialsPath).size(), "A hashed password should not be hashed again");
     }
 
     @Test
@@ -131,4 +149,40 @@ public class DefaultUserServiceTest {
                 "Method getUsername() should work correctly for logged-in users");
         this.service.logout(key2);
     }
+
+    @Test
+    void testRecoveryFromTheJournal(@TempDir Path directory) throws SpotifyException, IOException {
+        Path credentialsPath = directory.resolve("users.csv");
+        Path journalPath = directory.resolve("journal");
+        Files.write(credentialsPath, List.of("admin,admin"));
+        UserService crashed = new DefaultUserService(credentialsPath, journalPath, logger);
+        crashed.register("journaled@abv.bg", "password");
+        assertEquals(List.of("admin,admin"), Files.readAllLines(credentialsPath),
+                "A registration should wait for the journal, not for the credentials file");
+
+        UserService recovered = new DefaultUserService(credentialsPath, journalPath, logger);
+        assertDoesNotThrow(() -> recovered.login(this.key1, "journaled@abv.bg", "password"),
+                "A registration should be recovered from the journal");
+        assertThrows(UserAlreadyRegisteredException.class, () -> recovered.register("journaled@abv.bg", "password"),
+                "A recovered user should not be registered again");
+    }
+
+    @Test
+    void testCredentialsInAStore(@TempDir Path directory) throws SpotifyException, IOException {
+        Path storePath = directory.resolve("users.db");
+        try (LogStructuredStore store = new LogStructuredStore(storePath)) {
+            UserService userService = new DefaultUserService(store, logger);
+            userService.register("stored@abv.bg", "password");
+            assertThrows(UserAlreadyRegisteredException.class, () -> userService.register("stored@abv.bg", "other"),
+                    "A stored user should not be registered again");
+        }
+        try (LogStructuredStore store = new LogStructuredStore(storePath)) {
+            UserService userService = new DefaultUserService(store, logger);
+            assertThrows(IncorrectLoginCredentialsException.class,
+                    () -> userService.login(this.key1, "stored@abv.bg", "other"),
+                    "The stored password should be checked");
+            assertDoesNotThrow(() -> userService.login(this.key1, "stored@abv.bg", "password"),
+                    "A stored user should be able to log in after a restart");
+        }
+    }
 }
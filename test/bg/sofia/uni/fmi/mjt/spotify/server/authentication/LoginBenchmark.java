@@ -0,0 +1,83 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.authentication;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.InMemoryStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the logins per second of a single user service, with as many clients logging in at once as there are threads
+// the threads go from one to twice the processors - the hashing pool is as wide as the processors,
+// so the throughput should grow up to them and stay flat afterwards
+// run on its own with the "benchmark" tag, -Dspotify.password.iterations changes the cost of a hash
+@Tag("benchmark")
+public class LoginBenchmark {
+
+    private static final int USERS = 256;
+    private static final int LOGINS_PER_THREAD = 64;
+
+    @Test
+    void testLoginThroughput() throws Exception {
+        InMemoryStore credentials = new InMemoryStore();
+        try (PasswordHasher hasher = new PasswordHasher()) {
+            for (int i = 0; i < USERS; i++) {
+                credentials.put(email(i), hasher.hash("password" + i));
+            }
+        }
+        UserService userService = new DefaultUserService(credentials, null);
+        // the hashing is compiled before anything is measured
+        AtomicLong sessionIds = new AtomicLong(0);
+        for (int i = 0; i < LOGINS_PER_THREAD; i++) {
+            Session session = new Session(sessionIds.incrementAndGet());
+            userService.login(session, email(i), "password" + i);
+            userService.logout(session);
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= 2 * processors; threads *= 2) {
+            ExecutorService clients = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                results.add(clients.submit(() -> {
+                    start.await();
+                    int loggedIn = 0;
+                    for (int i = 0; i < LOGINS_PER_THREAD; i++) {
+                        Session session = new Session(sessionIds.incrementAndGet());
+                        int user = (first + i) % USERS;
+                        userService.login(session, email(user), "password" + user);
+                        userService.logout(session);
+                        loggedIn++;
+                    }
+                    return loggedIn;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            long elapsed = System.nanoTime() - begin;
+            clients.shutdown();
+            assertEquals(threads * LOGINS_PER_THREAD, total, "Every login should succeed");
+            System.out.printf("%3d threads: %8.1f logins per second%n",
+                    threads, total / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    private static String email(int user) {
+        return "user" + user + "@abv.bg";
+    }
+}
@@ -0,0 +1,71 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.authentication;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PasswordHasherTest {
+
+    private static final int ITERATIONS = 1_000;
+
+    private final PasswordHasher hasher = new PasswordHasher(ITERATIONS, 2);
+
+    @AfterEach
+    void closeHasher() {
+        this.hasher.close();
+    }
+
+    @Test
+    void testVerifiesTheHashedPassword() throws InterruptedException {
+        String stored = this.hasher.hash("secret");
+        assertTrue(PasswordHasher.isHash(stored), "The password should be stored as a hash");
+        assertFalse(stored.contains("secret"), "The hash should not contain the password");
+        assertFalse(stored.contains(","), "The hash should fit in a line of the credentials file");
+        assertTrue(this.hasher.verify("secret", stored), "The right password should be accepted");
+        assertFalse(this.hasher.verify("Secret", stored), "A wrong password should be rejected");
+        assertFalse(this.hasher.needsRehash(stored), "A fresh hash should not be hashed again");
+    }
+
+    @Test
+    void testSaltsEveryHash() throws InterruptedException {
+        assertNotEquals(this.hasher.hash("secret"), this.hasher.hash("secret"),
+                "The same password should be hashed differently every time");
+    }
+
+    @Test
+    void testAcceptsThePlainPasswordsFromBefore() throws InterruptedException {
+        assertTrue(this.hasher.verify("admin", "admin"), "A plain stored password should still be accepted");
+        assertFalse(this.hasher.verify("admin", "other"), "A wrong plain password should be rejected");
+        assertTrue(this.hasher.needsRehash("admin"), "A plain password should be hashed on the next login");
+        String weaker = new PasswordHasher(ITERATIONS / 2, 1).hash("secret");
+        assertTrue(this.hasher.verify("secret", weaker), "A hash with fewer iterations should still be accepted");
+        assertTrue(this.hasher.needsRehash(weaker), "A hash with fewer iterations should be hashed again");
+        assertFalse(this.hasher.verify("secret", "pbkdf2$broken"), "A damaged hash should never be accepted");
+    }
+
+    @Test
+    void testHashesFromManyThreads() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String password = "password" + i;
+                results.add(callers.submit(() -> this.hasher.verify(password, this.hasher.hash(password))));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(), "Every caller should get its own hash back, however busy the pool is");
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
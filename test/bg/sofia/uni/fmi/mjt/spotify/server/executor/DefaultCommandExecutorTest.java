@@ -2,14 +2,17 @@ package bg.sofia.uni.fmi.mjt.spotify.server.executor;
 
 import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
 import bg.sofia.uni.fmi.mjt.spotify.server.DefaultSpotifyService;
+import bg.sofia.uni.fmi.mjt.spotify.server.authentication.DefaultUserService;
+import bg.sofia.uni.fmi.mjt.spotify.server.media.DefaultMediaService;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mock;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -20,10 +23,12 @@ import static org.mockito.Mockito.mock;
 public class DefaultCommandExecutorTest {
 
     private static final String LOGGER_FILE_PATH = "commandParserLogs.log";
+    private static final Path TEST_CREDENTIALS_PATH = Path.of("test-resources", "users", "test-users.csv");
+    private static final Path TEST_SONGS_PATH = Path.of("test-resources", "storage", "test-songs.txt");
+    private static final Path TEST_PLAYLISTS_PATH = Path.of("test-resources", "storage", "test-playlists.txt");
     private static SpotifyLogger logger;
     private CommandParser parser;
-    @Mock
-    private SelectionKey key = mock(SelectionKey.class);
+    private Session key = new Session(1);
 
     @BeforeAll
     static void setupLogger() throws IOException {
@@ -38,8 +43,12 @@ public class DefaultCommandExecutorTest {
     }
 
     @Test
-    void testParseFailure() {
-        this.parser = new DefaultCommandExecutor(logger);
+    void testParseFailure(@TempDir Path directory) {
+        // the journals go to the temporary directory, not next to the files of the server
+        this.parser = new DefaultCommandExecutor(logger, new DefaultSpotifyService(logger,
+                new DefaultUserService(TEST_CREDENTIALS_PATH, directory.resolve("users"), logger),
+                new DefaultMediaService(logger, TEST_SONGS_PATH, TEST_PLAYLISTS_PATH, mock(StreamingEngine.class),
+                        directory.resolve("media"))));
         String message = "Invalid command should not throw an exception: ";
         assertDoesNotThrow(() -> this.parser.parse(key, "register invalidEmail password"), message + "register");
         assertDoesNotThrow(() -> this.parser.parse(key, "login invalidEmail password"), message + "login");
@@ -68,5 +77,13 @@ public class DefaultCommandExecutorTest {
         assertEquals("Playlist created successfully", this.parser.parse(key, "create-playlist Playlist"));
         assertEquals("User successfully logged in", this.parser.parse(key, "login admin admin"));
         assertEquals("User email@abv.bg registered", this.parser.parse(key, "register email@abv.bg password"));
+        assertTrue(this.parser.parse(key, "top 10 year").startsWith("Error! The time window"),
+                "An unknown time window should be explained");
+        assertEquals("Now playing the playlist My Songs", this.parser.parse(key, "play-playlist My_Songs"));
+        assertEquals("Paused", this.parser.parse(key, "pause"));
+        assertEquals("Resumed", this.parser.parse(key, "resume"));
+        assertEquals("Playing from 42.5s", this.parser.parse(key, "seek 42.5"));
+        assertTrue(this.parser.parse(key, "seek later").startsWith("Error! The position"),
+                "A position, that is not a number, should be explained");
     }
 }
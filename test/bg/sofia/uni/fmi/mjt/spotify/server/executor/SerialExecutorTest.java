@@ -0,0 +1,82 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerialExecutorTest {
+
+    private static final int TASKS = 1000;
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        this.pool.shutdownNow();
+    }
+
+    @Test
+    void testTasksRunInOrderOneAtATime() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(this.pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger overlaps = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            int task = i;
+            executor.execute(() -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(task);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get(), "No two tasks should run at the same time");
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals(i, order.get(i), "The tasks should run in the order they were given");
+        }
+    }
+
+    @Test
+    void testSlowTaskDoesNotHoldBackAnotherExecutor() throws InterruptedException {
+        SerialExecutor slow = new SerialExecutor(this.pool);
+        SerialExecutor fast = new SerialExecutor(this.pool);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        slow.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        fast.execute(fastDone::countDown);
+        assertTrue(fastDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                "A task of another executor should not wait for the slow one");
+        release.countDown();
+    }
+
+    @Test
+    void testTasksAreRejectedOnceThePoolIsShutDown() {
+        SerialExecutor executor = new SerialExecutor(this.pool);
+        this.pool.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    }
+}
@@ -0,0 +1,95 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryCatalogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadsBackEverySong() throws IOException {
+        Song smooth = new Song("Smooth", "Santana", 143);
+        smooth.restoreListens(4);
+        Song religion = new Song("Losing My Religion", "R.E.M.", 210);
+        Song intoTheNight = new Song("Into The Night", "Santana", 140);
+        Path path = this.directory.resolve("songs.bin");
+        BinaryCatalog.write(path, List.of(smooth, religion, intoTheNight));
+
+        BinaryCatalog catalog = BinaryCatalog.open(path);
+        assertEquals(3, catalog.size(), "Every song should be written");
+        assertEquals(2, catalog.getArtistCount(), "Every artist should be written once");
+        Map<String, Song> read = new HashMap<>();
+        catalog.forEach(song -> read.put(song.getName(), song));
+        assertEquals(smooth, read.get("Smooth"), "Every song should be read back");
+        assertEquals(143, read.get("Smooth").getDuration(), "The duration should be kept");
+        assertEquals(4, read.get("Smooth").getNumberOfListens(), "The listens should be kept");
+        assertEquals(intoTheNight, read.get("Into The Night"), "The artists should be shared");
+        assertEquals(religion, read.get("Losing My Religion"));
+        assertThrows(IndexOutOfBoundsException.class, () -> catalog.getSong(3),
+                "A position past the last song should be refused");
+    }
+
+    @Test
+    void testKeepsTheSongsWithTheSameNameTogether() throws IOException {
+        Song first = new Song("Hurt", "Nine Inch Nails", 373);
+        Song second = new Song("Hurt", "Johnny Cash", 218);
+        Path path = this.directory.resolve("songs.bin");
+        BinaryCatalog.write(path, List.of(first, new Song("Help!", "The Beatles", 138), second));
+
+        BinaryCatalog catalog = BinaryCatalog.open(path);
+        assertEquals("Help!", catalog.getName(0));
+        assertEquals(Set.of(first, second), Set.of(catalog.getSong(1), catalog.getSong(2)),
+                "The songs with the same name should come one after the other");
+    }
+
+    @Test
+    void testSortsTheNamesByTheirBytes() throws IOException {
+        List<Song> written = new ArrayList<>();
+        for (String name : List.of("Morirò da Re", "Morire", "Ölwechsel", "Z", "Æon", "a", "Émile")) {
+            written.add(new Song(name, "Måneskin", 100));
+        }
+        Path path = this.directory.resolve("songs.bin");
+        BinaryCatalog.write(path, written);
+
+        BinaryCatalog catalog = BinaryCatalog.open(path);
+        List<Song> read = new ArrayList<>();
+        catalog.forEach(read::add);
+        assertEquals(Set.copyOf(written), Set.copyOf(read), "Every song should be read back, whatever its letters");
+        for (int i = 1; i < catalog.size(); i++) {
+            assertTrue(Arrays.compareUnsigned(catalog.getName(i - 1).getBytes(StandardCharsets.UTF_8),
+                    catalog.getName(i).getBytes(StandardCharsets.UTF_8)) < 0, "The names should be in order");
+        }
+    }
+
+    @Test
+    void testRecognisesTheFormat() throws IOException {
+        Path binary = this.directory.resolve("songs.bin");
+        BinaryCatalog.write(binary, List.of());
+        Path json = this.directory.resolve("songs.txt");
+        Files.writeString(json, "{}");
+        assertTrue(BinaryCatalog.isBinary(binary), "A written catalog should be recognised");
+        assertEquals(0, BinaryCatalog.open(binary).size(), "An empty catalog should have no songs");
+        assertFalse(BinaryCatalog.isBinary(json), "A JSON catalog should not be taken for a binary one");
+        assertFalse(BinaryCatalog.isBinary(this.directory.resolve("missing.bin")), "A missing file is not binary");
+        assertThrows(IOException.class, () -> BinaryCatalog.open(json), "A JSON catalog should not be opened");
+    }
+}
@@ -0,0 +1,119 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+// the time and the peak heap it takes to load the catalog, as a tree of the whole file and one entry at a time,
+// and the startup of the whole media service on top of it
+// the binary catalog is measured the way the server reads it, as a memory mapping loaded into the service
+// run on its own with the "benchmark" tag - the sizes are a comma separated list in -Dbenchmark.songs,
+// ten million songs need a heap of a few gigabytes (-Xmx)
+@Tag("benchmark")
+public class CatalogStorageBenchmark {
+
+    private static final String DEFAULT_SIZES = "100000,1000000";
+    private static final Gson GSON = new Gson();
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private interface Measured {
+        void run() throws Exception;
+    }
+
+    @Test
+    void testLoadingTheCatalog() throws Exception {
+        int[] sizes = Arrays.stream(System.getProperty("benchmark.songs", DEFAULT_SIZES).split(","))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        for (int size : sizes) {
+            Path directory = Files.createTempDirectory("catalog");
+            Path songsPath = directory.resolve("songs.txt");
+            try {
+                writeCatalog(songsPath, size);
+                System.out.printf("%,d songs, %,d MB file%n", size, Files.size(songsPath) / MEGABYTE);
+
+                Type songsType = new TypeToken<Map<String, Set<Song>>>() {
+                }.getType();
+                measure("tree", () -> {
+                    try (Reader reader = Files.newBufferedReader(songsPath, StandardCharsets.UTF_8)) {
+                        Map<String, Set<Song>> songs = GSON.fromJson(reader, songsType);
+                        assertEquals(size, songs.size(), "Every song should be loaded");
+                    }
+                });
+                measure("streaming", () -> {
+                    Map<String, Song> songs = new ConcurrentHashMap<>();
+                    JsonFiles.readObject(songsPath, (name, reader) ->
+                            JsonFiles.readArray(GSON, reader, Song.class, song -> songs.put(name, song)));
+                    assertEquals(size, songs.size(), "Every song should be loaded");
+                });
+                measure("startup", () -> new DefaultMediaService(null, songsPath, directory.resolve("playlists.txt"),
+                        mock(StreamingEngine.class)));
+
+                Path binaryPath = directory.resolve("songs.bin");
+                CatalogConverter.convert(songsPath, binaryPath);
+                System.out.printf("    binary file %,d MB%n", Files.size(binaryPath) / MEGABYTE);
+                measure("binary", () -> new DefaultMediaService(null, binaryPath, directory.resolve("playlists.txt"),
+                        mock(StreamingEngine.class)));
+            } finally {
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+
+    private static void writeCatalog(Path path, int size) throws IOException {
+        JsonFiles.writeObject(path, false, writer -> {
+            for (int i = 0; i < size; i++) {
+                Song song = new Song("Song " + i, "Artist " + i % 10_000, 180 + i % 120);
+                writer.name(song.getName());
+                JsonFiles.writeArray(GSON, writer, Set.of(song), Song.class);
+            }
+        });
+    }
+
+    private static void measure(String name, Measured measured) throws Exception {
+        System.gc();
+        long before = usedHeap();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+        measured.run();
+        long elapsed = System.nanoTime() - start;
+        long peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        System.out.printf("    %-10s %8d ms, %6d MB peak heap above the baseline%n",
+                name, elapsed / 1_000_000, (peak - before) / MEGABYTE);
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getUsage().getUsed())
+                .sum();
+    }
+}
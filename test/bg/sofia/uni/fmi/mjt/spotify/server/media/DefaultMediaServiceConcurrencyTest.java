@@ -0,0 +1,134 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.PlaylistAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.spotify.exceptions.SpotifyException;
+import bg.sofia.uni.fmi.mjt.spotify.objects.Playlist;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// many threads hammering the same service - every update must be visible at the end, none may be lost
+public class DefaultMediaServiceConcurrencyTest {
+
+    private static final Path TEST_SONGS_PATH = Path.of("test-resources", "storage", "test-songs.txt");
+    private static final Path TEST_PLAYLISTS_PATH = Path.of("test-resources", "storage", "test-playlists.txt");
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 2_000;
+    private static final String[] SONGS = {"Smooth", "Into The Night", "Unchain My Heart", "Losing My Religion"};
+
+    private DefaultMediaService service;
+
+    @BeforeEach
+    void setUp() {
+        // nothing is actually streamed, and update() is never called, so the test files stay the same
+        this.service = new DefaultMediaService(null, TEST_SONGS_PATH, TEST_PLAYLISTS_PATH,
+                mock(StreamingEngine.class));
+    }
+
+    @Test
+    void testNoPlayIsLost() throws Exception {
+        long before = this.service.getSong("Smooth").getNumberOfListens();
+        runConcurrently(thread -> {
+            Session key = new Session(thread + 1);
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                this.service.playSong(key, "Smooth");
+                // readers run alongside the writers and must never fail
+                this.service.top(3);
+                this.service.search(List.of("santana"));
+            }
+        });
+        long expected = before + (long) THREADS * OPERATIONS_PER_THREAD;
+        assertEquals(expected, this.service.getSong("Smooth").getNumberOfListens(), "Every play should be counted");
+    }
+
+    @Test
+    void testEveryPlaylistIsCreatedExactlyOnce() throws Exception {
+        AtomicInteger duplicates = new AtomicInteger(0);
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                // all threads compete for the same names of the same few users
+                String user = "user" + (i % 8);
+                try {
+                    this.service.createPlaylist(user, "Playlist " + i);
+                } catch (PlaylistAlreadyExistsException e) {
+                    duplicates.incrementAndGet();
+                }
+            }
+        });
+        assertEquals((THREADS - 1) * OPERATIONS_PER_THREAD, duplicates.get(),
+                "Exactly one thread should create each playlist");
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            assertEquals("Playlist " + i, this.service.getPlaylist("user" + (i % 8), "Playlist " + i).getName(),
+                    "Every playlist should exist");
+        }
+    }
+
+    @Test
+    void testNoSongAddedToAPlaylistIsLost() throws Exception {
+        for (int thread = 0; thread < THREADS; thread++) {
+            this.service.createPlaylist("user" + thread, "Shared");
+        }
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                // every thread fills its own playlist, and reads the playlists of everyone else
+                String owner = "user" + thread;
+                if (i < SONGS.length) {
+                    this.service.addSongToPlaylist(owner, "Shared", SONGS[i]);
+                }
+                Playlist other = this.service.getPlaylist("user" + ((thread + i) % THREADS), "Shared");
+                assertFalse(other.toReadableString().isEmpty(), "A playlist should always be readable");
+            }
+        });
+        for (int thread = 0; thread < THREADS; thread++) {
+            String readable = this.service.getPlaylist("user" + thread, "Shared").toReadableString();
+            for (String song : SONGS) {
+                assertTrue(readable.contains(song), "Every added song should be in the playlist");
+            }
+        }
+    }
+
+    private interface Task {
+        void run(int thread) throws SpotifyException;
+    }
+
+    // all threads start together, to make the races as likely as possible
+    private static void runConcurrently(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadNumber = thread;
+            Callable<Void> callable = () -> {
+                start.await();
+                task.run(threadNumber);
+                return null;
+            };
+            futures.add(executor.submit(callable));
+        }
+        start.countDown();
+        try {
+            for (Future<Void> future : futures) {
+                // rethrows any failure of the threads
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -11,12 +11,17 @@ import bg.sofia.uni.fmi.mjt.spotify.objects.Playlist;
 import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
 import bg.sofia.uni.fmi.mjt.spotify.server.DefaultSpotifyService;
 import bg.sofia.uni.fmi.mjt.spotify.server.SpotifyService;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.CachedStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.storage.LogStructuredStore;
+import bg.sofia.uni.fmi.mjt.spotify.server.streaming.StreamingEngine;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mock;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -25,18 +30,25 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
-import java.nio.channels.SelectionKey;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 // testing the MediaService class through the SpotifyService class, because it's basically a Wrapper
 public class DefaultMediaServiceTest {
@@ -45,15 +57,14 @@ public class DefaultMediaServiceTest {
     private static final Path TEST_CREDENTIALS_PATH = Path.of("test-resources", "users", "test-users.csv");
     private static final Path TEST_SONGS_PATH = Path.of("test-resources", "storage", "test-songs.txt");
     private static final Path TEST_PLAYLISTS_PATH = Path.of("test-resources", "storage", "test-playlists.txt");
-    private static final Path TEST_INDEX_PATH = Path.of("test-resources", "storage", "test-index.txt");
     private static final Path PERMANENT_PLAYLISTS_PATH = Path.of("test-resources", "storage", "permanent-playlists.txt");
     private static final Path EXPECTED_PLAYLISTS_PATH = Path.of("test-resources", "storage", "expected-playlists.txt");
     private static final Song[] songs = new Song[5];
     private static final String LOGGER_FILE_PATH = "mediaServiceLogs.log";
     private static SpotifyLogger logger;
     private SpotifyService service;
-    @Mock
-    private SelectionKey key = mock(SelectionKey.class);
+    private MediaService mediaService;
+    private Session key = new Session(1);
 
     @BeforeAll
     static void setup() throws IOException {
@@ -106,16 +117,17 @@ public class DefaultMediaServiceTest {
 
     @BeforeEach
     void setupService() throws SpotifyException {
-        MediaService mediaService = new DefaultMediaService(logger, TEST_SONGS_PATH, TEST_PLAYLISTS_PATH, TEST_INDEX_PATH);
-        this.service = new DefaultSpotifyService(TEST_CREDENTIALS_PATH, logger, mediaService);
+        this.mediaService = new DefaultMediaService(logger, TEST_SONGS_PATH, TEST_PLAYLISTS_PATH);
+        this.service = new DefaultSpotifyService(TEST_CREDENTIALS_PATH, logger, this.mediaService);
         this.service.login(key, "admin", "admin");
     }
 
     @Test
-    void testConstructors() throws IOException {
-        assertDoesNotThrow(() -> new DefaultMediaService(logger, null, null, null));
+    void testConstructors(@TempDir Path directory) throws IOException {
+        assertDoesNotThrow(() -> new DefaultMediaService(logger, null, null));
         Files.setPosixFilePermissions(STOPWORDS_PATH, PosixFilePermissions.fromString("r--r--r--"));
-        assertDoesNotThrow(() -> new DefaultMediaService(logger),
+        assertDoesNotThrow(() -> new DefaultMediaService(logger, TEST_SONGS_PATH, TEST_PLAYLISTS_PATH,
+                mock(StreamingEngine.class), directory.resolve("journal")),
                 "Problems reading the stopwords should not throw an exception");
         Files.setPosixFilePermissions(STOPWORDS_PATH, PosixFilePermissions.fromString("rw-rw-rw-"));
     }
@@ -184,8 +196,9 @@ public class DefaultMediaServiceTest {
         expected1.addSong(songs[2]);
         expected1.addSong(songs[4]);
         Playlist expected2 = new Playlist("MySongs2");
-        expected2.addSong(songs[0]);
+        // a playlist keeps the order of its songs
         expected2.addSong(songs[2]);
+        expected2.addSong(songs[0]);
         assertThrows(PlaylistNotFoundException.class, () -> this.service.showPlaylist(key, "Non-existentPlaylist"));
         assertEquals(expected1.toReadableString(), this.service.showPlaylist(key, "MySongs"),
                 "When the same user has created a playlist with the specified name, getPlaylist() should return that playlist");
@@ -205,6 +218,16 @@ public class DefaultMediaServiceTest {
         Files.move(temp, temp.resolveSibling("Santana - Smooth - 143.wav"), StandardCopyOption.REPLACE_EXISTING);
     }
 
+    @Test
+    void testPlayPlaylist() {
+        assertThrows(PlaylistNotFoundException.class, () -> this.service.playPlaylist(key, "Non-existentPlaylist"),
+                "Attempting to play a non-existent playlist should throw a PlaylistNotFoundException");
+        SpotifyException exception = assertThrows(SpotifyException.class,
+                () -> this.service.playPlaylist(key, "MySongs"));
+        assertEquals("The client cannot receive audio", exception.getMessage(),
+                "A playlist should only fail because there is no one to stream it to");
+    }
+
     @Test
     void testStopPlaying() {
         assertThrows(NoSongPlayingException.class, () -> this.service.stopPlaying(key),
@@ -216,6 +239,8 @@ public class DefaultMediaServiceTest {
         this.service.addSongToPlaylist(key, "MySongs", "Losing My Religion");
         this.service.createPlaylist(key, "NewPlaylist");
         this.service.logout(key);
+        // logging out only asks for the files to be written
+        this.mediaService.flush();
         // a song only updates, if it is played
         // the index updates only if a song is updated
         // these tests do not perform song playing
@@ -231,4 +256,147 @@ public class DefaultMediaServiceTest {
         assertEquals(expected, result, "Method update() should update the files");
         restoreOriginalPlaylists();
     }
+
+    @Test
+    void testRecoveryFromTheJournal(@TempDir Path directory) throws IOException, SpotifyException {
+        Path songsPath = directory.resolve("songs.txt");
+        Path playlistsPath = directory.resolve("playlists.txt");
+        Path journalPath = directory.resolve("journal");
+        Files.copy(TEST_SONGS_PATH, songsPath);
+        Files.createFile(playlistsPath);
+        StreamingEngine streamingEngine = mock(StreamingEngine.class);
+        MediaService crashed = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                journalPath);
+        Song blackMagicWoman = new Song("Black Magic Woman", "Santana", 320);
+        crashed.playSong(key, "Smooth");
+        crashed.addSong(blackMagicWoman);
+        crashed.createPlaylist("admin", "Recovered");
+        crashed.addSongToPlaylist("admin", "Recovered", "Smooth");
+
+        // the files were never updated, everything comes from the journal
+        MediaService recovered = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                journalPath);
+        assertEquals(5, recovered.getSong("Smooth").getNumberOfListens(), "The plays should be recovered");
+        assertEquals(blackMagicWoman, recovered.getSong("Black Magic Woman"), "The added songs should be recovered");
+        assertEquals(crashed.getPlaylist("admin", "Recovered"), recovered.getPlaylist("admin", "Recovered"),
+                "The playlists should be recovered");
+
+        recovered.flush();
+        try (Stream<Path> segments = Files.list(journalPath)) {
+            assertEquals(1, segments.count(), "The replayed segments should be dropped once the files are written");
+        }
+        MediaService restarted = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                journalPath);
+        assertEquals(5, restarted.getSong("Smooth").getNumberOfListens(), "The snapshot should keep the plays");
+        assertEquals(crashed.getPlaylist("admin", "Recovered"), restarted.getPlaylist("admin", "Recovered"),
+                "The snapshot should keep the playlists");
+    }
+
+    @Test
+    void testIndexRecoversFromTheJournal(@TempDir Path directory) throws IOException, SpotifyException {
+        Path songsPath = directory.resolve("songs.txt");
+        Path playlistsPath = directory.resolve("playlists.txt");
+        Path journalPath = directory.resolve("journal");
+        Files.copy(TEST_SONGS_PATH, songsPath);
+        Files.createFile(playlistsPath);
+        StreamingEngine streamingEngine = mock(StreamingEngine.class);
+        MediaService crashed = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                journalPath);
+        crashed.addSong(new Song("Oye Como Va", "Santana", 257));
+        crashed.update();
+        crashed.flush();
+        crashed.addSong(new Song("Black Magic Woman", "Santana", 320));
+        crashed.removeSong(crashed.getSong("Losing My Religion"));
+
+        // the snapshot misses both changes, only the journal has them
+        MediaService recovered = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                journalPath);
+        assertTrue(recovered.search(List.of("magic")).contains("Black Magic Woman"),
+                "A song added after the snapshot should be found");
+        assertTrue(recovered.search(List.of("oye")).contains("Oye Como Va"), "A song of the snapshot should be found");
+        assertEquals("We couldn't find any songs based on your query", recovered.search(List.of("religion")),
+                "A song removed after the snapshot should not be found");
+        // the snapshots, that are still due, are written before the directory goes
+        crashed.flush();
+        recovered.flush();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPlaylistPlaysAreCountedInTheCatalog(@TempDir Path directory) throws IOException, SpotifyException {
+        Path songsPath = directory.resolve("songs.txt");
+        Path playlistsPath = directory.resolve("playlists.txt");
+        Files.copy(TEST_SONGS_PATH, songsPath);
+        Files.createFile(playlistsPath);
+        StreamingEngine streamingEngine = mock(StreamingEngine.class);
+        MediaService before = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine, null);
+        before.createPlaylist("admin", "Favourites");
+        before.addSongToPlaylist("admin", "Favourites", "Smooth");
+        before.update();
+        before.flush();
+
+        // the playlist is read back from its file, so its songs are not the ones of the catalog
+        MediaService restarted = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine,
+                null);
+        restarted.playPlaylist(key, "admin", "Favourites");
+        ArgumentCaptor<List<Song>> played = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Consumer<Song>> onSongStarted = ArgumentCaptor.forClass(Consumer.class);
+        verify(streamingEngine).startStreaming(eq(key), played.capture(), onSongStarted.capture());
+        played.getValue().forEach(onSongStarted.getValue());
+        assertEquals(5, restarted.getSong("Smooth").getNumberOfListens(),
+                "A song played from a playlist should be counted in the catalog");
+
+        restarted.update();
+        restarted.flush();
+        MediaService again = new DefaultMediaService(logger, songsPath, playlistsPath, streamingEngine, null);
+        assertEquals(5, again.getSong("Smooth").getNumberOfListens(), "The play should survive a restart");
+    }
+
+    @Test
+    void testBinaryCatalog(@TempDir Path directory) throws IOException, SpotifyException {
+        Path songsPath = directory.resolve("songs.bin");
+        assertEquals(songs.length, CatalogConverter.convert(TEST_SONGS_PATH, songsPath),
+                "Every song should be converted");
+        StreamingEngine streamingEngine = mock(StreamingEngine.class);
+        MediaService binary = new DefaultMediaService(logger, songsPath, (Path) null, streamingEngine,
+                null);
+        for (Song song : songs) {
+            assertEquals(song, binary.getSong(song.getName()), "The songs should be read from the binary catalog");
+            assertEquals(song.getNumberOfListens(), binary.getSong(song.getName()).getNumberOfListens(),
+                    "The listens should be read from the binary catalog");
+        }
+
+        binary.playSong(key, "Smooth");
+        binary.update();
+        binary.flush();
+        Map<String, Song> written = new HashMap<>();
+        BinaryCatalog.open(songsPath).forEach(song -> written.put(song.getName(), song));
+        assertEquals(5, written.get("Smooth").getNumberOfListens(),
+                "The binary catalog should be written back as a binary catalog");
+    }
+
+    @Test
+    void testPlaylistsInAStore(@TempDir Path directory) throws IOException, SpotifyException {
+        Path storePath = directory.resolve("playlists.db");
+        StreamingEngine streamingEngine = mock(StreamingEngine.class);
+        Playlist expected;
+        try (CachedStore store = new CachedStore(new LogStructuredStore(storePath), 1)) {
+            MediaService stored = new DefaultMediaService(logger, TEST_SONGS_PATH, store, streamingEngine,
+                    null);
+            stored.createPlaylist("admin", "Stored");
+            stored.addSongToPlaylist("admin", "Stored", "Smooth");
+            stored.createPlaylist("user@abv.bg", "Evicts the first user");
+            assertThrows(PlaylistAlreadyExistsException.class, () -> stored.createPlaylist("admin", "Stored"),
+                    "A playlist dropped from the cache should still exist");
+            expected = stored.getPlaylist("admin", "Stored");
+            assertEquals(expected, stored.getPlaylist("user@abv.bg", "Stored"),
+                    "The playlists of the other users should be found in the store");
+        }
+        try (CachedStore store = new CachedStore(new LogStructuredStore(storePath), 1)) {
+            MediaService restarted = new DefaultMediaService(logger, TEST_SONGS_PATH, store, streamingEngine,
+                    null);
+            assertEquals(expected, restarted.getPlaylist("admin", "Stored"),
+                    "The stored playlists should be read back after a restart");
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeywordIndexTest {
+
+    private static final Set<String> STOPWORDS = Set.of("the", "my");
+
+    private Map<String, Set<Song>> catalog;
+    private final Song smooth = new Song("Smooth", "Santana", 143);
+    private final Song intoTheNight = new Song("Into The Night", "Santana", 140);
+
+    @BeforeEach
+    void setUp() {
+        this.catalog = new HashMap<>();
+        this.catalog.put(this.smooth.getName(), new LinkedHashSet<>(Set.of(this.smooth)));
+        this.catalog.put(this.intoTheNight.getName(), new LinkedHashSet<>(Set.of(this.intoTheNight)));
+    }
+
+    @Test
+    void testBuildsFromTheCatalog() {
+        KeywordIndex index = new KeywordIndex(STOPWORDS, this.catalog);
+        assertEquals(Set.of(this.smooth, this.intoTheNight), index.get("santana"),
+                "Every song should be found by its artist");
+        assertEquals(Set.of(this.intoTheNight), index.get("night"), "A song should be found by its name");
+        assertTrue(index.get("the").isEmpty(), "Stopwords should not be indexed");
+    }
+
+    @Test
+    void testAddRemoveAndRename() {
+        KeywordIndex index = new KeywordIndex(STOPWORDS, this.catalog);
+        Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+        index.add(unchainMyHeart);
+        assertEquals(Set.of(unchainMyHeart), index.get("heart"), "An added song should be found");
+
+        index.remove(this.smooth);
+        assertEquals(Set.of(this.intoTheNight), index.get("santana"), "A removed song should not be found");
+        assertTrue(index.get("smooth").isEmpty(), "A keyword without songs should be dropped");
+
+        Song renamed = this.intoTheNight.withName("Into The Day");
+        index.replace(this.intoTheNight, renamed);
+        assertTrue(index.get("night").isEmpty(), "The old name should not be found");
+        assertEquals(Set.of(renamed), index.get("day"), "The new name should be found");
+    }
+
+    @Test
+    void testIndexHoldsTheSongsOfTheCatalog() {
+        KeywordIndex index = new KeywordIndex(STOPWORDS, this.catalog);
+        this.smooth.play();
+        assertSame(this.smooth, index.get("smooth").iterator().next(),
+                "The index should hold the songs of the catalog, not copies of them");
+    }
+
+    @Test
+    void testIndexIsBuiltFromTheCurrentCatalog() {
+        new KeywordIndex(STOPWORDS, this.catalog);
+        // changed by the journal of the catalog, not through the index
+        Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+        this.catalog.put(unchainMyHeart.getName(), Set.of(unchainMyHeart));
+        this.catalog.remove(this.smooth.getName());
+
+        KeywordIndex index = new KeywordIndex(STOPWORDS, this.catalog);
+        assertEquals(Set.of(unchainMyHeart), index.get("cocker"), "A new song of the catalog should be indexed");
+        assertTrue(index.get("smooth").isEmpty(), "A song, that is not in the catalog anymore, should not be found");
+        assertEquals(Set.of(this.intoTheNight), index.get("santana"), "The other songs should be kept");
+    }
+}
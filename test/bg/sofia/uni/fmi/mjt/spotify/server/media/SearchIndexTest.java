@@ -0,0 +1,137 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchIndexTest {
+
+    private final Song smooth = new Song("Smooth", "Santana", 143);
+    private final Song intoTheNight = new Song("Into The Night", "Santana", 140);
+    private final Song santanaBlues = new Song("Santana Blues", "Joe Cocker", 200);
+    private final Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+    private SearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        this.index = new SearchIndex(Set.of("the", "my"));
+        for (Song song : List.of(this.smooth, this.intoTheNight, this.santanaBlues, this.unchainMyHeart)) {
+            this.index.add(song);
+        }
+    }
+
+    @Test
+    void testMoreMatchingKeywordsRankHigher() {
+        List<Song> result = this.index.search(List.of("joe", "heart"), 0, 10);
+        assertEquals(this.unchainMyHeart, result.get(0), "The song matching both keywords should come first");
+        assertEquals(Set.of(this.unchainMyHeart, this.santanaBlues), Set.copyOf(result),
+                "Every song matching any keyword should be found");
+    }
+
+    @Test
+    void testNameWeighsMoreThanArtist() {
+        List<Song> result = this.index.search(List.of("Santana"), 0, 10);
+        assertEquals(this.santanaBlues, result.get(0), "A keyword in the name should outweigh one in the artist");
+        assertEquals(3, result.size(), "Every song with the keyword in any field should be found");
+    }
+
+    @Test
+    void testLimitAndOffset() {
+        List<Song> all = this.index.search(List.of("santana", "joe"), 0, 10);
+        assertEquals(all.subList(0, 2), this.index.search(List.of("santana", "joe"), 0, 2),
+                "The limit should keep only the best songs");
+        assertEquals(all.subList(2, 4), this.index.search(List.of("santana", "joe"), 2, 2),
+                "The offset should skip the best songs");
+        assertTrue(this.index.search(List.of("santana", "joe"), 10, 2).isEmpty(),
+                "An offset past the results should find nothing");
+    }
+
+    @Test
+    void testRemovedSongsAreNotFound() {
+        this.index.remove(this.smooth);
+        assertTrue(this.index.search(List.of("smooth"), 0, 10).isEmpty(), "A removed song should not be found");
+        assertEquals(2, this.index.search(List.of("santana"), 0, 10).size(),
+                "Removing a song should not affect the others");
+        assertEquals(3, this.index.size(), "A removed song should not be counted");
+    }
+
+    @Test
+    void testIdsOfRemovedSongsAreReused() {
+        int capacity = this.index.capacity();
+        for (int i = 0; i < 10 * capacity; i++) {
+            Song song = new Song("Song " + i, "Artist", 100);
+            this.index.add(song);
+            this.index.remove(song);
+        }
+        assertEquals(capacity, this.index.capacity(), "The tables should not grow with the songs, that are gone");
+
+        // the reused id is smaller than the ones already in the list of the artist
+        this.index.remove(this.smooth);
+        Song oyeComoVa = new Song("Oye Como Va", "Santana", 257);
+        this.index.add(oyeComoVa);
+        assertEquals(Set.of(this.intoTheNight, this.santanaBlues, oyeComoVa),
+                Set.copyOf(this.index.search(List.of("santana"), 0, 10)),
+                "A song with a reused id should be found with the others");
+        assertEquals(List.of(oyeComoVa), this.index.search(List.of("oye"), 0, 10));
+        assertTrue(this.index.search(List.of("smooth"), 0, 10).isEmpty(), "The old song should not be found");
+    }
+
+    @Test
+    void testStopwordsAndUnknownKeywords() {
+        assertTrue(this.index.search(List.of("the", "nothing"), 0, 10).isEmpty(),
+                "Stopwords and unknown keywords should match nothing");
+    }
+
+    @Test
+    void testFuzzySearchCompletesAndCorrects() {
+        assertTrue(this.index.search(List.of("santa"), 0, 10).isEmpty(),
+                "An exact search should match whole keywords only");
+        assertEquals(3, this.index.search(List.of("santa"), 0, 10, true).size(),
+                "A fuzzy search should match the keywords starting with the prefix");
+        assertEquals(List.of(this.unchainMyHeart), this.index.search(List.of("unchian"), 0, 10, true),
+                "A fuzzy search should match the keywords a typo away");
+    }
+
+    @Test
+    void testExactMatchesRankAboveGuesses() {
+        Song heartless = new Song("Heartless", "Kanye West", 211);
+        this.index.add(heartless);
+        List<Song> result = this.index.search(List.of("heart"), 0, 10, true);
+        assertEquals(List.of(this.unchainMyHeart, heartless), result,
+                "An exact match should rank above a completion");
+    }
+
+    @Test
+    void testRemovedKeywordsAreNotSuggested() {
+        this.index.remove(this.smooth);
+        assertTrue(this.index.search(List.of("smoth"), 0, 10, true).isEmpty(),
+                "A keyword of a removed song should not be suggested");
+        assertTrue(this.index.getDictionary().contains("santana"), "A keyword still in use should be kept");
+    }
+
+    @Test
+    void testPagesMatchASingleLargeQuery() {
+        SearchIndex large = new SearchIndex(Set.of());
+        Random random = new Random(42);
+        String[] words = {"love", "night", "heart", "blue", "rain", "fire", "road", "dream"};
+        for (int i = 0; i < 5_000; i++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + i;
+            large.add(new Song(name, "Artist " + random.nextInt(100), i));
+        }
+        List<String> query = List.of("love", "fire", "dream");
+        List<Song> all = large.search(query, 0, 300);
+        List<Song> pages = new ArrayList<>();
+        for (int offset = 0; offset < 300; offset += 30) {
+            pages.addAll(large.search(query, offset, 30));
+        }
+        assertEquals(all, pages, "Paging should give the same order as a single query");
+    }
+}
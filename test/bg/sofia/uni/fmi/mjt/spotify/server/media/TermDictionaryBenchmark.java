@@ -0,0 +1,103 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the latency of a single as-you-type lookup in a dictionary of a million words
+// run on its own with the "benchmark" tag, the percentiles are printed
+@Tag("benchmark")
+public class TermDictionaryBenchmark {
+
+    private static final int TERMS = 1_000_000;
+    private static final int WARM_UP_QUERIES = 20_000;
+    private static final int MEASURED_QUERIES = 20_000;
+    private static final int COMPLETIONS = 64;
+    private static final long MAX_P99_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+    // words made of syllables share their beginnings and endings, just like the words of a real language
+    private static final String[] SYLLABLES = {
+        "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne", "ni", "no", "ra", "re", "ri", "ro", "sa", "se",
+        "si", "so", "ta", "te", "ti", "to", "ka", "ke", "ki", "ko", "da", "de", "di", "do", "ba", "be", "bi", "bo",
+        "in", "on", "an", "er", "or", "ar", "th", "sh", "ch", "st", "ng", "ll", "ss", "ck"
+    };
+
+    private static TermDictionary dictionary;
+    private static List<String> words;
+
+    @BeforeAll
+    static void fill() {
+        Random random = new Random(42);
+        dictionary = new TermDictionary();
+        words = new ArrayList<>();
+        while (dictionary.size() < TERMS) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            dictionary.add(word.toString());
+            if (words.size() < WARM_UP_QUERIES + MEASURED_QUERIES) {
+                words.add(word.toString());
+            }
+        }
+    }
+
+    @Test
+    void testPrefixLatency() {
+        Random random = new Random(7);
+        measure("prefix", word -> dictionary.complete(word.substring(0, 1 + random.nextInt(word.length())),
+                COMPLETIONS));
+    }
+
+    @Test
+    void testTypoLatency() {
+        Random random = new Random(7);
+        measure("typo", word -> dictionary.similar(withTypo(word, random)));
+    }
+
+    private static void measure(String name, Consumer<String> lookup) {
+        words.subList(0, WARM_UP_QUERIES).forEach(lookup);
+        long[] latencies = new long[MEASURED_QUERIES];
+        for (int i = 0; i < MEASURED_QUERIES; i++) {
+            String word = words.get(WARM_UP_QUERIES + i);
+            long start = System.nanoTime();
+            lookup.accept(word);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        long p99 = percentile(latencies, P99);
+        System.out.printf("%-6s %d terms: p50 %6.1f us, p99 %6.1f us, max %8.1f us%n", name, dictionary.size(),
+                percentile(latencies, P50) / 1000.0, p99 / 1000.0, latencies[latencies.length - 1] / 1000.0);
+        assertTrue(p99 < MAX_P99_NANOSECONDS, "A " + name + " lookup should take less than a millisecond");
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        return sortedLatencies[(int) Math.ceil(percentile * sortedLatencies.length) - 1];
+    }
+
+    private static String withTypo(String word, Random random) {
+        StringBuilder typo = new StringBuilder(word);
+        int position = random.nextInt(word.length() - 1);
+        switch (random.nextInt(4)) {
+            case 0 -> typo.deleteCharAt(position);
+            case 1 -> typo.insert(position, 'x');
+            case 2 -> typo.setCharAt(position, 'x');
+            default -> {
+                typo.setCharAt(position, word.charAt(position + 1));
+                typo.setCharAt(position + 1, word.charAt(position));
+            }
+        }
+        return typo.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TermDictionaryTest {
+
+    private TermDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        this.dictionary = new TermDictionary();
+        for (String term : List.of("santana", "santa", "sandstorm", "religion", "relief", "smooth", "heart")) {
+            this.dictionary.add(term);
+        }
+    }
+
+    @Test
+    void testCompletionsAreSortedAndLimited() {
+        assertEquals(List.of("santa", "santana"), this.dictionary.complete("sant", 10),
+                "Every word with the prefix should be found, in lexicographic order");
+        assertEquals(List.of("sandstorm"), this.dictionary.complete("san", 1),
+                "No more completions than the limit should be returned");
+        assertTrue(this.dictionary.complete("x", 10).isEmpty(), "An unknown prefix should complete nothing");
+    }
+
+    @Test
+    void testEveryKindOfTypo() {
+        assertEquals(List.of("religion"), this.dictionary.similar("religon"), "A missing character is a typo");
+        assertEquals(List.of("religion"), this.dictionary.similar("religgion"), "An extra character is a typo");
+        assertEquals(List.of("religion"), this.dictionary.similar("relegion"), "A wrong character is a typo");
+        assertEquals(List.of("religion"), this.dictionary.similar("rleigion"), "Swapped neighbours are a typo");
+        assertEquals(List.of("smooth"), this.dictionary.similar("smoothx"), "A typo at the end should be found");
+        assertEquals(List.of("smooth"), this.dictionary.similar("xmooth"), "A typo at the start should be found");
+    }
+
+    @Test
+    void testDistantAndShortWordsAreNotSimilar() {
+        assertTrue(this.dictionary.similar("rlegon").isEmpty(), "Two typos are too many");
+        assertTrue(this.dictionary.similar("smtooh").isEmpty(), "A moved character is two typos");
+        assertTrue(this.dictionary.similar("hart").isEmpty(), "Short words should not be corrected");
+        assertTrue(this.dictionary.similar("santa").isEmpty(), "A word should not be similar to itself");
+    }
+
+    @Test
+    void testRemovedWordsAreForgotten() {
+        this.dictionary.remove("religion");
+        assertFalse(this.dictionary.contains("religion"), "A removed word should be forgotten");
+        assertTrue(this.dictionary.similar("religon").isEmpty(), "A removed word should not be suggested");
+        assertEquals(6, this.dictionary.size(), "Only the removed word should be forgotten");
+    }
+}
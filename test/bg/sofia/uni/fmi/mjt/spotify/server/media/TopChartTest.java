@@ -0,0 +1,124 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TopChartTest {
+
+    private static final long TIMEOUT_MILLISECONDS = 5_000;
+    private static final int CONCURRENT_PLAYS = 10_000;
+
+    private final Song smooth = new Song("Smooth", "Santana", 143);
+    private final Song intoTheNight = new Song("Into The Night", "Santana", 140);
+    private final Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+    private TopChart chart;
+
+    @BeforeEach
+    void setUp() {
+        play(this.smooth, 2);
+        play(this.intoTheNight, 1);
+        this.chart = new TopChart(List.of(this.unchainMyHeart, this.intoTheNight, this.smooth));
+    }
+
+    @Test
+    void testInitialOrderFollowsTheListens() {
+        assertEquals(chartOf(this.smooth, this.intoTheNight, this.unchainMyHeart), this.chart.top(10),
+                "The songs should be ordered by their listens");
+        assertEquals(chartOf(this.smooth), this.chart.top(1), "Only the requested number of songs should be shown");
+    }
+
+    @Test
+    void testPlaysReorderTheChart() {
+        play(this.unchainMyHeart, 3);
+        assertEquals(chartOf(this.unchainMyHeart, this.smooth, this.intoTheNight), this.chart.top(10),
+                "A song played more than the others should climb to the top");
+    }
+
+    @Test
+    void testTiesKeepTheSongThatGotThereFirst() {
+        play(this.intoTheNight, 1);
+        assertEquals(chartOf(this.smooth, this.intoTheNight, this.unchainMyHeart), this.chart.top(10),
+                "A song catching up should stay behind the song that had those listens first");
+    }
+
+    @Test
+    void testOutputIsCachedUntilTheOrderChanges() {
+        String before = this.chart.top(10);
+        // the leader only gets further ahead
+        play(this.smooth, 1);
+        assertSame(before, this.chart.top(10), "A play that changes no rank should not rebuild the chart");
+        play(this.unchainMyHeart, 1);
+        play(this.unchainMyHeart, 1);
+        assertNotSame(before, this.chart.top(10), "A play that changes a rank should rebuild the chart");
+    }
+
+    @Test
+    void testPlaysDoNotWaitForTheChart() throws InterruptedException {
+        Thread player = new Thread(() -> play(this.unchainMyHeart, 3));
+        // a request of the chart, that holds it meanwhile
+        synchronized (this.chart) {
+            player.start();
+            player.join(TIMEOUT_MILLISECONDS);
+            assertFalse(player.isAlive(), "A play should not wait for the lock of the chart");
+        }
+        assertEquals(chartOf(this.unchainMyHeart, this.smooth, this.intoTheNight), this.chart.top(10),
+                "The plays should be in the next chart");
+    }
+
+    @Test
+    void testConcurrentPlays() throws InterruptedException {
+        List<Thread> players = new ArrayList<>();
+        for (Song song : List.of(this.unchainMyHeart, this.intoTheNight)) {
+            players.add(new Thread(() -> {
+                for (int i = 0; i < CONCURRENT_PLAYS; i++) {
+                    play(song, 1);
+                    this.chart.top(1);
+                }
+            }));
+        }
+        players.forEach(Thread::start);
+        for (Thread player : players) {
+            player.join();
+        }
+        assertEquals(chartOf(this.intoTheNight, this.unchainMyHeart, this.smooth), this.chart.top(10),
+                "Every play should be counted in the order of the chart");
+    }
+
+    @Test
+    void testAddAndRemove() {
+        Song renamed = this.smooth.withName("Smooth (Remastered)");
+        this.chart.remove(this.smooth);
+        this.chart.add(renamed);
+        Song newSong = new Song("Losing My Religion", "R.E.M.", 210);
+        this.chart.add(newSong);
+        assertEquals(chartOf(renamed, this.intoTheNight, this.unchainMyHeart, newSong), this.chart.top(10),
+                "A song should be added at the place its listens deserve");
+        assertEquals(4, this.chart.size(), "A removed song should leave the chart");
+    }
+
+    private void play(Song song, int times) {
+        for (int i = 0; i < times; i++) {
+            song.play();
+            if (this.chart != null) {
+                this.chart.played(song);
+            }
+        }
+    }
+
+    private static String chartOf(Song... songs) {
+        StringBuilder builder = new StringBuilder();
+        for (Song song : songs) {
+            builder.append(song.toReadableString()).append(System.lineSeparator());
+        }
+        return builder.toString();
+    }
+}
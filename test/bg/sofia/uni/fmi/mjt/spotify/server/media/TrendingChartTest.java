@@ -0,0 +1,88 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.media;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrendingChartTest {
+
+    private static final long START = TimeUnit.DAYS.toMillis(1000);
+    private final Song smooth = new Song("Smooth", "Santana", 143);
+    private final Song intoTheNight = new Song("Into The Night", "Santana", 140);
+    private final Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+    private final AtomicLong now = new AtomicLong(START);
+    private TrendingChart chart;
+
+    @BeforeEach
+    void setUp() {
+        this.chart = new TrendingChart(this.now::get);
+    }
+
+    @Test
+    void testMostPlayedFirst() {
+        play(this.smooth, 1);
+        play(this.unchainMyHeart, 3);
+        play(this.intoTheNight, 2);
+        assertEquals(List.of(this.unchainMyHeart, this.intoTheNight, this.smooth), this.chart.top(10, TrendWindow.HOUR),
+                "The songs should be ordered by their recent plays");
+        assertEquals(List.of(this.unchainMyHeart), this.chart.top(1, TrendWindow.DAY),
+                "Only the requested number of songs should be shown");
+    }
+
+    @Test
+    void testOldPlaysLeaveTheWindow() {
+        play(this.smooth, 5);
+        this.now.addAndGet(TimeUnit.HOURS.toMillis(2));
+        play(this.intoTheNight, 1);
+        assertEquals(List.of(this.intoTheNight), this.chart.top(10, TrendWindow.HOUR),
+                "Plays older than an hour should not count for the last hour");
+        assertEquals(List.of(this.smooth, this.intoTheNight), this.chart.top(10, TrendWindow.DAY),
+                "Plays from two hours ago should still count for the last day");
+
+        this.now.addAndGet(TimeUnit.DAYS.toMillis(30));
+        assertTrue(this.chart.top(10, TrendWindow.WEEK).isEmpty(), "After a long silence nothing should be trending");
+    }
+
+    @Test
+    void testWindowSlidesOneSlotAtATime() {
+        play(this.smooth, 1);
+        this.now.addAndGet(TimeUnit.MINUTES.toMillis(30));
+        play(this.intoTheNight, 1);
+        this.now.addAndGet(TimeUnit.MINUTES.toMillis(40));
+        assertEquals(List.of(this.intoTheNight), this.chart.top(10, TrendWindow.HOUR),
+                "Only the plays in the last hour should count");
+    }
+
+    @Test
+    void testCandidatesStayBounded() {
+        for (int i = 0; i < 3 * TrendingChart.MAX_CANDIDATES; i++) {
+            play(new Song("Song " + i, "Artist", i), 1);
+        }
+        play(this.smooth, 10);
+        assertEquals(this.smooth, this.chart.top(1, TrendWindow.HOUR).get(0),
+                "A song played a lot should make the chart after the candidates were pruned");
+        assertTrue(this.chart.top(Integer.MAX_VALUE, TrendWindow.HOUR).size()
+                        <= TrendingChart.MAX_CANDIDATES + TrendingChart.MAX_CANDIDATES / 4,
+                "The chart should never track every song of the catalog");
+    }
+
+    @Test
+    void testRemovedSongsLeaveTheChart() {
+        play(this.smooth, 2);
+        this.chart.remove(this.smooth);
+        assertTrue(this.chart.top(10, TrendWindow.HOUR).isEmpty(), "A removed song should not be trending");
+    }
+
+    private void play(Song song, int times) {
+        for (int i = 0; i < times; i++) {
+            this.chart.played(song);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientConnectionTest {
+
+    private static final int PIPELINED_RESPONSES = 1000;
+
+    // what the client sends, one element per read
+    private final Queue<byte[]> packets = new ArrayDeque<>();
+    // everything the server has written
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    // how many bytes the socket takes per write, zero when it is full
+    private final AtomicInteger socketCapacity = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicInteger interestOps = new AtomicInteger(SelectionKey.OP_READ);
+    private SelectionKey key;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SocketChannel channel = mock(SocketChannel.class);
+        when(channel.read(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            byte[] packet = this.packets.poll();
+            if (packet == null) {
+                return 0;
+            }
+            invocation.<ByteBuffer>getArgument(0).put(packet);
+            return packet.length;
+        });
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            int count = Math.min(buffer.remaining(), this.socketCapacity.get());
+            for (int i = 0; i < count; i++) {
+                this.written.write(buffer.get());
+            }
+            return count;
+        });
+
+        this.key = mock(SelectionKey.class);
+        when(this.key.isValid()).thenReturn(true);
+        when(this.key.channel()).thenReturn(channel);
+        when(this.key.selector()).thenReturn(mock(Selector.class));
+        when(this.key.interestOps()).thenAnswer(invocation -> this.interestOps.get());
+        when(this.key.interestOps(anyInt())).thenAnswer(invocation -> {
+            this.interestOps.set(invocation.getArgument(0));
+            return this.key;
+        });
+    }
+
+    @Test
+    void testSplitAndCoalescedCommands() throws IOException {
+        byte[] login = toArray(FrameCodec.encode(Frame.command("login admin admin")));
+        byte[] play = toArray(FrameCodec.encode(Frame.command("play Smooth")));
+        byte[] stop = toArray(FrameCodec.encode(Frame.command("stop")));
+        // the first command split in two, the end of it coalesced with the other two
+        byte[] rest = new byte[login.length - 3 + play.length + stop.length];
+        System.arraycopy(login, 3, rest, 0, login.length - 3);
+        System.arraycopy(play, 0, rest, login.length - 3, play.length);
+        System.arraycopy(stop, 0, rest, login.length - 3 + play.length, stop.length);
+        this.packets.add(new byte[] {login[0], login[1], login[2]});
+        this.packets.add(rest);
+
+        ClientConnection connection = new ClientConnection(this.key);
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            connection.read();
+            Frame frame;
+            while ((frame = connection.nextFrame()) != null) {
+                commands.add(frame.getText());
+            }
+        }
+        assertEquals(List.of("login admin admin", "play Smooth", "stop"), commands,
+                "Every command should be read whole and in order");
+    }
+
+    @Test
+    void testOversizedCommandIsRefused() throws IOException {
+        // only the header of a frame, that claims the largest payload the protocol allows
+        ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+        FrameCodec.encodeHeader(header, FrameType.COMMAND, 0, FrameCodec.MAX_PAYLOAD_SIZE);
+        this.packets.add(header.array());
+
+        ClientConnection connection = new ClientConnection(this.key);
+        connection.read();
+        assertThrows(ProtocolException.class, connection::nextFrame,
+                "A command larger than any real one should be refused before its payload arrives");
+    }
+
+    @Test
+    void testLargeResponseArrivesIntact() throws IOException {
+        String response = "Santana - Smooth".repeat(10_000);
+        this.socketCapacity.set(1000);
+        ClientConnection connection = new ClientConnection(this.key);
+        connection.send(Frame.response(response));
+        // the socket took a single write, the rest waits for OP_WRITE
+        assertTrue(connection.hasPendingWrites(), "A response larger than the socket should wait in the queue");
+        assertTrue((this.interestOps.get() & SelectionKey.OP_WRITE) != 0, "The connection should wait for OP_WRITE");
+
+        while (connection.hasPendingWrites()) {
+            connection.onWritable();
+        }
+        assertEquals(List.of(response), responses(), "The whole response should reach the client");
+    }
+
+    @Test
+    void testPipelinedResponsesPauseReading() throws IOException {
+        // the client sends commands, but does not read anything
+        this.socketCapacity.set(0);
+        ClientConnection connection = new ClientConnection(this.key, 1024);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < PIPELINED_RESPONSES; i++) {
+            String response = "Response " + i;
+            expected.add(response);
+            connection.send(Frame.response(response));
+        }
+        assertTrue(connection.getQueuedBytes() > 1024, "Nothing should have been written");
+        assertEquals(0, this.interestOps.get() & SelectionKey.OP_READ,
+                "A client, that does not read its responses, should not be read from");
+
+        this.socketCapacity.set(Integer.MAX_VALUE);
+        connection.onWritable();
+        assertFalse(connection.hasPendingWrites(), "Everything should be written once the client reads");
+        assertTrue((this.interestOps.get() & SelectionKey.OP_READ) != 0, "Reading should resume");
+        assertEquals(expected, responses(), "The responses should arrive in the order of the commands");
+    }
+
+    private List<String> responses() throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.feed(ByteBuffer.wrap(this.written.toByteArray()));
+        List<String> responses = new ArrayList<>();
+        Frame frame;
+        while ((frame = decoder.next()) != null) {
+            responses.add(frame.getText());
+        }
+        return responses;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+}
@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.network;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.DefaultSessionManager;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ConnectionLoopTest {
+
+    private static final long JOIN_TIMEOUT_MILLISECONDS = 5_000;
+
+    @Test
+    void testCommandsAreAnsweredOnTheThreadOfTheClient() throws Exception {
+        DefaultSessionManager sessions = new DefaultSessionManager(null);
+        List<Session> closedSessions = new CopyOnWriteArrayList<>();
+        sessions.addCloseListener(closedSessions::add);
+        List<Thread> handlerThreads = new CopyOnWriteArrayList<>();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            SocketChannel accepted = server.accept();
+            FrameHandler echo = (connection, frame) -> {
+                handlerThreads.add(Thread.currentThread());
+                try {
+                    connection.send(Frame.response("echo " + frame.getText()));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            Thread thread = ConnectionThreads.newFactory("connection-")
+                    .newThread(new ConnectionLoop(accepted, echo, sessions, null));
+            thread.start();
+
+            assertEquals("echo top 1", roundTrip(client, "top 1"));
+            assertEquals("echo stop", roundTrip(client, "stop"));
+            assertEquals(List.of(thread, thread), handlerThreads, "The commands should run on the client's thread");
+            assertEquals(1, sessions.getOpenSessions(), "The client should have a session");
+
+            client.close();
+            thread.join(JOIN_TIMEOUT_MILLISECONDS);
+            assertFalse(thread.isAlive(), "The thread should end with the connection");
+            assertEquals(1, closedSessions.size(), "The session should be closed with the connection");
+            assertEquals(0, sessions.getOpenSessions());
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    private static String roundTrip(SocketChannel client, String command) throws IOException {
+        ByteBuffer frame = FrameCodec.encode(Frame.command(command));
+        while (frame.hasRemaining()) {
+            client.write(frame);
+        }
+        FrameDecoder decoder = new FrameDecoder();
+        Frame response;
+        while ((response = decoder.next()) == null) {
+            if (decoder.readFrom(client) == -1) {
+                throw new IOException("The server has closed the connection without an answer");
+            }
+        }
+        return response.getText();
+    }
+}
@@ -0,0 +1,88 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultSessionManagerTest {
+
+    private static final long IDLE_TIMEOUT_MILLIS = 100;
+    private static final long TICK_MILLIS = 10;
+    private static final long WAIT_MILLIS = 5_000;
+
+    private final List<Session> closedSessions = new CopyOnWriteArrayList<>();
+    private DefaultSessionManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (this.manager != null) {
+            this.manager.shutdown();
+        }
+    }
+
+    @Test
+    void testSessionsGetDistinctIds() {
+        this.manager = new DefaultSessionManager(null);
+        Session first = this.manager.open(null);
+        Session second = this.manager.open(null);
+        assertNotEquals(0, first.getId(), "Zero is the empty key of the maps");
+        assertNotEquals(first.getId(), second.getId());
+        assertSame(first, this.manager.get(first.getId()));
+        assertEquals(2, this.manager.getOpenSessions());
+    }
+
+    @Test
+    void testClosingTheConnectionClosesTheSession() throws Exception {
+        this.manager = new DefaultSessionManager(null);
+        this.manager.addCloseListener(this.closedSessions::add);
+        ClientConnection connection = createConnection();
+        Session session = this.manager.open(connection);
+        assertSame(session, connection.getSession());
+
+        connection.close();
+        connection.close();
+        this.manager.close(session.getId());
+
+        assertNull(this.manager.get(session.getId()));
+        assertEquals(List.of(session), this.closedSessions, "The listeners should hear of a session exactly once");
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    void testIdleSessionsAreClosed() throws Exception {
+        this.manager = new DefaultSessionManager(IDLE_TIMEOUT_MILLIS, TICK_MILLIS, null);
+        this.manager.addCloseListener(this.closedSessions::add);
+        ClientConnection connection = createConnection();
+        Session idle = this.manager.open(connection);
+        Session active = this.manager.open(null);
+
+        long start = System.currentTimeMillis();
+        while (this.closedSessions.isEmpty() && System.currentTimeMillis() - start < WAIT_MILLIS) {
+            active.touch();
+            Thread.sleep(TICK_MILLIS);
+        }
+
+        assertEquals(List.of(idle), this.closedSessions, "Only the session, that has gone quiet, should be closed");
+        assertTrue(connection.isClosed(), "The connection of an idle session should be closed");
+        assertSame(active, this.manager.get(active.getId()), "A session, that keeps being active, should stay open");
+    }
+
+    private static ClientConnection createConnection() {
+        SelectionKey key = mock(SelectionKey.class);
+        when(key.channel()).thenReturn(mock(SocketChannel.class));
+        return new ClientConnection(key);
+    }
+}
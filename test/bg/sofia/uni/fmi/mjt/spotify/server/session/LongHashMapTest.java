@@ -0,0 +1,73 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongHashMapTest {
+
+    @Test
+    void testPutGetAndRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(1, "one"));
+        assertEquals("one", map.put(1, "uno"), "A put should return the value it replaces");
+        assertNull(map.putIfAbsent(2, "two"));
+        assertEquals("two", map.putIfAbsent(2, "dos"), "A present value should not be replaced");
+        assertEquals("uno", map.get(1));
+        assertEquals(2, map.size());
+
+        assertEquals("uno", map.remove(1));
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testZeroIsAnOrdinaryKey() {
+        LongHashMap<String> map = new LongHashMap<>();
+        map.put(0, "zero");
+        assertTrue(map.containsKey(0));
+        assertEquals("zero", map.get(0));
+        assertEquals(1, map.size());
+        assertEquals(1, map.values().size(), "The zero key should be among the values");
+        assertEquals("zero", map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testRemoveOnlyTheExpectedValue() {
+        LongHashMap<String> map = new LongHashMap<>();
+        map.put(7, "new");
+        assertFalse(map.remove(7, "old"), "A value, that has been replaced, should not be removed");
+        assertEquals("new", map.get(7));
+        assertTrue(map.remove(7, "new"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testMatchesHashMapUnderRandomOperations() {
+        // a narrow range of keys makes for long probe chains, and for removals in the middle of them
+        LongHashMap<Long> map = new LongHashMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000) - 1_000;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -1_000; key < 1_000; key++) {
+            assertEquals(expected.get(key), map.get(key), "The maps differ at " + key);
+        }
+    }
+}
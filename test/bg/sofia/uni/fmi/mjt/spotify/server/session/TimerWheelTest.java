@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    void testExpiresOnTheTickOfTheDeadline() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        wheel.schedule(1, 25);
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(20, expired::add);
+        assertTrue(expired.isEmpty(), "Nothing should expire before its deadline");
+        wheel.advance(30, expired::add);
+        assertEquals(List.of(1L), expired, "The timeout should expire on the first tick after its deadline");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testTimeoutsLongerThanATurn() {
+        TimerWheel wheel = new TimerWheel(TICK, 4, 0);
+        // two and a half turns of the wheel
+        wheel.schedule(1, 100);
+        wheel.schedule(2, 20);
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(90, expired::add);
+        assertEquals(List.of(2L), expired, "A timeout sharing a slot should wait for its own turn");
+        wheel.advance(100, expired::add);
+        assertEquals(List.of(2L, 1L), expired);
+    }
+
+    @Test
+    void testExpiredIdsCanBeScheduledAgain() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        wheel.schedule(1, TICK);
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(TICK, id -> {
+            expired.add(id);
+            wheel.schedule(id, TICK);
+        });
+        assertEquals(1, wheel.size(), "The id should be back on the wheel");
+        wheel.advance(2 * TICK, expired::add);
+        assertEquals(List.of(1L, 1L), expired);
+    }
+}
@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AtomicFilesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplacesTheFile() throws IOException {
+        Path path = this.directory.resolve("songs.txt");
+        Files.writeString(path, "old");
+        AtomicFiles.write(path, writer -> writer.write("new"));
+        assertEquals("new", Files.readString(path), "The file should be replaced");
+        assertEquals(List.of(path), Files.list(this.directory).toList(), "No temporary file should be left");
+    }
+
+    @Test
+    void testKeepsTheOldFileWhenTheWritingFails() throws IOException {
+        Path path = this.directory.resolve("songs.txt");
+        Files.writeString(path, "old");
+        assertThrows(IOException.class, () -> AtomicFiles.write(path, writer -> {
+            writer.write("half of the new");
+            throw new IOException("The disk is full");
+        }));
+        assertEquals("old", Files.readString(path), "A failed write should leave the old file as it was");
+        assertFalse(Files.exists(this.directory.resolve("songs.txt.tmp")), "No temporary file should be left");
+    }
+
+    @Test
+    void testReplaceRenamesOverTheTarget() throws IOException {
+        Path path = this.directory.resolve("store.dat");
+        Path compacted = this.directory.resolve("store.dat.compacting");
+        Files.writeString(path, "old");
+        Files.writeString(compacted, "new");
+        AtomicFiles.replace(compacted, path);
+        assertEquals("new", Files.readString(path), "The target should be replaced");
+        assertFalse(Files.exists(compacted), "The source should be gone");
+    }
+}
@@ -0,0 +1,37 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CachedStoreTest {
+
+    @Test
+    void testKeepsAtMostTheCapacity() throws IOException {
+        InMemoryStore backing = new InMemoryStore();
+        CachedStore store = new CachedStore(backing, 2);
+        store.put("first", "1");
+        store.put("second", "2");
+        store.put("third", "3");
+        assertEquals(2, store.getCachedValues(), "The cache should not grow past its capacity");
+        assertEquals("1", store.get("first"), "A value dropped from the cache should be read from the store");
+        assertEquals(1, store.getMisses(), "A value dropped from the cache should be a miss");
+        assertEquals("1", store.get("first"), "A value read once should be cached");
+        assertEquals(1, store.getHits(), "A cached value should be a hit");
+    }
+
+    @Test
+    void testWritesGoThroughToTheStore() throws IOException {
+        InMemoryStore backing = new InMemoryStore();
+        CachedStore store = new CachedStore(backing, 10);
+        store.put("admin", "admin");
+        store.put("admin", "new password");
+        assertEquals("new password", backing.get("admin"), "A write should reach the store");
+        store.remove("admin");
+        assertNull(backing.get("admin"), "A removal should reach the store");
+        assertNull(store.get("admin"), "A removed value should not stay in the cache");
+    }
+}
@@ -0,0 +1,94 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogStructuredStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testKeepsTheLatestValues() throws IOException {
+        Path path = this.directory.resolve("store.db");
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            store.put("admin", "admin");
+            store.put("user@abv.bg", "password");
+            store.put("admin", "new password");
+            store.put("removed@abv.bg", "password");
+            store.remove("removed@abv.bg");
+            assertFalse(store.putIfAbsent("admin", "another password"), "An existing key should not be replaced");
+            assertTrue(store.putIfAbsent("ünicode@abv.bg", "парола"), "A new key should be added");
+        }
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            assertEquals("new password", store.get("admin"), "The latest value should be read back");
+            assertEquals("парола", store.get("ünicode@abv.bg"), "The values should keep their characters");
+            assertNull(store.get("removed@abv.bg"), "A removed key should stay removed");
+            assertEquals(Set.of("admin", "user@abv.bg", "ünicode@abv.bg"), store.keys(),
+                    "Only the live keys should be read back");
+        }
+    }
+
+    @Test
+    void testCutsOffATornWrite() throws IOException {
+        Path path = this.directory.resolve("store.db");
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            store.put("intact", "value");
+            store.put("torn", "value cut by a crash");
+        }
+        long intactSize = path.toFile().length() - (12 + "torn".length() + "value cut by a crash".length());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(path.toFile().length() - 4);
+        }
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            assertEquals("value", store.get("intact"), "The records before the torn one should be read back");
+            assertNull(store.get("torn"), "A torn record should be dropped");
+            assertEquals(intactSize, Files.size(path), "A torn record should be cut off the file");
+            store.put("after the crash", "value");
+        }
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            assertEquals("value", store.get("after the crash"), "The writes after a recovery should be kept");
+        }
+    }
+
+    @Test
+    void testCompactionKeepsOnlyTheLiveValues() throws IOException {
+        Path path = this.directory.resolve("store.db");
+        Map<String, String> expected = new HashMap<>();
+        try (LogStructuredStore store = new LogStructuredStore(path, false)) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 100; i++) {
+                    String value = "value " + round + " " + "x".repeat(100);
+                    store.put("key " + i, value);
+                    expected.put("key " + i, value);
+                }
+            }
+            store.remove("key 0");
+            expected.remove("key 0");
+            long before = store.getFileSize();
+            store.compact();
+            assertTrue(store.getFileSize() < before / 10, "Compaction should drop the old values");
+            store.put("key 1", "after the compaction");
+            expected.put("key 1", "after the compaction");
+        }
+        try (LogStructuredStore store = new LogStructuredStore(path)) {
+            Map<String, String> result = new HashMap<>();
+            store.forEach(result::put);
+            assertEquals(expected, result, "The compacted file should have every live value");
+        }
+    }
+}
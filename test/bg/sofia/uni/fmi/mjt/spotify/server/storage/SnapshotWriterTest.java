@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotWriterTest {
+
+    private static final long INTERVAL_MILLIS = 200;
+
+    @Test
+    void testCoalescesTheRequestsOfAnInterval() throws InterruptedException {
+        AtomicInteger written = new AtomicInteger(0);
+        try (SnapshotWriter writer = new SnapshotWriter("test-snapshot", written::incrementAndGet,
+                INTERVAL_MILLIS, null)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                writer.request();
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Thread.sleep(2 * INTERVAL_MILLIS);
+            assertEquals(1000, writer.getRequests(), "Every request should be counted");
+            assertTrue(written.get() <= 2 + elapsedMillis / INTERVAL_MILLIS,
+                    "The requests of an interval should share a snapshot, but there were " + written.get());
+            assertTrue(written.get() >= 1, "A requested snapshot should be written");
+        }
+    }
+
+    @Test
+    void testFlushWritesTheRequestedSnapshot() {
+        AtomicInteger written = new AtomicInteger(0);
+        int flushed;
+        try (SnapshotWriter writer = new SnapshotWriter("test-snapshot", written::incrementAndGet, 60_000, null)) {
+            writer.flush();
+            assertEquals(0, written.get(), "Nothing should be written without a request");
+            // the first request may be written by the writer before the flush, the second one by the flush
+            writer.request();
+            writer.request();
+            writer.flush();
+            flushed = written.get();
+            assertTrue(flushed >= 1 && flushed <= 2, "A flush should write the requested snapshot right away");
+            writer.flush();
+            assertEquals(flushed, written.get(), "Nothing should be left to write after a flush");
+            writer.request();
+        }
+        assertEquals(flushed + 1, written.get(), "Closing should write the last requested snapshot");
+    }
+}
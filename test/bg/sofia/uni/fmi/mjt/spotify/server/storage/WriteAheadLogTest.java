@@ -0,0 +1,155 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplaysTheRecordsOfTheEarlierRuns() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            log.append("first").get();
+            log.append("second: ünicode").get();
+        }
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            log.append("not yet replayed").get();
+            assertEquals(List.of("first", "second: ünicode"), replay(log),
+                    "The records of the earlier runs should be replayed in order");
+        }
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            assertEquals(List.of("first", "second: ünicode", "not yet replayed"), replay(log),
+                    "Every run should continue in a new segment");
+        }
+    }
+
+    @Test
+    void testStopsAtATornRecord() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            log.append("intact").get();
+            log.append("torn by a crash").get();
+        }
+        Path segment = this.directory.resolve("segment-0.wal");
+        byte[] content = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(content, content.length - 3));
+
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            assertEquals(List.of("intact"), replay(log), "A record cut short should not be replayed");
+        }
+    }
+
+    @Test
+    void testStopsAtADamagedRecord() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            log.append("intact").get();
+            log.append("damaged").get();
+            log.append("after the damage").get();
+        }
+        Path segment = this.directory.resolve("segment-0.wal");
+        byte[] content = Files.readAllBytes(segment);
+        // the first character of the second record
+        content[8 + "intact".length() + 8] ^= 1;
+        Files.write(segment, content, StandardOpenOption.TRUNCATE_EXISTING);
+
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            assertEquals(List.of("intact"), replay(log), "Nothing after a damaged record should be replayed");
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsShareTheSyncs() throws Exception {
+        int threads = 8;
+        int recordsPerThread = 200;
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> writers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int writer = i;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int j = 0; j < recordsPerThread; j++) {
+                            log.append(writer + ":" + j).get();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                thread.start();
+                writers.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : writers) {
+                thread.join();
+            }
+            assertEquals(threads * recordsPerThread, log.getRecords(), "Every record should be written");
+            assertTrue(log.getSyncs() < log.getRecords(),
+                    "The records appended while the disk was busy should be forced together");
+        }
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            assertEquals(threads * recordsPerThread, replay(log).size(), "Every record should be replayed");
+        }
+    }
+
+    @Test
+    void testRollOverAndDeleteTheOlderSegments() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            log.append("in the snapshot");
+            long segment = log.rollOver().get();
+            log.append("after the snapshot").get();
+            assertEquals(1, segment, "The log should continue in the next segment");
+            log.deleteSegmentsBefore(segment);
+            assertFalse(Files.exists(this.directory.resolve("segment-0.wal")),
+                    "The segments before the snapshot should be deleted");
+        }
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, null)) {
+            assertEquals(List.of("after the snapshot"), replay(log),
+                    "Only the records after the snapshot should be replayed");
+        }
+    }
+
+    @Test
+    void testAsksForASnapshotOncePerSegment() throws Exception {
+        CountDownLatch asked = new CountDownLatch(1);
+        int[] requests = {0};
+        try (WriteAheadLog log = new WriteAheadLog(this.directory, 3, () -> {
+            requests[0]++;
+            asked.countDown();
+        }, null)) {
+            for (int i = 0; i < 6; i++) {
+                log.append("change " + i).get();
+            }
+            assertTrue(asked.await(1, TimeUnit.SECONDS), "A snapshot should be asked for");
+            assertEquals(1, requests[0], "A snapshot should be asked for once, until the log is rolled over");
+
+            log.rollOver().get();
+            for (int i = 0; i < 3; i++) {
+                log.append("change " + i).get();
+            }
+            log.rollOver().get();
+            assertEquals(2, requests[0], "A new segment should ask for its own snapshot");
+        }
+    }
+
+    private static List<String> replay(WriteAheadLog log) throws IOException {
+        List<String> records = new ArrayList<>();
+        log.replay(records::add);
+        return records;
+    }
+}
@@ -0,0 +1,200 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.Frame;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.FrameType;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AudioStreamTest {
+
+    // 8000 bytes per second, so that a second of audio is easy to tell
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 8, 1, true, false);
+    private static final int SONG_SECONDS = 10;
+    // the whole song fits into the jitter buffer, so that nothing waits for the clock
+    private static final long JITTER_BUFFER_MILLISECONDS = 60_000;
+    private static final int STREAM_ID = 7;
+    private static final int MAX_PUMPS = 1000;
+
+    private final FrameDecoder decoder = new FrameDecoder();
+    private ClientConnection connection;
+    private byte[] song;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SocketChannel channel = mock(SocketChannel.class);
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            int written = buffer.remaining();
+            this.decoder.feed(buffer);
+            return written;
+        });
+        this.connection = new ClientConnection(channel);
+        // every second of the song is filled with its number, to tell where the audio comes from
+        this.song = new byte[SONG_SECONDS * (int) FORMAT.getFrameRate()];
+        for (int i = 0; i < this.song.length; i++) {
+            this.song[i] = (byte) (i / (int) FORMAT.getFrameRate());
+        }
+    }
+
+    @Test
+    void testSeekGoesOnFromTheNewPositionWithANewId() throws IOException {
+        AudioStream stream = newStream();
+        stream.pump();
+        stream.seek(7_500, STREAM_ID + 1);
+        pumpToTheEnd(stream);
+
+        List<Frame> frames = frames();
+        assertEquals(FrameType.AUDIO_FORMAT, frames.get(0).getType());
+        assertEquals(STREAM_ID, frames.get(0).getStreamId());
+        assertEquals(FrameType.AUDIO_FORMAT, frames.get(1).getType(), "A seek should announce the new stream");
+        assertEquals(STREAM_ID + 1, frames.get(1).getStreamId());
+
+        byte[] audio = audioOf(frames, STREAM_ID + 1);
+        assertEquals(this.song.length / 4, audio.length, "The last two and a half seconds should be sent");
+        assertEquals(7, audio[0], "The audio should start from the position of the seek");
+        assertEquals(FrameType.END_OF_STREAM, frames.get(frames.size() - 1).getType());
+        assertEquals(STREAM_ID + 1, frames.get(frames.size() - 1).getStreamId());
+    }
+
+    @Test
+    void testSeekPastTheEndEndsTheSong() throws IOException {
+        AudioStream stream = newStream();
+        stream.seek(SONG_SECONDS * 2 * 1000, STREAM_ID + 1);
+        pumpToTheEnd(stream);
+        assertEquals(0, audioOf(frames(), STREAM_ID + 1).length, "Nothing should be left to play");
+    }
+
+    @Test
+    void testPausedStreamSendsNothingUntilResumed() throws IOException {
+        AudioStream stream = newStream();
+        stream.pause();
+        for (int i = 0; i < 10; i++) {
+            stream.pump();
+        }
+        List<Frame> frames = frames();
+        assertEquals(1, frames.size(), "A paused stream should only announce its format");
+        assertEquals(0, stream.getMetrics().getBytesSent());
+
+        stream.resume();
+        pumpToTheEnd(stream);
+        assertEquals(this.song.length, audioOf(frames(), STREAM_ID).length,
+                "The whole song should be sent once it is resumed");
+    }
+
+    @Test
+    void testStopEndsAPausedStream() throws IOException {
+        AudioStream stream = newStream();
+        stream.pause();
+        stream.pump();
+        stream.pump();
+        stream.stop();
+        assertTrue(stream.pump(), "A paused stream should still stop");
+        List<Frame> frames = frames();
+        assertEquals(FrameType.END_OF_STREAM, frames.get(frames.size() - 1).getType());
+    }
+
+    @Test
+    void testClosedConnectionEndsTheStreamWithFramesStillQueued() throws IOException {
+        // a full socket, so that the format stays queued
+        SocketChannel channel = mock(SocketChannel.class);
+        when(channel.write(any(ByteBuffer.class))).thenReturn(0);
+        SelectionKey key = mock(SelectionKey.class);
+        when(key.isValid()).thenReturn(true);
+        when(key.channel()).thenReturn(channel);
+        when(key.selector()).thenReturn(mock(Selector.class));
+        ClientConnection full = new ClientConnection(key);
+        AudioSource source = spy(new BufferAudioSource(FORMAT, ByteBuffer.wrap(this.song)));
+        AudioStream stream = new AudioStream(1, full, STREAM_ID, source, JITTER_BUFFER_MILLISECONDS, null);
+
+        assertFalse(stream.pump());
+        assertTrue(full.hasPendingWrites(), "The format should wait for the socket");
+        full.close();
+
+        assertFalse(full.hasPendingWrites(), "A closed connection should drop what it had queued");
+        assertTrue(stream.pump(), "The stream should end with its connection");
+        verify(source).close();
+    }
+
+    @Test
+    void testFormatOfTheNextSongIsAnnouncedInline() throws IOException {
+        AudioFormat stereo = new AudioFormat(8000, 8, 2, true, false);
+        Song first = new Song("First", "Artist", 1);
+        Song second = new Song("Second", "Artist", 1);
+        Song third = new Song("Third", "Artist", 1);
+        Map<Song, AudioSource> sources = Map.of(
+                second, new BufferAudioSource(FORMAT, ByteBuffer.wrap(this.song)),
+                third, new BufferAudioSource(stereo, ByteBuffer.wrap(this.song)));
+        AudioSource playlist = new PlaylistAudioSource(List.of(first, second, third),
+                new BufferAudioSource(FORMAT, ByteBuffer.wrap(this.song)), sources::get, Runnable::run, song -> { },
+                null);
+        pumpToTheEnd(new AudioStream(1, this.connection, STREAM_ID, playlist, JITTER_BUFFER_MILLISECONDS, null));
+
+        List<Frame> frames = frames();
+        List<Frame> formats = frames.stream().filter(frame -> frame.getType() == FrameType.AUDIO_FORMAT).toList();
+        assertEquals(2, formats.size(), "Only a change of the format should be announced");
+        assertTrue(frames.stream().allMatch(frame -> frame.getStreamId() == STREAM_ID),
+                "The whole playlist should be a single stream");
+        assertEquals(3 * this.song.length, audioOf(frames, STREAM_ID, 3).length, "Every song should be sent");
+        int secondFormat = frames.indexOf(formats.get(1));
+        int audioBefore = frames.subList(0, secondFormat).stream()
+                .filter(frame -> frame.getType() == FrameType.AUDIO_DATA)
+                .mapToInt(frame -> frame.getPayload().remaining()).sum();
+        assertEquals(2 * this.song.length, audioBefore, "The new format should come right before its song");
+    }
+
+    private AudioStream newStream() {
+        return new AudioStream(1, this.connection, STREAM_ID, new BufferAudioSource(FORMAT, ByteBuffer.wrap(this.song)),
+                JITTER_BUFFER_MILLISECONDS, null);
+    }
+
+    private static void pumpToTheEnd(AudioStream stream) {
+        for (int i = 0; i < MAX_PUMPS && !stream.pump(); i++) {
+            // every pump sends as much as it is allowed to
+        }
+    }
+
+    private List<Frame> frames() throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        Frame frame;
+        while ((frame = this.decoder.next()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static byte[] audioOf(List<Frame> frames, int streamId) {
+        return audioOf(frames, streamId, 1);
+    }
+
+    private static byte[] audioOf(List<Frame> frames, int streamId, int songs) {
+        ByteBuffer audio = ByteBuffer.allocate(songs * SONG_SECONDS * (int) FORMAT.getFrameRate());
+        frames.stream()
+                .filter(frame -> frame.getType() == FrameType.AUDIO_DATA && frame.getStreamId() == streamId)
+                .forEach(frame -> audio.put(frame.getPayload()));
+        byte[] bytes = new byte[audio.flip().remaining()];
+        audio.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.server.network.ClientConnection;
+import bg.sofia.uni.fmi.mjt.spotify.server.session.Session;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// simulates many listeners on a single machine - every listener is a fake channel, that accepts everything
+public class DefaultStreamingEngineLoadTest {
+
+    private static final int LISTENERS = 10_000;
+    private static final int WORKERS = 4;
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    // one second of audio - half of it is sent as a burst and the rest is paced
+    private static final int SONG_SIZE = (int) FORMAT.getFrameRate() * FORMAT.getFrameSize();
+    private static final long TIMEOUT_MILLISECONDS = 120_000;
+
+    @Test
+    void testTenThousandListeners() throws InterruptedException {
+        DefaultStreamingEngine engine = new DefaultStreamingEngine(null, WORKERS);
+        AtomicLong bytesSent = new AtomicLong(0);
+        Selector selector = mock(Selector.class);
+        // the same song for everyone, just like the mapped songs in the cache
+        ByteBuffer song = ByteBuffer.allocateDirect(SONG_SIZE);
+        int threadsBefore = Thread.activeCount();
+
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < LISTENERS; i++) {
+            sessions.add(new Session(i + 1, new ClientConnection(createListener(selector, bytesSent))));
+        }
+
+        long start = System.currentTimeMillis();
+        for (Session session : sessions) {
+            engine.startStreaming(session, new BufferAudioSource(FORMAT, song));
+        }
+        int threadsDuring = Thread.activeCount();
+
+        while (engine.getActiveStreams() > 0 && System.currentTimeMillis() - start < TIMEOUT_MILLISECONDS) {
+            Thread.sleep(100);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        engine.shutdown();
+
+        System.out.printf("%d listeners, %d workers: %d ms, %d MB streamed, %s%n",
+                LISTENERS, WORKERS, elapsed, bytesSent.get() / (1024 * 1024), engine.getTotalMetrics());
+        assertEquals(0, engine.getActiveStreams(), "All listeners should have received their song");
+        assertTrue(bytesSent.get() >= (long) LISTENERS * SONG_SIZE,
+                "Every listener should receive the whole song");
+        assertTrue(threadsDuring - threadsBefore <= WORKERS,
+                "The number of threads should not depend on the number of listeners");
+    }
+
+    private static SelectionKey createListener(Selector selector, AtomicLong bytesSent) {
+        SocketChannel channel = mock(SocketChannel.class, withSettings().stubOnly());
+        try {
+            when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+                ByteBuffer buffer = invocation.getArgument(0);
+                int written = buffer.remaining();
+                buffer.position(buffer.limit());
+                bytesSent.addAndGet(written);
+                return written;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        SelectionKey key = mock(SelectionKey.class, withSettings().stubOnly());
+        when(key.channel()).thenReturn(channel);
+        when(key.selector()).thenReturn(selector);
+        when(key.interestOps(anyInt())).thenReturn(key);
+        return key;
+    }
+}
@@ -0,0 +1,42 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.logger.SpotifyLogger;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodecs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DefaultStreamingEngineTest {
+
+    private static final String CODEC_PROPERTY = "spotify.streaming.codec";
+    private static final long CACHE_BUDGET = 1024 * 1024;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(CODEC_PROPERTY);
+    }
+
+    @Test
+    void testZeroCopyIgnoresTheCodecProperty() {
+        System.setProperty(CODEC_PROPERTY, AudioCodecs.LOSSLESS.getName());
+        SpotifyLogger logger = mock(SpotifyLogger.class);
+
+        DefaultStreamingEngine engine = new DefaultStreamingEngine(logger, 1, 0,
+                new MappedSongCache(CACHE_BUDGET), StreamingMode.ZERO_COPY);
+        engine.shutdown();
+
+        verify(logger).log(anyString(), any(IllegalArgumentException.class));
+    }
+
+    @Test
+    void testZeroCopyRefusesAnExplicitCodec() {
+        assertThrows(IllegalArgumentException.class, () -> new DefaultStreamingEngine(null, 1, 0,
+                new MappedSongCache(CACHE_BUDGET), StreamingMode.ZERO_COPY, null, AudioCodecs.LOSSLESS),
+                "An encoded stream cannot be sent without copying the file");
+    }
+}
@@ -0,0 +1,211 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodec;
+import bg.sofia.uni.fmi.mjt.spotify.protocol.AudioCodecs;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncodedSongCacheTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final AudioCodec CODEC = AudioCodecs.LOSSLESS;
+
+    private final Path smooth = Path.of("songs", "Santana - Smooth.wav");
+    private final Path intoTheNight = Path.of("songs", "Santana - Into The Night.wav");
+
+    @Test
+    void testEncodedAudioIsDecodedExactly() throws IOException {
+        byte[] pcm = tone(10_000);
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        AudioSource source = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(this.smooth, CODEC));
+
+        List<ByteBuffer> blocks = drain(source, UNLIMITED);
+        assertArrayEquals(pcm, decode(blocks), "The listener should hear exactly the original audio");
+        EncodedSong encoded = cache.get(this.smooth, CODEC);
+        assertNotNull(encoded, "The song should be handed over once it has been played to the end");
+        assertEquals(pcm.length, encoded.getPlayedSize(), "The song should play for as long as the original");
+        assertTrue(encoded.getSize() < pcm.length, "The encoded song should be smaller than the original");
+        assertEquals(0, cache.getBytesBeingEncoded(), "The kept blocks should be counted as cached now");
+    }
+
+    @Test
+    void testCachedSongServesTheSameBlocks() throws IOException {
+        byte[] pcm = tone(10_000);
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        assertNull(cache.get(this.smooth, CODEC), "Nothing should be cached before the first play ends");
+        List<ByteBuffer> first = drain(new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)),
+                CODEC, cache.startEncoding(this.smooth, CODEC)), UNLIMITED);
+
+        EncodedSong cached = cache.get(this.smooth, CODEC);
+        assertNotNull(cached, "The encoded song should be served from the cache");
+        assertNull(cache.startEncoding(this.smooth, CODEC), "A cached song should not be encoded again");
+        assertNull(cache.get(this.smooth, AudioCodecs.PCM), "A song is cached per codec");
+
+        List<ByteBuffer> second = drain(cached.newSource(), UNLIMITED);
+        assertEquals(first, second, "Every listener should get the same blocks");
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testSongIsNotHandedOverBeforeItEnds() throws IOException {
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        AudioSource source = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(tone(10_000))),
+                CODEC, cache.startEncoding(this.smooth, CODEC));
+        assertTrue(source.nextChunk(UNLIMITED).remaining() > 0);
+        source.close();
+        assertNull(cache.get(this.smooth, CODEC), "A song that has not been played to the end should not be cached");
+        assertEquals(0, cache.getBytesBeingEncoded(), "The kept blocks should be let go");
+        assertNotNull(cache.startEncoding(this.smooth, CODEC), "The next listener should be able to encode the song");
+    }
+
+    @Test
+    void testBlocksAreSentWholeOrNotAtAll() throws IOException {
+        AudioSource source = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(tone(10_000))),
+                CODEC, null);
+        OutboundMessage chunk = source.nextChunk(100);
+        assertEquals(0, chunk.remaining(), "A block, which plays for longer than allowed, should wait");
+        assertEquals(0, source.getPlayedBytes(chunk));
+
+        chunk = source.nextChunk(UNLIMITED);
+        assertTrue(chunk.remaining() > 0);
+        assertEquals(FORMAT.getFrameSize() * 4096L, source.getPlayedBytes(chunk),
+                "The pacing should count the audio a block plays for, not its encoded size");
+    }
+
+    @Test
+    void testSeekStartsFromTheBlockOfTheOffset() throws IOException {
+        byte[] pcm = tone(10_000);
+        int blockSize = FORMAT.getFrameSize() * 4096;
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        AudioSource source = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(this.smooth, CODEC));
+        source.seek(blockSize + 100);
+        byte[] played = decode(drain(source, UNLIMITED));
+        assertArrayEquals(Arrays.copyOfRange(pcm, blockSize + 100, pcm.length), played,
+                "The encoding source should go on from the exact offset");
+        assertNull(cache.get(this.smooth, CODEC), "A song with a gap should not be cached");
+
+        drain(new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(this.smooth, CODEC)), UNLIMITED);
+        AudioSource cached = cache.get(this.smooth, CODEC).newSource();
+        cached.seek(blockSize + 100);
+        assertArrayEquals(Arrays.copyOfRange(pcm, blockSize, pcm.length), decode(drain(cached, UNLIMITED)),
+                "A cached song should go on from the start of the block of the offset");
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws IOException {
+        EncodedSong song = encode(tone(10_000));
+
+        EncodedSongCache cache = new EncodedSongCache(song.getSize() + song.getSize() / 2);
+        cache.put(this.smooth, song);
+        cache.put(this.intoTheNight, song);
+
+        assertEquals(1, cache.getEvictions(), "Exceeding the budget should evict a song");
+        assertEquals(1, cache.size());
+        assertEquals(song.getSize(), cache.getBytesInUse());
+        assertNull(cache.get(this.smooth, CODEC), "The least recently used song should have been evicted");
+
+        EncodedSongCache tiny = new EncodedSongCache(0);
+        tiny.put(this.smooth, song);
+        assertEquals(0, tiny.size(), "A song larger than the budget should not be cached");
+    }
+
+    @Test
+    void testConcurrentFirstListenersKeepTheBlocksOnce() throws IOException {
+        byte[] pcm = tone(10_000);
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        AudioSource first = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(this.smooth, CODEC));
+        EncodedSongCache.Encoding second = cache.startEncoding(this.smooth, CODEC);
+        assertNull(second, "A song should be kept by only one of the listeners, that encode it at the same time");
+        AudioSource other = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                second);
+
+        List<ByteBuffer> otherBlocks = drain(other, UNLIMITED);
+        assertNull(cache.get(this.smooth, CODEC), "The listener, that keeps no blocks, should cache nothing");
+        assertEquals(drain(first, UNLIMITED), otherBlocks, "Both listeners should hear the same blocks");
+        assertNotNull(cache.get(this.smooth, CODEC), "The listener, that kept the blocks, should cache the song");
+    }
+
+    @Test
+    void testBlocksAreNotKeptBeyondTheBudget() throws IOException {
+        byte[] pcm = tone(100_000);
+        EncodedSong song = encode(pcm);
+        EncodedSongCache cache = new EncodedSongCache(song.getSize() / 2);
+        AudioSource source = new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(this.smooth, CODEC));
+        long mostKept = 0;
+        for (OutboundMessage chunk = source.nextChunk(UNLIMITED); chunk != null; chunk = source.nextChunk(UNLIMITED)) {
+            mostKept = Math.max(mostKept, cache.getBytesBeingEncoded());
+        }
+        source.close();
+        assertTrue(mostKept <= song.getSize() / 2, "The kept blocks should never outgrow the budget");
+        assertEquals(0, cache.getBytesBeingEncoded(), "The kept blocks should be let go once over the budget");
+        assertNull(cache.get(this.smooth, CODEC), "A song larger than the budget should not be cached");
+    }
+
+    private static EncodedSong encode(byte[] pcm) throws IOException {
+        EncodedSongCache cache = new EncodedSongCache(UNLIMITED);
+        Path path = Path.of("songs", "encoded.wav");
+        drain(new EncodingAudioSource(new BufferAudioSource(FORMAT, ByteBuffer.wrap(pcm)), CODEC,
+                cache.startEncoding(path, CODEC)), UNLIMITED);
+        return cache.get(path, CODEC);
+    }
+
+    private static List<ByteBuffer> drain(AudioSource source, int maxBytes) throws IOException {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        for (OutboundMessage chunk = source.nextChunk(maxBytes); chunk != null; chunk = source.nextChunk(maxBytes)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (chunk.remaining() > 0) {
+                chunk.writeTo(channel);
+            }
+            blocks.add(ByteBuffer.wrap(out.toByteArray()));
+        }
+        source.close();
+        return blocks;
+    }
+
+    private static byte[] decode(List<ByteBuffer> blocks) throws IOException {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        for (ByteBuffer block : blocks) {
+            ByteBuffer decoded = CODEC.decode(block.duplicate(), FORMAT);
+            byte[] bytes = new byte[decoded.remaining()];
+            decoded.get(bytes);
+            pcm.write(bytes);
+        }
+        return pcm.toByteArray();
+    }
+
+    private static byte[] tone(int frames) {
+        ByteBuffer pcm = ByteBuffer.allocate(frames * FORMAT.getFrameSize()).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (9000 * Math.sin(i * 0.02));
+            pcm.putShort(sample);
+            pcm.putShort((short) (sample / 2));
+        }
+        return pcm.array();
+    }
+}
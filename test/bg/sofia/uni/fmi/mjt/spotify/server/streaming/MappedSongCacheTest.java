@@ -0,0 +1,106 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedSongCacheTest {
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+    private final Song smooth = new Song("Smooth", "Santana", 143);
+    private final Song intoTheNight = new Song("Into The Night", "Santana", 140);
+    private final Song unchainMyHeart = new Song("Unchain My Heart", "Joe Cocker", 205);
+
+    @Test
+    void testHitsAndMisses() throws IOException, UnsupportedAudioFileException {
+        MappedSongCache cache = new MappedSongCache(UNLIMITED);
+        MappedSong first = cache.get(this.smooth);
+        MappedSong second = cache.get(this.smooth);
+        assertSame(first, second, "Every listener of a song should share the same mapping");
+        assertEquals(1, cache.getMisses(), "Only the first request should miss");
+        assertEquals(1, cache.getHits(), "The second request should be served from the cache");
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws IOException, UnsupportedAudioFileException {
+        long songSize = cache(UNLIMITED, this.smooth).getSize();
+        // room for two songs only
+        MappedSongCache cache = new MappedSongCache(2 * songSize + songSize / 2);
+        MappedSong smoothMapping = cache.get(this.smooth);
+        cache.get(this.intoTheNight);
+        cache.get(this.smooth);
+        cache.get(this.unchainMyHeart);
+
+        assertEquals(1, cache.getEvictions(), "Exceeding the budget should evict a song");
+        assertTrue(cache.getBytesInUse() <= 2 * songSize + songSize / 2, "The cache should respect its budget");
+        assertSame(smoothMapping, cache.get(this.smooth), "The recently used song should remain cached");
+        long missesBefore = cache.getMisses();
+        cache.get(this.intoTheNight);
+        assertEquals(missesBefore + 1, cache.getMisses(), "The least recently used song should have been evicted");
+    }
+
+    @Test
+    void testSongLargerThanTheBudget() throws IOException, UnsupportedAudioFileException {
+        MappedSongCache cache = new MappedSongCache(0);
+        assertNotSame(cache.get(this.smooth), cache.get(this.smooth),
+                "A song larger than the budget should be served, but not cached");
+        assertEquals(0, cache.size(), "A song larger than the budget should not be cached");
+    }
+
+    @Test
+    void testPreloadsTheMostListenedSongs() {
+        for (int i = 0; i < 3; i++) {
+            this.unchainMyHeart.play();
+        }
+        this.smooth.play();
+        MappedSongCache cache = new MappedSongCache(UNLIMITED);
+        cache.preload(List.of(this.intoTheNight, this.smooth, this.unchainMyHeart), 2);
+
+        assertEquals(2, cache.size(), "Only the requested number of songs should be preloaded");
+        assertDoesNotMiss(cache, this.unchainMyHeart);
+        assertDoesNotMiss(cache, this.smooth);
+    }
+
+    @Test
+    void testMappedDataIsWhatAudioSystemDecodes() throws IOException, UnsupportedAudioFileException {
+        MappedSong mapped = cache(UNLIMITED, this.smooth);
+        try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(this.smooth.getPath().toFile())) {
+            AudioFormat expected = audioStream.getFormat();
+            AudioFormat actual = mapped.getHeader().getFormat();
+            assertTrue(actual.matches(expected), "The parsed format should match the one AudioSystem reads");
+
+            byte[] decoded = audioStream.readAllBytes();
+            ByteBuffer data = mapped.audioData();
+            byte[] raw = new byte[data.remaining()];
+            data.get(raw);
+            assertArrayEquals(decoded, raw, "The mapped audio data should be the decoded audio");
+        }
+    }
+
+    private static MappedSong cache(long budget, Song song) throws IOException, UnsupportedAudioFileException {
+        return new MappedSongCache(budget).get(song);
+    }
+
+    private static void assertDoesNotMiss(MappedSongCache cache, Song song) {
+        long misses = cache.getMisses();
+        try {
+            cache.get(song);
+        } catch (IOException | UnsupportedAudioFileException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(misses, cache.getMisses(), "A preloaded song should be served from the cache");
+    }
+}
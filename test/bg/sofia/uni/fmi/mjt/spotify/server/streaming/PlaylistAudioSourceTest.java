@@ -0,0 +1,141 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PlaylistAudioSourceTest {
+
+    private static final AudioFormat MONO = new AudioFormat(8000, 8, 1, true, false);
+    private static final AudioFormat STEREO = new AudioFormat(8000, 8, 2, true, false);
+    private static final Executor SAME_THREAD = Runnable::run;
+
+    private final Song first = new Song("First", "Artist", 1);
+    private final Song second = new Song("Second", "Artist", 1);
+    private final Song third = new Song("Third", "Artist", 1);
+    private final Map<Song, AudioSource> sources = new HashMap<>();
+    private final List<Song> started = new ArrayList<>();
+    private final AtomicInteger closed = new AtomicInteger(0);
+
+    @Test
+    void testSongsArePlayedBackToBack() throws IOException {
+        this.sources.put(this.second, source(MONO, 2));
+        this.sources.put(this.third, source(MONO, 3));
+        AudioSource playlist = newPlaylist(source(MONO, 1), SAME_THREAD);
+
+        assertArrayEquals(concat(1, 2, 3), drain(playlist), "The songs should follow each other in order");
+        assertEquals(List.of(this.first, this.second, this.third), this.started,
+                "Every song should be counted as it starts");
+        assertEquals(2, this.closed.get(), "Every song should be closed once the next one starts");
+        playlist.close();
+        assertEquals(3, this.closed.get());
+    }
+
+    @Test
+    void testFormatChangesWithTheSong() throws IOException {
+        this.sources.put(this.second, source(STEREO, 2));
+        AudioSource playlist = newPlaylist(source(MONO, 1), SAME_THREAD);
+        assertSame(MONO, playlist.getFormat());
+        while (playlist.getFormat() == MONO) {
+            playlist.nextChunk(Integer.MAX_VALUE);
+        }
+        assertSame(STEREO, playlist.getFormat(), "The format should be that of the song, that plays");
+    }
+
+    @Test
+    void testSongThatCannotBeOpenedIsSkipped() throws IOException {
+        this.sources.put(this.third, source(MONO, 3));
+        AudioSource playlist = newPlaylist(source(MONO, 1), SAME_THREAD);
+        assertArrayEquals(concat(1, 3), drain(playlist), "A missing song should be skipped");
+        assertEquals(List.of(this.first, this.third), this.started);
+    }
+
+    @Test
+    void testWorkerDoesNotWaitForTheNextSong() throws IOException {
+        this.sources.put(this.second, source(MONO, 2));
+        List<Runnable> pending = new ArrayList<>();
+        AudioSource playlist = newPlaylist(source(MONO, 1), pending::add);
+
+        assertEquals(1000, playlist.nextChunk(Integer.MAX_VALUE).remaining());
+        assertEquals(0, playlist.nextChunk(Integer.MAX_VALUE).remaining(),
+                "Nothing should be sent while the next song is being opened");
+        pending.forEach(Runnable::run);
+        pending.clear();
+        assertEquals(1000, playlist.nextChunk(Integer.MAX_VALUE).remaining(),
+                "The next song should start once it has been opened");
+        // the third song is missing
+        pending.forEach(Runnable::run);
+        assertNull(playlist.nextChunk(Integer.MAX_VALUE), "The playlist should end after its last song");
+    }
+
+    @Test
+    void testSongOpenedAheadIsClosedWithThePlaylist() throws IOException {
+        this.sources.put(this.second, source(MONO, 2));
+        AudioSource playlist = newPlaylist(source(MONO, 1), SAME_THREAD);
+        playlist.close();
+        assertEquals(2, this.closed.get(), "The song opened ahead should not be left open");
+    }
+
+    private AudioSource newPlaylist(AudioSource firstSource, Executor prefetcher) {
+        return new PlaylistAudioSource(List.of(this.first, this.second, this.third), firstSource, song -> {
+            AudioSource source = this.sources.get(song);
+            if (source == null) {
+                throw new IOException("The song " + song.getName() + " is missing");
+            }
+            return source;
+        }, prefetcher, this.started::add, null);
+    }
+
+    // an eighth of a second of a song, every byte of which is its number
+    private AudioSource source(AudioFormat format, int number) {
+        byte[] audio = new byte[(int) format.getFrameRate() * format.getFrameSize() / 8];
+        Arrays.fill(audio, (byte) number);
+        return new BufferAudioSource(format, ByteBuffer.wrap(audio)) {
+            @Override
+            public void close() {
+                PlaylistAudioSourceTest.this.closed.incrementAndGet();
+            }
+        };
+    }
+
+    private static byte[] concat(int... numbers) {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        for (int number : numbers) {
+            for (int i = 0; i < 1000; i++) {
+                audio.write(number);
+            }
+        }
+        return audio.toByteArray();
+    }
+
+    private static byte[] drain(AudioSource source) throws IOException {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(audio);
+        for (OutboundMessage chunk = source.nextChunk(Integer.MAX_VALUE); chunk != null;
+             chunk = source.nextChunk(Integer.MAX_VALUE)) {
+            while (chunk.remaining() > 0) {
+                chunk.writeTo(channel);
+            }
+        }
+        return audio.toByteArray();
+    }
+}
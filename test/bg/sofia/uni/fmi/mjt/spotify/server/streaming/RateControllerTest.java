@@ -0,0 +1,104 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateControllerTest {
+
+    // 44.1kHz, 16 bit, stereo - 4 bytes per frame, 176400 bytes per second
+    private static final AudioFormat CD_QUALITY = new AudioFormat(44100, 16, 2, true, false);
+    // 8kHz, 8 bit, mono - 8000 bytes per second
+    private static final AudioFormat TELEPHONE_QUALITY = new AudioFormat(8000, 8, 1, true, false);
+    private static final long START = TimeUnit.SECONDS.toNanos(100);
+
+    @Test
+    void testByteRateFollowsTheFormat() {
+        assertEquals(176400, new RateController(CD_QUALITY, 0).getBytesPerSecond(),
+                "The byte rate should be the frame rate times the frame size");
+        assertEquals(8000, new RateController(TELEPHONE_QUALITY, 0).getBytesPerSecond(),
+                "The byte rate should be the frame rate times the frame size");
+    }
+
+    @Test
+    void testInitialBurstIsOneJitterBuffer() {
+        RateController controller = new RateController(CD_QUALITY, 500);
+        assertEquals(88200, controller.allowance(START),
+                "At the start, the stream should be allowed to send exactly one jitter buffer");
+        controller.record(88200);
+        assertEquals(0, controller.allowance(START),
+                "After the burst, nothing more should be sent until the listener plays something");
+    }
+
+    @Test
+    void testWallClockRate() {
+        RateController controller = new RateController(TELEPHONE_QUALITY, 0);
+        controller.start(START);
+        assertEquals(80, controller.allowance(START + TimeUnit.MILLISECONDS.toNanos(10)),
+                "After 10ms, 10ms worth of audio should be allowed");
+        controller.record(80);
+        assertEquals(8000 - 80, controller.allowance(START + TimeUnit.SECONDS.toNanos(1)),
+                "The allowance should catch up with the wall clock");
+    }
+
+    @Test
+    void testAllowanceIsFrameAligned() {
+        RateController controller = new RateController(CD_QUALITY, 0);
+        controller.start(START);
+        long allowance = controller.allowance(START + TimeUnit.MICROSECONDS.toNanos(1234));
+        assertEquals(0, allowance % CD_QUALITY.getFrameSize(), "Only whole frames should be sent");
+    }
+
+    @Test
+    void testIsBehind() {
+        RateController controller = new RateController(CD_QUALITY, 100);
+        controller.record(controller.allowance(START));
+        assertFalse(controller.isBehind(START + TimeUnit.MILLISECONDS.toNanos(50)),
+                "The listener should still have audio in its jitter buffer");
+        assertTrue(controller.isBehind(START + TimeUnit.MILLISECONDS.toNanos(150)),
+                "The listener should have played everything sent to it");
+    }
+
+    @Test
+    void testPauseStopsTheClock() {
+        RateController controller = new RateController(TELEPHONE_QUALITY, 0);
+        controller.start(START);
+        controller.pause(START + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(8000, controller.allowance(START + TimeUnit.SECONDS.toNanos(5)),
+                "Nothing more should be allowed while the listener is paused");
+
+        controller.resume(START + TimeUnit.SECONDS.toNanos(5));
+        assertEquals(16000, controller.allowance(START + TimeUnit.SECONDS.toNanos(6)),
+                "The time of the pause should not be caught up with");
+    }
+
+    @Test
+    void testRestartSendsANewJitterBuffer() {
+        RateController controller = new RateController(CD_QUALITY, 500);
+        controller.record(controller.allowance(START));
+        controller.restart();
+        assertEquals(88200, controller.allowance(START + TimeUnit.SECONDS.toNanos(10)),
+                "After a seek, the listener should get a whole jitter buffer again");
+    }
+
+    @Test
+    void testOffsetsAreFrameAligned() {
+        RateController controller = new RateController(CD_QUALITY, 0);
+        assertEquals(176400, controller.offsetOf(1000), "A second should be a second worth of bytes");
+        assertEquals(0, controller.offsetOf(1234) % CD_QUALITY.getFrameSize(), "An offset should be a whole frame");
+        assertEquals(0, controller.offsetOf(-5), "A negative position should be the start of the song");
+        assertTrue(controller.offsetOf(Long.MAX_VALUE) > 0, "A far position should not overflow");
+    }
+
+    @Test
+    void testNegativeJitterBuffer() {
+        assertThrows(IllegalArgumentException.class, () -> new RateController(CD_QUALITY, -1),
+                "A negative jitter buffer is not a valid configuration");
+    }
+}
@@ -0,0 +1,104 @@
+package bg.sofia.uni.fmi.mjt.spotify.server.streaming;
+
+import bg.sofia.uni.fmi.mjt.spotify.objects.Song;
+import bg.sofia.uni.fmi.mjt.spotify.server.network.OutboundMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the CPU time a single stream costs the sending thread (user and kernel), without any pacing
+// run on its own with the "benchmark" tag, the numbers are printed
+@Tag("benchmark")
+public class StreamingModeBenchmark {
+
+    private static final int WARM_UP_STREAMS = 20;
+    private static final int MEASURED_STREAMS = 100;
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    private final Song song = new Song("Smooth", "Santana", 143);
+
+    @Test
+    void testCpuPerStream() throws Exception {
+        long expectedBytes = WavHeader.read(this.song.getPath()).getDataLength();
+        for (StreamingMode mode : StreamingMode.values()) {
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress("localhost", 0));
+                try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                     SocketChannel sender = server.accept()) {
+                    AtomicLong received = new AtomicLong(0);
+                    Thread receiver = startReceiver(client, received);
+
+                    MappedSongCache cache = new MappedSongCache(Long.MAX_VALUE);
+                    stream(mode, cache, sender, WARM_UP_STREAMS);
+                    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                    long cpuBefore = threads.getCurrentThreadCpuTime();
+                    long wallBefore = System.nanoTime();
+                    long sent = stream(mode, cache, sender, MEASURED_STREAMS);
+                    long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+                    long wall = System.nanoTime() - wallBefore;
+
+                    sender.shutdownOutput();
+                    receiver.join();
+                    System.out.printf("%-10s %8.1f us CPU per stream, %8.1f us wall per stream, %6.1f MB/s%n",
+                            mode, cpu / 1000.0 / MEASURED_STREAMS, wall / 1000.0 / MEASURED_STREAMS,
+                            sent / (wall / 1e9) / (1024 * 1024));
+                    assertEquals(expectedBytes * MEASURED_STREAMS, sent, "Every mode should send the whole song");
+                    assertEquals(expectedBytes * (WARM_UP_STREAMS + MEASURED_STREAMS), received.get(),
+                            "The listener should receive every stream in full");
+                }
+            }
+        }
+    }
+
+    private long stream(StreamingMode mode, MappedSongCache cache, SocketChannel sender, int streams)
+            throws Exception {
+        long sent = 0;
+        for (int i = 0; i < streams; i++) {
+            try (AudioSource source = open(mode, cache)) {
+                OutboundMessage chunk;
+                while ((chunk = source.nextChunk(Integer.MAX_VALUE)) != null) {
+                    while (chunk.remaining() > 0) {
+                        sent += chunk.writeTo(sender);
+                    }
+                }
+            }
+        }
+        return sent;
+    }
+
+    private AudioSource open(StreamingMode mode, MappedSongCache cache) throws Exception {
+        return switch (mode) {
+            case MAPPED -> cache.get(this.song).newSource();
+            // the engine parses the header once per song, the file is opened per stream
+            case ZERO_COPY -> new FileRegionAudioSource(this.song.getPath(), WavHeader.read(this.song.getPath()));
+            case DECODED -> new AudioInputStreamSource(AudioSystem.getAudioInputStream(this.song.getPath().toFile()));
+        };
+    }
+
+    private static Thread startReceiver(SocketChannel client, AtomicLong received) {
+        Thread receiver = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+            try {
+                int bytesRead;
+                while ((bytesRead = client.read(buffer)) != -1) {
+                    received.addAndGet(bytesRead);
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // the benchmark is over
+            }
+        });
+        receiver.start();
+        return receiver;
+    }
+}